@@ -47,6 +47,14 @@ android {
         compose = true
         buildConfig = true
     }
+    sourceSets {
+        // exported Room schemas, read by MigrationTestHelper
+        getByName("androidTest").assets.srcDir("$projectDir/schemas")
+    }
+    testOptions {
+        // android.util.Log & co. are no-ops in host tests and benchmarks
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 dependencies {
@@ -90,6 +98,33 @@ dependencies {
 
     // Testing
     testImplementation(libs.junit)
+    testImplementation(libs.sqlite.jdbc)
+    testImplementation(libs.jmh.core)
+    testAnnotationProcessor(libs.jmh.generator.annprocess)
     androidTestImplementation(libs.ext.junit)
+    androidTestImplementation(libs.room.testing)
     androidTestImplementation(libs.espresso.core)
-}
\ No newline at end of file
+}
+
+// JMH benchmarks of the analytics code (src/test/.../benchmark), executed on the host JVM:
+//   ./gradlew :app:jmh [-Pjmh.include=AnalyticsBenchmark] [-Pjmh.args="-f 1 -wi 2 -i 3"]
+// Results (throughput + allocation rate from the GC profiler) are written to build/reports/jmh.
+afterEvaluate {
+    val unitTest = tasks.getByName<Test>("testDebugUnitTest")
+    tasks.register<JavaExec>("jmh") {
+        group = "verification"
+        description = "Runs the JMH benchmarks on the host JVM"
+        dependsOn("compileDebugUnitTestJavaWithJavac")
+        classpath = unitTest.classpath
+        mainClass.set("org.openjdk.jmh.Main")
+
+        val reportDir = layout.buildDirectory.dir("reports/jmh").get().asFile
+        val include = project.findProperty("jmh.include")?.toString() ?: "ch.inf.usi.mindbricks.benchmark"
+        args(include, "-prof", "gc", "-rf", "json", "-rff", "$reportDir/results.json")
+        project.findProperty("jmh.args")?.toString()
+            ?.split(" ")?.filter { it.isNotBlank() }
+            ?.let { args(it) }
+
+        doFirst { reportDir.mkdirs() }
+    }
+}
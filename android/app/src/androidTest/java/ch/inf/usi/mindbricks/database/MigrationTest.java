@@ -0,0 +1,96 @@
+package ch.inf.usi.mindbricks.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.database.Cursor;
+
+import androidx.room.Room;
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Migrates a database created with the first schema to the current one and checks both the
+ * resulting schema (against the schemas exported in {@code app/schemas}) and the migrated data.
+ *
+ * @author Luca Di Bello
+ */
+@RunWith(AndroidJUnit4.class)
+public class MigrationTest {
+
+    private static final String TEST_DB = "migration-test";
+
+    private static final long SESSION_TIMESTAMP = 1_700_000_000_000L;
+
+    @Rule
+    public MigrationTestHelper helper = new MigrationTestHelper(
+            InstrumentationRegistry.getInstrumentation(), AppDatabase.class);
+
+    @Test
+    public void migrateFromFirstVersion() {
+        try (SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 1)) {
+            db.execSQL("INSERT INTO study_sessions (id, timestamp, durationMinutes, tagId, focusScore, coinsEarned, notes) "
+                    + "VALUES (1, " + SESSION_TIMESTAMP + ", 25, NULL, 80, 5, NULL)");
+            for (int i = 0; i < 3; i++) {
+                db.execSQL("INSERT INTO session_sensor_logs (sessionId, timestamp, noiseLevel, lightLevel, motionDetected, isFaceUp) "
+                        + "VALUES (1, " + (SESSION_TIMESTAMP + i * 5000L) + ", " + (40 + i) + ", 200, " + (i == 1 ? 1 : 0) + ", 1)");
+            }
+        }
+
+        try (SupportSQLiteDatabase db = helper.runMigrationsAndValidate(TEST_DB, 9, true, AppDatabase.MIGRATIONS)) {
+            // summary backfilled from the logs (1 -> 2)
+            try (Cursor cursor = db.query("SELECT sampleCount, pickupCount, noiseMin, noiseMax FROM session_sensor_summary WHERE sessionId = 1")) {
+                assertTrue(cursor.moveToFirst());
+                assertEquals(3, cursor.getInt(0));
+                assertEquals(1, cursor.getInt(1));
+                assertEquals(40f, cursor.getFloat(2), 0f);
+                assertEquals(42f, cursor.getFloat(3), 0f);
+            }
+
+            // logs packed into one block at full resolution (3 -> 4, 4 -> 5)
+            try (Cursor cursor = db.query("SELECT sampleCount, firstTimestamp, lastTimestamp, resolutionMs FROM session_sensor_blocks WHERE sessionId = 1")) {
+                assertTrue(cursor.moveToFirst());
+                assertEquals(3, cursor.getInt(0));
+                assertEquals(SESSION_TIMESTAMP, cursor.getLong(1));
+                assertEquals(SESSION_TIMESTAMP + 10_000L, cursor.getLong(2));
+                assertEquals(0, cursor.getLong(3));
+                assertFalse(cursor.moveToNext());
+            }
+
+            // productivity model built from the sessions (6 -> 7)
+            try (Cursor cursor = db.query("SELECT SUM(sessionCount), SUM(scoreCount) FROM productivity_cells")) {
+                assertTrue(cursor.moveToFirst());
+                assertEquals(1, cursor.getInt(0));
+                assertEquals(1, cursor.getInt(1));
+            }
+
+            try (Cursor cursor = db.query("SELECT COUNT(*) FROM schedule_cache")) {
+                assertTrue(cursor.moveToFirst());
+                assertEquals(0, cursor.getInt(0));
+            }
+
+            // checkpoints are only written while a session is recorded (8 -> 9)
+            try (Cursor cursor = db.query("SELECT COUNT(*) FROM session_sensor_checkpoint")) {
+                assertTrue(cursor.moveToFirst());
+                assertEquals(0, cursor.getInt(0));
+            }
+        }
+
+        // Room opens the migrated database (the identity hash matches the entities)
+        AppDatabase database = Room.databaseBuilder(
+                        InstrumentationRegistry.getInstrumentation().getTargetContext(),
+                        AppDatabase.class,
+                        TEST_DB)
+                .addMigrations(AppDatabase.MIGRATIONS)
+                .build();
+        database.getOpenHelper().getWritableDatabase();
+        database.close();
+    }
+}
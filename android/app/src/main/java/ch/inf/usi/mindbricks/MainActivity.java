@@ -9,6 +9,8 @@ import androidx.navigation.Navigation;
 import androidx.navigation.ui.NavigationUI;
 
 import ch.inf.usi.mindbricks.databinding.ActivityMainBinding;
+import ch.inf.usi.mindbricks.service.SchedulePrecomputeWorker;
+import ch.inf.usi.mindbricks.service.SensorRetentionWorker;
 import ch.inf.usi.mindbricks.ui.nav.NavigationLocker;
 
 /**
@@ -32,6 +34,11 @@ public class MainActivity extends AppCompatActivity implements NavigationLocker
 
         NavController navController = Navigation.findNavController(this, R.id.nav_host_fragment_activity_main);
         NavigationUI.setupWithNavController(binding.navView, navController);
+
+        // keep the sensor history small (no-op if already scheduled)
+        SensorRetentionWorker.schedule(this);
+        // prepare the schedule of the day overnight (no-op if already scheduled)
+        SchedulePrecomputeWorker.schedule(this);
     }
 
     @Override
@@ -1,18 +1,34 @@
 package ch.inf.usi.mindbricks.database;
 
 import android.app.Application;
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
 
 import ch.inf.usi.mindbricks.model.Tag;
 import ch.inf.usi.mindbricks.model.evaluation.PAMScore;
 import ch.inf.usi.mindbricks.model.questionnare.SessionQuestionnaire;
+import ch.inf.usi.mindbricks.model.recommendation.CachedSchedule;
+import ch.inf.usi.mindbricks.model.recommendation.ProductivityCell;
+import ch.inf.usi.mindbricks.model.visual.SessionSensorBlock;
+import ch.inf.usi.mindbricks.model.visual.SessionSensorCheckpoint;
 import ch.inf.usi.mindbricks.model.visual.SessionSensorLog;
+import ch.inf.usi.mindbricks.model.visual.SessionSensorSummary;
 import ch.inf.usi.mindbricks.model.visual.StudySession;
 import ch.inf.usi.mindbricks.model.visual.calendar.CalendarEvent;
+import ch.inf.usi.mindbricks.util.evaluation.ProductivityModel;
 
 /**
  * Room database for MindBricks app
@@ -22,21 +38,246 @@ import ch.inf.usi.mindbricks.model.visual.calendar.CalendarEvent;
  */
 @Database(entities = {
         StudySession.class,
-        SessionSensorLog.class,
+        SessionSensorBlock.class,
         SessionQuestionnaire.class,
         CalendarEvent.class,
         Tag.class,
-        PAMScore.class
+        PAMScore.class,
+        SessionSensorSummary.class,
+        ProductivityCell.class,
+        CachedSchedule.class,
+        SessionSensorCheckpoint.class
 },
-        version = 1
+        version = 9
 )
 public abstract class AppDatabase extends RoomDatabase {
 
+    /**
+     * Name of the database file.
+     */
+    public static final String DATABASE_NAME = "mindbricks_database";
+
     /**
      * Singleton instance of the database.
      */
     private static AppDatabase INSTANCE;
 
+    /**
+     * Adds the {@code session_sensor_summary} table and backfills it from the existing sensor logs.
+     */
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `session_sensor_summary` (" +
+                    "`sessionId` INTEGER NOT NULL, " +
+                    "`sampleCount` INTEGER NOT NULL DEFAULT 0, " +
+                    "`noiseSum` REAL NOT NULL DEFAULT 0, " +
+                    "`lightSum` REAL NOT NULL DEFAULT 0, " +
+                    "`pickupCount` INTEGER NOT NULL DEFAULT 0, " +
+                    "`noiseMin` REAL, " +
+                    "`noiseMax` REAL, " +
+                    "`lightMin` REAL, " +
+                    "`lightMax` REAL, " +
+                    "PRIMARY KEY(`sessionId`), " +
+                    "FOREIGN KEY(`sessionId`) REFERENCES `study_sessions`(`id`) " +
+                    "ON UPDATE NO ACTION ON DELETE CASCADE )");
+
+            db.execSQL("INSERT INTO session_sensor_summary (sessionId, sampleCount, noiseSum, lightSum, " +
+                    "pickupCount, noiseMin, noiseMax, lightMin, lightMax) " +
+                    "SELECT sessionId, COUNT(*), SUM(noiseLevel), SUM(lightLevel), " +
+                    "SUM(CASE WHEN motionDetected THEN 1 ELSE 0 END), " +
+                    "MIN(noiseLevel), MAX(noiseLevel), MIN(lightLevel), MAX(lightLevel) " +
+                    "FROM session_sensor_logs GROUP BY sessionId");
+        }
+    };
+
+    /**
+     * Adds indexes for the time-range read paths: sessions are filtered and ordered by timestamp
+     * (optionally per tag) and sensor logs are always read per session in timestamp order.
+     * The composite indexes replace the single-column foreign key indexes they start with.
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("DROP INDEX IF EXISTS `index_study_sessions_tagId`");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_study_sessions_timestamp` " +
+                    "ON `study_sessions` (`timestamp`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_study_sessions_tagId_timestamp` " +
+                    "ON `study_sessions` (`tagId`, `timestamp`)");
+
+            db.execSQL("DROP INDEX IF EXISTS `index_session_sensor_logs_sessionId`");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_session_sensor_logs_sessionId_timestamp` " +
+                    "ON `session_sensor_logs` (`sessionId`, `timestamp`)");
+
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_tags_title` ON `tags` (`title`)");
+        }
+    };
+
+    /**
+     * Replaces the {@code session_sensor_logs} table (one row per sample) with
+     * {@code session_sensor_blocks} (samples of a session packed in binary blocks): the logs of
+     * every session are converted into a single block.
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `session_sensor_blocks` (" +
+                    "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`sessionId` INTEGER NOT NULL, " +
+                    "`firstTimestamp` INTEGER NOT NULL, " +
+                    "`lastTimestamp` INTEGER NOT NULL, " +
+                    "`sampleCount` INTEGER NOT NULL, " +
+                    "`data` BLOB NOT NULL, " +
+                    "FOREIGN KEY(`sessionId`) REFERENCES `study_sessions`(`id`) " +
+                    "ON UPDATE NO ACTION ON DELETE CASCADE )");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_session_sensor_blocks_sessionId_firstTimestamp` " +
+                    "ON `session_sensor_blocks` (`sessionId`, `firstTimestamp`)");
+
+            // reads the logs session by session through the (sessionId, timestamp) index
+            try (Cursor cursor = db.query("SELECT sessionId, timestamp, noiseLevel, lightLevel, " +
+                    "motionDetected, isFaceUp FROM session_sensor_logs ORDER BY sessionId, timestamp")) {
+                List<SessionSensorLog> logs = new ArrayList<>();
+                while (cursor.moveToNext()) {
+                    long sessionId = cursor.getLong(0);
+                    if (!logs.isEmpty() && logs.get(0).getSessionId() != sessionId) {
+                        insertBlock(db, logs);
+                        logs.clear();
+                    }
+                    logs.add(new SessionSensorLog(sessionId, cursor.getLong(1), cursor.getFloat(2),
+                            cursor.getFloat(3), cursor.getInt(4) != 0, cursor.getInt(5) != 0));
+                }
+                if (!logs.isEmpty()) insertBlock(db, logs);
+            }
+
+            db.execSQL("DROP TABLE IF EXISTS `session_sensor_logs`");
+        }
+
+        private void insertBlock(SupportSQLiteDatabase db, List<SessionSensorLog> logs) {
+            ContentValues values = new ContentValues();
+            values.put("sessionId", logs.get(0).getSessionId());
+            values.put("firstTimestamp", logs.get(0).getTimestamp());
+            values.put("lastTimestamp", logs.get(logs.size() - 1).getTimestamp());
+            values.put("sampleCount", logs.size());
+            values.put("data", SensorBlockCodec.encode(logs));
+            db.insert("session_sensor_blocks", SQLiteDatabase.CONFLICT_NONE, values);
+        }
+    };
+
+    /**
+     * Adds the resolution of the sensor blocks, to keep track of the downsampled ones.
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `session_sensor_blocks` " +
+                    "ADD COLUMN `resolutionMs` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    /**
+     * Adds the statistics computed by the sensor service to the session summaries.
+     */
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `session_sensor_summary` ADD COLUMN `noiseVariance` REAL NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE `session_sensor_summary` ADD COLUMN `lightVariance` REAL NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE `session_sensor_summary` ADD COLUMN `deskBumpCount` INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE `session_sensor_summary` ADD COLUMN `walkingCount` INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE `session_sensor_summary` ADD COLUMN `faceDownMs` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    /**
+     * Adds the {@code productivity_cells} table (productivity model of the recommendation engine)
+     * and builds it from the existing sessions.
+     */
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `productivity_cells` (" +
+                    "`cell` INTEGER NOT NULL, " +
+                    "`sessionCount` INTEGER NOT NULL, " +
+                    "`scoreCount` INTEGER NOT NULL, " +
+                    "`weight` REAL NOT NULL, " +
+                    "`mean` REAL NOT NULL, " +
+                    "`m2` REAL NOT NULL, " +
+                    "`updatedAt` INTEGER NOT NULL, " +
+                    "PRIMARY KEY(`cell`))");
+
+            ProductivityCell[] cells = new ProductivityCell[ProductivityModel.CELLS];
+            Calendar calendar = Calendar.getInstance();
+            try (Cursor cursor = db.query("SELECT timestamp, focusScore FROM study_sessions ORDER BY timestamp")) {
+                while (cursor.moveToNext()) {
+                    long timestamp = cursor.getLong(0);
+                    int index = ProductivityModel.cellOf(calendar, timestamp);
+                    if (cells[index] == null) cells[index] = new ProductivityCell(index);
+                    ProductivityModel.add(cells[index], timestamp, cursor.getFloat(1));
+                }
+            }
+
+            for (ProductivityCell cell : cells) {
+                if (cell == null) continue;
+                ContentValues values = new ContentValues();
+                values.put("cell", cell.getCell());
+                values.put("sessionCount", cell.getSessionCount());
+                values.put("scoreCount", cell.getScoreCount());
+                values.put("weight", cell.getWeight());
+                values.put("mean", cell.getMean());
+                values.put("m2", cell.getM2());
+                values.put("updatedAt", cell.getUpdatedAt());
+                db.insert("productivity_cells", SQLiteDatabase.CONFLICT_REPLACE, values);
+            }
+        }
+    };
+
+    /**
+     * Adds the {@code schedule_cache} table (filled as schedules are generated).
+     */
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `schedule_cache` (" +
+                    "`day` INTEGER NOT NULL, " +
+                    "`fingerprint` INTEGER NOT NULL, " +
+                    "`createdAt` INTEGER NOT NULL, " +
+                    "`schedule` TEXT NOT NULL, " +
+                    "PRIMARY KEY(`day`))");
+        }
+    };
+
+    /**
+     * Adds the {@code session_sensor_checkpoint} table: the checkpoints of the running session
+     * are no longer written to the summaries read by the analytics.
+     */
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `session_sensor_checkpoint` (" +
+                    "`sessionId` INTEGER NOT NULL, " +
+                    "`sampleCount` INTEGER NOT NULL DEFAULT 0, " +
+                    "`noiseSum` REAL NOT NULL DEFAULT 0, " +
+                    "`lightSum` REAL NOT NULL DEFAULT 0, " +
+                    "`noiseVariance` REAL NOT NULL DEFAULT 0, " +
+                    "`lightVariance` REAL NOT NULL DEFAULT 0, " +
+                    "`pickupCount` INTEGER NOT NULL DEFAULT 0, " +
+                    "`deskBumpCount` INTEGER NOT NULL DEFAULT 0, " +
+                    "`walkingCount` INTEGER NOT NULL DEFAULT 0, " +
+                    "`faceDownMs` INTEGER NOT NULL DEFAULT 0, " +
+                    "`noiseMin` REAL, `noiseMax` REAL, `lightMin` REAL, `lightMax` REAL, " +
+                    "PRIMARY KEY(`sessionId`), " +
+                    "FOREIGN KEY(`sessionId`) REFERENCES `study_sessions`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+        }
+    };
+
+    /**
+     * Every migration, from the first version to the current one.
+     */
+    static final Migration[] MIGRATIONS = {
+            MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8,
+            MIGRATION_8_9
+    };
+
     /**
      * Returns the singleton instance of the database.
      *
@@ -50,8 +291,9 @@ public abstract class AppDatabase extends RoomDatabase {
             INSTANCE = Room.databaseBuilder(
                             appContext,
                             AppDatabase.class,
-                            "mindbricks_database"
+                            DATABASE_NAME
                     )
+                    .addMigrations(MIGRATIONS)
                     .fallbackToDestructiveMigrationOnDowngrade(true)
                     .build();
         }
@@ -73,9 +315,9 @@ public abstract class AppDatabase extends RoomDatabase {
     public abstract StudySessionDao studySessionDao();
 
     /**
-     * Returns the DAO for the SessionSensorLog entity.
+     * Returns the DAO for the sensor logs (SessionSensorBlock entity).
      *
-     * @return the DAO for the SessionSensorLog entity
+     * @return the DAO for the sensor logs
      */
     public abstract SessionSensorLogDao sessionSensorLogDao();
 
@@ -99,4 +341,18 @@ public abstract class AppDatabase extends RoomDatabase {
      * @return the DAO for the PAMScore entity
      */
     public abstract PAMScoreDao pamScoreDao();
+
+    /**
+     * Returns the DAO for the productivity model (ProductivityCell entity).
+     *
+     * @return the DAO for the productivity model
+     */
+    public abstract ProductivityModelDao productivityModelDao();
+
+    /**
+     * Returns the DAO for the stored schedules (CachedSchedule entity).
+     *
+     * @return the DAO for the stored schedules
+     */
+    public abstract ScheduleCacheDao scheduleCacheDao();
 }
\ No newline at end of file
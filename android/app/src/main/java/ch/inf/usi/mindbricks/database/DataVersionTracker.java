@@ -0,0 +1,65 @@
+package ch.inf.usi.mindbricks.database;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonic version counter of the data shown by the analytics screen.
+ * <p>
+ * The counter is incremented by Room's {@link InvalidationTracker} every time one of the tracked
+ * tables is modified, so two reads returning the same version are guaranteed to see the same data.
+ * This allows caches to be validated in O(1) instead of hashing the whole result set.
+ *
+ * @author Luca Di Bello
+ */
+public class DataVersionTracker extends InvalidationTracker.Observer {
+
+    /**
+     * Tables whose content contributes to the analytics results.
+     */
+    private static final String[] TRACKED_TABLES = {"study_sessions", "session_sensor_summary", "tags"};
+
+    private static volatile DataVersionTracker INSTANCE;
+
+    private final AtomicLong version = new AtomicLong();
+
+    private DataVersionTracker() {
+        super(TRACKED_TABLES);
+    }
+
+    /**
+     * Returns the tracker, registering it on the database on first use.
+     *
+     * @param context application context
+     * @return the tracker instance
+     */
+    public static DataVersionTracker getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (DataVersionTracker.class) {
+                if (INSTANCE == null) {
+                    DataVersionTracker tracker = new DataVersionTracker();
+                    AppDatabase.getInstance(context).getInvalidationTracker().addObserver(tracker);
+                    INSTANCE = tracker;
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    @Override
+    public void onInvalidated(@NonNull Set<String> tables) {
+        version.incrementAndGet();
+    }
+
+    /**
+     * Returns the current data version.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+}
@@ -0,0 +1,106 @@
+package ch.inf.usi.mindbricks.database;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Transaction;
+
+import java.util.List;
+
+import ch.inf.usi.mindbricks.model.recommendation.ProductivityCell;
+import ch.inf.usi.mindbricks.util.evaluation.ProductivityModel;
+
+/**
+ * Data Access Object for the productivity model of the recommendation engine.
+ * <p>
+ * The model is updated one cell at a time: a new session is added to its cell, while the cell of
+ * a deleted session or of a session whose focus score changed is rebuilt from the stored sessions
+ * (see {@link #recomputeCell}). The model is read as a whole (at most
+ * {@value ProductivityModel#CELLS} rows).
+ *
+ * @author Luca Di Bello
+ */
+@Dao
+public interface ProductivityModelDao {
+
+    @Query("SELECT * FROM productivity_cells")
+    List<ProductivityCell> getCells();
+
+    @Query("SELECT * FROM productivity_cells WHERE cell = :cell")
+    ProductivityCell getCell(int cell);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void saveCell(ProductivityCell cell);
+
+    @Query("DELETE FROM productivity_cells WHERE cell = :cell")
+    void deleteCell(int cell);
+
+    @Query("DELETE FROM productivity_cells")
+    void clear();
+
+    /**
+     * Returns the start and focus score of the sessions starting in a cell of the model, oldest
+     * first. The local day and hour are computed by SQLite, with the same numbering as
+     * {@link ProductivityModel#cellOf} (day 0 is Sunday), so only the sessions of the cell are
+     * read.
+     *
+     * @param day  local day of the week, 0 (Sunday) to 6
+     * @param hour local hour of the day, 0 to 23
+     */
+    @Query("SELECT timestamp, focusScore FROM study_sessions " +
+            "WHERE CAST(strftime('%w', timestamp / 1000, 'unixepoch', 'localtime') AS INTEGER) = :day " +
+            "AND CAST(strftime('%H', timestamp / 1000, 'unixepoch', 'localtime') AS INTEGER) = :hour " +
+            "ORDER BY timestamp")
+    List<SessionScore> getCellScores(int day, int hour);
+
+    /**
+     * Returns the stored productivity model.
+     */
+    default ProductivityModel getModel() {
+        return ProductivityModel.of(getCells());
+    }
+
+    /**
+     * Adds a session to the model.
+     *
+     * @param timestamp  start of the session
+     * @param focusScore focus score of the session, 0 if not rated yet
+     */
+    @Transaction
+    default void recordSession(long timestamp, float focusScore) {
+        int index = ProductivityModel.cellOf(timestamp);
+        ProductivityCell cell = getCell(index);
+        if (cell == null) cell = new ProductivityCell(index);
+        ProductivityModel.add(cell, timestamp, focusScore);
+        saveCell(cell);
+    }
+
+    /**
+     * Rebuilds the cell containing a timestamp from the stored sessions. Must be called in the
+     * transaction that deletes a session or changes its focus score: the decayed statistics of a
+     * cell cannot be subtracted from, so the cell is computed again without the old values.
+     *
+     * @param timestamp start of the changed session
+     */
+    @Transaction
+    default void recomputeCell(long timestamp) {
+        int index = ProductivityModel.cellOf(timestamp);
+        ProductivityCell cell = new ProductivityCell(index);
+        for (SessionScore session : getCellScores(index / ProductivityModel.HOURS, index % ProductivityModel.HOURS)) {
+            ProductivityModel.add(cell, session.timestamp, session.focusScore);
+        }
+
+        if (cell.getSessionCount() == 0) {
+            deleteCell(index);
+        } else {
+            saveCell(cell);
+        }
+    }
+
+    // Result classes for the queries
+    class SessionScore {
+        public long timestamp;
+        public float focusScore;
+    }
+}
@@ -0,0 +1,34 @@
+package ch.inf.usi.mindbricks.database;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import ch.inf.usi.mindbricks.model.recommendation.CachedSchedule;
+
+/**
+ * Data Access Object for the stored daily schedules (one row per day).
+ *
+ * @author Luca Di Bello
+ */
+@Dao
+public interface ScheduleCacheDao {
+
+    @Query("SELECT * FROM schedule_cache WHERE day = :day")
+    CachedSchedule get(long day);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void save(CachedSchedule schedule);
+
+    /**
+     * Deletes the schedules of the days before the given one.
+     *
+     * @return number of deleted schedules
+     */
+    @Query("DELETE FROM schedule_cache WHERE day < :day")
+    int deleteBefore(long day);
+
+    @Query("DELETE FROM schedule_cache")
+    void clear();
+}
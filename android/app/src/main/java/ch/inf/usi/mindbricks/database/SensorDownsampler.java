@@ -0,0 +1,68 @@
+package ch.inf.usi.mindbricks.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.inf.usi.mindbricks.model.visual.SessionSensorLog;
+
+/**
+ * Reduces the sensor samples of a session to one sample per fixed interval (e.g. one per
+ * minute), used to keep the history of old sessions at a lower resolution.
+ * <p>
+ * Each interval is summarized as:
+ * - timestamp: start of the interval
+ * - noise and light: mean of the samples
+ * - motion: true if any sample of the interval detected motion (pickups are not lost)
+ * - face up: true if most of the samples were face up
+ *
+ * @author Luca Di Bello
+ */
+public final class SensorDownsampler {
+
+    private SensorDownsampler() {
+    }
+
+    /**
+     * Downsamples samples (in timestamp order) to one per {@code resolutionMs}.
+     *
+     * @param logs         samples to downsample
+     * @param resolutionMs length of the intervals
+     * @return one sample per interval containing at least a sample
+     */
+    public static List<SessionSensorLog> downsample(List<SessionSensorLog> logs, long resolutionMs) {
+        if (resolutionMs <= 0) throw new IllegalArgumentException("resolutionMs must be positive");
+
+        List<SessionSensorLog> result = new ArrayList<>();
+        if (logs.isEmpty()) return result;
+
+        long sessionId = logs.get(0).getSessionId();
+        long bucket = Long.MIN_VALUE;
+        int count = 0;
+        double noiseSum = 0;
+        double lightSum = 0;
+        boolean motion = false;
+        int faceUpCount = 0;
+
+        for (SessionSensorLog log : logs) {
+            long logBucket = Math.floorDiv(log.getTimestamp(), resolutionMs) * resolutionMs;
+            if (logBucket != bucket && count > 0) {
+                result.add(new SessionSensorLog(sessionId, bucket, (float) (noiseSum / count),
+                        (float) (lightSum / count), motion, faceUpCount * 2 >= count));
+                count = 0;
+                noiseSum = 0;
+                lightSum = 0;
+                motion = false;
+                faceUpCount = 0;
+            }
+            bucket = logBucket;
+            count++;
+            noiseSum += log.getNoiseLevel();
+            lightSum += log.getLightLevel();
+            motion |= log.isMotionDetected();
+            if (log.isFaceUp()) faceUpCount++;
+        }
+        result.add(new SessionSensorLog(sessionId, bucket, (float) (noiseSum / count),
+                (float) (lightSum / count), motion, faceUpCount * 2 >= count));
+        return result;
+    }
+}
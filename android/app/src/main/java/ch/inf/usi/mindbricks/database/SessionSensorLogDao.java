@@ -3,15 +3,25 @@ package ch.inf.usi.mindbricks.database;
 import androidx.lifecycle.LiveData;
 import androidx.room.Dao;
 import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.Transaction;
 
 import java.util.List;
 
+import ch.inf.usi.mindbricks.model.visual.SessionSensorBlock;
+import ch.inf.usi.mindbricks.model.visual.SessionSensorCheckpoint;
 import ch.inf.usi.mindbricks.model.visual.SessionSensorLog;
+import ch.inf.usi.mindbricks.model.visual.SessionSensorSummary;
 
 
 /**
- * Data Access Object for SessionSensorLog entities
+ * Data Access Object for the sensor logs of the sessions.
+ * <p>
+ * Sensor samples are stored in {@link SessionSensorBlock}s (encoded by {@link SensorBlockCodec}):
+ * every written batch becomes one block per session, and {@link #compactSession(long)} merges
+ * the blocks of a session into one once it is over (see
+ * {@link ch.inf.usi.mindbricks.service.SensorRetentionWorker}).
  *
  * @author Luca Di Bello
  * @author Marta Šafářová
@@ -19,39 +29,302 @@ import ch.inf.usi.mindbricks.model.visual.SessionSensorLog;
 @Dao
 public interface SessionSensorLogDao {
 
+    @Insert
+    void insertBlock(SessionSensorBlock block);
+
     /**
-     * Insert a batch of sensor logs (noise stored as RMS amplitude).
+     * Encodes samples of one session (in timestamp order) and stores them as a block.
      */
-    @Insert
-    void insertAll(List<SessionSensorLog> logs);
+    default void insertLogs(List<SessionSensorLog> logs) {
+        if (logs.isEmpty()) return;
+        insertBlock(new SessionSensorBlock(
+                logs.get(0).getSessionId(),
+                logs.get(0).getTimestamp(),
+                logs.get(logs.size() - 1).getTimestamp(),
+                logs.size(),
+                SensorBlockCodec.encode(logs)));
+    }
 
     /**
-     * Insert a single sensor log.
+     * Stores samples (in timestamp order, possibly of several sessions) as one block per session,
+     * without updating the summaries.
      */
-    @Insert
-    void insert(SessionSensorLog log);
+    @Transaction
+    default void insertRows(List<SessionSensorLog> rows) {
+        int blockStart = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            boolean blockEnds = i + 1 == rows.size()
+                    || rows.get(i + 1).getSessionId() != rows.get(i).getSessionId();
+            if (blockEnds) {
+                insertLogs(rows.subList(blockStart, i + 1));
+                blockStart = i + 1;
+            }
+        }
+    }
+
+    /**
+     * Columns of the summaries, in the order of {@link SessionSensorSummary} (also the ones of the
+     * checkpoints).
+     */
+    String SUMMARY_COLUMNS = "sessionId, sampleCount, noiseSum, lightSum, noiseVariance, lightVariance, " +
+            "pickupCount, deskBumpCount, walkingCount, faceDownMs, noiseMin, noiseMax, lightMin, lightMax";
+
+    /**
+     * Stores samples like {@link #insertRows(List)} and replaces the checkpoint of their session,
+     * in the same transaction.
+     * <p>
+     * Used by the sensor service, which keeps the statistics of the running session in memory:
+     * storing them with every batch means that a session interrupted by the death of the process
+     * still gets a summary (up to its last written batch, see {@link #promoteCheckpoints(long)}).
+     * The checkpoint is written to its own table, so the summaries read by the analytics only
+     * change when the session ends ({@link #finishSession}).
+     *
+     * @param rows       samples to store
+     * @param checkpoint statistics of the running session, null to leave the checkpoints unchanged
+     */
+    @Transaction
+    default void insertRowsWithCheckpoint(List<SessionSensorLog> rows, SessionSensorCheckpoint checkpoint) {
+        insertRows(rows);
+        if (checkpoint != null) saveCheckpoint(checkpoint);
+    }
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void saveCheckpoint(SessionSensorCheckpoint checkpoint);
+
+    @Query("SELECT * FROM session_sensor_checkpoint WHERE sessionId = :sessionId")
+    SessionSensorCheckpoint getCheckpoint(long sessionId);
+
+    @Query("DELETE FROM session_sensor_checkpoint WHERE sessionId = :sessionId")
+    void deleteCheckpoint(long sessionId);
+
+    @Query("INSERT OR REPLACE INTO session_sensor_summary (" + SUMMARY_COLUMNS + ") " +
+            "SELECT " + SUMMARY_COLUMNS + " FROM session_sensor_checkpoint WHERE sessionId != :runningSessionId")
+    void copyCheckpointsToSummaries(long runningSessionId);
+
+    @Query("DELETE FROM session_sensor_checkpoint WHERE sessionId != :runningSessionId")
+    int deleteCheckpointsExcept(long runningSessionId);
+
+    /**
+     * Turns the checkpoints left by sessions that were interrupted (the process died before they
+     * ended) into their summaries. Called by the sensor service when a session starts: the
+     * checkpoints of any other session are leftovers.
+     *
+     * @param runningSessionId session being recorded, whose checkpoint is kept
+     * @return number of promoted checkpoints
+     */
+    @Transaction
+    default int promoteCheckpoints(long runningSessionId) {
+        copyCheckpointsToSummaries(runningSessionId);
+        return deleteCheckpointsExcept(runningSessionId);
+    }
+
+    /**
+     * Inserts a batch of sensor logs and folds them into the per-session
+     * {@link SessionSensorSummary} rows within the same transaction.
+     * <p>
+     * Writers of sensor data should go through this method (or write the summary themselves,
+     * like the sensor service), otherwise the analytics queries (which read the summary table)
+     * will not see the new samples.
+     *
+     * @param logs logs to insert, usually all belonging to the same session
+     */
+    @Transaction
+    default void insertWithSummary(List<SessionSensorLog> logs) {
+        insertWithSummary(logs, logs);
+    }
+
+    /**
+     * Folds a batch of samples into the per-session {@link SessionSensorSummary} rows, storing
+     * only some of them as sensor logs, within the same transaction.
+     * <p>
+     * Used when replaying samples through the change filter, which does not store the samples
+     * that did not change since the previous stored one but still counts them in the session
+     * statistics.
+     *
+     * @param logs samples to fold into the summaries, usually all belonging to the same session
+     * @param rows samples to store as sensor logs (a subset of {@code logs})
+     */
+    @Transaction
+    default void insertWithSummary(List<SessionSensorLog> logs, List<SessionSensorLog> rows) {
+        if (logs.isEmpty()) return;
+
+        insertRows(rows);
+
+        // fold consecutive logs of the same session into a single summary update
+        int runStart = 0;
+        double noiseSum = 0;
+        double lightSum = 0;
+        int pickups = 0;
+        float noiseMin = Float.MAX_VALUE;
+        float noiseMax = -Float.MAX_VALUE;
+        float lightMin = Float.MAX_VALUE;
+        float lightMax = -Float.MAX_VALUE;
+
+        for (int i = 0; i < logs.size(); i++) {
+            SessionSensorLog log = logs.get(i);
+            float noise = log.getNoiseLevel();
+            float light = log.getLightLevel();
+            noiseSum += noise;
+            lightSum += light;
+            pickups += log.getPickupCount();
+            noiseMin = Math.min(noiseMin, noise);
+            noiseMax = Math.max(noiseMax, noise);
+            lightMin = Math.min(lightMin, light);
+            lightMax = Math.max(lightMax, light);
+
+            boolean runEnds = i + 1 == logs.size()
+                    || logs.get(i + 1).getSessionId() != log.getSessionId();
+            if (runEnds) {
+                ensureSummary(log.getSessionId());
+                addToSummary(log.getSessionId(), i + 1 - runStart, noiseSum, lightSum, pickups,
+                        noiseMin, noiseMax, lightMin, lightMax);
 
+                runStart = i + 1;
+                noiseSum = 0;
+                lightSum = 0;
+                pickups = 0;
+                noiseMin = Float.MAX_VALUE;
+                noiseMax = -Float.MAX_VALUE;
+                lightMin = Float.MAX_VALUE;
+                lightMax = -Float.MAX_VALUE;
+            }
+        }
+    }
 
-    @Query("SELECT * FROM session_sensor_logs WHERE sessionId = :sessionId ORDER BY timestamp ASC")
-    LiveData<List<SessionSensorLog>> getLogsForSession(long sessionId);
+    /**
+     * Creates an empty summary row for the session if it does not exist yet.
+     * NOTE: UPSERT is only available from SQLite 3.24 (API 30), hence the two-step update.
+     */
+    @Query("INSERT OR IGNORE INTO session_sensor_summary (sessionId) VALUES (:sessionId)")
+    void ensureSummary(long sessionId);
+
+    @Query("UPDATE session_sensor_summary SET " +
+            "sampleCount = sampleCount + :sampleCount, " +
+            "noiseSum = noiseSum + :noiseSum, " +
+            "lightSum = lightSum + :lightSum, " +
+            "pickupCount = pickupCount + :pickupCount, " +
+            "noiseMin = CASE WHEN noiseMin IS NULL OR :noiseMin < noiseMin THEN :noiseMin ELSE noiseMin END, " +
+            "noiseMax = CASE WHEN noiseMax IS NULL OR :noiseMax > noiseMax THEN :noiseMax ELSE noiseMax END, " +
+            "lightMin = CASE WHEN lightMin IS NULL OR :lightMin < lightMin THEN :lightMin ELSE lightMin END, " +
+            "lightMax = CASE WHEN lightMax IS NULL OR :lightMax > lightMax THEN :lightMax ELSE lightMax END " +
+            "WHERE sessionId = :sessionId")
+    void addToSummary(long sessionId, int sampleCount, double noiseSum, double lightSum, int pickupCount,
+                      float noiseMin, float noiseMax, float lightMin, float lightMax);
+
+    @Query("SELECT * FROM session_sensor_summary WHERE sessionId = :sessionId")
+    SessionSensorSummary getSummary(long sessionId);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void saveSummary(SessionSensorSummary summary);
+
+    /**
+     * Ends a session recorded by the sensor service: stores its final summary (computed while the
+     * session was running) in place of its checkpoint. The blocks of the session are merged later,
+     * by the retention worker, so that stopping a session never decodes its samples.
+     *
+     * @param summary statistics of the whole session
+     */
+    @Transaction
+    default void finishSession(SessionSensorSummary summary) {
+        saveSummary(summary);
+        deleteCheckpoint(summary.getSessionId());
+    }
+
+
+    @Query("SELECT * FROM session_sensor_blocks WHERE sessionId = :sessionId ORDER BY firstTimestamp ASC")
+    LiveData<List<SessionSensorBlock>> observeBlocksForSession(long sessionId);
+
+    @Query("SELECT * FROM session_sensor_blocks WHERE sessionId = :sessionId ORDER BY firstTimestamp ASC")
+    List<SessionSensorBlock> getBlocksForSession(long sessionId);
+
+    /**
+     * Returns the decoded sensor logs of a session, in timestamp order.
+     */
+    default List<SessionSensorLog> getLogsForSession(long sessionId) {
+        return SensorBlockCodec.decodeAll(getBlocksForSession(sessionId));
+    }
 
-    // Queries for study session metrics
+    @Query("DELETE FROM session_sensor_blocks WHERE sessionId = :sessionId")
+    void deleteBlocksForSession(long sessionId);
 
-    @Query("SELECT AVG(noiseLevel) FROM session_sensor_logs WHERE sessionId = :sessionId")
-    float getAverageNoise(long sessionId);
+    /**
+     * Returns the sessions over since the given time whose samples are still split in several
+     * full resolution blocks.
+     *
+     * @param cutoffTime only sessions whose blocks all end before this time are considered
+     * @param limit      maximum number of sessions returned
+     */
+    @Query("SELECT sessionId FROM session_sensor_blocks WHERE resolutionMs = 0 " +
+            "GROUP BY sessionId HAVING COUNT(*) > 1 AND MAX(lastTimestamp) < :cutoffTime " +
+            "ORDER BY sessionId LIMIT :limit")
+    List<Long> getSessionsToCompact(long cutoffTime, int limit);
+
+    /**
+     * Merges all the blocks of a session into a single block (to be called once the session
+     * ended). The samples are decoded and re-encoded without loss.
+     *
+     * @param sessionId session to compact
+     */
+    @Transaction
+    default void compactSession(long sessionId) {
+        List<SessionSensorBlock> blocks = getBlocksForSession(sessionId);
+        if (blocks.size() <= 1) return;
+
+        List<SessionSensorLog> logs = SensorBlockCodec.decodeAll(blocks);
+        deleteBlocksForSession(sessionId);
+        insertLogs(logs);
+    }
+
+    /**
+     * Returns the sessions having blocks older than the given time stored at a finer resolution
+     * than the given one.
+     *
+     * @param cutoffTime   only blocks whose samples are all older than this time are considered
+     * @param resolutionMs target resolution
+     * @param limit        maximum number of sessions returned
+     */
+    @Query("SELECT DISTINCT sessionId FROM session_sensor_blocks " +
+            "WHERE lastTimestamp < :cutoffTime AND resolutionMs < :resolutionMs " +
+            "ORDER BY sessionId LIMIT :limit")
+    List<Long> getSessionsToDownsample(long cutoffTime, long resolutionMs, int limit);
 
-    @Query("SELECT AVG(lightLevel) FROM session_sensor_logs WHERE sessionId = :sessionId")
-    float getAverageLight(long sessionId);
+    /**
+     * Replaces the blocks of a session with a single block downsampled to one sample per
+     * {@code resolutionMs} (see {@link SensorDownsampler}). The session summary is not changed.
+     *
+     * @param sessionId    session to downsample
+     * @param resolutionMs interval between the samples of the downsampled block
+     */
+    @Transaction
+    default void downsampleSession(long sessionId, long resolutionMs) {
+        List<SessionSensorBlock> blocks = getBlocksForSession(sessionId);
+        if (blocks.isEmpty()) return;
 
-    @Query("SELECT COUNT(*) FROM session_sensor_logs WHERE sessionId = :sessionId AND motionDetected = 1")
-    int getMotionCount(long sessionId);
+        List<SessionSensorLog> logs = SensorDownsampler.downsample(SensorBlockCodec.decodeAll(blocks), resolutionMs);
+        deleteBlocksForSession(sessionId);
+        if (logs.isEmpty()) return;
 
-    @Query("DELETE FROM session_sensor_logs WHERE timestamp < :cutoffTime")
+        SessionSensorBlock block = new SessionSensorBlock(
+                sessionId,
+                logs.get(0).getTimestamp(),
+                logs.get(logs.size() - 1).getTimestamp(),
+                logs.size(),
+                SensorBlockCodec.encode(logs));
+        block.setResolutionMs(resolutionMs);
+        insertBlock(block);
+    }
+
+    /**
+     * Deletes the blocks whose samples are all older than the given time.
+     *
+     * @return number of deleted blocks
+     */
+    @Query("DELETE FROM session_sensor_blocks WHERE lastTimestamp < :cutoffTime")
     int deleteLogsOlderThan(long cutoffTime);
 
-    @Query("SELECT COUNT(*) FROM session_sensor_logs")
+    @Query("SELECT COALESCE(SUM(sampleCount), 0) FROM session_sensor_blocks")
     int getTotalLogCount();
 
-    @Query("SELECT MIN(timestamp) FROM session_sensor_logs")
+    @Query("SELECT MIN(firstTimestamp) FROM session_sensor_blocks")
     Long getOldestLogTimestamp();
 }
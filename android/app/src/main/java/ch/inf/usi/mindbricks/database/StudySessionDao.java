@@ -21,101 +21,83 @@ import ch.inf.usi.mindbricks.model.visual.StudySessionWithStats;
 @Dao
 public interface StudySessionDao {
 
-    @Query("SELECT s.*, " +
-           "COALESCE(AVG(l.noiseLevel), 0) as avgNoiseLevel, " +
-           "COALESCE(AVG(l.lightLevel), 0) as avgLightLevel, " +
-           "COALESCE(SUM(CASE WHEN l.motionDetected THEN 1 ELSE 0 END), 0) as phonePickupCount, " +
-           "t.title as tagTitle, " +
-           "COALESCE(t.color, 0) as tagColor " +
-           "FROM study_sessions s " +
-           "LEFT JOIN session_sensor_logs l ON s.id = l.sessionId " +
-           "LEFT JOIN tags t ON s.tagId = t.id " +
-           "GROUP BY s.id " +
-           "ORDER BY s.timestamp DESC LIMIT :limit")
+    /**
+     * Common projection of all {@link StudySessionWithStats} queries: sensor statistics are read
+     * from the pre-aggregated {@code session_sensor_summary} table (one row per session), so no
+     * grouping over the raw sensor logs is needed.
+     */
+    String SESSION_WITH_STATS = "SELECT s.*, " +
+            "CASE WHEN m.sampleCount > 0 THEN m.noiseSum / m.sampleCount ELSE 0 END as avgNoiseLevel, " +
+            "CASE WHEN m.sampleCount > 0 THEN m.lightSum / m.sampleCount ELSE 0 END as avgLightLevel, " +
+            "COALESCE(m.pickupCount, 0) as phonePickupCount, " +
+            "t.title as tagTitle, " +
+            "COALESCE(t.color, 0) as tagColor " +
+            "FROM study_sessions s " +
+            "LEFT JOIN session_sensor_summary m ON s.id = m.sessionId " +
+            "LEFT JOIN tags t ON s.tagId = t.id ";
+
+    @Query(SESSION_WITH_STATS +
+           "ORDER BY s.timestamp DESC, s.id DESC LIMIT :limit")
     List<StudySessionWithStats> getRecentSessions(int limit);
 
-    @Query("SELECT s.*, " +
-           "COALESCE(AVG(l.noiseLevel), 0) as avgNoiseLevel, " +
-           "COALESCE(AVG(l.lightLevel), 0) as avgLightLevel, " +
-           "COALESCE(SUM(CASE WHEN l.motionDetected THEN 1 ELSE 0 END), 0) as phonePickupCount, " +
-           "t.title as tagTitle, " +
-           "COALESCE(t.color, 0) as tagColor " +
-           "FROM study_sessions s " +
-           "LEFT JOIN session_sensor_logs l ON s.id = l.sessionId " +
-           "LEFT JOIN tags t ON s.tagId = t.id " +
-           "GROUP BY s.id " +
-           "ORDER BY s.timestamp DESC LIMIT :limit")
+    @Query(SESSION_WITH_STATS +
+           "ORDER BY s.timestamp DESC, s.id DESC LIMIT :limit")
     LiveData<List<StudySessionWithStats>> observeRecentSessions(int limit);
 
-    @Query("SELECT s.*, " +
-           "COALESCE(AVG(l.noiseLevel), 0) as avgNoiseLevel, " +
-           "COALESCE(AVG(l.lightLevel), 0) as avgLightLevel, " +
-           "COALESCE(SUM(CASE WHEN l.motionDetected THEN 1 ELSE 0 END), 0) as phonePickupCount, " +
-           "t.title as tagTitle, " +
-           "COALESCE(t.color, 0) as tagColor " +
-           "FROM study_sessions s " +
-           "LEFT JOIN session_sensor_logs l ON s.id = l.sessionId " +
-           "LEFT JOIN tags t ON s.tagId = t.id " +
+    @Query(SESSION_WITH_STATS +
            "WHERE s.timestamp >= :startTime " +
-           "GROUP BY s.id " +
-           "ORDER BY s.timestamp DESC")
+           "ORDER BY s.timestamp DESC, s.id DESC")
     List<StudySessionWithStats> getSessionsSince(long startTime);
 
-    @Query("SELECT s.*, " +
-            "COALESCE(AVG(l.noiseLevel), 0) as avgNoiseLevel, " +
-            "COALESCE(AVG(l.lightLevel), 0) as avgLightLevel, " +
-            "COALESCE(SUM(CASE WHEN l.motionDetected THEN 1 ELSE 0 END), 0) as phonePickupCount, " +
-            "t.title as tagTitle, " +
-            "COALESCE(t.color, 0) as tagColor " +
-            "FROM study_sessions s " +
-            "LEFT JOIN session_sensor_logs l ON s.id = l.sessionId " +
-            "LEFT JOIN tags t ON s.tagId = t.id " +
-            "WHERE s.timestamp BETWEEN :startTime AND :endTime " +
-            "GROUP BY s.id " +
-            "ORDER BY s.timestamp DESC")
+    @Query(SESSION_WITH_STATS +
+           "WHERE s.id = :sessionId")
+    StudySessionWithStats getSessionWithStats(long sessionId);
+
+    @Query(SESSION_WITH_STATS +
+           "WHERE s.timestamp BETWEEN :startTime AND :endTime " +
+           "ORDER BY s.timestamp DESC, s.id DESC")
     LiveData<List<StudySessionWithStats>> observeSessionsInRange(long startTime, long endTime);
 
-    @Query("SELECT s.*, " +
-            "COALESCE(AVG(l.noiseLevel), 0) as avgNoiseLevel, " +
-            "COALESCE(AVG(l.lightLevel), 0) as avgLightLevel, " +
-            "COALESCE(SUM(CASE WHEN l.motionDetected THEN 1 ELSE 0 END), 0) as phonePickupCount, " +
-            "t.title as tagTitle, " +
-            "COALESCE(t.color, 0) as tagColor " +
-            "FROM study_sessions s " +
-            "LEFT JOIN session_sensor_logs l ON s.id = l.sessionId " +
-            "LEFT JOIN tags t ON s.tagId = t.id " +
-            "WHERE s.timestamp BETWEEN :startTime AND :endTime " +
-            "GROUP BY s.id " +
-            "ORDER BY s.timestamp DESC")
+    @Query(SESSION_WITH_STATS +
+           "WHERE s.timestamp BETWEEN :startTime AND :endTime " +
+           "ORDER BY s.timestamp DESC, s.id DESC")
     List<StudySessionWithStats> getSessionsInRangeSync(long startTime, long endTime);
 
-    @Query("SELECT s.*, " +
-            "COALESCE(AVG(l.noiseLevel), 0) as avgNoiseLevel, " +
-            "COALESCE(AVG(l.lightLevel), 0) as avgLightLevel, " +
-            "COALESCE(SUM(CASE WHEN l.motionDetected THEN 1 ELSE 0 END), 0) as phonePickupCount, " +
-            "t.title as tagTitle, " +
-            "COALESCE(t.color, 0) as tagColor " +
-            "FROM study_sessions s " +
-            "LEFT JOIN session_sensor_logs l ON s.id = l.sessionId " +
-            "LEFT JOIN tags t ON s.tagId = t.id " +
-            "WHERE s.timestamp >= :startTime " +
-            "GROUP BY s.id " +
-            "ORDER BY s.timestamp DESC")
+    @Query(SESSION_WITH_STATS +
+           "WHERE s.timestamp >= :startTime " +
+           "ORDER BY s.timestamp DESC, s.id DESC")
     LiveData<List<StudySessionWithStats>> observeSessionsSince(long startTime);
 
-    @Query("SELECT s.*, " +
-           "COALESCE(AVG(l.noiseLevel), 0) as avgNoiseLevel, " +
-           "COALESCE(AVG(l.lightLevel), 0) as avgLightLevel, " +
-           "COALESCE(SUM(CASE WHEN l.motionDetected THEN 1 ELSE 0 END), 0) as phonePickupCount, " +
-           "t.title as tagTitle, " +
-           "COALESCE(t.color, 0) as tagColor " +
-           "FROM study_sessions s " +
-           "LEFT JOIN session_sensor_logs l ON s.id = l.sessionId " +
-           "LEFT JOIN tags t ON s.tagId = t.id " +
-           "GROUP BY s.id " +
-           "ORDER BY s.timestamp DESC")
+    /**
+     * Keyset pagination over the sessions of a time range, newest first: returns the sessions that
+     * come after the given cursor (the last session of the previous page) in (timestamp, id) order.
+     * The timestamp index also stores the row id, so the query never reads the skipped rows.
+     */
+    @Query(SESSION_WITH_STATS +
+           "WHERE s.timestamp BETWEEN :startTime AND :endTime " +
+           "AND (s.timestamp < :beforeTimestamp OR (s.timestamp = :beforeTimestamp AND s.id < :beforeId)) " +
+           "ORDER BY s.timestamp DESC, s.id DESC LIMIT :limit")
+    List<StudySessionWithStats> getSessionsPage(long startTime, long endTime,
+                                                long beforeTimestamp, long beforeId, int limit);
+
+    @Query(SESSION_WITH_STATS +
+           "ORDER BY s.timestamp DESC, s.id DESC")
     List<StudySessionWithStats> getAllSessions();
 
+    /**
+     * Per-day totals of the sessions between the given timestamps, grouped by local date (oldest
+     * first). Only the sessions of the range are read, through the timestamp index.
+     */
+    @Query("SELECT date(timestamp / 1000, 'unixepoch', 'localtime') AS day, " +
+           "COUNT(*) AS sessionCount, " +
+           "COALESCE(SUM(durationMinutes), 0) AS totalMinutes, " +
+           "COALESCE(AVG(focusScore), 0) AS avgFocusScore " +
+           "FROM study_sessions " +
+           "WHERE timestamp BETWEEN :startTime AND :endTime " +
+           "GROUP BY day " +
+           "ORDER BY day")
+    List<DailyTotals> getDailyTotals(long startTime, long endTime);
+
     @Insert
     long insert(StudySession session);
 
@@ -131,6 +113,20 @@ public interface StudySessionDao {
     @Query("UPDATE study_sessions SET focusScore = :focusScore WHERE id = :sessionId")
     void updateFocusScore(long sessionId, float focusScore);
 
+    @Query("SELECT timestamp FROM study_sessions WHERE id = :sessionId")
+    Long getTimestamp(long sessionId);
+
     @Query("UPDATE study_sessions SET durationMinutes = :durationMinutes WHERE id = :sessionId")
     void updateDuration(long sessionId, int durationMinutes);
+
+    // Result classes for aggregation queries
+    class DailyTotals {
+        /**
+         * Local date, formatted as yyyy-MM-dd
+         */
+        public String day;
+        public int sessionCount;
+        public int totalMinutes;
+        public float avgFocusScore;
+    }
 }
\ No newline at end of file
@@ -9,9 +9,16 @@ import android.util.Log;
 
 import ch.inf.usi.mindbricks.drivers.base.BaseSensor;
 import ch.inf.usi.mindbricks.drivers.base.OrientationListener;
+import ch.inf.usi.mindbricks.drivers.base.SensorWindow;
 
 /**
  * Accelerometer sensor handler with orientation awareness (face up / face down).
+ * <p>
+ * The sensor can be registered with a maximum report latency, so that the hardware batches the
+ * events in its FIFO and the application processor is only woken up once per batch. The
+ * orientation of every event is recorded in a {@link SensorWindow}, from which the fraction of
+ * time spent face up during a window can be read; the listener is only called when the
+ * orientation changes.
  *
  * @author Luca Di Bello
  */
@@ -19,10 +26,22 @@ public class AccelerometerSensor extends BaseSensor implements SensorEventListen
 
     private static final String TAG = "AccelerometerSensor";
     private static final double FACE_UP_THRESHOLD = 4f;
+
+    /**
+     * Events kept between two windows (25 events per 5 s at the normal rate).
+     */
+    private static final int WINDOW_CAPACITY = 64;
+
     private static AccelerometerSensor INSTANCE;
     private final SensorManager sensorManager;
     private OrientationListener listener;
 
+    /**
+     * Orientation of the events of the current window (1 = face up, 0 = face down).
+     */
+    private final SensorWindow orientationWindow = new SensorWindow(WINDOW_CAPACITY);
+    private Boolean lastFaceUp = null;
+
     private AccelerometerSensor(Context ctx) {
         super(ctx, Sensor.TYPE_ACCELEROMETER);
         this.sensorManager = (SensorManager) ctx.getSystemService(Context.SENSOR_SERVICE);
@@ -42,13 +61,39 @@ public class AccelerometerSensor extends BaseSensor implements SensorEventListen
     }
 
     public void startOrientationMonitoring(OrientationListener listener) {
+        startOrientationMonitoring(listener, 0);
+    }
+
+    /**
+     * Starts monitoring the orientation, letting the hardware batch the events.
+     *
+     * @param listener           called when the orientation changes
+     * @param maxReportLatencyUs maximum delay before batched events are delivered (0 = no batching)
+     */
+    public void startOrientationMonitoring(OrientationListener listener, int maxReportLatencyUs) {
         this.listener = listener;
+        this.lastFaceUp = null;
+        orientationWindow.clear();
         if (isAvailable() && sensorManager != null) {
-            Log.d(TAG, "Starting Orientation monitoring");
-            sensorManager.registerListener(this, getSensor(), SensorManager.SENSOR_DELAY_NORMAL);
+            Log.d(TAG, "Starting Orientation monitoring (report latency " + maxReportLatencyUs
+                    + "us, FIFO " + getSensor().getFifoMaxEventCount() + " events)");
+            sensorManager.registerListener(this, getSensor(), SensorManager.SENSOR_DELAY_NORMAL,
+                    maxReportLatencyUs);
         }
     }
 
+    /**
+     * Closes the current window and returns the fraction of its time during which the phone was
+     * face up ({@link SensorWindow.Summary#timeWeightedMean}, NaN if the orientation is unknown).
+     *
+     * @param nowNs end of the window, in the time base of the sensor events
+     * @param out   summary to overwrite
+     * @return {@code out}, for chaining
+     */
+    public SensorWindow.Summary snapshotOrientation(long nowNs, SensorWindow.Summary out) {
+        return orientationWindow.snapshotAndReset(nowNs, out);
+    }
+
     public void stopOrientationMonitoring() {
         if (sensorManager != null) {
             Log.d(TAG, "Stopping Orientation monitoring");
@@ -68,9 +113,14 @@ public class AccelerometerSensor extends BaseSensor implements SensorEventListen
         boolean isFaceUp = z > SensorManager.GRAVITY_EARTH - FACE_UP_THRESHOLD
                 && z < SensorManager.GRAVITY_EARTH + FACE_UP_THRESHOLD;
 
-        // notify listener if found
-        if (listener != null) {
-            listener.onOrientationChanged(isFaceUp);
+        orientationWindow.add(event.timestamp, isFaceUp ? 1f : 0f);
+
+        // notify listener if found (only on changes: a batch contains many identical events)
+        if (lastFaceUp == null || lastFaceUp != isFaceUp) {
+            lastFaceUp = isFaceUp;
+            if (listener != null) {
+                listener.onOrientationChanged(isFaceUp);
+            }
         }
     }
 
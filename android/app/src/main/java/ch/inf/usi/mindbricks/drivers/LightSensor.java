@@ -5,18 +5,36 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.os.SystemClock;
 import android.util.Log;
 
 import ch.inf.usi.mindbricks.drivers.base.BaseSensor;
+import ch.inf.usi.mindbricks.drivers.base.LightSource;
+import ch.inf.usi.mindbricks.drivers.base.SensorWindow;
 
 /**
  * Light sensor handler with orientation awareness (face up / face down).
+ * <p>
+ * Both the light sensor and the accelerometer can be registered with a maximum report latency,
+ * so that the hardware batches their events and wakes the application processor up once per
+ * batch instead of once per event. The light levels are collected in a {@link SensorWindow}:
+ * {@link #snapshotWindow(WindowStats)} returns the mean light level of the window (weighted by
+ * how long each level held) and the fraction of time the phone was face up, instead of the last
+ * value only.
+ * <p>
+ * NOTE: window boundaries use {@link SystemClock#elapsedRealtimeNanos()}, the time base of the
+ * sensor event timestamps.
  *
  * @author Luca Di Bello
  */
-public class LightSensor extends BaseSensor implements SensorEventListener {
+public class LightSensor extends BaseSensor implements SensorEventListener, LightSource {
 
     private static final String TAG = "LightSensor";
+
+    /**
+     * Events kept between two windows (the light sensor only reports changes).
+     */
+    private static final int WINDOW_CAPACITY = 64;
     private static LightSensor INSTANCE;
     private final SensorManager sensorManager;
 
@@ -27,6 +45,11 @@ public class LightSensor extends BaseSensor implements SensorEventListener {
 
     private LightSensorListener listener;
 
+    /**
+     * Recorded light levels of the current window (the last face up level while face down).
+     */
+    private final SensorWindow lightWindow = new SensorWindow(WINDOW_CAPACITY);
+
     private LightSensor(Context ctx) {
         super(ctx, Sensor.TYPE_LIGHT);
         this.sensorManager = (SensorManager) ctx.getSystemService(Context.SENSOR_SERVICE);
@@ -48,12 +71,27 @@ public class LightSensor extends BaseSensor implements SensorEventListener {
     }
 
     public void start(LightSensorListener listener) {
+        start(listener, 0);
+    }
+
+    /**
+     * Starts monitoring the light level and the orientation, letting the hardware batch the
+     * events of both sensors.
+     *
+     * @param listener           called with every light or orientation change
+     * @param maxReportLatencyUs maximum delay before batched events are delivered (0 = no batching)
+     */
+    @Override
+    public void start(LightSensorListener listener, int maxReportLatencyUs) {
         this.listener = listener;
+        lightWindow.clear();
         if (isAvailable() && sensorManager != null) {
-            Log.d(TAG, "Starting LightSensor monitoring");
+            Log.d(TAG, "Starting LightSensor monitoring (report latency " + maxReportLatencyUs
+                    + "us, FIFO " + getSensor().getFifoMaxEventCount() + " events)");
 
             // register light sensor listener
-            sensorManager.registerListener(this, getSensor(), SensorManager.SENSOR_DELAY_NORMAL);
+            sensorManager.registerListener(this, getSensor(), SensorManager.SENSOR_DELAY_NORMAL,
+                    maxReportLatencyUs);
 
             // start accelerometer sensor orientation monitoring service
             accelerometerSensor.startOrientationMonitoring(isFaceUp -> {
@@ -61,12 +99,28 @@ public class LightSensor extends BaseSensor implements SensorEventListener {
                 this.isFaceUp = isFaceUp;
                 if (isFaceUp) {
                     currentLightLevel = lastSeenLightLevel;
+                    lightWindow.add(SystemClock.elapsedRealtimeNanos(), currentLightLevel);
                 }
                 notifyListener();
-            });
+            }, maxReportLatencyUs);
         }
     }
 
+    /**
+     * Closes the current window of both sensors and writes its aggregates into {@code out}.
+     *
+     * @param out statistics to overwrite
+     * @return {@code out}, for chaining
+     */
+    @Override
+    public WindowStats snapshotWindow(WindowStats out) {
+        long now = SystemClock.elapsedRealtimeNanos();
+        lightWindow.snapshotAndReset(now, out.light);
+        accelerometerSensor.snapshotOrientation(now, out.orientation);
+        return out;
+    }
+
+    @Override
     public void stop() {
         if (sensorManager != null) {
             Log.d(TAG, "Stopping LightSensor monitoring");
@@ -93,11 +147,9 @@ public class LightSensor extends BaseSensor implements SensorEventListener {
         // Logic: record light state only when screen is facing upwards.
         if (isFaceUp) {
             currentLightLevel = normalizedLight;
-            Log.v(TAG, "Light sensor (face up): " + currentLightLevel);
-        } else {
-            // When face down, keep the last valid value (do not reset to 0)
-            Log.v(TAG, "Light sensor (face down): " + currentLightLevel);
+            lightWindow.add(event.timestamp, currentLightLevel);
         }
+        // When face down, keep the last valid value (do not reset to 0)
 
         // notify parent
         notifyListener();
@@ -115,8 +167,4 @@ public class LightSensor extends BaseSensor implements SensorEventListener {
     @Override
     public void onAccuracyChanged(Sensor sensor, int accuracy) {
     }
-
-    public interface LightSensorListener {
-        void onLightLevelChanged(float lightLevel, boolean isFaceUp);
-    }
 }
\ No newline at end of file
@@ -4,32 +4,191 @@ import android.Manifest;
 import android.media.AudioFormat;
 import android.media.AudioRecord;
 import android.media.MediaRecorder;
+import android.os.SystemClock;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.RequiresPermission;
 
+import java.util.Locale;
+
+import ch.inf.usi.mindbricks.drivers.audio.AudioFeatureExtractor;
+import ch.inf.usi.mindbricks.drivers.audio.AudioFeatures;
+import ch.inf.usi.mindbricks.drivers.base.NoiseSource;
+
 /**
- * Class to record audio from the microphone and compute the current amplitude (RMS).
+ * Class to record audio from the microphone and extract noise features from it.
+ * <p>
+ * Every buffer read from the microphone is fed to an {@link AudioFeatureExtractor}, so the
+ * features returned by {@link #snapshotFeatures(AudioFeatures)} describe the whole window since
+ * the previous call instead of the last buffer only. The read buffer is allocated once.
+ * <p>
+ * The recorder runs in one of two modes:
+ * - always-on: audio is read continuously at 44.1 kHz (default)
+ * - duty-cycled: audio is only read during a short window of every period (see {@link DutyCycle}),
+ *   the microphone is stopped and the recording thread sleeps in between
+ * <p>
+ * The features can either be pulled with {@link #snapshotFeatures(AudioFeatures)}, or pushed at
+ * the end of every recording window to a {@link FeatureListener} (every duty cycle window, or
+ * every {@value #ALWAYS_ON_WINDOW_MS} ms when always-on).
+ * <p>
+ * {@link #getStats()} reports the CPU time and wakeups of the recording thread, to compare the
+ * cost of the two modes on a device.
  *
  * @author Luca Di Bello
  */
-public class MicrophoneRecorder {
+public class MicrophoneRecorder implements NoiseSource {
     private static final String LOG_TAG = "Recorder";
-    private static final int SAMPLE_RATE = 44100;
+    private static final int DEFAULT_SAMPLE_RATE = 44100;
     private static final int CHANNEL_CONFIG = AudioFormat.CHANNEL_IN_MONO;
     private static final int AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT;
 
+    /**
+     * Length of the windows reported to the {@link FeatureListener} when always-on.
+     */
+    private static final long ALWAYS_ON_WINDOW_MS = 5000;
+
+    private final int sampleRate;
+    private final DutyCycle dutyCycle;
     private final int bufferSize;
+    private final short[] audioBuffer;
+    private final AudioFeatureExtractor featureExtractor;
+
+    /**
+     * Features of the last window, reused for every call of the listener.
+     */
+    private final AudioFeatures windowFeatures = new AudioFeatures();
+    private volatile FeatureListener featureListener;
+
+    /**
+     * Used to wake up the recording thread between two duty cycle windows when recording stops.
+     */
+    private final Object sleepLock = new Object();
+
     private AudioRecord audioRecord;
     private Thread recordingThread = null;
     // NOTE: volatile as the following variables are accessed from multiple threads at the same time
     private volatile boolean isRecording = false;
-    private volatile double currentAmplitude = 0;
+    private volatile Stats stats = new Stats(false, 0, 0, 0, 0, 0, 0);
+
+    /**
+     * Configuration of the duty-cycled mode: audio is recorded for {@code windowMs} every
+     * {@code periodMs}, at {@code sampleRate}.
+     */
+    public static class DutyCycle {
+        /**
+         * Half a second every 5 seconds (one window per sensor log interval) at 16 kHz.
+         */
+        public static final DutyCycle DEFAULT = new DutyCycle(500, 5000, 16000);
+
+        public final long windowMs;
+        public final long periodMs;
+        public final int sampleRate;
+
+        public DutyCycle(long windowMs, long periodMs, int sampleRate) {
+            if (windowMs <= 0 || windowMs > periodMs) {
+                throw new IllegalArgumentException("windowMs must be in (0, periodMs]");
+            }
+            if (sampleRate <= 0) throw new IllegalArgumentException("sampleRate must be positive");
+            this.windowMs = windowMs;
+            this.periodMs = periodMs;
+            this.sampleRate = sampleRate;
+        }
+
+        /**
+         * Returns a copy of this configuration with the given period (e.g. the log interval).
+         */
+        public DutyCycle withPeriod(long periodMs) {
+            return new DutyCycle(windowMs, periodMs, sampleRate);
+        }
+    }
+
+    /**
+     * Cost of the recording thread during the last recording.
+     */
+    public static class Stats {
+        public final boolean dutyCycled;
+
+        /**
+         * Wall clock time since the recording started.
+         */
+        public final long elapsedMs;
+
+        /**
+         * Audio actually recorded (sum of the duty cycle windows when duty-cycled).
+         */
+        public final long recordedMs;
+
+        /**
+         * CPU time used by the recording thread.
+         */
+        public final long threadCpuMs;
+
+        /**
+         * Number of times the recording thread was woken up: one per completed read, plus one per
+         * duty cycle window.
+         */
+        public final long wakeups;
 
+        public final long reads;
+        public final long windows;
+
+        Stats(boolean dutyCycled, long elapsedMs, long recordedMs, long threadCpuMs,
+              long wakeups, long reads, long windows) {
+            this.dutyCycled = dutyCycled;
+            this.elapsedMs = elapsedMs;
+            this.recordedMs = recordedMs;
+            this.threadCpuMs = threadCpuMs;
+            this.wakeups = wakeups;
+            this.reads = reads;
+            this.windows = windows;
+        }
+
+        /**
+         * Returns the average number of wakeups per second of recording.
+         */
+        public double getWakeupsPerSecond() {
+            return elapsedMs > 0 ? wakeups * 1000.0 / elapsedMs : 0;
+        }
+
+        /**
+         * Returns the fraction of one core used by the recording thread.
+         */
+        public double getCpuLoad() {
+            return elapsedMs > 0 ? (double) threadCpuMs / elapsedMs : 0;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%s: elapsed=%dms recorded=%dms cpu=%dms (%.2f%%) wakeups=%d (%.1f/s) reads=%d windows=%d",
+                    dutyCycled ? "duty-cycled" : "always-on", elapsedMs, recordedMs, threadCpuMs,
+                    getCpuLoad() * 100, wakeups, getWakeupsPerSecond(), reads, windows);
+        }
+    }
+
+    /**
+     * Creates a recorder reading audio continuously.
+     */
     public MicrophoneRecorder() {
-        bufferSize = AudioRecord.getMinBufferSize(SAMPLE_RATE, CHANNEL_CONFIG, AUDIO_FORMAT);
+        this(null);
+    }
+
+    /**
+     * Creates a recorder.
+     *
+     * @param dutyCycle duty cycle configuration, or null to read audio continuously
+     */
+    public MicrophoneRecorder(DutyCycle dutyCycle) {
+        this.dutyCycle = dutyCycle;
+        this.sampleRate = dutyCycle != null ? dutyCycle.sampleRate : DEFAULT_SAMPLE_RATE;
+        this.featureExtractor = new AudioFeatureExtractor(sampleRate);
+        bufferSize = AudioRecord.getMinBufferSize(sampleRate, CHANNEL_CONFIG, AUDIO_FORMAT);
+        audioBuffer = new short[Math.max(0, bufferSize / 2)];
     }
 
+    @Override
     @RequiresPermission(Manifest.permission.RECORD_AUDIO)
     public void startRecording() {
         if (isRecording) {
@@ -43,7 +202,7 @@ public class MicrophoneRecorder {
 
         audioRecord = new AudioRecord(
                 MediaRecorder.AudioSource.MIC,
-                SAMPLE_RATE,
+                sampleRate,
                 CHANNEL_CONFIG,
                 AUDIO_FORMAT,
                 bufferSize
@@ -54,63 +213,179 @@ public class MicrophoneRecorder {
             return;
         }
 
-        audioRecord.startRecording();
+        featureExtractor.reset();
+        // when duty-cycled, the recording thread starts the microphone at every window
+        if (dutyCycle == null) {
+            audioRecord.startRecording();
+        }
         isRecording = true;
-        Log.d(LOG_TAG, "Recording started. Rate=" + SAMPLE_RATE + "Hz buffer=" + bufferSize + " state=" + audioRecord.getRecordingState());
+        Log.d(LOG_TAG, "Recording started. Rate=" + sampleRate + "Hz buffer=" + bufferSize
+                + (dutyCycle != null ? " window=" + dutyCycle.windowMs + "ms/" + dutyCycle.periodMs + "ms" : "")
+                + " state=" + audioRecord.getRecordingState());
 
         recordingThread = new Thread(this::readAudioData, "AudioRecorder Thread");
         recordingThread.start();
     }
 
     private void readAudioData() {
-        short[] audioBuffer = new short[bufferSize / 2];
+        long startTime = SystemClock.elapsedRealtime();
+        long startCpu = SystemClock.currentThreadTimeMillis();
+        long reads = 0;
+        long windows = 0;
+        long samples = 0;
+
+        if (dutyCycle == null) {
+            long windowSamples = ALWAYS_ON_WINDOW_MS * sampleRate / 1000;
+            long windowRead = 0;
+            while (isRecording) {
+                int resultSize = readBuffer(audioBuffer.length);
+                if (resultSize > 0) {
+                    reads++;
+                    samples += resultSize;
+                    windowRead += resultSize;
+                }
+                if (windowRead >= windowSamples) {
+                    windowRead = 0;
+                    notifyWindow();
+                }
+            }
+        } else {
+            // number of samples in a window, rounded up to whole buffers
+            long windowSamples = dutyCycle.windowMs * sampleRate / 1000;
+            long nextWindow = startTime;
+
+            while (isRecording) {
+                try {
+                    audioRecord.startRecording();
+                } catch (IllegalStateException e) {
+                    Log.e(LOG_TAG, "Cannot start duty cycle window", e);
+                    break;
+                }
+                windows++;
 
-        while (isRecording) {
-            int resultSize = audioRecord.read(audioBuffer, 0, audioBuffer.length);
+                long windowRead = 0;
+                while (isRecording && windowRead < windowSamples) {
+                    int resultSize = readBuffer(audioBuffer.length);
+                    if (resultSize > 0) {
+                        reads++;
+                        windowRead += resultSize;
+                    } else if (resultSize < 0) {
+                        break;
+                    }
+                }
+                samples += windowRead;
 
-            if (resultSize > 0) {
-                calculateRMS(audioBuffer, resultSize);
-            } else if (resultSize < 0) {
-                Log.e(LOG_TAG, "Error reading audio: " + resultSize);
-            } else {
-                Log.w(LOG_TAG, "AudioRecord read returned 0 bytes");
+                try {
+                    audioRecord.stop();
+                } catch (IllegalStateException e) {
+                    Log.e(LOG_TAG, "Cannot stop duty cycle window", e);
+                }
+                if (windowRead > 0) notifyWindow();
+
+                // sleep until the next window (skipping the windows we are late for)
+                long now = SystemClock.elapsedRealtime();
+                nextWindow += dutyCycle.periodMs;
+                if (nextWindow <= now) {
+                    nextWindow += ((now - nextWindow) / dutyCycle.periodMs + 1) * dutyCycle.periodMs;
+                }
+                sleepUntil(nextWindow);
             }
         }
+
+        long elapsed = SystemClock.elapsedRealtime() - startTime;
+        long cpu = SystemClock.currentThreadTimeMillis() - startCpu;
+        stats = new Stats(dutyCycle != null, elapsed, samples * 1000 / sampleRate, cpu,
+                reads + windows, reads, windows);
     }
 
     /**
-     * Calculates the Root Mean Square over the audio buffer.
-     * <p>
-     * RMS allows to estimate loudness over short time windows.
-     * <p>
-     * SOURCES:
-     * - <a href="https://discourse.ardour.org/t/calculating-rms-in-digital-audio/109812">...</a>
-     *      - details the RMS calculation
+     * Passes the features of the window to the listener, if any, and starts a new window.
+     */
+    private void notifyWindow() {
+        FeatureListener listener = featureListener;
+        if (listener != null) {
+            listener.onWindowRecorded(featureExtractor.snapshotAndReset(windowFeatures));
+        }
+    }
+
+    /**
+     * Reads a buffer from the microphone and feeds it to the feature extractor.
      *
-     * @param buffer   audio samples
-     * @param readSize number of valid samples in buffer
+     * @return number of samples read, or a negative error code
      */
-    private void calculateRMS(short[] buffer, int readSize) {
-        // compute sum_i x_i^2
-        double sum = 0;
-        for (int i = 0; i < readSize; i++) {
-            sum += buffer[i] * buffer[i];
+    private int readBuffer(int length) {
+        int resultSize = audioRecord.read(audioBuffer, 0, length);
+
+        if (resultSize > 0) {
+            featureExtractor.accept(audioBuffer, resultSize);
+        } else if (resultSize < 0) {
+            Log.e(LOG_TAG, "Error reading audio: " + resultSize);
+        } else {
+            Log.w(LOG_TAG, "AudioRecord read returned 0 bytes");
         }
+        return resultSize;
+    }
 
-        if (readSize > 0) {
-            // compute RMS:
-            // A_rms = sqrt(sum_i x_i^2 / N)
-            currentAmplitude = Math.sqrt(sum / readSize);
+    /**
+     * Waits until the given time (elapsed realtime), or until recording is stopped.
+     */
+    private void sleepUntil(long time) {
+        synchronized (sleepLock) {
+            long remaining;
+            while (isRecording && (remaining = time - SystemClock.elapsedRealtime()) > 0) {
+                try {
+                    sleepLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
         }
     }
 
-    public double getCurrentAmplitude() {
-        return currentAmplitude;
+    /**
+     * Returns the features of the audio recorded since the previous call and starts a new window.
+     * Meant to be called once per logging interval.
+     *
+     * @param out features to overwrite (reused between calls to avoid allocations)
+     * @return {@code out}, for chaining
+     */
+    public AudioFeatures snapshotFeatures(AudioFeatures out) {
+        return featureExtractor.snapshotAndReset(out);
+    }
+
+    /**
+     * Sets the listener receiving the features at the end of every window. While a listener is
+     * set, {@link #snapshotFeatures(AudioFeatures)} only returns the audio of the current window.
+     *
+     * @param listener listener, called on the recording thread, or null to remove it
+     */
+    @Override
+    public void setFeatureListener(FeatureListener listener) {
+        this.featureListener = listener;
     }
 
+    /**
+     * Returns the cost of the recording thread during the last recording (available once
+     * {@link #stopRecording()} returned).
+     */
+    public Stats getStats() {
+        return stats;
+    }
+
+    public boolean isDutyCycled() {
+        return dutyCycle != null;
+    }
+
+    @Override
     public void stopRecording() {
         isRecording = false;
 
+        // wake up the recording thread if it is waiting for the next duty cycle window
+        synchronized (sleepLock) {
+            sleepLock.notifyAll();
+        }
+
         if (audioRecord != null) {
             if (audioRecord.getState() == AudioRecord.STATE_INITIALIZED) {
                 try {
@@ -133,11 +408,10 @@ public class MicrophoneRecorder {
             audioRecord = null;
 
             // clear current values
-            currentAmplitude = 0;
+            featureExtractor.reset();
 
-            // clear audio buffer
             recordingThread = null;
-            Log.d(LOG_TAG, "Recording stopped.");
+            Log.d(LOG_TAG, "Recording stopped. " + stats);
         }
 
         recordingThread = null;
@@ -4,19 +4,24 @@ import android.content.Context;
 import android.util.Log;
 
 import ch.inf.usi.mindbricks.drivers.base.MotionListener;
+import ch.inf.usi.mindbricks.drivers.base.MotionSource;
 import ch.inf.usi.mindbricks.drivers.motion.AccelerometerStrategy;
+import ch.inf.usi.mindbricks.drivers.motion.ActivityClassifierStrategy;
 import ch.inf.usi.mindbricks.drivers.motion.MotionSensorStrategy;
 import ch.inf.usi.mindbricks.drivers.motion.SignificantMotionStrategy;
 
 /**
  * This class allows to detect significant motions (i.e. user picks-up the phone).
- * If the current device does not support Significant Motion, it will fall back to
- * Accelerometer (simpler logic: if the recorded acceleration magnitude is greater than a given
- * threshold, it is considered as a significant motion).
+ * The strategy is chosen from the sensors of the device:
+ * - Accelerometer with the on-device activity classifier (tells pickups apart from desk bumps and
+ *   walking, with an adaptive sampling rate)
+ * - Significant Motion, if the accelerometer cannot be used
+ * - Accelerometer threshold fallback otherwise (simpler logic: if the recorded acceleration
+ *   magnitude is greater than a given threshold, it is considered as a significant motion).
  *
  * @author Luca Di Bello
  */
-public class SignificantMotionSensor {
+public class SignificantMotionSensor implements MotionSource {
 
     private static final String TAG = "SignificantMotionSensor";
     private static SignificantMotionSensor INSTANCE;
@@ -25,8 +30,12 @@ public class SignificantMotionSensor {
     private MotionListener listener;
 
     private SignificantMotionSensor(Context ctx) {
+        MotionSensorStrategy classifier = new ActivityClassifierStrategy(ctx);
         MotionSensorStrategy significantMotion = new SignificantMotionStrategy(ctx);
-        if (significantMotion.isAvailable()) {
+        if (classifier.isAvailable()) {
+            strategy = classifier;
+            Log.d(TAG, "Using Accelerometer Activity Classifier");
+        } else if (significantMotion.isAvailable()) {
             strategy = significantMotion;
             Log.d(TAG, "Using Significant Motion Sensor");
         } else {
@@ -56,14 +65,17 @@ public class SignificantMotionSensor {
         return strategy.isAvailable();
     }
 
+    @Override
     public void setListener(MotionListener listener) {
         this.listener = listener;
     }
 
+    @Override
     public void start() {
         strategy.start(listener);
     }
 
+    @Override
     public void stop() {
         strategy.stop();
     }
@@ -0,0 +1,198 @@
+package ch.inf.usi.mindbricks.drivers.audio;
+
+/**
+ * Streaming feature extractor for 16-bit PCM audio.
+ * <p>
+ * Every buffer returned by {@code AudioRecord.read} is analysed as one block: its energy, peak
+ * and zero crossings are added to the running statistics of the current window, and its level is
+ * counted in a dB histogram used to estimate the percentile levels. The window is closed by
+ * {@link #snapshotAndReset(AudioFeatures)}, which is called by the consumer once per logging
+ * interval. All the state is allocated up front: analysing a block never allocates.
+ * <p>
+ * {@link #accept(short[], int)} is meant to be called by a single recording thread, while
+ * {@link #snapshotAndReset(AudioFeatures)} can be called from any thread.
+ *
+ * @author Luca Di Bello
+ */
+public class AudioFeatureExtractor {
+
+    /**
+     * Full scale amplitude of 16-bit PCM samples.
+     */
+    public static final double FULL_SCALE = 32768.0;
+
+    /**
+     * Lowest level reported (dBFS): quieter blocks (and digital silence) are clamped to it.
+     */
+    public static final double MIN_DB = -100.0;
+
+    /**
+     * Width of the bins of the level histogram (dB).
+     */
+    public static final double HISTOGRAM_RESOLUTION_DB = 0.5;
+
+    private static final int HISTOGRAM_BINS = (int) (-MIN_DB / HISTOGRAM_RESOLUTION_DB);
+
+    private final int sampleRate;
+
+    // window statistics, guarded by this
+    private final int[] levelHistogram = new int[HISTOGRAM_BINS];
+    private long sampleCount;
+    private int blockCount;
+    private double sumSquares;
+    private double sumBlockRms;
+    private double peakBlockRms;
+    private int peakSample;
+    private long zeroCrossings;
+
+    // sign of the last sample of the previous block, only used by the recording thread
+    private boolean lastSampleNegative = false;
+
+    /**
+     * @param sampleRate sample rate of the analysed audio (Hz)
+     */
+    public AudioFeatureExtractor(int sampleRate) {
+        if (sampleRate <= 0) throw new IllegalArgumentException("sampleRate must be positive");
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Adds a block of samples to the current window.
+     * <p>
+     * SOURCES:
+     * - <a href="https://discourse.ardour.org/t/calculating-rms-in-digital-audio/109812">...</a>
+     *      - details the RMS calculation
+     *
+     * @param buffer audio samples
+     * @param length number of valid samples in buffer
+     */
+    public void accept(short[] buffer, int length) {
+        if (length <= 0) return;
+
+        // compute sum_i x_i^2, peak and sign changes of the block
+        double blockSquares = 0;
+        int blockPeak = 0;
+        int blockCrossings = 0;
+        boolean negative = lastSampleNegative;
+        for (int i = 0; i < length; i++) {
+            int sample = buffer[i];
+            blockSquares += (double) sample * sample;
+
+            int abs = sample < 0 ? -sample : sample;
+            if (abs > blockPeak) blockPeak = abs;
+
+            // zeros do not change the sign: they are counted with the previous samples
+            if (sample != 0 && (sample < 0) != negative) {
+                blockCrossings++;
+                negative = sample < 0;
+            }
+        }
+        lastSampleNegative = negative;
+
+        // A_rms = sqrt(sum_i x_i^2 / N)
+        double blockRms = Math.sqrt(blockSquares / length);
+        int bin = histogramBin(toDb(blockRms));
+
+        synchronized (this) {
+            sampleCount += length;
+            blockCount++;
+            sumSquares += blockSquares;
+            sumBlockRms += blockRms;
+            if (blockRms > peakBlockRms) peakBlockRms = blockRms;
+            if (blockPeak > peakSample) peakSample = blockPeak;
+            zeroCrossings += blockCrossings;
+            levelHistogram[bin]++;
+        }
+    }
+
+    /**
+     * Writes the features of the current window into {@code out} and starts a new window.
+     *
+     * @param out features to overwrite
+     * @return {@code out}, for chaining
+     */
+    public synchronized AudioFeatures snapshotAndReset(AudioFeatures out) {
+        out.sampleCount = sampleCount;
+        out.blockCount = blockCount;
+
+        if (sampleCount == 0) {
+            out.rms = 0;
+            out.meanBlockRms = 0;
+            out.peakBlockRms = 0;
+            out.peakSample = 0;
+            out.leqDb = MIN_DB;
+            out.peakDb = MIN_DB;
+            out.l10Db = MIN_DB;
+            out.l50Db = MIN_DB;
+            out.l90Db = MIN_DB;
+            out.zeroCrossingRate = 0;
+            return out;
+        }
+
+        out.rms = Math.sqrt(sumSquares / sampleCount);
+        out.meanBlockRms = sumBlockRms / blockCount;
+        out.peakBlockRms = peakBlockRms;
+        out.peakSample = peakSample;
+        out.leqDb = toDb(out.rms);
+        out.peakDb = toDb(peakBlockRms);
+
+        // L_n: level exceeded by n% of the blocks = (100 - n)th percentile
+        out.l10Db = percentileDb(0.90);
+        out.l50Db = percentileDb(0.50);
+        out.l90Db = percentileDb(0.10);
+
+        out.zeroCrossingRate = (double) zeroCrossings * sampleRate / sampleCount;
+
+        reset();
+        return out;
+    }
+
+    /**
+     * Discards the statistics of the current window.
+     */
+    public synchronized void reset() {
+        sampleCount = 0;
+        blockCount = 0;
+        sumSquares = 0;
+        sumBlockRms = 0;
+        peakBlockRms = 0;
+        peakSample = 0;
+        zeroCrossings = 0;
+        for (int i = 0; i < levelHistogram.length; i++) {
+            levelHistogram[i] = 0;
+        }
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Returns the center of the histogram bin containing the given fraction of the blocks.
+     */
+    private double percentileDb(double fraction) {
+        // rank of the block (1-based) with the given percentile, nearest-rank method
+        long rank = Math.max(1, (long) Math.ceil(fraction * blockCount));
+        long seen = 0;
+        for (int i = 0; i < levelHistogram.length; i++) {
+            seen += levelHistogram[i];
+            if (seen >= rank) {
+                return MIN_DB + (i + 0.5) * HISTOGRAM_RESOLUTION_DB;
+            }
+        }
+        return 0;
+    }
+
+    private static int histogramBin(double db) {
+        int bin = (int) ((db - MIN_DB) / HISTOGRAM_RESOLUTION_DB);
+        return Math.max(0, Math.min(HISTOGRAM_BINS - 1, bin));
+    }
+
+    /**
+     * Converts an RMS amplitude to dBFS: L = 20 * log10(A_rms / full scale).
+     */
+    static double toDb(double rms) {
+        if (rms <= 0) return MIN_DB;
+        return Math.max(MIN_DB, 20 * Math.log10(rms / FULL_SCALE));
+    }
+}
@@ -0,0 +1,87 @@
+package ch.inf.usi.mindbricks.drivers.audio;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * Features of the audio recorded during one logging window, as computed by
+ * {@link AudioFeatureExtractor}.
+ * <p>
+ * Amplitudes are RMS values of 16-bit PCM samples (0 - 32768), levels are expressed in dBFS
+ * (0 dBFS = full scale amplitude, silence is clamped to {@link AudioFeatureExtractor#MIN_DB}).
+ * Instances are meant to be reused: {@link AudioFeatureExtractor#snapshotAndReset(AudioFeatures)}
+ * overwrites every field.
+ *
+ * @author Luca Di Bello
+ */
+public class AudioFeatures {
+
+    /**
+     * Number of samples analysed in the window (0 if nothing was recorded).
+     */
+    public long sampleCount;
+
+    /**
+     * Number of analysed blocks (one per {@code AudioRecord.read}).
+     */
+    public int blockCount;
+
+    /**
+     * RMS amplitude over all the samples of the window (energy average).
+     */
+    public double rms;
+
+    /**
+     * Mean of the RMS amplitudes of the blocks.
+     */
+    public double meanBlockRms;
+
+    /**
+     * Highest RMS amplitude of a block.
+     */
+    public double peakBlockRms;
+
+    /**
+     * Highest absolute sample value.
+     */
+    public int peakSample;
+
+    /**
+     * Equivalent continuous sound level of the window (dBFS): the level of a constant sound with
+     * the same energy as the recorded one.
+     */
+    public double leqDb;
+
+    /**
+     * Level of the loudest block (dBFS).
+     */
+    public double peakDb;
+
+    /**
+     * Levels exceeded by 10%, 50% and 90% of the blocks (dBFS), estimated from a histogram with
+     * a resolution of {@link AudioFeatureExtractor#HISTOGRAM_RESOLUTION_DB} dB.
+     * L10 describes the loud events, L90 the background noise.
+     */
+    public double l10Db;
+    public double l50Db;
+    public double l90Db;
+
+    /**
+     * Number of sign changes of the signal per second: high for hiss and fricatives, low for
+     * hum and voiced sounds.
+     */
+    public double zeroCrossingRate;
+
+    public boolean isEmpty() {
+        return sampleCount == 0;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "AudioFeatures{samples=%d, rms=%.1f, peakRms=%.1f, leq=%.1fdB, L10=%.1fdB, L50=%.1fdB, L90=%.1fdB, zcr=%.0f/s}",
+                sampleCount, rms, peakBlockRms, leqDb, l10Db, l50Db, l90Db, zeroCrossingRate);
+    }
+}
@@ -0,0 +1,65 @@
+package ch.inf.usi.mindbricks.drivers.base;
+
+/**
+ * Source of light level and orientation measurements for the sensor pipeline: the light sensor
+ * and accelerometer on a device ({@link ch.inf.usi.mindbricks.drivers.LightSensor}), or a
+ * recorded trace ({@link ch.inf.usi.mindbricks.drivers.replay.TraceReplaySource}).
+ *
+ * @author Luca Di Bello
+ */
+public interface LightSource {
+
+    /**
+     * Receives the light level and orientation changes.
+     */
+    interface LightSensorListener {
+        void onLightLevelChanged(float lightLevel, boolean isFaceUp);
+    }
+
+    /**
+     * Aggregates of a window of light levels and orientations.
+     */
+    class WindowStats {
+        /**
+         * Recorded light levels (normalized 0-100).
+         */
+        public final SensorWindow.Summary light = new SensorWindow.Summary();
+
+        /**
+         * Orientation: {@code timeWeightedMean} is the fraction of time spent face up.
+         */
+        public final SensorWindow.Summary orientation = new SensorWindow.Summary();
+
+        /**
+         * Returns the time-weighted mean light level, or the given fallback if unknown.
+         */
+        public float getMeanLightLevel(float fallback) {
+            return Double.isNaN(light.timeWeightedMean) ? fallback : (float) light.timeWeightedMean;
+        }
+
+        /**
+         * Returns the fraction of the window spent face up, or the given fallback if unknown.
+         */
+        public float getFaceUpFraction(float fallback) {
+            return Double.isNaN(orientation.timeWeightedMean) ? fallback : (float) orientation.timeWeightedMean;
+        }
+    }
+
+    /**
+     * Starts monitoring the light level and the orientation.
+     *
+     * @param listener           called with every light or orientation change
+     * @param maxReportLatencyUs maximum delay before batched events are delivered (0 = no batching)
+     */
+    void start(LightSensorListener listener, int maxReportLatencyUs);
+
+    /**
+     * Closes the current window and writes its aggregates into {@code out}.
+     *
+     * @param out statistics to overwrite
+     * @return {@code out}, for chaining
+     */
+    WindowStats snapshotWindow(WindowStats out);
+
+    void stop();
+}
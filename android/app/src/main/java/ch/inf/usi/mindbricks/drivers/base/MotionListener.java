@@ -1,5 +1,7 @@
 package ch.inf.usi.mindbricks.drivers.base;
 
+import ch.inf.usi.mindbricks.drivers.motion.ActivityType;
+
 /**
  * Listener interface for motion detection events.
  *
@@ -7,4 +9,14 @@ package ch.inf.usi.mindbricks.drivers.base;
  */
 public interface MotionListener {
     void onMotionDetected();
+
+    /**
+     * Called by the strategies able to tell the kind of movement. By default only pickups are
+     * reported, as plain motion events.
+     *
+     * @param type kind of movement
+     */
+    default void onActivityDetected(ActivityType type) {
+        if (type == ActivityType.PICKUP) onMotionDetected();
+    }
 }
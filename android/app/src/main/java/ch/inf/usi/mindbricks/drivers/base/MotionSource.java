@@ -0,0 +1,20 @@
+package ch.inf.usi.mindbricks.drivers.base;
+
+/**
+ * Source of phone pickups for the sensor pipeline: the motion sensors on a device
+ * ({@link ch.inf.usi.mindbricks.drivers.SignificantMotionSensor}), or a recorded trace
+ * ({@link ch.inf.usi.mindbricks.drivers.replay.TraceReplaySource}).
+ *
+ * @author Luca Di Bello
+ */
+public interface MotionSource {
+
+    /**
+     * Sets the listener notified of every pickup (used from the next {@link #start()}).
+     */
+    void setListener(MotionListener listener);
+
+    void start();
+
+    void stop();
+}
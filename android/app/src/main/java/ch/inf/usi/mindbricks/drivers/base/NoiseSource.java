@@ -0,0 +1,41 @@
+package ch.inf.usi.mindbricks.drivers.base;
+
+import ch.inf.usi.mindbricks.drivers.audio.AudioFeatures;
+
+/**
+ * Source of ambient noise measurements for the sensor pipeline: the microphone on a device
+ * ({@link ch.inf.usi.mindbricks.drivers.MicrophoneRecorder}), or a recorded trace
+ * ({@link ch.inf.usi.mindbricks.drivers.replay.TraceReplaySource}).
+ *
+ * @author Luca Di Bello
+ */
+public interface NoiseSource {
+
+    /**
+     * Receives the features of every recording window.
+     */
+    interface FeatureListener {
+        /**
+         * Called at the end of a window, on the thread of the source.
+         *
+         * @param features features of the window (reused: only valid during the call)
+         */
+        void onWindowRecorded(AudioFeatures features);
+    }
+
+    /**
+     * Sets the listener receiving the features at the end of every window.
+     *
+     * @param listener listener, or null to remove it
+     */
+    void setFeatureListener(FeatureListener listener);
+
+    /**
+     * Starts recording.
+     *
+     * @throws SecurityException if the source needs a permission that was not granted
+     */
+    void startRecording();
+
+    void stopRecording();
+}
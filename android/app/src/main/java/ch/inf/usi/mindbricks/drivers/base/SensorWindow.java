@@ -0,0 +1,181 @@
+package ch.inf.usi.mindbricks.drivers.base;
+
+/**
+ * Collects the values reported by a sensor during a time window and summarizes them.
+ * <p>
+ * Events are stored as they arrive in a preallocated ring of primitives (no allocation per
+ * event), which is cheap when the sensor delivers a whole hardware batch at once. The events are
+ * only aggregated when the window is closed by {@link #snapshotAndReset(long, Summary)}, or when
+ * the ring is full (the oldest events are then folded into the running aggregates, so no event is
+ * lost).
+ * <p>
+ * Besides the plain mean, the summary contains the time-weighted mean: each value is assumed to
+ * hold until the next event (or the end of the window), which is what matters for on-change
+ * sensors (e.g. light) and for boolean states (e.g. the fraction of time the phone was face up,
+ * using 1 and 0 as values). The last value of a window is carried over to the next one.
+ * <p>
+ * Timestamps are in nanoseconds, in the time base of {@code SensorEvent.timestamp}.
+ *
+ * @author Luca Di Bello
+ */
+public class SensorWindow {
+
+    /**
+     * Aggregates of a window. Instances are meant to be reused.
+     */
+    public static class Summary {
+        /**
+         * Number of events received during the window.
+         */
+        public int count;
+
+        /**
+         * Mean of the values of the events of the window (NaN if there is none).
+         */
+        public double mean;
+
+        /**
+         * Mean of the values weighted by how long each value held during the window, including
+         * the value carried over from the previous window (NaN if no value is known).
+         */
+        public double timeWeightedMean;
+
+        public float min;
+        public float max;
+
+        /**
+         * Last known value (may come from a previous window), NaN if none.
+         */
+        public float last;
+
+        public boolean isEmpty() {
+            return count == 0;
+        }
+    }
+
+    private final long[] timestamps;
+    private final float[] values;
+    private int head = 0;
+    private int size = 0;
+
+    // running aggregates of the current window (events already folded)
+    private int count;
+    private double sum;
+    private double weightedSum;
+    private long weightedDuration;
+    private float min;
+    private float max;
+
+    // value whose duration is still open
+    private boolean hasPending = false;
+    private long pendingTimestamp;
+    private float pendingValue;
+
+    private long windowStart = -1;
+
+    /**
+     * @param capacity number of events kept before they are folded into the aggregates
+     */
+    public SensorWindow(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        timestamps = new long[capacity];
+        values = new float[capacity];
+        resetAggregates();
+    }
+
+    /**
+     * Adds an event to the current window.
+     *
+     * @param timestampNs event timestamp (nanoseconds)
+     * @param value       event value
+     */
+    public synchronized void add(long timestampNs, float value) {
+        if (size == timestamps.length) {
+            fold(timestamps[head], values[head]);
+            head = (head + 1) % timestamps.length;
+            size--;
+        }
+        int index = (head + size) % timestamps.length;
+        timestamps[index] = timestampNs;
+        values[index] = value;
+        size++;
+    }
+
+    /**
+     * Closes the current window at the given time, writes its aggregates into {@code out} and
+     * starts a new window.
+     *
+     * @param nowNs end of the window (nanoseconds, same time base as the events)
+     * @param out   summary to overwrite
+     * @return {@code out}, for chaining
+     */
+    public synchronized Summary snapshotAndReset(long nowNs, Summary out) {
+        while (size > 0) {
+            fold(timestamps[head], values[head]);
+            head = (head + 1) % timestamps.length;
+            size--;
+        }
+        head = 0;
+
+        // close the duration of the last value at the end of the window
+        if (hasPending && nowNs > pendingTimestamp) {
+            weightedSum += (double) pendingValue * (nowNs - pendingTimestamp);
+            weightedDuration += nowNs - pendingTimestamp;
+            pendingTimestamp = nowNs;
+        }
+
+        out.count = count;
+        out.mean = count > 0 ? sum / count : Double.NaN;
+        out.min = count > 0 ? min : Float.NaN;
+        out.max = count > 0 ? max : Float.NaN;
+        out.last = hasPending ? pendingValue : Float.NaN;
+        if (weightedDuration > 0) {
+            out.timeWeightedMean = weightedSum / weightedDuration;
+        } else {
+            out.timeWeightedMean = hasPending ? pendingValue : Double.NaN;
+        }
+
+        resetAggregates();
+        windowStart = nowNs;
+        return out;
+    }
+
+    /**
+     * Discards the events and the carried over value.
+     */
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+        hasPending = false;
+        windowStart = -1;
+        resetAggregates();
+    }
+
+    private void fold(long timestamp, float value) {
+        count++;
+        sum += value;
+        if (value < min) min = value;
+        if (value > max) max = value;
+
+        if (hasPending) {
+            // the previous value held from its timestamp (or the window start) until now
+            long from = Math.max(pendingTimestamp, windowStart);
+            if (timestamp > from) {
+                weightedSum += (double) pendingValue * (timestamp - from);
+                weightedDuration += timestamp - from;
+            }
+        }
+        hasPending = true;
+        pendingTimestamp = timestamp;
+        pendingValue = value;
+    }
+
+    private void resetAggregates() {
+        count = 0;
+        sum = 0;
+        weightedSum = 0;
+        weightedDuration = 0;
+        min = Float.POSITIVE_INFINITY;
+        max = Float.NEGATIVE_INFINITY;
+    }
+}
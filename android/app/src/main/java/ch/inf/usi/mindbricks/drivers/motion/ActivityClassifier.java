@@ -0,0 +1,349 @@
+package ch.inf.usi.mindbricks.drivers.motion;
+
+import java.util.Arrays;
+
+import ch.inf.usi.mindbricks.drivers.base.MotionListener;
+
+/**
+ * Streaming classifier of accelerometer samples into pickups, desk bumps and walking.
+ * <p>
+ * For every sample the classifier updates:
+ * - the gravity direction (low-pass filter of the acceleration)
+ * - the jerk (change of acceleration per second)
+ * - the variance of the acceleration magnitude over the last {@value #WINDOW_MS} ms
+ * - the step peaks of the magnitude
+ * <p>
+ * The phone is either still or in a movement episode, which starts with a shock (high jerk) or
+ * a high variance and ends once the variance stayed low for {@value #SETTLE_MS} ms. During an
+ * episode:
+ * - a change of the gravity direction of more than {@value #PICKUP_ANGLE_DEG} degrees since the
+ *   phone was still is a {@link ActivityType#PICKUP} (once per episode)
+ * - regular step peaks are {@link ActivityType#WALKING} (reported every {@value #WALKING_REPORT_MS} ms)
+ * - a short episode with a shock, no orientation change and no steps is a
+ *   {@link ActivityType#DESK_BUMP}
+ * <p>
+ * All the state is kept in fixed-size primitive arrays: {@link #accept} does not allocate.
+ * Events are counted per type until {@link #snapshotCounts(int[])} and reported to the listener.
+ * Not thread safe: meant to be called from the sensor thread.
+ *
+ * @author Luca Di Bello
+ */
+public class ActivityClassifier {
+
+    static final long WINDOW_MS = 1000;
+    static final long SETTLE_MS = 500;
+    static final float PICKUP_ANGLE_DEG = 35f;
+    static final long WALKING_REPORT_MS = 10_000;
+
+    private static final float GRAVITY = 9.80665f;
+    private static final long NS_PER_MS = 1_000_000L;
+
+    /**
+     * Time constant of the gravity low-pass filter.
+     */
+    private static final float GRAVITY_TAU_S = 0.4f;
+
+    /**
+     * Standard deviation of the magnitude (m/s^2) below which the phone is still, and above
+     * which a movement episode starts.
+     */
+    private static final float STILL_STD = 0.25f;
+    private static final float ACTIVE_STD = 0.6f;
+
+    /**
+     * Jerk (m/s^3) of a shock. The time step is clamped to {@value #MIN_DT_S} s, so that the value
+     * does not depend on the sampling rate for rates above 20 Hz.
+     */
+    private static final float SHOCK_JERK = 60f;
+    private static final float MIN_DT_S = 0.05f;
+
+    /**
+     * Longest episode still considered a bump.
+     */
+    private static final long BUMP_MAX_MS = 1200;
+
+    /**
+     * Step detection: peaks of the magnitude above gravity, between 0.3 and 1.2 s apart.
+     */
+    private static final float STEP_PEAK = 1.5f;
+    private static final long STEP_MIN_INTERVAL_MS = 300;
+    private static final long STEP_MAX_INTERVAL_MS = 1200;
+    private static final int STEPS_FOR_WALKING = 4;
+
+    private static final float COS_PICKUP_ANGLE = (float) Math.cos(Math.toRadians(PICKUP_ANGLE_DEG));
+    private static final ActivityType[] TYPES = ActivityType.values();
+
+    private final MotionListener listener;
+
+    // magnitude window
+    private final long[] windowTimestamps;
+    private final float[] windowValues;
+    private int windowHead = 0;
+    private int windowSize = 0;
+    private double windowSum = 0;
+    private double windowSumSq = 0;
+
+    // previous sample
+    private boolean hasPrevious = false;
+    private long previousNs;
+    private float previousX, previousY, previousZ;
+    private float previousMagnitude;
+    private boolean rising = false;
+
+    // gravity direction (filtered) and its reference while still
+    private float gravityX, gravityY, gravityZ;
+    private float referenceX, referenceY, referenceZ;
+
+    // steps: timestamps of the last peaks
+    private final long[] stepTimestamps = new long[STEPS_FOR_WALKING];
+    private int stepCount = 0;
+    private long lastStepNs;
+    private float peakCandidate = 0;
+    private long peakCandidateNs;
+
+    // episode
+    private boolean active = false;
+    private long episodeStartNs;
+    private long stillSinceNs = -1;
+    private float episodeMaxJerk;
+    private boolean episodePickup;
+    private boolean episodeWalking;
+    private long lastWalkingReportNs;
+
+    // counts since the last snapshot
+    private final int[] counts = new int[TYPES.length];
+
+    /**
+     * @param capacity maximum number of samples in the variance window (enough for
+     *                 {@value #WINDOW_MS} ms at the highest sampling rate)
+     * @param listener receives the detected activities
+     */
+    public ActivityClassifier(int capacity, MotionListener listener) {
+        if (capacity <= 1) throw new IllegalArgumentException("capacity must be at least 2");
+        this.windowTimestamps = new long[capacity];
+        this.windowValues = new float[capacity];
+        this.listener = listener;
+    }
+
+    /**
+     * Processes an accelerometer sample.
+     *
+     * @param timestampNs sample timestamp (nanoseconds)
+     * @param x           acceleration on the x axis (m/s^2, including gravity)
+     * @param y           acceleration on the y axis
+     * @param z           acceleration on the z axis
+     */
+    public void accept(long timestampNs, float x, float y, float z) {
+        float magnitude = (float) Math.sqrt(x * x + y * y + z * z);
+
+        if (!hasPrevious) {
+            hasPrevious = true;
+            gravityX = referenceX = x;
+            gravityY = referenceY = y;
+            gravityZ = referenceZ = z;
+            remember(timestampNs, x, y, z, magnitude);
+            addToWindow(timestampNs, magnitude - GRAVITY);
+            return;
+        }
+        if (timestampNs <= previousNs) return; // out of order (e.g. across a batch boundary)
+
+        float dt = (timestampNs - previousNs) / 1e9f;
+        float dx = x - previousX;
+        float dy = y - previousY;
+        float dz = z - previousZ;
+        float jerk = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) / Math.max(dt, MIN_DT_S);
+
+        float alpha = dt / (GRAVITY_TAU_S + dt);
+        gravityX += alpha * (x - gravityX);
+        gravityY += alpha * (y - gravityY);
+        gravityZ += alpha * (z - gravityZ);
+
+        // deviations from gravity keep the running sums small (no cancellation in the variance)
+        addToWindow(timestampNs, magnitude - GRAVITY);
+        float std = windowStd();
+
+        detectStep(timestampNs, magnitude);
+
+        if (!active) {
+            if (jerk >= SHOCK_JERK || std >= ACTIVE_STD) {
+                startEpisode(timestampNs);
+            } else if (std < STILL_STD) {
+                // still: the current orientation is the reference for the next pickup
+                referenceX = gravityX;
+                referenceY = gravityY;
+                referenceZ = gravityZ;
+            }
+        }
+
+        if (active) {
+            episodeMaxJerk = Math.max(episodeMaxJerk, jerk);
+
+            if (!episodePickup && orientationChanged()) {
+                episodePickup = true;
+                report(ActivityType.PICKUP);
+            }
+
+            if (isWalking(timestampNs)
+                    && (!episodeWalking || timestampNs - lastWalkingReportNs >= WALKING_REPORT_MS * NS_PER_MS)) {
+                episodeWalking = true;
+                lastWalkingReportNs = timestampNs;
+                report(ActivityType.WALKING);
+            }
+
+            if (std < STILL_STD) {
+                if (stillSinceNs < 0) stillSinceNs = timestampNs;
+                if (timestampNs - stillSinceNs >= SETTLE_MS * NS_PER_MS) endEpisode(timestampNs);
+            } else {
+                stillSinceNs = -1;
+            }
+        }
+
+        remember(timestampNs, x, y, z, magnitude);
+    }
+
+    /**
+     * Returns true during a movement episode.
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Writes the number of events of each type (indexed by {@link ActivityType#ordinal()}) since
+     * the previous call into {@code out}, and resets the counts.
+     *
+     * @return {@code out}, for chaining
+     */
+    public int[] snapshotCounts(int[] out) {
+        System.arraycopy(counts, 0, out, 0, counts.length);
+        Arrays.fill(counts, 0);
+        return out;
+    }
+
+    /**
+     * Forgets all the state (e.g. when the sensor is restarted).
+     */
+    public void reset() {
+        hasPrevious = false;
+        windowHead = 0;
+        windowSize = 0;
+        windowSum = 0;
+        windowSumSq = 0;
+        stepCount = 0;
+        peakCandidate = 0;
+        rising = false;
+        active = false;
+        stillSinceNs = -1;
+        Arrays.fill(counts, 0);
+    }
+
+    private void startEpisode(long timestampNs) {
+        active = true;
+        episodeStartNs = timestampNs;
+        stillSinceNs = -1;
+        episodeMaxJerk = 0;
+        episodePickup = false;
+        episodeWalking = false;
+    }
+
+    private void endEpisode(long timestampNs) {
+        active = false;
+        long durationNs = timestampNs - episodeStartNs - SETTLE_MS * NS_PER_MS;
+
+        if (!episodePickup && orientationChanged()) {
+            report(ActivityType.PICKUP);
+        } else if (!episodePickup && !episodeWalking
+                && episodeMaxJerk >= SHOCK_JERK && durationNs <= BUMP_MAX_MS * NS_PER_MS) {
+            report(ActivityType.DESK_BUMP);
+        }
+
+        referenceX = gravityX;
+        referenceY = gravityY;
+        referenceZ = gravityZ;
+        stepCount = 0;
+    }
+
+    private void report(ActivityType type) {
+        counts[type.ordinal()]++;
+        if (listener != null) listener.onActivityDetected(type);
+    }
+
+    /**
+     * Returns true if the gravity direction moved by more than the pickup angle from the
+     * reference.
+     */
+    private boolean orientationChanged() {
+        float dot = gravityX * referenceX + gravityY * referenceY + gravityZ * referenceZ;
+        float norms = (float) Math.sqrt((gravityX * gravityX + gravityY * gravityY + gravityZ * gravityZ)
+                * (referenceX * referenceX + referenceY * referenceY + referenceZ * referenceZ));
+        return norms > 0 && dot / norms < COS_PICKUP_ANGLE;
+    }
+
+    /**
+     * Tracks the local maxima of the magnitude above {@link #STEP_PEAK} as step candidates.
+     */
+    private void detectStep(long timestampNs, float magnitude) {
+        float excess = magnitude - GRAVITY;
+        if (magnitude > previousMagnitude) {
+            rising = true;
+            if (excess >= STEP_PEAK && excess > peakCandidate) {
+                peakCandidate = excess;
+                peakCandidateNs = timestampNs;
+            }
+        } else if (rising && peakCandidate > 0) {
+            // the magnitude started to decrease after a peak
+            rising = false;
+            long sinceLast = peakCandidateNs - lastStepNs;
+            if (stepCount == 0 || sinceLast >= STEP_MIN_INTERVAL_MS * NS_PER_MS) {
+                if (stepCount > 0 && sinceLast > STEP_MAX_INTERVAL_MS * NS_PER_MS) stepCount = 0;
+                stepTimestamps[stepCount % stepTimestamps.length] = peakCandidateNs;
+                stepCount++;
+                lastStepNs = peakCandidateNs;
+            }
+            peakCandidate = 0;
+        } else {
+            rising = false;
+        }
+    }
+
+    /**
+     * Returns true if the last steps were regular and recent.
+     */
+    private boolean isWalking(long timestampNs) {
+        return stepCount >= STEPS_FOR_WALKING
+                && timestampNs - lastStepNs <= STEP_MAX_INTERVAL_MS * NS_PER_MS;
+    }
+
+    private void addToWindow(long timestampNs, float value) {
+        // drop the samples older than the window, or the oldest one if the ring is full
+        while (windowSize > 0 && (windowSize == windowValues.length
+                || timestampNs - windowTimestamps[windowHead] > WINDOW_MS * NS_PER_MS)) {
+            float old = windowValues[windowHead];
+            windowSum -= old;
+            windowSumSq -= (double) old * old;
+            windowHead = (windowHead + 1) % windowValues.length;
+            windowSize--;
+        }
+        int index = (windowHead + windowSize) % windowValues.length;
+        windowTimestamps[index] = timestampNs;
+        windowValues[index] = value;
+        windowSum += value;
+        windowSumSq += (double) value * value;
+        windowSize++;
+    }
+
+    private float windowStd() {
+        if (windowSize < 2) return 0;
+        double mean = windowSum / windowSize;
+        double variance = windowSumSq / windowSize - mean * mean;
+        return variance > 0 ? (float) Math.sqrt(variance) : 0;
+    }
+
+    private void remember(long timestampNs, float x, float y, float z, float magnitude) {
+        previousNs = timestampNs;
+        previousX = x;
+        previousY = y;
+        previousZ = z;
+        previousMagnitude = magnitude;
+    }
+}
@@ -0,0 +1,109 @@
+package ch.inf.usi.mindbricks.drivers.motion;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.util.Log;
+
+import ch.inf.usi.mindbricks.drivers.base.BaseSensor;
+import ch.inf.usi.mindbricks.drivers.base.MotionListener;
+
+/**
+ * Strategy classifying the accelerometer samples into pickups, desk bumps and walking
+ * (see {@link ActivityClassifier}).
+ * (strategy pattern)
+ * <p>
+ * The sampling rate adapts to the state of the phone: while it is still, the accelerometer runs
+ * at {@value #IDLE_PERIOD_US} us with hardware batching (the application processor is woken up
+ * about once per second); once a movement starts it switches to {@value #ACTIVE_PERIOD_US} us
+ * without batching, and goes back to the idle rate after {@value #IDLE_AFTER_MS} ms of stillness.
+ *
+ * @author Luca Di Bello
+ */
+public class ActivityClassifierStrategy extends BaseSensor implements MotionSensorStrategy, SensorEventListener {
+    private static final String TAG = "ActivityClassifierStrategy";
+
+    private static final int IDLE_PERIOD_US = 100_000;
+    private static final int IDLE_LATENCY_US = 1_000_000;
+    private static final int ACTIVE_PERIOD_US = 20_000;
+    private static final long IDLE_AFTER_MS = 5_000;
+
+    /**
+     * Samples in the variance window: one second at the active rate, with some margin.
+     */
+    private static final int WINDOW_CAPACITY = 64;
+
+    private final ActivityClassifier classifier;
+    private MotionListener listener;
+
+    private boolean registered = false;
+    private boolean fastRate = false;
+    private long lastActiveNs;
+
+    public ActivityClassifierStrategy(Context ctx) {
+        super(ctx, Sensor.TYPE_ACCELEROMETER);
+        this.classifier = new ActivityClassifier(WINDOW_CAPACITY, new MotionListener() {
+            @Override
+            public void onMotionDetected() {
+                // not used: the classifier only reports typed events
+            }
+
+            @Override
+            public void onActivityDetected(ActivityType type) {
+                Log.d(TAG, "Activity detected: " + type);
+                MotionListener currentListener = ActivityClassifierStrategy.this.listener;
+                if (currentListener != null) currentListener.onActivityDetected(type);
+            }
+        });
+    }
+
+    /**
+     * The classifier needs a plain accelerometer, but it is not a fallback: it detects pickups
+     * more accurately than the significant motion sensor.
+     */
+    @Override
+    public boolean isFallback() {
+        return false;
+    }
+
+    @Override
+    public void start(MotionListener listener) {
+        this.listener = listener;
+        classifier.reset();
+        if (isAvailable()) register(false);
+    }
+
+    @Override
+    public void stop() {
+        if (registered) sensorManager.unregisterListener(this);
+        registered = false;
+        listener = null;
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        classifier.accept(event.timestamp, event.values[0], event.values[1], event.values[2]);
+
+        // adapt the sampling rate to the movement
+        if (classifier.isActive()) {
+            lastActiveNs = event.timestamp;
+            if (!fastRate) register(true);
+        } else if (fastRate && event.timestamp - lastActiveNs >= IDLE_AFTER_MS * 1_000_000L) {
+            register(false);
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    }
+
+    private void register(boolean fast) {
+        if (registered) sensorManager.unregisterListener(this);
+        fastRate = fast;
+        registered = fast
+                ? sensorManager.registerListener(this, sensor, ACTIVE_PERIOD_US)
+                : sensorManager.registerListener(this, sensor, IDLE_PERIOD_US, IDLE_LATENCY_US);
+        Log.d(TAG, "Accelerometer rate: " + (fast ? "active" : "idle") + ", registered=" + registered);
+    }
+}
@@ -0,0 +1,23 @@
+package ch.inf.usi.mindbricks.drivers.motion;
+
+/**
+ * Kinds of phone movement reported by the motion strategies.
+ *
+ * @author Luca Di Bello
+ */
+public enum ActivityType {
+    /**
+     * The phone was lifted or turned (the user interacted with it).
+     */
+    PICKUP,
+
+    /**
+     * Short shock without a change of orientation (e.g. the desk was bumped).
+     */
+    DESK_BUMP,
+
+    /**
+     * The user is walking while carrying the phone.
+     */
+    WALKING
+}
@@ -0,0 +1,255 @@
+package ch.inf.usi.mindbricks.drivers.replay;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import ch.inf.usi.mindbricks.model.visual.SessionSensorLog;
+
+/**
+ * Recorded sequence of sensor events, replayed by {@link TraceReplaySource}.
+ * <p>
+ * Every event has a timestamp (ms), a {@link Type} and a value:
+ * - {@link Type#NOISE}: RMS amplitude of a microphone window ending at the timestamp
+ * - {@link Type#LIGHT}: light level (0-100)
+ * - {@link Type#ORIENTATION}: 1 when the phone turned face up, 0 when it turned face down
+ * - {@link Type#MOTION}: a pickup (value ignored)
+ * <p>
+ * Traces are stored column by column in primitive arrays, and can be read from / written to:
+ * - CSV: one {@code timestamp,type,value} line per event (type in lower case, e.g.
+ *   {@code 1700000000000,noise,412.5}); empty lines and lines starting with {@code #} are skipped
+ * - binary: magic {@value #MAGIC}, version, event count, then {@code long timestamp, byte type,
+ *   float value} per event (big endian, {@link DataOutputStream} format)
+ * <p>
+ * Immutable once built; events are always in timestamp order.
+ *
+ * @author Luca Di Bello
+ */
+public final class SensorTrace {
+
+    /**
+     * Type of a sensor event.
+     */
+    public enum Type {
+        NOISE,
+        LIGHT,
+        ORIENTATION,
+        MOTION
+    }
+
+    /**
+     * First bytes of a binary trace ("MBTR").
+     */
+    public static final int MAGIC = 0x4D425452;
+
+    private static final int VERSION = 1;
+    private static final Type[] TYPES = Type.values();
+
+    private final long[] timestamps;
+    private final byte[] types;
+    private final float[] values;
+
+    private SensorTrace(long[] timestamps, byte[] types, float[] values) {
+        this.timestamps = timestamps;
+        this.types = types;
+        this.values = values;
+    }
+
+    public int size() {
+        return timestamps.length;
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    public Type getType(int index) {
+        return TYPES[types[index]];
+    }
+
+    public float getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * Returns the time between the first and the last event (ms).
+     */
+    public long getDurationMs() {
+        return size() == 0 ? 0 : timestamps[size() - 1] - timestamps[0];
+    }
+
+    /**
+     * Returns the number of events of the given type.
+     */
+    public int count(Type type) {
+        int count = 0;
+        for (byte t : types) {
+            if (t == type.ordinal()) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Reads a CSV trace.
+     *
+     * @throws IOException if the trace cannot be read or a line is malformed
+     */
+    public static SensorTrace readCsv(Reader reader) throws IOException {
+        Builder builder = new Builder();
+        BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            String[] fields = line.split(",");
+            if (fields.length != 3) {
+                throw new IOException("Line " + lineNumber + ": expected timestamp,type,value");
+            }
+            try {
+                builder.add(Long.parseLong(fields[0].trim()),
+                        Type.valueOf(fields[1].trim().toUpperCase(Locale.ROOT)),
+                        Float.parseFloat(fields[2].trim()));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return builder.build();
+    }
+
+    public void writeCsv(Writer writer) throws IOException {
+        for (int i = 0; i < size(); i++) {
+            writer.write(timestamps[i] + "," + TYPES[types[i]].name().toLowerCase(Locale.ROOT) + "," + values[i] + "\n");
+        }
+        writer.flush();
+    }
+
+    /**
+     * Reads a binary trace.
+     *
+     * @throws IOException if the trace cannot be read or is malformed
+     */
+    public static SensorTrace readBinary(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        if (in.readInt() != MAGIC) throw new IOException("Not a sensor trace");
+        int version = in.readUnsignedByte();
+        if (version != VERSION) throw new IOException("Unsupported sensor trace version " + version);
+
+        int count = in.readInt();
+        if (count < 0) throw new IOException("Invalid event count " + count);
+        Builder builder = new Builder(count);
+        for (int i = 0; i < count; i++) {
+            long timestamp = in.readLong();
+            int type = in.readUnsignedByte();
+            float value = in.readFloat();
+            if (type >= TYPES.length) throw new IOException("Invalid event type " + type);
+            builder.add(timestamp, TYPES[type], value);
+        }
+        return builder.build();
+    }
+
+    public void writeBinary(OutputStream output) throws IOException {
+        DataOutputStream out = new DataOutputStream(output);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(size());
+        for (int i = 0; i < size(); i++) {
+            out.writeLong(timestamps[i]);
+            out.writeByte(types[i]);
+            out.writeFloat(values[i]);
+        }
+        out.flush();
+    }
+
+    /**
+     * Converts stored sensor logs (e.g. of a real session) into a trace: each log becomes a noise
+     * window closing the interval since the previous log, with the light level (and orientation,
+     * pickup) of the log set at the beginning of the interval.
+     *
+     * @param logs logs in timestamp order
+     */
+    public static SensorTrace fromLogs(List<SessionSensorLog> logs) {
+        Builder builder = new Builder(logs.size() * 3);
+        Boolean faceUp = null;
+        long previous = logs.isEmpty() ? 0 : logs.get(0).getTimestamp() - 1;
+        for (SessionSensorLog log : logs) {
+            long timestamp = log.getTimestamp();
+            // the values of the log held during the whole interval
+            long intervalStart = Math.min(previous + 1, timestamp);
+            if (faceUp == null || faceUp != log.isFaceUp()) {
+                faceUp = log.isFaceUp();
+                builder.add(intervalStart, Type.ORIENTATION, faceUp ? 1f : 0f);
+            }
+            builder.add(intervalStart, Type.LIGHT, log.getLightLevel());
+            if (log.isMotionDetected()) builder.add(intervalStart, Type.MOTION, 1f);
+            builder.add(timestamp, Type.NOISE, log.getNoiseLevel());
+            previous = timestamp;
+        }
+        return builder.build();
+    }
+
+    /**
+     * Collects events (in any order) into a trace.
+     */
+    public static class Builder {
+        private long[] timestamps;
+        private byte[] types;
+        private float[] values;
+        private int size = 0;
+        private boolean sorted = true;
+
+        public Builder() {
+            this(64);
+        }
+
+        public Builder(int expectedSize) {
+            int capacity = Math.max(16, expectedSize);
+            timestamps = new long[capacity];
+            types = new byte[capacity];
+            values = new float[capacity];
+        }
+
+        public Builder add(long timestamp, Type type, float value) {
+            if (size == timestamps.length) {
+                int capacity = size * 2;
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                types = Arrays.copyOf(types, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            if (size > 0 && timestamp < timestamps[size - 1]) sorted = false;
+            timestamps[size] = timestamp;
+            types[size] = (byte) type.ordinal();
+            values[size] = value;
+            size++;
+            return this;
+        }
+
+        public SensorTrace build() {
+            long[] t = Arrays.copyOf(timestamps, size);
+            byte[] ty = Arrays.copyOf(types, size);
+            float[] v = Arrays.copyOf(values, size);
+            if (!sorted) {
+                // stable sort by timestamp: events with the same timestamp keep their order
+                Integer[] order = new Integer[size];
+                for (int i = 0; i < size; i++) order[i] = i;
+                Arrays.sort(order, (a, b) -> Long.compare(timestamps[a], timestamps[b]));
+                for (int i = 0; i < size; i++) {
+                    t[i] = timestamps[order[i]];
+                    ty[i] = types[order[i]];
+                    v[i] = values[order[i]];
+                }
+            }
+            return new SensorTrace(t, ty, v);
+        }
+    }
+}
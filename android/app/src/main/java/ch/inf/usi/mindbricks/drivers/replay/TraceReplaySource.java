@@ -0,0 +1,223 @@
+package ch.inf.usi.mindbricks.drivers.replay;
+
+import java.util.concurrent.TimeUnit;
+
+import ch.inf.usi.mindbricks.drivers.audio.AudioFeatureExtractor;
+import ch.inf.usi.mindbricks.drivers.audio.AudioFeatures;
+import ch.inf.usi.mindbricks.drivers.base.LightSource;
+import ch.inf.usi.mindbricks.drivers.base.MotionListener;
+import ch.inf.usi.mindbricks.drivers.base.MotionSource;
+import ch.inf.usi.mindbricks.drivers.base.NoiseSource;
+import ch.inf.usi.mindbricks.drivers.base.SensorWindow;
+
+/**
+ * Replays a {@link SensorTrace} in place of the device sensors: it is at the same time the noise,
+ * light and motion source of the sensor pipeline, so the pipeline can run off-device (e.g. in a
+ * JVM test) on recorded or synthetic data.
+ * <p>
+ * {@link #replay()} delivers the events of the trace on the calling thread, in order, to the
+ * sources that are started. Time is virtual: {@link #currentTimeMillis()} returns the timestamp
+ * of the event being delivered. With a finite {@code speed} the replay is paced (e.g. 60 =
+ * one hour of trace per minute); otherwise it runs as fast as possible.
+ * <p>
+ * Noise events are delivered as single-block audio windows with the recorded RMS amplitude.
+ *
+ * @author Luca Di Bello
+ */
+public class TraceReplaySource implements NoiseSource, LightSource, MotionSource {
+
+    /**
+     * Replay as fast as possible.
+     */
+    public static final double UNPACED = Double.POSITIVE_INFINITY;
+
+    private static final int WINDOW_CAPACITY = 64;
+
+    private final SensorTrace trace;
+    private final double speed;
+
+    private final SensorWindow lightWindow = new SensorWindow(WINDOW_CAPACITY);
+    private final SensorWindow orientationWindow = new SensorWindow(WINDOW_CAPACITY);
+    private final AudioFeatures features = new AudioFeatures();
+
+    private volatile FeatureListener featureListener;
+    private volatile LightSensorListener lightListener;
+    private volatile MotionListener motionListener;
+    private volatile MotionListener pendingMotionListener;
+    private volatile boolean recording = false;
+
+    private volatile long currentTime;
+    private float lightLevel = 0f;
+    private boolean faceUp = true;
+    private volatile boolean stopped = false;
+
+    /**
+     * @param trace trace to replay
+     * @param speed replay speed relative to real time, or {@link #UNPACED}
+     */
+    public TraceReplaySource(SensorTrace trace, double speed) {
+        if (!(speed > 0)) throw new IllegalArgumentException("speed must be positive");
+        this.trace = trace;
+        this.speed = speed;
+        this.currentTime = trace.size() > 0 ? trace.getTimestamp(0) : 0;
+    }
+
+    /**
+     * Returns the virtual time of the replay (ms).
+     */
+    public long currentTimeMillis() {
+        return currentTime;
+    }
+
+    /**
+     * Delivers all the events of the trace, blocking until the end of the trace or
+     * {@link #cancel()}.
+     *
+     * @return number of delivered events
+     * @throws InterruptedException if the thread is interrupted while pacing the replay
+     */
+    public int replay() throws InterruptedException {
+        stopped = false;
+        if (trace.size() == 0) return 0;
+
+        long traceStart = trace.getTimestamp(0);
+        long wallStart = System.nanoTime();
+        int delivered = 0;
+
+        for (int i = 0; i < trace.size() && !stopped; i++) {
+            long timestamp = trace.getTimestamp(i);
+            if (!Double.isInfinite(speed)) {
+                long dueNs = wallStart + (long) (TimeUnit.MILLISECONDS.toNanos(timestamp - traceStart) / speed);
+                long waitNs = dueNs - System.nanoTime();
+                if (waitNs > 0) TimeUnit.NANOSECONDS.sleep(waitNs);
+            }
+            currentTime = timestamp;
+            deliver(trace.getType(i), trace.getValue(i));
+            delivered++;
+        }
+        return delivered;
+    }
+
+    /**
+     * Stops {@link #replay()} after the event being delivered.
+     */
+    public void cancel() {
+        stopped = true;
+    }
+
+    private void deliver(SensorTrace.Type type, float value) {
+        long timestampNs = TimeUnit.MILLISECONDS.toNanos(currentTime);
+        switch (type) {
+            case NOISE: {
+                FeatureListener listener = featureListener;
+                if (recording && listener != null) {
+                    setFeatures(value);
+                    listener.onWindowRecorded(features);
+                }
+                break;
+            }
+            case LIGHT: {
+                lightLevel = value;
+                if (lightListener != null) {
+                    lightWindow.add(timestampNs, value);
+                    notifyLightListener();
+                }
+                break;
+            }
+            case ORIENTATION: {
+                faceUp = value >= 0.5f;
+                if (lightListener != null) {
+                    orientationWindow.add(timestampNs, faceUp ? 1f : 0f);
+                    notifyLightListener();
+                }
+                break;
+            }
+            case MOTION: {
+                MotionListener listener = motionListener;
+                if (listener != null) listener.onMotionDetected();
+                break;
+            }
+        }
+    }
+
+    private void notifyLightListener() {
+        LightSensorListener listener = lightListener;
+        if (listener != null) listener.onLightLevelChanged(lightLevel, faceUp);
+    }
+
+    private void setFeatures(float rms) {
+        double db = rms > 0
+                ? Math.max(AudioFeatureExtractor.MIN_DB, 20 * Math.log10(rms / AudioFeatureExtractor.FULL_SCALE))
+                : AudioFeatureExtractor.MIN_DB;
+        features.sampleCount = 1;
+        features.blockCount = 1;
+        features.rms = rms;
+        features.meanBlockRms = rms;
+        features.peakBlockRms = rms;
+        features.peakSample = Math.round(rms);
+        features.leqDb = db;
+        features.peakDb = db;
+        features.l10Db = db;
+        features.l50Db = db;
+        features.l90Db = db;
+        features.zeroCrossingRate = 0;
+    }
+
+    // NoiseSource
+
+    @Override
+    public void setFeatureListener(FeatureListener listener) {
+        this.featureListener = listener;
+    }
+
+    @Override
+    public void startRecording() {
+        recording = true;
+    }
+
+    @Override
+    public void stopRecording() {
+        recording = false;
+    }
+
+    // LightSource
+
+    @Override
+    public void start(LightSensorListener listener, int maxReportLatencyUs) {
+        lightWindow.clear();
+        orientationWindow.clear();
+        // the current orientation holds from the start of the window
+        long timestampNs = TimeUnit.MILLISECONDS.toNanos(currentTime);
+        orientationWindow.add(timestampNs, faceUp ? 1f : 0f);
+        this.lightListener = listener;
+    }
+
+    @Override
+    public WindowStats snapshotWindow(WindowStats out) {
+        long nowNs = TimeUnit.MILLISECONDS.toNanos(currentTime);
+        lightWindow.snapshotAndReset(nowNs, out.light);
+        orientationWindow.snapshotAndReset(nowNs, out.orientation);
+        return out;
+    }
+
+    /**
+     * Stops the light and the motion events (both sources share this method).
+     */
+    @Override
+    public void stop() {
+        lightListener = null;
+        motionListener = null;
+    }
+
+    // MotionSource
+
+    @Override
+    public void setListener(MotionListener listener) {
+        this.pendingMotionListener = listener;
+    }
+
+    @Override
+    public void start() {
+        this.motionListener = pendingMotionListener;
+    }
+}
@@ -1,6 +1,7 @@
 package ch.inf.usi.mindbricks.model;
 
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 /**
@@ -8,7 +9,7 @@ import androidx.room.PrimaryKey;
  *
  * @author Luca Di Bello
  */
-@Entity(tableName = "tags")
+@Entity(tableName = "tags", indices = {@Index("title")})
 public class Tag {
 
     @PrimaryKey(autoGenerate = true)
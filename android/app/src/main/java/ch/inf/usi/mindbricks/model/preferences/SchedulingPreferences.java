@@ -0,0 +1,125 @@
+package ch.inf.usi.mindbricks.model.preferences;
+
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * Scheduling preferences of the user (user_preferences.json), parsed once into immutable values
+ * so that the schedule generation reads plain fields instead of walking the JSON.
+ * <p>
+ * Times are in minutes since midnight, days are bitmasks of {@link java.util.Calendar} days of
+ * the week ({@code 1 << Calendar.MONDAY}, ...) and hours are bitmasks of the hours of the day.
+ * Disabled features are {@code null} (or empty lists).
+ *
+ * @param sleep         sleep window (may wrap midnight), null if not set
+ * @param meals         enabled meals
+ * @param work          work schedule, null if disabled
+ * @param exercise      preferred exercise times, empty if disabled
+ * @param social        social time protected from study, null if disabled or not protected
+ * @param study         study session preferences
+ * @param calendar      calendar integration, null if disabled
+ * @param energy        PAM score thresholds of the energy levels
+ * @param fingerprint   hash of the whole preference content
+ * @author Luca Di Bello
+ */
+public record SchedulingPreferences(@Nullable TimeWindow sleep,
+                                    List<TimeWindow> meals,
+                                    @Nullable Work work,
+                                    List<TimeWindow> exercise,
+                                    @Nullable Social social,
+                                    Study study,
+                                    @Nullable CalendarBuffers calendar,
+                                    EnergyThresholds energy,
+                                    long fingerprint) {
+
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    /**
+     * Returns the bit of a {@link java.util.Calendar} day of the week in a day mask.
+     */
+    public static int dayBit(int calendarDayOfWeek) {
+        return 1 << calendarDayOfWeek;
+    }
+
+    /**
+     * A time range of the day.
+     *
+     * @param startMinute start, in minutes since midnight
+     * @param endMinute   end (exclusive), in minutes since midnight; smaller than the start if the
+     *                    window wraps midnight
+     */
+    public record TimeWindow(int startMinute, int endMinute) {
+
+        public int startHour() {
+            return startMinute / 60;
+        }
+
+        public int endHour() {
+            return endMinute / 60;
+        }
+
+        public int durationMinutes() {
+            return wrapsMidnight() ? MINUTES_PER_DAY - startMinute + endMinute : endMinute - startMinute;
+        }
+
+        public boolean wrapsMidnight() {
+            return endMinute < startMinute;
+        }
+    }
+
+    /**
+     * @param days                 work days (day mask)
+     * @param hours                working hours
+     * @param allowStudyDuringWork whether study sessions may be planned during the working hours
+     */
+    public record Work(int days, TimeWindow hours, boolean allowStudyDuringWork) {
+
+        public boolean isWorkDay(int calendarDayOfWeek) {
+            return (days & dayBit(calendarDayOfWeek)) != 0;
+        }
+    }
+
+    /**
+     * @param days  days with social time (day mask)
+     * @param hours protected hours of those days (bit {@code h} set for hour {@code h})
+     */
+    public record Social(int days, int hours) {
+
+        public boolean isSocialDay(int calendarDayOfWeek) {
+            return (days & dayBit(calendarDayOfWeek)) != 0;
+        }
+
+        public boolean isSocialHour(int hour) {
+            return (hours & (1 << hour)) != 0;
+        }
+    }
+
+    /**
+     * @param sessionMinutes  preferred length of a study session
+     * @param breakMinutes    minimum break between two sessions
+     * @param maxDailyMinutes maximum study time of a day
+     * @param preferredHours  hours of the enabled preferred study times (bit {@code h} for hour
+     *                        {@code h})
+     */
+    public record Study(int sessionMinutes, int breakMinutes, int maxDailyMinutes, int preferredHours) {
+
+        public boolean isPreferredHour(int hour) {
+            return (preferredHours & (1 << hour)) != 0;
+        }
+    }
+
+    /**
+     * @param beforeMinutes time kept free before an event
+     * @param afterMinutes  time kept free after an event
+     */
+    public record CalendarBuffers(int beforeMinutes, int afterMinutes) {
+    }
+
+    /**
+     * @param low  total PAM score under which the energy is low
+     * @param high total PAM score over which the energy is high
+     */
+    public record EnergyThresholds(int low, int high) {
+    }
+}
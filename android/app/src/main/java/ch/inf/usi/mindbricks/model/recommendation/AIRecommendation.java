@@ -18,7 +18,7 @@ public class AIRecommendation extends DailyRecommendation{
     private int totalSessions;
     private float averageProductivity;
     private String summaryMessage;
-    private int calendarBlockedHours;
+    private int calendarBlockedMinutes;
 
     public AIRecommendation() {
         this.activityBlocks = new ArrayList<>();
@@ -30,7 +30,7 @@ public class AIRecommendation extends DailyRecommendation{
         activityBlocks.add(block);
 
         if (block.getActivityType() == ActivityType.CALENDAR_EVENT) {
-            calendarBlockedHours += block.getDurationHours();
+            calendarBlockedMinutes += block.getDurationMinutes();
         }
     }
 
@@ -64,17 +64,17 @@ public class AIRecommendation extends DailyRecommendation{
     }
 
     public int getCalendarBlockedHours() {
-        return calendarBlockedHours;
+        return Math.round(calendarBlockedMinutes / 60f);
     }
 
     public int getAvailableHours() {
-        int totalBlocked = 0;
+        int blockedMinutes = 0;
         for (ActivityBlock block : activityBlocks) {
             ActivityType type = block.getActivityType();
             if (type == ActivityType.SLEEP || type == ActivityType.CALENDAR_EVENT) {
-                totalBlocked += block.getDurationHours();
+                blockedMinutes += block.getDurationMinutes();
             }
         }
-        return 24 - totalBlocked;
+        return Math.round((24 * 60 - blockedMinutes) / 60f);
     }
 }
\ No newline at end of file
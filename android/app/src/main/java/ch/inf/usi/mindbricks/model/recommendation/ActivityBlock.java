@@ -1,5 +1,7 @@
 package ch.inf.usi.mindbricks.model.recommendation;
 
+import java.util.Locale;
+
 /**
  * class class.
  *
@@ -9,27 +11,43 @@ public class ActivityBlock {
     private final ActivityType activityType;
     private final int startHour;
     private final int endHour;
+    private final int startMinute;
+    private final int endMinute;
     private final int confidenceScore;
     private final String reason;
     private String eventTitle;
 
     public ActivityBlock(ActivityType type, int startHour, int endHour,
                          int confidence, String reason) {
-        this.activityType = type;
-        this.startHour = startHour;
-        this.endHour = endHour;
-        this.confidenceScore = confidence;
-        this.reason = reason;
+        this(type, startHour * 60, endHour * 60, confidence, reason, null);
     }
 
     public ActivityBlock(ActivityType type, int startHour, int endHour,
                          String eventTitle, String reason) {
+        this(type, startHour * 60, endHour * 60, 100, reason, eventTitle);
+    }
+
+    private ActivityBlock(ActivityType type, int startMinute, int endMinute,
+                          int confidence, String reason, String eventTitle) {
         this.activityType = type;
-        this.startHour = startHour;
-        this.endHour = endHour;
-        this.eventTitle = eventTitle;
+        this.startMinute = startMinute;
+        this.endMinute = endMinute;
+        this.startHour = startMinute / 60;
+        this.endHour = (endMinute + 59) / 60;
+        this.confidenceScore = confidence;
         this.reason = reason;
-        this.confidenceScore = 100;
+        this.eventTitle = eventTitle;
+    }
+
+    /**
+     * Creates a block with minute precision (e.g. 7:30 - 8:00).
+     *
+     * @param startMinute start of the block, in minutes since midnight
+     * @param endMinute   end of the block (exclusive), in minutes since midnight (at most 1440)
+     */
+    public static ActivityBlock ofMinutes(ActivityType type, int startMinute, int endMinute,
+                                          int confidence, String reason) {
+        return new ActivityBlock(type, startMinute, endMinute, confidence, reason, null);
     }
 
     public ActivityType getActivityType() {
@@ -44,6 +62,14 @@ public class ActivityBlock {
         return endHour;
     }
 
+    public int getStartMinute() {
+        return startMinute;
+    }
+
+    public int getEndMinute() {
+        return endMinute;
+    }
+
     public int getConfidenceScore() {
         return confidenceScore;
     }
@@ -53,18 +79,24 @@ public class ActivityBlock {
     }
 
     public int getDurationHours() {
-        return endHour - startHour;
+        return Math.round(getDurationMinutes() / 60f);
+    }
+
+    public int getDurationMinutes() {
+        return endMinute - startMinute;
     }
 
     public String getTimeRange() {
-        return formatHour(startHour) + " - " + formatHour(endHour);
+        return formatTime(startMinute) + " - " + formatTime(endMinute);
     }
 
-    private String formatHour(int hour) {
-        if (hour == 0) return "12 AM";
-        if (hour < 12) return hour + " AM";
-        if (hour == 12) return "12 PM";
-        return (hour - 12) + " PM";
+    private String formatTime(int minuteOfDay) {
+        int hour = (minuteOfDay / 60) % 24;
+        int minute = minuteOfDay % 60;
+        int displayHour = hour % 12 == 0 ? 12 : hour % 12;
+        String suffix = hour < 12 ? " AM" : " PM";
+        if (minute == 0) return displayHour + suffix;
+        return String.format(Locale.US, "%d:%02d%s", displayHour, minute, suffix);
     }
 
     public String getDisplayName() {
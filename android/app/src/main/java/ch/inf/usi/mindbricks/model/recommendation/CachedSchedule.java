@@ -0,0 +1,77 @@
+package ch.inf.usi.mindbricks.model.recommendation;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Adaptive schedule of a day, stored so that it survives process restarts and is only computed
+ * again when its inputs change (see {@link ch.inf.usi.mindbricks.repository.ScheduleRepository}).
+ *
+ * @author Luca Di Bello
+ */
+@Entity(tableName = "schedule_cache")
+public class CachedSchedule {
+
+    /**
+     * Start of the day the schedule was generated for (local midnight)
+     */
+    @PrimaryKey
+    private long day;
+
+    /**
+     * Fingerprint of the inputs the schedule was generated from
+     */
+    private long fingerprint;
+
+    /**
+     * Time the schedule was generated
+     */
+    private long createdAt;
+
+    /**
+     * The {@link AIRecommendation}, as JSON
+     */
+    @NonNull
+    private String schedule;
+
+    public CachedSchedule(long day, long fingerprint, long createdAt, @NonNull String schedule) {
+        this.day = day;
+        this.fingerprint = fingerprint;
+        this.createdAt = createdAt;
+        this.schedule = schedule;
+    }
+
+    public long getDay() {
+        return day;
+    }
+
+    public void setDay(long day) {
+        this.day = day;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(long fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @NonNull
+    public String getSchedule() {
+        return schedule;
+    }
+
+    public void setSchedule(@NonNull String schedule) {
+        this.schedule = schedule;
+    }
+}
@@ -0,0 +1,164 @@
+package ch.inf.usi.mindbricks.model.recommendation;
+
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * One cell (day of the week x hour of the day) of the productivity model used by the
+ * recommendation engine (see {@link ch.inf.usi.mindbricks.util.evaluation.ProductivityModel}).
+ * <p>
+ * The cell keeps the number of sessions started in its hour and the exponentially decayed mean
+ * and variance of their focus scores: every score weighs half as much after each half-life, so
+ * recent habits count more than old ones. Scores are added with the weighted version of
+ * Welford's algorithm, so the cell can be updated one session at a time.
+ *
+ * @author Luca Di Bello
+ */
+@Entity(tableName = "productivity_cells")
+public class ProductivityCell {
+
+    /**
+     * Index of the cell: day of the week (0 = Sunday) * 24 + hour of the day
+     */
+    @PrimaryKey
+    private int cell;
+
+    /**
+     * Number of sessions started in this hour
+     */
+    private int sessionCount;
+
+    /**
+     * Number of focus scores added to the mean
+     */
+    private int scoreCount;
+
+    /**
+     * Decayed total weight of the scores (as of {@link #updatedAt})
+     */
+    private double weight;
+
+    /**
+     * Decayed mean of the focus scores (0-100)
+     */
+    private double mean;
+
+    /**
+     * Decayed sum of the squared differences from the mean (variance = m2 / weight)
+     */
+    private double m2;
+
+    /**
+     * Timestamp of the most recent score, to which the weight is decayed
+     */
+    private long updatedAt;
+
+    public ProductivityCell(int cell) {
+        this.cell = cell;
+    }
+
+    /**
+     * Counts a session started in this hour.
+     */
+    public void addSession() {
+        sessionCount++;
+    }
+
+    /**
+     * Adds the focus score of a session.
+     *
+     * @param score      focus score (0-100)
+     * @param timestamp  start of the session
+     * @param halfLifeMs time after which a score weighs half as much
+     */
+    public void addScore(double score, long timestamp, long halfLifeMs) {
+        double sampleWeight;
+        if (scoreCount == 0 || timestamp >= updatedAt) {
+            // decay the previous scores to the time of the new one
+            double decay = scoreCount == 0 ? 0 : Math.pow(0.5, (double) (timestamp - updatedAt) / halfLifeMs);
+            weight *= decay;
+            m2 *= decay;
+            updatedAt = timestamp;
+            sampleWeight = 1;
+        } else {
+            // older than the previous scores (e.g. a late questionnaire): decay the new one instead
+            sampleWeight = Math.pow(0.5, (double) (updatedAt - timestamp) / halfLifeMs);
+        }
+
+        weight += sampleWeight;
+        double delta = score - mean;
+        mean += sampleWeight / weight * delta;
+        m2 += sampleWeight * delta * (score - mean);
+        scoreCount++;
+    }
+
+    /**
+     * Returns true if at least a focus score was added.
+     */
+    public boolean hasScores() {
+        return scoreCount > 0;
+    }
+
+    /**
+     * Returns the decayed variance of the focus scores, or 0 without scores.
+     */
+    public double getVariance() {
+        return weight > 0 ? Math.max(0, m2 / weight) : 0;
+    }
+
+    public int getCell() {
+        return cell;
+    }
+
+    public void setCell(int cell) {
+        this.cell = cell;
+    }
+
+    public int getSessionCount() {
+        return sessionCount;
+    }
+
+    public void setSessionCount(int sessionCount) {
+        this.sessionCount = sessionCount;
+    }
+
+    public int getScoreCount() {
+        return scoreCount;
+    }
+
+    public void setScoreCount(int scoreCount) {
+        this.scoreCount = scoreCount;
+    }
+
+    public double getWeight() {
+        return weight;
+    }
+
+    public void setWeight(double weight) {
+        this.weight = weight;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public void setMean(double mean) {
+        this.mean = mean;
+    }
+
+    public double getM2() {
+        return m2;
+    }
+
+    public void setM2(double m2) {
+        this.m2 = m2;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,126 @@
+package ch.inf.usi.mindbricks.model.visual;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Model class representing a block of consecutive sensor samples of a study session, stored in
+ * a compact binary form (see {@link ch.inf.usi.mindbricks.database.SensorBlockCodec}).
+ * <p>
+ * Samples are written as one block per batch while the session runs, and the blocks of a
+ * session are merged into a single one when it ends. Old sessions are later downsampled to a
+ * coarser resolution (see {@link #getResolutionMs()}).
+ *
+ * @author Luca Di Bello
+ */
+@Entity(
+        tableName = "session_sensor_blocks",
+        foreignKeys = @ForeignKey(
+                entity = StudySession.class,
+                parentColumns = "id",
+                childColumns = "sessionId",
+                onDelete = ForeignKey.CASCADE
+        ),
+        indices = {@Index({"sessionId", "firstTimestamp"})}
+)
+public class SessionSensorBlock {
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+
+    /**
+     * Id of the session the samples belong to
+     */
+    private long sessionId;
+
+    /**
+     * Timestamps of the first and last sample of the block
+     */
+    private long firstTimestamp;
+    private long lastTimestamp;
+
+    /**
+     * Number of samples in the block
+     */
+    private int sampleCount;
+
+    /**
+     * Interval between the samples if the block was downsampled, 0 for full resolution
+     */
+    @ColumnInfo(defaultValue = "0")
+    private long resolutionMs;
+
+    /**
+     * Encoded samples
+     */
+    @NonNull
+    private byte[] data;
+
+    public SessionSensorBlock(long sessionId, long firstTimestamp, long lastTimestamp, int sampleCount, @NonNull byte[] data) {
+        this.sessionId = sessionId;
+        this.firstTimestamp = firstTimestamp;
+        this.lastTimestamp = lastTimestamp;
+        this.sampleCount = sampleCount;
+        this.data = data;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(long sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    public void setFirstTimestamp(long firstTimestamp) {
+        this.firstTimestamp = firstTimestamp;
+    }
+
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    public void setLastTimestamp(long lastTimestamp) {
+        this.lastTimestamp = lastTimestamp;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public void setSampleCount(int sampleCount) {
+        this.sampleCount = sampleCount;
+    }
+
+    public long getResolutionMs() {
+        return resolutionMs;
+    }
+
+    public void setResolutionMs(long resolutionMs) {
+        this.resolutionMs = resolutionMs;
+    }
+
+    @NonNull
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(@NonNull byte[] data) {
+        this.data = data;
+    }
+}
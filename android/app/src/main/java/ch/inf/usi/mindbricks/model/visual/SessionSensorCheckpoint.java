@@ -0,0 +1,32 @@
+package ch.inf.usi.mindbricks.model.visual;
+
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+
+/**
+ * Sensor statistics of a session still being recorded, written by the sensor service with every
+ * batch of samples.
+ * <p>
+ * Same columns as {@link SessionSensorSummary}, but in a table that no analytics query reads:
+ * writing a checkpoint does not invalidate the analytics of the sessions. The checkpoint becomes
+ * the summary of the session when the session ends, or when the next session starts if the
+ * process died before (see
+ * {@link ch.inf.usi.mindbricks.database.SessionSensorLogDao#promoteCheckpoints(long)}).
+ *
+ * @author Luca Di Bello
+ */
+@Entity(
+        tableName = "session_sensor_checkpoint",
+        foreignKeys = @ForeignKey(
+                entity = StudySession.class,
+                parentColumns = "id",
+                childColumns = "sessionId",
+                onDelete = ForeignKey.CASCADE
+        )
+)
+public class SessionSensorCheckpoint extends SessionSensorSummary {
+
+    public SessionSensorCheckpoint(long sessionId) {
+        super(sessionId);
+    }
+}
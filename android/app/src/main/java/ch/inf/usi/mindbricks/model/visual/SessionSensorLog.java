@@ -1,28 +1,15 @@
 package ch.inf.usi.mindbricks.model.visual;
 
-import androidx.room.Entity;
-import androidx.room.ForeignKey;
-import androidx.room.Index;
-import androidx.room.PrimaryKey;
-
 /**
- * Model class representing a sensor log entry for a study session in the database.
+ * Model class representing a sensor log entry for a study session.
+ * <p>
+ * Samples are not stored one per row: they are packed in {@link SessionSensorBlock}s and
+ * decoded back into this class when read.
  *
  * @author Luca Di Bello
  * @author Marta
  */
-@Entity(
-        tableName = "session_sensor_logs",
-        foreignKeys = @ForeignKey(
-                entity = StudySession.class,
-                parentColumns = "id",
-                childColumns = "sessionId",
-                onDelete = ForeignKey.CASCADE
-        ),
-        indices = {@Index("sessionId")}
-)
 public class SessionSensorLog {
-    @PrimaryKey(autoGenerate = true)
     private long id;
 
     /**
@@ -59,6 +46,12 @@ public class SessionSensorLog {
      */
     private boolean isFaceUp;
 
+    /**
+     * Number of pickups detected in this interval (not stored in the blocks, only folded into
+     * the session summary). Defaults to one if motion was detected.
+     */
+    private int pickupCount;
+
     public SessionSensorLog(long sessionId, long timestamp, float noiseLevel, float lightLevel, boolean motionDetected, boolean isFaceUp) {
         this.sessionId = sessionId;
         this.timestamp = timestamp;
@@ -66,6 +59,7 @@ public class SessionSensorLog {
         this.lightLevel = lightLevel;
         this.motionDetected = motionDetected;
         this.isFaceUp = isFaceUp;
+        this.pickupCount = motionDetected ? 1 : 0;
     }
 
     public long getId() {
@@ -123,4 +117,12 @@ public class SessionSensorLog {
     public void setFaceUp(boolean faceUp) {
         isFaceUp = faceUp;
     }
+
+    public int getPickupCount() {
+        return pickupCount;
+    }
+
+    public void setPickupCount(int pickupCount) {
+        this.pickupCount = pickupCount;
+    }
 }
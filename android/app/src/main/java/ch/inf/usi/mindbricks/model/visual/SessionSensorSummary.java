@@ -0,0 +1,218 @@
+package ch.inf.usi.mindbricks.model.visual;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.PrimaryKey;
+
+/**
+ * Pre-aggregated sensor statistics of a single study session.
+ * <p>
+ * The sensor service keeps the statistics of the active session in memory and writes the row
+ * once when the session ends (other writers fold their samples into it as they insert them), so
+ * that analytics queries can read averages and pickup counts with a single-row lookup instead of
+ * re-aggregating all {@link SessionSensorLog} rows of the session.
+ *
+ * @author Luca Di Bello
+ */
+@Entity(
+        tableName = "session_sensor_summary",
+        foreignKeys = @ForeignKey(
+                entity = StudySession.class,
+                parentColumns = "id",
+                childColumns = "sessionId",
+                onDelete = ForeignKey.CASCADE
+        )
+)
+public class SessionSensorSummary {
+
+    /**
+     * Id of the session this summary belongs to
+     */
+    @PrimaryKey
+    private long sessionId;
+
+    /**
+     * Number of sensor samples aggregated in this summary
+     */
+    @ColumnInfo(defaultValue = "0")
+    private int sampleCount;
+
+    /**
+     * Sum of all noise samples (RMS amplitude)
+     */
+    @ColumnInfo(defaultValue = "0")
+    private double noiseSum;
+
+    /**
+     * Sum of all light samples (0-100)
+     */
+    @ColumnInfo(defaultValue = "0")
+    private double lightSum;
+
+    /**
+     * Population variance of the noise and light samples (0 if not computed)
+     */
+    @ColumnInfo(defaultValue = "0")
+    private double noiseVariance;
+    @ColumnInfo(defaultValue = "0")
+    private double lightVariance;
+
+    /**
+     * Number of pickups detected during the session
+     */
+    @ColumnInfo(defaultValue = "0")
+    private int pickupCount;
+
+    /**
+     * Number of desk bumps and walking periods detected during the session
+     */
+    @ColumnInfo(defaultValue = "0")
+    private int deskBumpCount;
+    @ColumnInfo(defaultValue = "0")
+    private int walkingCount;
+
+    /**
+     * Time the phone spent face down during the session
+     */
+    @ColumnInfo(defaultValue = "0")
+    private long faceDownMs;
+
+    /**
+     * Extremes of the aggregated samples (null until the first sample is recorded)
+     */
+    private Float noiseMin;
+    private Float noiseMax;
+    private Float lightMin;
+    private Float lightMax;
+
+    public SessionSensorSummary(long sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(long sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public void setSampleCount(int sampleCount) {
+        this.sampleCount = sampleCount;
+    }
+
+    public double getNoiseSum() {
+        return noiseSum;
+    }
+
+    public void setNoiseSum(double noiseSum) {
+        this.noiseSum = noiseSum;
+    }
+
+    public double getLightSum() {
+        return lightSum;
+    }
+
+    public void setLightSum(double lightSum) {
+        this.lightSum = lightSum;
+    }
+
+    public int getPickupCount() {
+        return pickupCount;
+    }
+
+    public void setPickupCount(int pickupCount) {
+        this.pickupCount = pickupCount;
+    }
+
+    public double getNoiseVariance() {
+        return noiseVariance;
+    }
+
+    public void setNoiseVariance(double noiseVariance) {
+        this.noiseVariance = noiseVariance;
+    }
+
+    public double getLightVariance() {
+        return lightVariance;
+    }
+
+    public void setLightVariance(double lightVariance) {
+        this.lightVariance = lightVariance;
+    }
+
+    public int getDeskBumpCount() {
+        return deskBumpCount;
+    }
+
+    public void setDeskBumpCount(int deskBumpCount) {
+        this.deskBumpCount = deskBumpCount;
+    }
+
+    public int getWalkingCount() {
+        return walkingCount;
+    }
+
+    public void setWalkingCount(int walkingCount) {
+        this.walkingCount = walkingCount;
+    }
+
+    public long getFaceDownMs() {
+        return faceDownMs;
+    }
+
+    public void setFaceDownMs(long faceDownMs) {
+        this.faceDownMs = faceDownMs;
+    }
+
+    public Float getNoiseMin() {
+        return noiseMin;
+    }
+
+    public void setNoiseMin(Float noiseMin) {
+        this.noiseMin = noiseMin;
+    }
+
+    public Float getNoiseMax() {
+        return noiseMax;
+    }
+
+    public void setNoiseMax(Float noiseMax) {
+        this.noiseMax = noiseMax;
+    }
+
+    public Float getLightMin() {
+        return lightMin;
+    }
+
+    public void setLightMin(Float lightMin) {
+        this.lightMin = lightMin;
+    }
+
+    public Float getLightMax() {
+        return lightMax;
+    }
+
+    public void setLightMax(Float lightMax) {
+        this.lightMax = lightMax;
+    }
+
+    /**
+     * Returns the average noise level of the session, or 0 if no samples were recorded.
+     */
+    public float getAverageNoise() {
+        return sampleCount > 0 ? (float) (noiseSum / sampleCount) : 0;
+    }
+
+    /**
+     * Returns the average light level of the session, or 0 if no samples were recorded.
+     */
+    public float getAverageLight() {
+        return sampleCount > 0 ? (float) (lightSum / sampleCount) : 0;
+    }
+}
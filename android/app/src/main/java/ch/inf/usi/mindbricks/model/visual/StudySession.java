@@ -21,7 +21,10 @@ import ch.inf.usi.mindbricks.model.Tag;
                 childColumns = "tagId",
                 onDelete = ForeignKey.SET_NULL
         ),
-        indices = {@Index("tagId")})
+        indices = {
+                @Index("timestamp"),
+                @Index({"tagId", "timestamp"})
+        })
 public class StudySession {
 
     @PrimaryKey(autoGenerate = true)
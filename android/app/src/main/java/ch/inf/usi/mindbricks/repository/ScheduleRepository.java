@@ -0,0 +1,198 @@
+package ch.inf.usi.mindbricks.repository;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.util.Calendar;
+import java.util.List;
+
+import ch.inf.usi.mindbricks.database.AppDatabase;
+import ch.inf.usi.mindbricks.database.ScheduleCacheDao;
+import ch.inf.usi.mindbricks.model.recommendation.AIRecommendation;
+import ch.inf.usi.mindbricks.model.recommendation.CachedSchedule;
+import ch.inf.usi.mindbricks.model.visual.StudySessionWithStats;
+import ch.inf.usi.mindbricks.util.evaluation.RecommendationEngine;
+import ch.inf.usi.mindbricks.util.evaluation.ScheduleDataSource;
+import ch.inf.usi.mindbricks.util.evaluation.ScheduleInputs;
+import ch.inf.usi.mindbricks.util.evaluation.WeekPlanInputs;
+
+/**
+ * Repository of the adaptive daily schedules.
+ * <p>
+ * Generated schedules are stored with the fingerprint of their inputs (see
+ * {@link ScheduleInputs}): a schedule is only generated again when the calendar, the preferences,
+ * the goal, the recent PAM scores or the productivity model changed. The stored schedule of a
+ * day can also be read without checking its inputs, to show it while the check runs.
+ * <p>
+ * The weekly plan of the following days (see {@link RecommendationEngine#generateWeeklyPlan}) is
+ * not stored: it is planned again from its inputs every time.
+ * <p>
+ * All methods but {@link #generateSchedule} and {@link #generateWeeklyPlan} access the database:
+ * they must be called off the main thread.
+ *
+ * @author Luca Di Bello
+ */
+public class ScheduleRepository {
+
+    private static final String TAG = "ScheduleRepository";
+
+    private final ScheduleCacheDao scheduleCacheDao;
+    private final ScheduleDataSource dataSource;
+    private final Gson gson = new Gson();
+
+    public ScheduleRepository(Context context) {
+        this(AppDatabase.getInstance(context).scheduleCacheDao(), ScheduleDataSource.fromContext(context));
+    }
+
+    public ScheduleRepository(ScheduleCacheDao scheduleCacheDao, ScheduleDataSource dataSource) {
+        this.scheduleCacheDao = scheduleCacheDao;
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Returns the last schedule stored for a day, whether or not its inputs changed since.
+     *
+     * @param targetDate any time of the day
+     * @return the stored schedule, or null if there is none
+     */
+    public AIRecommendation getStoredSchedule(long targetDate) {
+        CachedSchedule cached = scheduleCacheDao.get(startOfDay(targetDate));
+        return cached != null ? decode(cached) : null;
+    }
+
+    /**
+     * Returns the schedule of a day: the stored one if it was generated from the current inputs,
+     * a newly generated (and stored) one otherwise.
+     * <p>
+     * Runs every step on the calling thread. Callers that must keep the database and the CPU work
+     * on different executors call {@link #loadInputs}, {@link #getStoredSchedule(ScheduleInputs)},
+     * {@link #generateSchedule} and {@link #saveSchedule} themselves.
+     *
+     * @param sessions   sessions of the history
+     * @param targetDate any time of the day
+     * @return the schedule of the day
+     */
+    public AIRecommendation getSchedule(List<StudySessionWithStats> sessions, long targetDate) {
+        ScheduleInputs inputs = loadInputs(sessions, targetDate);
+
+        AIRecommendation stored = getStoredSchedule(inputs);
+        if (stored != null) return stored;
+
+        AIRecommendation schedule = generateSchedule(inputs, sessions, targetDate);
+        saveSchedule(inputs, schedule);
+        return schedule;
+    }
+
+    /**
+     * Loads the inputs of the schedule of a day (reads the database).
+     *
+     * @param sessions   sessions of the history
+     * @param targetDate any time of the day
+     * @return the inputs of the schedule
+     */
+    public ScheduleInputs loadInputs(List<StudySessionWithStats> sessions, long targetDate) {
+        return ScheduleInputs.load(dataSource, sessions, targetDate);
+    }
+
+    /**
+     * Returns the schedule stored for the day of the given inputs, if it was generated from the
+     * same inputs (reads the database).
+     *
+     * @param inputs current inputs of the schedule
+     * @return the stored schedule, or null if there is none or its inputs changed
+     */
+    public AIRecommendation getStoredSchedule(ScheduleInputs inputs) {
+        CachedSchedule cached = scheduleCacheDao.get(inputs.getDayStart());
+        if (cached == null || cached.getFingerprint() != inputs.getFingerprint()) return null;
+
+        AIRecommendation schedule = decode(cached);
+        if (schedule != null) Log.d(TAG, "Inputs unchanged, using the stored schedule");
+        return schedule;
+    }
+
+    /**
+     * Generates the schedule of a day from its inputs. Does not access the database: it can run
+     * on the compute pool.
+     *
+     * @param inputs     inputs of the schedule, from {@link #loadInputs}
+     * @param sessions   sessions of the history
+     * @param targetDate any time of the day
+     * @return the generated schedule
+     */
+    public AIRecommendation generateSchedule(ScheduleInputs inputs,
+                                             List<StudySessionWithStats> sessions,
+                                             long targetDate) {
+        return new RecommendationEngine(inputs).generateAdaptiveSchedule(sessions, targetDate);
+    }
+
+    /**
+     * Stores a schedule generated from the given inputs (writes the database).
+     *
+     * @param inputs   inputs the schedule was generated from
+     * @param schedule generated schedule
+     */
+    public void saveSchedule(ScheduleInputs inputs, AIRecommendation schedule) {
+        scheduleCacheDao.save(new CachedSchedule(
+                inputs.getDayStart(),
+                inputs.getFingerprint(),
+                System.currentTimeMillis(),
+                gson.toJson(schedule)
+        ));
+    }
+
+    /**
+     * Loads the inputs of the weekly plan of consecutive days (reads the database).
+     *
+     * @param startDate any time of the first day
+     * @param days      number of days to plan
+     * @return the inputs of the plan
+     */
+    public WeekPlanInputs loadWeekInputs(long startDate, int days) {
+        return WeekPlanInputs.load(dataSource, startDate, days);
+    }
+
+    /**
+     * Plans consecutive days from their inputs. Does not access the database: it can run on the
+     * compute pool.
+     *
+     * @param inputs   inputs of the plan, from {@link #loadWeekInputs}
+     * @param sessions sessions of the history
+     * @return one schedule per day
+     */
+    public List<AIRecommendation> generateWeeklyPlan(WeekPlanInputs inputs,
+                                                     List<StudySessionWithStats> sessions) {
+        return new RecommendationEngine(inputs)
+                .generateWeeklyPlan(sessions, inputs.getStartDate(), inputs.getDays());
+    }
+
+    /**
+     * Deletes the schedules of the days before the one containing the given time.
+     *
+     * @return number of deleted schedules
+     */
+    public int deleteSchedulesBefore(long targetDate) {
+        return scheduleCacheDao.deleteBefore(startOfDay(targetDate));
+    }
+
+    private AIRecommendation decode(CachedSchedule cached) {
+        try {
+            return gson.fromJson(cached.getSchedule(), AIRecommendation.class);
+        } catch (JsonParseException e) {
+            Log.w(TAG, "Discarding unreadable stored schedule", e);
+            return null;
+        }
+    }
+
+    private static long startOfDay(long timestamp) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(timestamp);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        return cal.getTimeInMillis();
+    }
+}
@@ -0,0 +1,128 @@
+package ch.inf.usi.mindbricks.repository;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import ch.inf.usi.mindbricks.database.StudySessionDao;
+import ch.inf.usi.mindbricks.model.visual.StudySessionWithStats;
+
+/**
+ * Paged source of the session history of a time range, newest first.
+ * <p>
+ * Pages are loaded with a keyset query ({@link StudySessionDao#getSessionsPage}): the cursor is the
+ * (timestamp, id) pair of the last loaded session, so every page costs the same regardless of how
+ * deep the user scrolled, and sessions inserted in the meantime do not shift the pages.
+ * Older pages are only read from the database when {@link #loadNextPage} is called.
+ * <p>
+ * Not thread safe: all methods must be called from the main thread, callbacks are delivered on it.
+ *
+ * @author Luca Di Bello
+ */
+public class SessionHistoryPagingSource {
+    private static final String TAG = "SessionHistoryPaging";
+
+    private final StudySessionDao dao;
+    private final Executor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final long startTime;
+    private final long endTime;
+    private final int pageSize;
+
+    // cursor: last loaded session
+    private long cursorTimestamp = Long.MAX_VALUE;
+    private long cursorId = Long.MAX_VALUE;
+
+    private boolean loading = false;
+    private boolean endReached = false;
+    private boolean invalidated = false;
+
+    public interface PageCallback {
+        /**
+         * @param page sessions of the loaded page (empty if there are no more sessions)
+         */
+        void onPageLoaded(List<StudySessionWithStats> page);
+    }
+
+    SessionHistoryPagingSource(StudySessionDao dao, Executor executor, long startTime, long endTime, int pageSize) {
+        this.dao = dao;
+        this.executor = executor;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Continues the pagination after sessions that were already loaded elsewhere (e.g. the first page
+     * taken from the list used by the charts).
+     *
+     * @param loaded  loaded sessions, newest first
+     * @param hasMore whether older sessions may exist
+     */
+    public void startAfter(List<StudySessionWithStats> loaded, boolean hasMore) {
+        if (!loaded.isEmpty()) {
+            StudySessionWithStats last = loaded.get(loaded.size() - 1);
+            cursorTimestamp = last.getTimestamp();
+            cursorId = last.getId();
+        }
+        endReached = !hasMore;
+    }
+
+    /**
+     * Loads the page following the cursor. Ignored if a page is already being loaded, if the last
+     * page was reached or if the source was invalidated.
+     *
+     * @param callback called on the main thread with the loaded page
+     * @return true if a page is being loaded
+     */
+    public boolean loadNextPage(PageCallback callback) {
+        if (loading || endReached || invalidated) return false;
+        loading = true;
+
+        final long beforeTimestamp = cursorTimestamp;
+        final long beforeId = cursorId;
+        executor.execute(() -> {
+            List<StudySessionWithStats> page;
+            try {
+                page = dao.getSessionsPage(startTime, endTime, beforeTimestamp, beforeId, pageSize);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to load history page", e);
+                page = new ArrayList<>();
+            }
+
+            List<StudySessionWithStats> result = page;
+            mainHandler.post(() -> {
+                loading = false;
+                if (invalidated) return;
+
+                if (!result.isEmpty()) {
+                    StudySessionWithStats last = result.get(result.size() - 1);
+                    cursorTimestamp = last.getTimestamp();
+                    cursorId = last.getId();
+                }
+                endReached = result.size() < pageSize;
+                callback.onPageLoaded(result);
+            });
+        });
+        return true;
+    }
+
+    /**
+     * Returns whether older sessions may still be loaded.
+     */
+    public boolean hasMore() {
+        return !endReached && !invalidated;
+    }
+
+    /**
+     * Stops the source: pages being loaded are dropped and no new page will be loaded.
+     */
+    public void invalidate() {
+        invalidated = true;
+    }
+}
@@ -10,33 +10,76 @@ import androidx.lifecycle.Transformations;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 import ch.inf.usi.mindbricks.database.AppDatabase;
+import ch.inf.usi.mindbricks.database.ProductivityModelDao;
+import ch.inf.usi.mindbricks.database.SensorBlockCodec;
 import ch.inf.usi.mindbricks.database.SessionSensorLogDao;
 import ch.inf.usi.mindbricks.database.StudySessionDao;
 import ch.inf.usi.mindbricks.model.visual.SessionSensorLog;
+import ch.inf.usi.mindbricks.model.visual.SessionSensorSummary;
 import ch.inf.usi.mindbricks.model.visual.StudySession;
 import ch.inf.usi.mindbricks.model.visual.StudySessionWithStats;
+import ch.inf.usi.mindbricks.util.AppExecutor;
 
 /**
  * Repository class for managing study sessions and their associated data.
+ * <p>
+ * Every change of a session goes through the repository, on the database executor of the app
+ * ({@link AppExecutor}), and is delivered to the registered {@link SessionChangeListener}s with
+ * the values of the session before and after the change.
  *
  * @author Luca Di Bello
  * @author Marta Šafářová
  */
 public class StudySessionRepository {
+    private static final String TAG = "StudySessionRepository";
+
+    private static final List<SessionChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    private final AppDatabase db;
     private final StudySessionDao studySessionDao;
     private final SessionSensorLogDao sessionSensorLogDao;
+    private final ProductivityModelDao productivityModelDao;
     private final Executor dbExecutor;
 
 
     public StudySessionRepository(Context context) {
-        AppDatabase db = AppDatabase.getInstance(context);
+        db = AppDatabase.getInstance(context);
         studySessionDao = db.studySessionDao();
         sessionSensorLogDao = db.sessionSensorLogDao();
-        dbExecutor = Executors.newSingleThreadExecutor();
+        productivityModelDao = db.productivityModelDao();
+        dbExecutor = AppExecutor.getInstance();
+    }
+
+    /**
+     * Registers a listener of the changes of the sessions.
+     */
+    public static void addSessionChangeListener(SessionChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    public static void removeSessionChangeListener(SessionChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * Tells the listeners that many sessions changed at once, e.g. after a bulk write made
+     * outside the repository.
+     */
+    public static void notifySessionsReset() {
+        for (SessionChangeListener listener : changeListeners) {
+            listener.onSessionsReset();
+        }
+    }
+
+    private static void notifySessionChanged(StudySessionWithStats before, StudySessionWithStats after) {
+        if (before == null && after == null) return;
+        for (SessionChangeListener listener : changeListeners) {
+            listener.onSessionChanged(before, after);
+        }
     }
 
     public LiveData<List<StudySessionWithStats>> getAllSessions(int limit) {
@@ -69,13 +112,61 @@ public class StudySessionRepository {
         return studySessionDao.getSessionsInRangeSync(startTime, endTime);
     }
 
+    /**
+     * Loads a page of the sessions between the given timestamps, newest first (see
+     * {@link StudySessionDao#getSessionsPage}). Must be called on the database executor.
+     *
+     * @param startTime       first timestamp (inclusive)
+     * @param endTime         last timestamp (inclusive)
+     * @param beforeTimestamp timestamp of the last session of the previous page
+     * @param beforeId        id of the last session of the previous page
+     * @param limit           maximum number of sessions
+     * @return the sessions of the page
+     */
+    public List<StudySessionWithStats> getSessionsPageSync(long startTime, long endTime,
+                                                           long beforeTimestamp, long beforeId, int limit) {
+        return studySessionDao.getSessionsPage(startTime, endTime, beforeTimestamp, beforeId, limit);
+    }
+
+    /**
+     * Creates a paged source of the sessions between the given timestamps, newest first.
+     *
+     * @param startTime first timestamp (inclusive)
+     * @param endTime   last timestamp (inclusive)
+     * @param pageSize  number of sessions per page
+     * @return the paging source
+     */
+    public SessionHistoryPagingSource getSessionHistory(long startTime, long endTime, int pageSize) {
+        return new SessionHistoryPagingSource(studySessionDao, dbExecutor, startTime, endTime, pageSize);
+    }
+
+    /**
+     * Loads the per-day totals of the sessions between the given timestamps.
+     *
+     * @param startTime first timestamp (inclusive)
+     * @param endTime   last timestamp (inclusive)
+     * @param callback  called on the main thread with the totals, oldest day first
+     */
+    public void getDailyTotals(long startTime, long endTime, DailyTotalsCallback callback) {
+        dbExecutor.execute(() -> {
+            List<StudySessionDao.DailyTotals> totals = studySessionDao.getDailyTotals(startTime, endTime);
+            new android.os.Handler(android.os.Looper.getMainLooper()).post(() -> {
+                callback.onLoaded(totals);
+            });
+        });
+    }
+
     public LiveData<List<SessionSensorLog>> getSensorLogsForSession(long sessionId) {
-        return sessionSensorLogDao.getLogsForSession(sessionId);
+        // decoding a session block is cheap enough for the main thread
+        return Transformations.map(sessionSensorLogDao.observeBlocksForSession(sessionId),
+                SensorBlockCodec::decodeAll);
     }
 
     public void insertSession(StudySession session, InsertCallback callback) {
         dbExecutor.execute(() -> {
             long sessionId = studySessionDao.insert(session);
+            productivityModelDao.recordSession(session.getTimestamp(), session.getFocusScore());
+            notifySessionChanged(null, studySessionDao.getSessionWithStats(sessionId));
 
             // If callback provided, return the ID on main thread
             if (callback != null) {
@@ -89,7 +180,9 @@ public class StudySessionRepository {
 
     public void updateSession(StudySession session, Runnable callback) {
         dbExecutor.execute(() -> {
+            StudySessionWithStats before = studySessionDao.getSessionWithStats(session.getId());
             studySessionDao.update(session);
+            notifySessionChanged(before, studySessionDao.getSessionWithStats(session.getId()));
 
             if (callback != null) {
                 new android.os.Handler(android.os.Looper.getMainLooper()).post(callback);
@@ -99,7 +192,13 @@ public class StudySessionRepository {
 
     public void deleteSession(StudySession session, Runnable callback) {
         dbExecutor.execute(() -> {
-            studySessionDao.delete(session);
+            StudySessionWithStats before = studySessionDao.getSessionWithStats(session.getId());
+            db.runInTransaction(() -> {
+                studySessionDao.delete(session);
+                // rebuild the cell of the productivity model without the session
+                productivityModelDao.recomputeCell(session.getTimestamp());
+            });
+            notifySessionChanged(before, null);
 
             if (callback != null) {
                 new android.os.Handler(android.os.Looper.getMainLooper()).post(callback);
@@ -107,9 +206,77 @@ public class StudySessionRepository {
         });
     }
 
+    /**
+     * Sets the focus score of a session, e.g. once its questionnaire is answered.
+     *
+     * @param sessionId  id of the session
+     * @param focusScore new focus score
+     * @param callback   called on the main thread once saved (may be null)
+     */
+    public void updateFocusScore(long sessionId, float focusScore, Runnable callback) {
+        dbExecutor.execute(() -> {
+            StudySessionWithStats before = studySessionDao.getSessionWithStats(sessionId);
+            if (before == null) {
+                Log.w(TAG, "Cannot set the focus score of missing session " + sessionId);
+                return;
+            }
+
+            db.runInTransaction(() -> {
+                studySessionDao.updateFocusScore(sessionId, focusScore);
+                // keep the productivity model of the recommendations up to date: the new score
+                // replaces the previous one (if the session was already rated)
+                productivityModelDao.recomputeCell(before.getTimestamp());
+            });
+            notifySessionChanged(before, studySessionDao.getSessionWithStats(sessionId));
+
+            if (callback != null) {
+                new android.os.Handler(android.os.Looper.getMainLooper()).post(callback);
+            }
+        });
+    }
+
+    /**
+     * Sets the actual duration of a session once it is completed.
+     *
+     * @param sessionId       id of the session
+     * @param durationMinutes duration in minutes
+     * @param callback        called on the main thread once saved (may be null)
+     */
+    public void updateDuration(long sessionId, int durationMinutes, Runnable callback) {
+        dbExecutor.execute(() -> {
+            StudySessionWithStats before = studySessionDao.getSessionWithStats(sessionId);
+            studySessionDao.updateDuration(sessionId, durationMinutes);
+            notifySessionChanged(before, studySessionDao.getSessionWithStats(sessionId));
+
+            if (callback != null) {
+                new android.os.Handler(android.os.Looper.getMainLooper()).post(callback);
+            }
+        });
+    }
+
+    /**
+     * Writes the final sensor summary of a session (see {@link SessionSensorLogDao#finishSession}).
+     * The summary gives the average noise and light level of the session.
+     *
+     * @param summary summary of the session
+     */
+    public void finishSensorSession(SessionSensorSummary summary) {
+        dbExecutor.execute(() -> {
+            try {
+                StudySessionWithStats before = studySessionDao.getSessionWithStats(summary.getSessionId());
+                sessionSensorLogDao.finishSession(summary);
+                notifySessionChanged(before, studySessionDao.getSessionWithStats(summary.getSessionId()));
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to finish sensor logs of session " + summary.getSessionId(), e);
+            }
+        });
+    }
+
     public void deleteAllSessions(Runnable callback) {
         dbExecutor.execute(() -> {
             studySessionDao.deleteAll();
+            productivityModelDao.clear();
+            notifySessionsReset();
 
             if (callback != null) {
                 new android.os.Handler(android.os.Looper.getMainLooper()).post(callback);
@@ -137,4 +304,30 @@ public class StudySessionRepository {
     public interface InsertCallback {
         void onInserted(long sessionId);
     }
+
+    public interface DailyTotalsCallback {
+        void onLoaded(List<StudySessionDao.DailyTotals> totals);
+    }
+
+    /**
+     * Listener of the changes of the sessions, e.g. to keep aggregates of the sessions up to date
+     * without reading them again.
+     */
+    public interface SessionChangeListener {
+
+        /**
+         * Called when a single session changed, on the database executor right after the change
+         * is committed: the changes are delivered in order with the other tasks of the executor.
+         *
+         * @param before values of the session before the change, null if it was inserted
+         * @param after  values of the session after the change, null if it was deleted
+         */
+        void onSessionChanged(StudySessionWithStats before, StudySessionWithStats after);
+
+        /**
+         * Called when many sessions changed at once: the aggregates must be rebuilt. May be
+         * called on any thread.
+         */
+        void onSessionsReset();
+    }
 }
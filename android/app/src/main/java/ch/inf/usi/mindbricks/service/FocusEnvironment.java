@@ -0,0 +1,118 @@
+package ch.inf.usi.mindbricks.service;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * Smoothed state of the study environment during a session, published by
+ * {@link FocusSignalStream}. Immutable.
+ *
+ * @author Luca Di Bello
+ */
+public final class FocusEnvironment {
+
+    /**
+     * Noise level (dBFS) above which the environment is considered noisy.
+     */
+    public static final double NOISY_DB = -35.0;
+
+    /**
+     * Light level (0-100) below which the environment is considered dark.
+     */
+    public static final float DARK_LIGHT_LEVEL = 10f;
+
+    /**
+     * Pickups per hour above which the user is considered distracted.
+     */
+    public static final double DISTRACTED_PICKUPS_PER_HOUR = 12.0;
+
+    /**
+     * Main condition of the environment, in order of priority.
+     */
+    public enum Condition {
+        GOOD,
+        DISTRACTED,
+        NOISY,
+        DARK
+    }
+
+    private final long timestamp;
+    private final float noiseLevel;
+    private final double noiseDb;
+    private final float lightLevel;
+    private final double pickupsPerHour;
+    private final boolean faceUp;
+    private final int sampleCount;
+
+    /**
+     * @param timestamp      time of the last reading
+     * @param noiseLevel     smoothed noise RMS amplitude
+     * @param lightLevel     smoothed light level (0-100)
+     * @param pickupsPerHour smoothed rate of pickups
+     * @param faceUp         orientation of the phone in the last reading
+     * @param sampleCount    number of readings since the session started
+     */
+    public FocusEnvironment(long timestamp, float noiseLevel, float lightLevel, double pickupsPerHour,
+                            boolean faceUp, int sampleCount) {
+        this.timestamp = timestamp;
+        this.noiseLevel = noiseLevel;
+        this.noiseDb = 20 * Math.log10(Math.max(noiseLevel, 1f) / 32768.0);
+        this.lightLevel = lightLevel;
+        this.pickupsPerHour = pickupsPerHour;
+        this.faceUp = faceUp;
+        this.sampleCount = sampleCount;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public float getNoiseLevel() {
+        return noiseLevel;
+    }
+
+    /**
+     * Returns the smoothed noise level in dB relative to the full scale of the microphone
+     * (0 = loudest, about -90 = silence).
+     */
+    public double getNoiseDb() {
+        return noiseDb;
+    }
+
+    public float getLightLevel() {
+        return lightLevel;
+    }
+
+    public double getPickupsPerHour() {
+        return pickupsPerHour;
+    }
+
+    public boolean isFaceUp() {
+        return faceUp;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Returns the most relevant issue of the environment (pickups first, then noise, then light),
+     * or {@link Condition#GOOD}.
+     */
+    public Condition getCondition() {
+        if (pickupsPerHour >= DISTRACTED_PICKUPS_PER_HOUR) return Condition.DISTRACTED;
+        if (noiseDb >= NOISY_DB) return Condition.NOISY;
+        // light is only meaningful when the sensor is not covered
+        if (faceUp && lightLevel < DARK_LIGHT_LEVEL) return Condition.DARK;
+        return Condition.GOOD;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "FocusEnvironment{noise=%.1f dB, light=%.1f, pickups=%.1f/h, faceUp=%b, samples=%d, %s}",
+                noiseDb, lightLevel, pickupsPerHour, faceUp, sampleCount, getCondition());
+    }
+}
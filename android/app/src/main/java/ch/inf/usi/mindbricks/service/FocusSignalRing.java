@@ -0,0 +1,134 @@
+package ch.inf.usi.mindbricks.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded single-producer / single-consumer queue of sensor readings, without locks.
+ * <p>
+ * The readings are stored in preallocated arrays of primitives: offering and polling do not
+ * allocate. The producer only writes the tail index and the consumer only writes the head index;
+ * each index is published with a release store ({@link AtomicLong#lazySet}) after the slot was
+ * written (or read), so the other side never sees a half-written slot.
+ * <p>
+ * Exactly one thread may call {@link #offer} and exactly one (possibly different) thread may call
+ * {@link #poll}. When the queue is full, new readings are dropped (and counted): the consumer is
+ * only interested in a smoothed signal, so losing a reading under pressure is harmless.
+ *
+ * @author Luca Di Bello
+ */
+public class FocusSignalRing {
+
+    /**
+     * Reading of the sensors. Instances are meant to be reused by the consumer.
+     */
+    public static class Reading {
+        public long timestamp;
+        public float noise;
+        public float light;
+        public boolean faceUp;
+        public boolean motion;
+    }
+
+    private final int mask;
+    private final long[] timestamps;
+    private final float[] noise;
+    private final float[] light;
+    private final boolean[] faceUp;
+    private final boolean[] motion;
+
+    /**
+     * Index of the next slot to read (written by the consumer only).
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Index of the next slot to write (written by the producer only).
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Producer side cache of {@link #head}, refreshed only when the queue looks full.
+     */
+    private long cachedHead = 0;
+
+    private volatile long dropped = 0;
+
+    /**
+     * @param capacity number of readings kept, rounded up to a power of two
+     */
+    public FocusSignalRing(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+
+        mask = size - 1;
+        timestamps = new long[size];
+        noise = new float[size];
+        light = new float[size];
+        faceUp = new boolean[size];
+        motion = new boolean[size];
+    }
+
+    /**
+     * Adds a reading (producer thread only).
+     *
+     * @return false if the queue was full and the reading was dropped
+     */
+    public boolean offer(long timestamp, float noiseLevel, float lightLevel, boolean isFaceUp, boolean isMotion) {
+        long t = tail.get();
+        if (t - cachedHead > mask) {
+            cachedHead = head.get();
+            if (t - cachedHead > mask) {
+                dropped++; // single writer
+                return false;
+            }
+        }
+
+        int index = (int) (t & mask);
+        timestamps[index] = timestamp;
+        noise[index] = noiseLevel;
+        light[index] = lightLevel;
+        faceUp[index] = isFaceUp;
+        motion[index] = isMotion;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Removes the oldest reading (consumer thread only).
+     *
+     * @param out reading to overwrite
+     * @return false if the queue was empty
+     */
+    public boolean poll(Reading out) {
+        long h = head.get();
+        if (h >= tail.get()) return false;
+
+        int index = (int) (h & mask);
+        out.timestamp = timestamps[index];
+        out.noise = noise[index];
+        out.light = light[index];
+        out.faceUp = faceUp[index];
+        out.motion = motion[index];
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    /**
+     * Returns the number of readings waiting (approximate while the other thread is running).
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Returns the number of readings dropped because the queue was full.
+     */
+    public long getDroppedCount() {
+        return dropped;
+    }
+}
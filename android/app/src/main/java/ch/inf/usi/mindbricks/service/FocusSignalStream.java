@@ -0,0 +1,184 @@
+package ch.inf.usi.mindbricks.service;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Live stream of the study environment during a session, for the UI.
+ * <p>
+ * The {@link SensorService} publishes every observation of the sensors from its sampling thread
+ * into a {@link FocusSignalRing}. The readings are drained on the main thread, at most every
+ * {@value #MIN_PUBLISH_INTERVAL_MS} ms, and smoothed with exponentially weighted moving averages
+ * (noise, light and pickup rate); the result is published as a {@link FocusEnvironment}.
+ * No database access is involved. The value is null when no session is running.
+ * <p>
+ * The averages use a time constant instead of a fixed weight, so that irregular intervals between
+ * observations (e.g. a late microphone window) are weighted correctly: a reading arriving after
+ * {@code dt} has weight {@code 1 - exp(-dt / tau)}.
+ *
+ * @author Luca Di Bello
+ */
+public class FocusSignalStream {
+
+    /**
+     * Shortest interval between two published values.
+     */
+    static final long MIN_PUBLISH_INTERVAL_MS = 250;
+
+    /**
+     * Time constant of the noise and light averages.
+     */
+    static final long LEVEL_TAU_MS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Time constant of the pickup rate.
+     */
+    static final long PICKUP_TAU_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final int RING_CAPACITY = 64;
+
+    /**
+     * Singleton instance for this class.
+     */
+    private static FocusSignalStream instance;
+
+    private final FocusSignalRing ring = new FocusSignalRing(RING_CAPACITY);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final MutableLiveData<FocusEnvironment> environment = new MutableLiveData<>(null);
+
+    /**
+     * Whether a drain is already posted to the main thread (set by the producer, cleared by the
+     * consumer).
+     */
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
+    /**
+     * Uptime of the last published value (written by the consumer, read by the producer to delay
+     * the next drain).
+     */
+    private volatile long lastPublish = 0;
+
+    // consumer state (main thread only)
+    private final FocusSignalRing.Reading reading = new FocusSignalRing.Reading();
+    private boolean active = false;
+    private int sampleCount;
+    private long lastTimestamp;
+    private double noiseAverage;
+    private double lightAverage;
+    private double pickupsPerMs;
+    private boolean lastFaceUp;
+
+    private FocusSignalStream() {
+    }
+
+    public static synchronized FocusSignalStream getInstance() {
+        if (instance == null) {
+            instance = new FocusSignalStream();
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the smoothed environment of the running session (null if none).
+     */
+    public LiveData<FocusEnvironment> getEnvironment() {
+        return environment;
+    }
+
+    /**
+     * Starts a new stream (any thread): the averages restart from the next reading.
+     */
+    public void start() {
+        mainHandler.post(() -> {
+            discardPending();
+            sampleCount = 0;
+            active = true;
+        });
+    }
+
+    /**
+     * Ends the stream (any thread): the published value becomes null.
+     */
+    public void stop() {
+        mainHandler.post(() -> {
+            active = false;
+            discardPending();
+            environment.setValue(null);
+        });
+    }
+
+    /**
+     * Publishes an observation of the sensors. Must always be called from the same thread.
+     *
+     * @param timestamp time of the observation (ms)
+     * @param noise     noise RMS amplitude
+     * @param light     light level (0-100)
+     * @param faceUp    orientation of the phone
+     * @param motion    whether the phone was picked up since the previous observation
+     */
+    public void publish(long timestamp, float noise, float light, boolean faceUp, boolean motion) {
+        ring.offer(timestamp, noise, light, faceUp, motion);
+        if (drainScheduled.compareAndSet(false, true)) {
+            long wait = lastPublish + MIN_PUBLISH_INTERVAL_MS - SystemClock.uptimeMillis();
+            mainHandler.postDelayed(this::drain, Math.max(0, wait));
+        }
+    }
+
+    private void drain() {
+        // cleared before polling: a reading offered from now on schedules a new drain
+        drainScheduled.set(false);
+        if (!active) {
+            discardPending();
+            return;
+        }
+
+        boolean updated = false;
+        while (ring.poll(reading)) {
+            update(reading);
+            updated = true;
+        }
+        if (!updated) return;
+
+        lastPublish = SystemClock.uptimeMillis();
+        environment.setValue(new FocusEnvironment(lastTimestamp, (float) noiseAverage,
+                (float) lightAverage, pickupsPerMs * TimeUnit.HOURS.toMillis(1), lastFaceUp, sampleCount));
+    }
+
+    private void update(FocusSignalRing.Reading r) {
+        if (sampleCount == 0) {
+            noiseAverage = r.noise;
+            lightAverage = r.light;
+            pickupsPerMs = 0;
+        } else {
+            long dt = Math.max(1, r.timestamp - lastTimestamp);
+            noiseAverage += weight(dt, LEVEL_TAU_MS) * (r.noise - noiseAverage);
+            lightAverage += weight(dt, LEVEL_TAU_MS) * (r.light - lightAverage);
+            // rate of the interval: one pickup (at most) over dt
+            double rate = r.motion ? 1.0 / dt : 0.0;
+            pickupsPerMs += weight(dt, PICKUP_TAU_MS) * (rate - pickupsPerMs);
+        }
+        lastTimestamp = r.timestamp;
+        lastFaceUp = r.faceUp;
+        sampleCount++;
+    }
+
+    private void discardPending() {
+        while (ring.poll(reading)) {
+            // drop
+        }
+    }
+
+    /**
+     * Weight of a reading arriving {@code dt} after the previous one, for time constant {@code tau}.
+     */
+    static double weight(long dt, long tau) {
+        return 1 - Math.exp(-(double) dt / tau);
+    }
+}
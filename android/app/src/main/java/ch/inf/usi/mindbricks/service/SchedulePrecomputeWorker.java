@@ -0,0 +1,124 @@
+package ch.inf.usi.mindbricks.service;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import ch.inf.usi.mindbricks.database.AppDatabase;
+import ch.inf.usi.mindbricks.model.visual.StudySessionWithStats;
+import ch.inf.usi.mindbricks.repository.ScheduleRepository;
+
+/**
+ * Nightly background job generating the adaptive schedule of the coming day, so that the
+ * analytics screen finds it in the {@link ScheduleRepository} instead of computing it when opened.
+ * <p>
+ * The job runs in the early morning: the schedule of a day is generated as soon as the day
+ * starts, when its inputs (calendar, goal, productivity model) are known and before the user is
+ * likely to open the app. If it runs later (e.g. it was delayed by its constraints), it prepares
+ * the schedule of the next day from the afternoon on. Schedules of the past days are deleted.
+ *
+ * @author Luca Di Bello
+ */
+public class SchedulePrecomputeWorker extends Worker {
+
+    private static final String TAG = "SchedulePrecomputeWorker";
+
+    private static final String UNIQUE_WORK_NAME = "schedule_precompute";
+
+    /**
+     * Hour of the day the job is scheduled at
+     */
+    private static final int RUN_HOUR = 3;
+
+    /**
+     * From this hour on, the job prepares the schedule of the next day
+     */
+    private static final int NEXT_DAY_FROM_HOUR = 12;
+
+    public SchedulePrecomputeWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedules the job once a day, in the early morning. An already scheduled job is kept (so
+     * its timing does not move every time the app starts).
+     */
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiresBatteryNotLow(true)
+                .build();
+
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(
+                SchedulePrecomputeWorker.class, 1, TimeUnit.DAYS)
+                .setConstraints(constraints)
+                .setInitialDelay(getDelayUntilNextRun(System.currentTimeMillis()), TimeUnit.MILLISECONDS)
+                .build();
+
+        WorkManager.getInstance(context.getApplicationContext())
+                .enqueueUniquePeriodicWork(UNIQUE_WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        long now = System.currentTimeMillis();
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(now);
+        boolean nextDay = cal.get(Calendar.HOUR_OF_DAY) >= NEXT_DAY_FROM_HOUR;
+        if (nextDay) cal.add(Calendar.DAY_OF_MONTH, 1);
+        long targetDate = cal.getTimeInMillis();
+
+        try {
+            // The schedule reads the stored productivity model: the sessions are only needed for
+            // the topic of the day, and the next day has no sessions yet
+            List<StudySessionWithStats> sessions = nextDay
+                    ? Collections.emptyList()
+                    : AppDatabase.getInstance(getApplicationContext())
+                            .studySessionDao()
+                            .getSessionsSince(startOfDay(now));
+
+            ScheduleRepository repository = new ScheduleRepository(getApplicationContext());
+            int deleted = repository.deleteSchedulesBefore(now);
+            repository.getSchedule(sessions, targetDate);
+
+            Log.i(TAG, "Schedule of " + cal.getTime() + " ready (" + deleted + " old schedules deleted)");
+            return Result.success();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to precompute the schedule", e);
+            return Result.retry();
+        }
+    }
+
+    private static long getDelayUntilNextRun(long now) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(now);
+        cal.set(Calendar.HOUR_OF_DAY, RUN_HOUR);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        if (cal.getTimeInMillis() <= now) cal.add(Calendar.DAY_OF_MONTH, 1);
+        return cal.getTimeInMillis() - now;
+    }
+
+    private static long startOfDay(long timestamp) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(timestamp);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        return cal.getTimeInMillis();
+    }
+}
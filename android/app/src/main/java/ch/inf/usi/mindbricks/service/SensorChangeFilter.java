@@ -0,0 +1,158 @@
+package ch.inf.usi.mindbricks.service;
+
+import ch.inf.usi.mindbricks.model.visual.SessionSensorLog;
+
+/**
+ * Change detection stage of the sensor pipeline.
+ * <p>
+ * Every observation of the sensors (noise, light, orientation, motion) is passed to
+ * {@link #observe}, which decides whether it has to be stored as a row of the sensor log:
+ * - a motion event or an orientation change is always stored
+ * - noise and light are stored when they moved out of a deadband around the last stored values
+ * - a heartbeat row is stored when nothing was stored for {@code maxSilenceMs}, so charts never
+ *   show long gaps
+ * <p>
+ * Observations that are not stored are still handed to the {@link SampleSink}, so that the
+ * per-session summary (averages, pickups) keeps counting them: skipping rows does not change the
+ * session statistics. Rows of a stationary session (quiet room, phone on the desk) are reduced
+ * to the heartbeat.
+ * <p>
+ * Not thread safe: meant to be used from the sampling thread only.
+ *
+ * @author Luca Di Bello
+ */
+public class SensorChangeFilter {
+
+    /**
+     * Default change of the noise level (RMS ratio, in dB) needed to store a new row.
+     */
+    public static final double DEFAULT_NOISE_DEADBAND_DB = 3.0;
+
+    /**
+     * Default change of the light level (0-100 scale) needed to store a new row.
+     */
+    public static final float DEFAULT_LIGHT_DEADBAND = 5f;
+
+    /**
+     * Default longest time without a stored row.
+     */
+    public static final long DEFAULT_MAX_SILENCE_MS = 60 * 1000;
+
+    /**
+     * RMS amplitude below which the noise is considered silence (changes between such levels
+     * are not relevant, and the dB ratio would be dominated by the microphone noise floor).
+     */
+    private static final float NOISE_FLOOR_RMS = 10f;
+
+    /**
+     * Destination of the observations.
+     */
+    public interface SampleSink {
+        /**
+         * @param sample observation
+         * @param store  true if the observation must be stored as a row, false if it only has to
+         *               be counted in the session summary
+         */
+        void accept(SessionSensorLog sample, boolean store);
+    }
+
+    private final double noiseDeadbandDb;
+    private final float lightDeadband;
+    private final long maxSilenceMs;
+    private final SampleSink sink;
+
+    private long sessionId = -1;
+
+    // last stored row
+    private boolean hasStored = false;
+    private long storedTimestamp;
+    private float storedNoise;
+    private float storedLight;
+    private boolean storedFaceUp;
+
+    // statistics
+    private long observed = 0;
+    private long stored = 0;
+
+    public SensorChangeFilter(SampleSink sink) {
+        this(DEFAULT_NOISE_DEADBAND_DB, DEFAULT_LIGHT_DEADBAND, DEFAULT_MAX_SILENCE_MS, sink);
+    }
+
+    /**
+     * @param noiseDeadbandDb change of the noise level (dB) needed to store a new row
+     * @param lightDeadband   change of the light level (0-100) needed to store a new row
+     * @param maxSilenceMs    longest time without a stored row
+     * @param sink            destination of the observations
+     */
+    public SensorChangeFilter(double noiseDeadbandDb, float lightDeadband, long maxSilenceMs, SampleSink sink) {
+        this.noiseDeadbandDb = noiseDeadbandDb;
+        this.lightDeadband = lightDeadband;
+        this.maxSilenceMs = maxSilenceMs;
+        this.sink = sink;
+    }
+
+    /**
+     * Starts filtering the observations of a new session: its first observation is always stored.
+     */
+    public void reset(long sessionId) {
+        this.sessionId = sessionId;
+        hasStored = false;
+        observed = 0;
+        stored = 0;
+    }
+
+    /**
+     * Passes an observation to the sink, marking it to be stored if it changed meaningfully.
+     *
+     * @return true if the observation is stored as a row
+     */
+    public boolean observe(long timestamp, float noise, float light, boolean faceUp, boolean motion) {
+        return observe(timestamp, noise, light, faceUp, motion ? 1 : 0);
+    }
+
+    /**
+     * Same as {@link #observe(long, float, float, boolean, boolean)}, with the number of pickups
+     * detected since the previous observation (motion if positive).
+     *
+     * @return true if the observation is stored as a row
+     */
+    public boolean observe(long timestamp, float noise, float light, boolean faceUp, int pickups) {
+        boolean motion = pickups > 0;
+        boolean store = !hasStored
+                || motion
+                || faceUp != storedFaceUp
+                || timestamp - storedTimestamp >= maxSilenceMs
+                || noiseChanged(storedNoise, noise)
+                || Math.abs(light - storedLight) >= lightDeadband;
+
+        if (store) {
+            hasStored = true;
+            storedTimestamp = timestamp;
+            storedNoise = noise;
+            storedLight = light;
+            storedFaceUp = faceUp;
+            stored++;
+        }
+        observed++;
+
+        SessionSensorLog sample = new SessionSensorLog(sessionId, timestamp, noise, light, motion, faceUp);
+        sample.setPickupCount(pickups);
+        sink.accept(sample, store);
+        return store;
+    }
+
+    private boolean noiseChanged(float previous, float current) {
+        float a = Math.max(previous, NOISE_FLOOR_RMS);
+        float b = Math.max(current, NOISE_FLOOR_RMS);
+        // level difference in dB: 20 * log10(b / a)
+        return Math.abs(20 * Math.log10(b / a)) >= noiseDeadbandDb;
+    }
+
+    public long getObservedCount() {
+        return observed;
+    }
+
+    public long getStoredCount() {
+        return stored;
+    }
+}
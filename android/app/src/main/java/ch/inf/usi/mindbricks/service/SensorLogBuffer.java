@@ -0,0 +1,253 @@
+package ch.inf.usi.mindbricks.service;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import ch.inf.usi.mindbricks.model.visual.SessionSensorLog;
+
+/**
+ * Write-behind buffer for sensor log rows.
+ * <p>
+ * Only the samples to be stored as rows are buffered (the session statistics are kept by the
+ * sensor pipeline, see {@link SessionSensorStats}). Rows are collected in a fixed-size ring buffer
+ * and written to the database in batches, either when {@code maxSamples} rows are pending or when
+ * the oldest pending row is older than {@code maxAgeMs} (checked when a row is added and on
+ * {@link #tick(long)}), or when {@link #flush()} is called explicitly (e.g. at the end of a session).
+ * <p>
+ * A batch is removed from the buffer before being handed to the {@link BatchWriter}. If the
+ * write fails, the batch is put back in front of the newer rows and retried with the next
+ * flush. Since a batch is written in a single transaction, a failed write never leaves a
+ * partial batch behind. If writes keep failing and the buffer fills up, the oldest rows are dropped.
+ * <p>
+ * Pending rows only live in memory: if the process dies, the rows not yet written are lost.
+ * With the default thresholds this is up to {@value #DEFAULT_MAX_SAMPLES} rows (at most 2
+ * minutes of observations), or up to twice as many if a write failed. The owner should
+ * {@link #flush()} whenever the process is likely to be killed (memory pressure, task removed,
+ * session stopped) and {@link #close()} the buffer before shutting the writer executor down.
+ *
+ * @author Luca Di Bello
+ */
+public class SensorLogBuffer {
+
+    private static final String TAG = "SensorLogBuffer";
+
+    /**
+     * Default number of pending rows that triggers a flush (2 minutes if every observation of
+     * the 5 second interval is stored).
+     */
+    public static final int DEFAULT_MAX_SAMPLES = 24;
+
+    /**
+     * Default maximum age of the oldest pending row before a flush is triggered.
+     */
+    public static final long DEFAULT_MAX_AGE_MS = 2 * 60 * 1000;
+
+    /**
+     * Number of attempts of the last write in {@link #close()}.
+     */
+    static final int CLOSE_ATTEMPTS = 3;
+
+    /**
+     * Destination of the flushed batches.
+     */
+    public interface BatchWriter {
+        /**
+         * Writes all rows of the batch atomically.
+         *
+         * @param rows rows in insertion order
+         * @throws RuntimeException if the batch could not be written
+         */
+        void write(List<SessionSensorLog> rows);
+    }
+
+    private final SessionSensorLog[] ring;
+    private final int maxSamples;
+    private final long maxAgeMs;
+    private final Executor writerExecutor;
+    private final BatchWriter writer;
+
+    /**
+     * Index of the oldest pending row and number of pending rows.
+     */
+    private int head = 0;
+    private int size = 0;
+
+    private boolean flushScheduled = false;
+
+    // statistics
+    private long writtenSamples = 0;
+    private long writtenBatches = 0;
+    private long failedBatches = 0;
+    private long droppedSamples = 0;
+
+    /**
+     * Creates a buffer with the default thresholds.
+     *
+     * @param writerExecutor executor on which batches are written (must not be the sampling thread)
+     * @param writer         destination of the batches
+     */
+    public SensorLogBuffer(Executor writerExecutor, BatchWriter writer) {
+        this(DEFAULT_MAX_SAMPLES, DEFAULT_MAX_AGE_MS, writerExecutor, writer);
+    }
+
+    /**
+     * Creates a buffer.
+     *
+     * @param maxSamples     number of pending rows that triggers a flush
+     * @param maxAgeMs       maximum age of the oldest pending row before a flush is triggered
+     * @param writerExecutor executor on which batches are written (must not be the sampling thread)
+     * @param writer         destination of the batches
+     */
+    public SensorLogBuffer(int maxSamples, long maxAgeMs, Executor writerExecutor, BatchWriter writer) {
+        if (maxSamples <= 0) throw new IllegalArgumentException("maxSamples must be positive");
+        this.maxSamples = maxSamples;
+        this.maxAgeMs = maxAgeMs;
+        this.writerExecutor = writerExecutor;
+        this.writer = writer;
+        // leave room for a failed batch and the rows collected until the next flush
+        this.ring = new SessionSensorLog[maxSamples * 2];
+    }
+
+    /**
+     * Adds a row to the buffer, scheduling a flush if a threshold is reached.
+     *
+     * @param log row to add
+     */
+    public synchronized void add(SessionSensorLog log) {
+        if (size == ring.length) {
+            // the writer has been failing for a while: drop the oldest row
+            ring[head] = null;
+            head = (head + 1) % ring.length;
+            size--;
+            droppedSamples++;
+        }
+        ring[(head + size) % ring.length] = log;
+        size++;
+
+        if (size >= maxSamples) {
+            scheduleFlush();
+        } else {
+            tick(log.getTimestamp());
+        }
+    }
+
+    /**
+     * Schedules a flush if the oldest pending row is older than the maximum age. Called with
+     * every observation, so that rows are written on time even when no new row is added.
+     *
+     * @param now current time (same clock as the timestamps of the rows)
+     */
+    public synchronized void tick(long now) {
+        if (size > 0 && now - ring[head].getTimestamp() >= maxAgeMs) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Schedules the write of all pending rows. Must be called when the session ends.
+     */
+    public synchronized void flush() {
+        scheduleFlush();
+    }
+
+    /**
+     * Schedules the last write of all pending rows, e.g. when the owner is destroyed: unlike
+     * {@link #flush()}, a batch that fails is retried right away (up to {@value #CLOSE_ATTEMPTS}
+     * attempts) instead of waiting for the next flush. Must be called before the writer executor
+     * is shut down.
+     */
+    public void close() {
+        writerExecutor.execute(() -> {
+            for (int attempt = 0; attempt < CLOSE_ATTEMPTS; attempt++) {
+                if (writePending()) return;
+            }
+            Log.e(TAG, "Giving up on " + getPendingCount() + " sensor logs after " + CLOSE_ATTEMPTS + " attempts");
+        });
+    }
+
+    /**
+     * Returns the number of rows not yet handed to the writer.
+     */
+    public synchronized int getPendingCount() {
+        return size;
+    }
+
+    public synchronized long getWrittenSamples() {
+        return writtenSamples;
+    }
+
+    public synchronized long getWrittenBatches() {
+        return writtenBatches;
+    }
+
+    public synchronized long getFailedBatches() {
+        return failedBatches;
+    }
+
+    public synchronized long getDroppedSamples() {
+        return droppedSamples;
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled || size == 0) return;
+        flushScheduled = true;
+        writerExecutor.execute(this::writePending);
+    }
+
+    /**
+     * Runs on the writer executor: drains the buffer and writes the batch.
+     *
+     * @return false if the write failed (the batch is back in the buffer)
+     */
+    private boolean writePending() {
+        List<SessionSensorLog> batch = drain();
+        if (batch.isEmpty()) return true;
+
+        try {
+            writer.write(batch);
+            synchronized (this) {
+                writtenSamples += batch.size();
+                writtenBatches++;
+            }
+            return true;
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to write " + batch.size() + " sensor logs, keeping them for retry", e);
+            requeue(batch);
+            return false;
+        }
+    }
+
+    private synchronized List<SessionSensorLog> drain() {
+        flushScheduled = false;
+        List<SessionSensorLog> batch = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % ring.length;
+            batch.add(ring[index]);
+            ring[index] = null;
+        }
+        head = 0;
+        size = 0;
+        return batch;
+    }
+
+    /**
+     * Puts a failed batch back in front of the rows collected in the meantime.
+     */
+    private synchronized void requeue(List<SessionSensorLog> batch) {
+        failedBatches++;
+
+        // keep the newest rows if everything does not fit anymore
+        int free = ring.length - size;
+        int skip = Math.max(0, batch.size() - free);
+        droppedSamples += skip;
+
+        for (int i = batch.size() - 1; i >= skip; i--) {
+            head = (head - 1 + ring.length) % ring.length;
+            ring[head] = batch.get(i);
+            size++;
+        }
+    }
+}
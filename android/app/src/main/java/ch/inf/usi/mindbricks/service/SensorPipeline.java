@@ -0,0 +1,192 @@
+package ch.inf.usi.mindbricks.service;
+
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import ch.inf.usi.mindbricks.drivers.base.LightSource;
+import ch.inf.usi.mindbricks.drivers.base.MotionListener;
+import ch.inf.usi.mindbricks.drivers.base.MotionSource;
+import ch.inf.usi.mindbricks.drivers.base.NoiseSource;
+import ch.inf.usi.mindbricks.drivers.motion.ActivityType;
+
+/**
+ * Combines the noise, light and motion sources into observations of the study environment and
+ * passes them to the {@link SensorChangeFilter} (and from there to the log buffer / database).
+ * <p>
+ * The pipeline does not depend on the device: the sources are interfaces (device drivers in
+ * {@link SensorService}, a {@link ch.inf.usi.mindbricks.drivers.replay.TraceReplaySource} in
+ * tests) and the caller decides when and on which thread observations are made, usually at the
+ * end of every microphone window.
+ * <p>
+ * Motion events are counted per {@link ActivityType} between observations: only pickups count as
+ * motion in the sensor log, desk bumps and walking are kept as per-session totals. Every
+ * observation is also added to the {@link SessionSensorStats} of the session.
+ * <p>
+ * {@link #observe} must always be called from the same thread.
+ *
+ * @author Luca Di Bello
+ */
+public class SensorPipeline {
+
+    private static final String TAG = "SensorPipeline";
+    private static final ActivityType[] ACTIVITY_TYPES = ActivityType.values();
+
+    /**
+     * Receives every observation after it was passed to the change filter.
+     */
+    public interface ObservationListener {
+        void onObservation(long timestamp, float noise, float light, boolean faceUp, boolean motion, boolean stored);
+    }
+
+    private final NoiseSource noiseSource;
+    private final LightSource lightSource;
+    private final MotionSource motionSource;
+    private final SensorChangeFilter changeFilter;
+    private ObservationListener observationListener;
+
+    // last known sensor values
+    private float lastNoiseLevel = 0f;
+    private volatile float lastLightLevel = 0f;
+    private volatile boolean isFaceUp = false;
+
+    /**
+     * Motion events by type since the last observation (written by the motion source thread).
+     */
+    private final AtomicIntegerArray intervalActivityCounts = new AtomicIntegerArray(ACTIVITY_TYPES.length);
+
+    /**
+     * Statistics of all the observations of the session.
+     */
+    private final SessionSensorStats sessionStats = new SessionSensorStats();
+
+    /**
+     * Light and orientation aggregates since the last observation, reused at every observation.
+     */
+    private final LightSource.WindowStats lightStats = new LightSource.WindowStats();
+
+    public SensorPipeline(NoiseSource noiseSource, LightSource lightSource, MotionSource motionSource,
+                          SensorChangeFilter changeFilter) {
+        this.noiseSource = noiseSource;
+        this.lightSource = lightSource;
+        this.motionSource = motionSource;
+        this.changeFilter = changeFilter;
+    }
+
+    /**
+     * Sets the listener of the observations (e.g. to publish live values).
+     */
+    public void setObservationListener(ObservationListener listener) {
+        this.observationListener = listener;
+    }
+
+    /**
+     * Starts the sources for a new session.
+     *
+     * @param sessionId          session the observations belong to
+     * @param maxReportLatencyUs batching latency of the light and orientation events
+     * @param windowListener     receives the end of every microphone window (on the thread of the
+     *                           noise source), to trigger the observations
+     */
+    public void start(long sessionId, int maxReportLatencyUs, NoiseSource.FeatureListener windowListener) {
+        changeFilter.reset(sessionId);
+        lastNoiseLevel = 0f;
+        for (int i = 0; i < intervalActivityCounts.length(); i++) {
+            intervalActivityCounts.set(i, 0);
+        }
+        sessionStats.reset();
+
+        // Start recording noise: every recorded window triggers an observation
+        noiseSource.setFeatureListener(windowListener);
+        try {
+            noiseSource.startRecording();
+            Log.d(TAG, "Noise source started.");
+        } catch (SecurityException e) {
+            Log.e(TAG, "Permission missing for microphone", e);
+        }
+
+        // Start recording light level, the events are batched by the hardware for up to one interval
+        lightSource.start((level, faceUp) -> {
+            if (lastLightLevel != level || isFaceUp != faceUp) {
+                Log.d(TAG, "Light update: level=" + level + ", faceUp=" + faceUp);
+                lastLightLevel = level;
+                isFaceUp = faceUp;
+            }
+        }, maxReportLatencyUs);
+        Log.d(TAG, "Light source started.");
+
+        // Detect phone pickups (and the other movements, if the source can classify them)
+        motionSource.setListener(new MotionListener() {
+            @Override
+            public void onMotionDetected() {
+                Log.d(TAG, "Significant motion detected event!");
+                intervalActivityCounts.incrementAndGet(ActivityType.PICKUP.ordinal());
+            }
+
+            @Override
+            public void onActivityDetected(ActivityType type) {
+                Log.d(TAG, "Activity detected: " + type);
+                intervalActivityCounts.incrementAndGet(type.ordinal());
+            }
+        });
+        motionSource.start();
+        Log.d(TAG, "Motion source started.");
+    }
+
+    public void stop() {
+        noiseSource.stopRecording();
+        noiseSource.setFeatureListener(null);
+        lightSource.stop();
+        motionSource.stop();
+        Log.d(TAG, "Sources stopped.");
+    }
+
+    /**
+     * Records an observation of all sensors.
+     * <p>
+     * Every observation is folded into the session summary, but it is only stored as a row if
+     * it differs enough from the previously stored one (see {@link SensorChangeFilter}).
+     *
+     * @param timestamp time of the observation (ms)
+     * @param hasAudio  whether audio was recorded since the previous observation
+     * @param rms       RMS amplitude of the recorded audio
+     * @return true if the observation is stored as a row
+     */
+    public boolean observe(long timestamp, boolean hasAudio, float rms) {
+        // noise: RMS amplitude over the whole recording window (unknown -> last value)
+        float noise = hasAudio ? rms : lastNoiseLevel;
+        lastNoiseLevel = noise;
+        // light and orientation: aggregated since the previous observation (unknown -> last value)
+        lightSource.snapshotWindow(lightStats);
+        float light = lightStats.getMeanLightLevel(lastLightLevel);
+        boolean faceUp = lightStats.getFaceUpFraction(isFaceUp ? 1f : 0f) >= 0.5f;
+        // Take and reset the interval counts
+        int pickups = 0;
+        for (ActivityType type : ACTIVITY_TYPES) {
+            int count = intervalActivityCounts.getAndSet(type.ordinal(), 0);
+            if (count > 0) sessionStats.addActivity(type, count);
+            if (type == ActivityType.PICKUP) pickups = count;
+        }
+        boolean motion = pickups > 0;
+        sessionStats.add(timestamp, noise, light, faceUp);
+
+        boolean stored = changeFilter.observe(timestamp, noise, light, faceUp, pickups);
+        Log.v(TAG, String.format("Sensor data observed - Noise: %.2f, Light: %.2f, FaceUp: %b, Motion: %b, Stored: %b",
+                noise, light, faceUp, motion, stored));
+
+        ObservationListener listener = observationListener;
+        if (listener != null) listener.onObservation(timestamp, noise, light, faceUp, motion, stored);
+        return stored;
+    }
+
+    /**
+     * Returns the statistics of the observations since the start of the session.
+     */
+    public SessionSensorStats getSessionStats() {
+        return sessionStats;
+    }
+
+    public SensorChangeFilter getChangeFilter() {
+        return changeFilter;
+    }
+}
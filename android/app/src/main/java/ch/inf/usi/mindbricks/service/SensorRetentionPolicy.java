@@ -0,0 +1,100 @@
+package ch.inf.usi.mindbricks.service;
+
+import androidx.annotation.NonNull;
+import androidx.work.Data;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retention tiers of the sensor history, applied by {@link SensorRetentionWorker}:
+ * - sessions younger than {@code fullResolutionDays} keep every stored sample
+ * - older sessions are downsampled to one sample per {@code downsampleResolutionMs}
+ * - sessions older than {@code summaryOnlyDays} only keep their summary
+ *   ({@link ch.inf.usi.mindbricks.model.visual.SessionSensorSummary}), the samples are deleted
+ * <p>
+ * Immutable. The policy is passed to the worker through its input {@link Data}.
+ *
+ * @author Luca Di Bello
+ */
+public final class SensorRetentionPolicy {
+
+    public static final SensorRetentionPolicy DEFAULT =
+            new SensorRetentionPolicy(30, TimeUnit.MINUTES.toMillis(1), 180);
+
+    private static final String KEY_FULL_RESOLUTION_DAYS = "full_resolution_days";
+    private static final String KEY_DOWNSAMPLE_RESOLUTION_MS = "downsample_resolution_ms";
+    private static final String KEY_SUMMARY_ONLY_DAYS = "summary_only_days";
+
+    private final int fullResolutionDays;
+    private final long downsampleResolutionMs;
+    private final int summaryOnlyDays;
+
+    /**
+     * @param fullResolutionDays     age (days) after which the samples are downsampled
+     * @param downsampleResolutionMs interval between the downsampled samples
+     * @param summaryOnlyDays        age (days) after which the samples are deleted
+     */
+    public SensorRetentionPolicy(int fullResolutionDays, long downsampleResolutionMs, int summaryOnlyDays) {
+        if (fullResolutionDays < 0 || summaryOnlyDays < fullResolutionDays) {
+            throw new IllegalArgumentException("Invalid retention tiers: " + fullResolutionDays
+                    + " / " + summaryOnlyDays + " days");
+        }
+        if (downsampleResolutionMs <= 0) {
+            throw new IllegalArgumentException("downsampleResolutionMs must be positive");
+        }
+        this.fullResolutionDays = fullResolutionDays;
+        this.downsampleResolutionMs = downsampleResolutionMs;
+        this.summaryOnlyDays = summaryOnlyDays;
+    }
+
+    public int getFullResolutionDays() {
+        return fullResolutionDays;
+    }
+
+    public long getDownsampleResolutionMs() {
+        return downsampleResolutionMs;
+    }
+
+    public int getSummaryOnlyDays() {
+        return summaryOnlyDays;
+    }
+
+    /**
+     * Returns the time before which the samples are downsampled.
+     */
+    public long getDownsampleCutoff(long now) {
+        return now - TimeUnit.DAYS.toMillis(fullResolutionDays);
+    }
+
+    /**
+     * Returns the time before which the samples are deleted.
+     */
+    public long getSummaryOnlyCutoff(long now) {
+        return now - TimeUnit.DAYS.toMillis(summaryOnlyDays);
+    }
+
+    public Data toData() {
+        return new Data.Builder()
+                .putInt(KEY_FULL_RESOLUTION_DAYS, fullResolutionDays)
+                .putLong(KEY_DOWNSAMPLE_RESOLUTION_MS, downsampleResolutionMs)
+                .putInt(KEY_SUMMARY_ONLY_DAYS, summaryOnlyDays)
+                .build();
+    }
+
+    /**
+     * Reads a policy from worker input data, using the default tiers for the missing values.
+     */
+    public static SensorRetentionPolicy fromData(Data data) {
+        return new SensorRetentionPolicy(
+                data.getInt(KEY_FULL_RESOLUTION_DAYS, DEFAULT.fullResolutionDays),
+                data.getLong(KEY_DOWNSAMPLE_RESOLUTION_MS, DEFAULT.downsampleResolutionMs),
+                data.getInt(KEY_SUMMARY_ONLY_DAYS, DEFAULT.summaryOnlyDays));
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "SensorRetentionPolicy{full=" + fullResolutionDays + "d, downsample="
+                + downsampleResolutionMs + "ms, summaryOnly=" + summaryOnlyDays + "d}";
+    }
+}
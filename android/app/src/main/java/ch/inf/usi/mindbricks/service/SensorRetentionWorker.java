@@ -0,0 +1,183 @@
+package ch.inf.usi.mindbricks.service;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import ch.inf.usi.mindbricks.database.AppDatabase;
+import ch.inf.usi.mindbricks.database.SessionSensorLogDao;
+
+/**
+ * Periodic background job applying the {@link SensorRetentionPolicy} to the sensor history:
+ * merges the blocks written while each finished session was running into one, downsamples the
+ * old sessions, deletes the samples of the very old ones (their summaries are kept) and then
+ * gives the freed pages back to the file system.
+ * <p>
+ * The database is switched to incremental auto-vacuum the first time the job runs (this needs a
+ * full {@code VACUUM} once); later runs only release the free pages with
+ * {@code PRAGMA incremental_vacuum}, which is cheap.
+ *
+ * @author Luca Di Bello
+ */
+public class SensorRetentionWorker extends Worker {
+
+    private static final String TAG = "SensorRetentionWorker";
+
+    private static final String UNIQUE_WORK_NAME = "sensor_retention";
+
+    /**
+     * Number of sessions compacted or downsampled per query (each one in its own transaction, so the
+     * database is never locked for long).
+     */
+    private static final int PAGE_SIZE = 20;
+
+    /**
+     * Time since the last sample after which a session is considered over, and its blocks merged.
+     */
+    private static final long COMPACT_AFTER_MS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Value of {@code PRAGMA auto_vacuum} for incremental mode.
+     */
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    public SensorRetentionWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedules the job once a day, while the device is charging, with the default
+     * retention tiers.
+     */
+    public static void schedule(Context context) {
+        schedule(context, SensorRetentionPolicy.DEFAULT);
+    }
+
+    /**
+     * Schedules the job once a day, while the device is charging. An already scheduled
+     * job is updated to the given policy.
+     */
+    public static void schedule(Context context, SensorRetentionPolicy policy) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiresCharging(true)
+                .setRequiresBatteryNotLow(true)
+                .build();
+
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(
+                SensorRetentionWorker.class, 1, TimeUnit.DAYS)
+                .setConstraints(constraints)
+                .setInputData(policy.toData())
+                .build();
+
+        WorkManager.getInstance(context.getApplicationContext())
+                .enqueueUniquePeriodicWork(UNIQUE_WORK_NAME, ExistingPeriodicWorkPolicy.UPDATE, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        SensorRetentionPolicy policy = SensorRetentionPolicy.fromData(getInputData());
+        AppDatabase db = AppDatabase.getInstance(getApplicationContext());
+        SessionSensorLogDao dao = db.sessionSensorLogDao();
+        long now = System.currentTimeMillis();
+        long sizeBefore = getDatabaseSize();
+
+        try {
+            int compacted = compact(dao, now);
+            if (isStopped()) return Result.retry();
+
+            int downsampled = downsample(dao, policy, now);
+            if (isStopped()) return Result.retry();
+
+            int deleted = dao.deleteLogsOlderThan(policy.getSummaryOnlyCutoff(now));
+            vacuum(db.getOpenHelper().getWritableDatabase());
+
+            Log.i(TAG, policy + ": compacted " + compacted + " sessions, downsampled " + downsampled
+                    + " sessions, deleted "
+                    + deleted + " blocks, database " + sizeBefore + " -> " + getDatabaseSize() + " bytes");
+            return Result.success();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to apply the sensor retention policy", e);
+            return Result.retry();
+        }
+    }
+
+    private int compact(SessionSensorLogDao dao, long now) {
+        long cutoff = now - COMPACT_AFTER_MS;
+        int count = 0;
+
+        // compacted sessions no longer match the query, so the next page starts over
+        List<Long> sessionIds;
+        while (!isStopped()
+                && !(sessionIds = dao.getSessionsToCompact(cutoff, PAGE_SIZE)).isEmpty()) {
+            for (long sessionId : sessionIds) {
+                if (isStopped()) break;
+                dao.compactSession(sessionId);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int downsample(SessionSensorLogDao dao, SensorRetentionPolicy policy, long now) {
+        long cutoff = policy.getDownsampleCutoff(now);
+        long resolution = policy.getDownsampleResolutionMs();
+        int count = 0;
+
+        // downsampled sessions no longer match the query, so the next page starts over
+        List<Long> sessionIds;
+        while (!isStopped()
+                && !(sessionIds = dao.getSessionsToDownsample(cutoff, resolution, PAGE_SIZE)).isEmpty()) {
+            for (long sessionId : sessionIds) {
+                if (isStopped()) break;
+                dao.downsampleSession(sessionId, resolution);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void vacuum(SupportSQLiteDatabase db) {
+        int mode;
+        try (Cursor cursor = db.query("PRAGMA auto_vacuum")) {
+            mode = cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+
+        if (mode != AUTO_VACUUM_INCREMENTAL) {
+            // the mode of an existing database only changes with a full VACUUM
+            Log.i(TAG, "Enabling incremental auto-vacuum (was " + mode + ")");
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+        } else {
+            // the pragma frees one page per returned row
+            try (Cursor cursor = db.query("PRAGMA incremental_vacuum")) {
+                while (cursor.moveToNext()) {
+                    // drain
+                }
+            }
+        }
+
+        try (Cursor cursor = db.query("PRAGMA wal_checkpoint(TRUNCATE)")) {
+            cursor.moveToFirst();
+        }
+    }
+
+    private long getDatabaseSize() {
+        File file = getApplicationContext().getDatabasePath(AppDatabase.DATABASE_NAME);
+        File wal = new File(file.getPath() + "-wal");
+        return file.length() + wal.length();
+    }
+}
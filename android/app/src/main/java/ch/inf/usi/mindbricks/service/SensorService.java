@@ -18,6 +18,7 @@ import android.util.Log;
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -29,7 +30,10 @@ import ch.inf.usi.mindbricks.drivers.AccelerometerSensor;
 import ch.inf.usi.mindbricks.drivers.LightSensor;
 import ch.inf.usi.mindbricks.drivers.MicrophoneRecorder;
 import ch.inf.usi.mindbricks.drivers.SignificantMotionSensor;
+import ch.inf.usi.mindbricks.model.visual.SessionSensorCheckpoint;
 import ch.inf.usi.mindbricks.model.visual.SessionSensorLog;
+import ch.inf.usi.mindbricks.model.visual.SessionSensorSummary;
+import ch.inf.usi.mindbricks.repository.StudySessionRepository;
 
 /**
  * Foreground service for monitoring focus session.
@@ -73,14 +77,29 @@ public class SensorService extends Service {
     private static final int NOTIFICATION_ID = 1;
 
     /**
-     * Interval in milliseconds between log samples.
+     * Interval in milliseconds between observations of the sensors (length of the microphone
+     * windows).
      */
     private static final long LOG_INTERVAL_MS = 5000;
 
     /**
-     * ID of the current session (defaults to -1 when not in progress).
+     * Longest wait for a microphone window before an observation is recorded anyway.
      */
-    private long currentSessionId = -1;
+    private static final long WATCHDOG_DELAY_MS = 2 * LOG_INTERVAL_MS;
+
+    /**
+     * Microphone duty cycle: one short window per log interval. Set to null to record
+     * continuously (e.g. to compare the cost of both modes, reported in the logs at the end of
+     * every session).
+     */
+    private static final MicrophoneRecorder.DutyCycle MICROPHONE_DUTY_CYCLE =
+            MicrophoneRecorder.DutyCycle.DEFAULT.withPeriod(LOG_INTERVAL_MS);
+
+    /**
+     * ID of the current session (defaults to -1 when not in progress). Volatile: also read by the
+     * writer of the sensor logs (see {@link #checkpoint(List)}).
+     */
+    private volatile long currentSessionId = -1;
 
     /**
      * Flag indicating if the service is currently running.
@@ -89,13 +108,11 @@ public class SensorService extends Service {
 
     // Sensors
     private MicrophoneRecorder microphoneRecorder;
-    private LightSensor lightSensor;
-    private SignificantMotionSensor significantMotionSensor;
 
-    // Current sensor values
-    private volatile float lastLightLevel = 0f;
-    private volatile boolean isFaceUp = false;
-    private volatile boolean motionDetectedInInterval = false;
+    /**
+     * Combines the sensors into observations (see {@link #observe(boolean, float)}).
+     */
+    private SensorPipeline pipeline;
 
     // Service for background operations
     private HandlerThread sensorHandlerThread;
@@ -103,6 +120,21 @@ public class SensorService extends Service {
     private final ExecutorService dbExecutor = Executors.newSingleThreadExecutor();
     private PowerManager.WakeLock wakeLock;
 
+    /**
+     * Collects the rows to store in memory and writes them in batches on {@link #dbExecutor}.
+     */
+    private SensorLogBuffer logBuffer;
+
+    /**
+     * Decides which observations are stored as rows (see {@link #observe(boolean, float)}).
+     */
+    private SensorChangeFilter changeFilter;
+
+    /**
+     * Live smoothed readings for the UI.
+     */
+    private FocusSignalStream focusStream;
+
     @Override
     public void onCreate() {
         super.onCreate();
@@ -114,15 +146,31 @@ public class SensorService extends Service {
         LightSensor.initialize(ctx);
         SignificantMotionSensor.initialize(ctx);
 
-        // Get reference to singletons
-        lightSensor = LightSensor.getInstance();
-        significantMotionSensor = SignificantMotionSensor.getInstance();
-        microphoneRecorder = new MicrophoneRecorder();
+        microphoneRecorder = new MicrophoneRecorder(MICROPHONE_DUTY_CYCLE);
 
         // Create handler for periodic sampling in background
         sensorHandlerThread = new HandlerThread("SensorServiceThread");
         sensorHandlerThread.start();
         sensorHandler = new Handler(sensorHandlerThread.getLooper());
+
+        // the statistics are kept by the pipeline: every batch of rows is written with a
+        // checkpoint of the session statistics (not read by the analytics), the summary is
+        // written when the session stops
+        logBuffer = new SensorLogBuffer(dbExecutor, rows ->
+                AppDatabase.getInstance(getApplicationContext())
+                        .sessionSensorLogDao()
+                        .insertRowsWithCheckpoint(rows, checkpoint(rows)));
+        // the observations that are not stored only count in the statistics of the pipeline
+        changeFilter = new SensorChangeFilter((sample, store) -> {
+            if (store) logBuffer.add(sample);
+        });
+        focusStream = FocusSignalStream.getInstance();
+
+        // device drivers as sources of the pipeline
+        pipeline = new SensorPipeline(microphoneRecorder, LightSensor.getInstance(),
+                SignificantMotionSensor.getInstance(), changeFilter);
+        pipeline.setObservationListener((timestamp, noise, light, faceUp, motion, stored) ->
+                focusStream.publish(timestamp, noise, light, faceUp, motion));
     }
 
     @Override
@@ -161,6 +209,21 @@ public class SensorService extends Service {
         Log.d(TAG, "Starting session: " + sessionId);
         currentSessionId = sessionId;
 
+        // sessions interrupted by the death of the process only have a checkpoint
+        dbExecutor.execute(() -> {
+            try {
+                int promoted = AppDatabase.getInstance(getApplicationContext())
+                        .sessionSensorLogDao()
+                        .promoteCheckpoints(sessionId);
+                if (promoted > 0) {
+                    Log.i(TAG, "Summaries of " + promoted + " interrupted sessions restored");
+                    StudySessionRepository.notifySessionsReset();
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to restore the summaries of interrupted sessions", e);
+            }
+        });
+
         // hold power lock to keep CPU running during standby
         // SOURCES:
         // - https://developer.android.com/training/scheduling/wakelock
@@ -204,9 +267,10 @@ public class SensorService extends Service {
 
         // Start Sensors
         try {
-            startSensors();
+            focusStream.start();
+            startSensors(sessionId);
             isRunning = true;
-            sensorHandler.post(logRunnable);
+            sensorHandler.postDelayed(observationWatchdog, WATCHDOG_DELAY_MS);
 
             Log.d(TAG, "Session started successfully");
 
@@ -235,6 +299,9 @@ public class SensorService extends Service {
     }
 
     private void stopSession() {
+        // every stop request writes the samples still in memory, even if the session was
+        // already stopped (e.g. a repeated request, or a previous write that failed)
+        logBuffer.flush();
         if (!isRunning) return;
 
         Log.d(TAG, "Stopping session");
@@ -243,8 +310,31 @@ public class SensorService extends Service {
         // Stop Sensors
         stopSensors();
 
-        // Stop Loop
-        sensorHandler.removeCallbacks(logRunnable);
+        // Stop watchdog
+        sensorHandler.removeCallbacks(observationWatchdog);
+        focusStream.stop();
+
+        // Write the samples observed until the sensors stopped, then the final session summary
+        // (a single write, no scan of the samples: the blocks are merged later by the
+        // SensorRetentionWorker)
+        logBuffer.flush();
+        final long sessionId = currentSessionId;
+        final SessionSensorStats stats = pipeline.getSessionStats();
+        final SessionSensorSummary summary = stats.toSummary(sessionId);
+        // handed to the repository after the last batch: it updates the analytics of the session
+        dbExecutor.execute(() -> new StudySessionRepository(getApplicationContext()).finishSensorSession(summary));
+        Log.d(TAG, String.format("Session %d: %d observations, noise %.1f (sd %.1f), light %.1f (sd %.1f), " +
+                        "%d s face down",
+                sessionId, summary.getSampleCount(), stats.getNoiseMean(), Math.sqrt(stats.getNoiseVariance()),
+                stats.getLightMean(), Math.sqrt(stats.getLightVariance()),
+                TimeUnit.MILLISECONDS.toSeconds(summary.getFaceDownMs())));
+        Log.d(TAG, String.format("Sensor logs: %d of %d observations stored as rows",
+                changeFilter.getStoredCount(), changeFilter.getObservedCount()));
+        Log.d(TAG, String.format("Sensor logs: %d rows written in %d transactions (%d failed, %d dropped)",
+                logBuffer.getWrittenSamples(), logBuffer.getWrittenBatches(),
+                logBuffer.getFailedBatches(), logBuffer.getDroppedSamples()));
+        Log.d(TAG, String.format("Motion: %d pickups, %d desk bumps, %d walking",
+                summary.getPickupCount(), summary.getDeskBumpCount(), summary.getWalkingCount()));
 
         // Release WakeLock
         if (wakeLock != null && wakeLock.isHeld()) {
@@ -257,94 +347,77 @@ public class SensorService extends Service {
         stopSelf();
     }
 
-    private void startSensors() {
-        Log.d(TAG, "Attempting to start sensors...");
+    /**
+     * Returns the checkpoint of the session of a batch, to be written with it (runs on the writer
+     * thread). The checkpoint comes from the statistics of the pipeline, which may already include
+     * a few samples observed after the batch: it is overwritten by the next checkpoint and
+     * replaced by the final summary anyway.
+     *
+     * @param rows rows about to be written
+     * @return the checkpoint, or null if the statistics are no longer the ones of the session of
+     * the batch (a new session started in the meantime)
+     */
+    private SessionSensorCheckpoint checkpoint(List<SessionSensorLog> rows) {
+        long sessionId = rows.get(rows.size() - 1).getSessionId();
+        if (sessionId != currentSessionId) return null;
 
-        // Start recording noise
-        try {
-            microphoneRecorder.startRecording();
-            Log.d(TAG, "MicrophoneRecorder started.");
-        } catch (SecurityException e) {
-            Log.e(TAG, "Permission missing for microphone", e);
-        }
+        SessionSensorCheckpoint checkpoint = pipeline.getSessionStats().toCheckpoint(sessionId);
+        // the statistics are reset after a new session id is set: check that they were not
+        return sessionId == currentSessionId ? checkpoint : null;
+    }
 
-        // Start recording light level
-        lightSensor.start((level, faceUp) -> {
-            if (lastLightLevel != level || isFaceUp != faceUp) {
-                Log.d(TAG, "LightSensor update: level=" + level + ", faceUp=" + faceUp);
-                lastLightLevel = level;
-                isFaceUp = faceUp;
-            }
-        });
-        Log.d(TAG, "LightSensor started.");
-        
-        // Detect phone pickups
-        significantMotionSensor.setListener(() -> {
-            Log.d(TAG, "Significant motion detected event!");
-            motionDetectedInInterval = true;
+    private void startSensors(long sessionId) {
+        Log.d(TAG, "Attempting to start sensors...");
+
+        // every recorded microphone window triggers an observation on the sensor thread;
+        // light and orientation events are batched by the hardware for up to one interval
+        pipeline.start(sessionId, (int) TimeUnit.MILLISECONDS.toMicros(LOG_INTERVAL_MS), features -> {
+            boolean hasAudio = !features.isEmpty();
+            float rms = (float) features.rms;
+            sensorHandler.post(() -> observe(hasAudio, rms));
         });
-        significantMotionSensor.start();
-        Log.d(TAG, "SignificantMotionSensor started.");
     }
 
     private void stopSensors() {
         Log.d(TAG, "Attempting to stop sensors...");
-        microphoneRecorder.stopRecording();
-        Log.d(TAG, "MicrophoneRecorder stopped.");
-        lightSensor.stop();
-        Log.d(TAG, "LightSensor stopped.");
-        significantMotionSensor.stop();
-        Log.d(TAG, "SignificantMotionSensor stopped.");
+        pipeline.stop();
+        Log.d(TAG, "Sensors stopped. Microphone cost: " + microphoneRecorder.getStats());
     }
 
-    private final Runnable logRunnable = new Runnable() {
-        @Override
-        public void run() {
-            if (!isRunning || currentSessionId <= 0) {
-                Log.w(TAG, "Log runnable stopped: isRunning=" + isRunning + ", sessionId=" + currentSessionId);
-                return;
-            }
+    /**
+     * Records an observation of all sensors (see {@link SensorPipeline#observe}). Runs on the
+     * sensor thread, at the end of every microphone window (or from the watchdog if the
+     * microphone is not recording).
+     *
+     * @param hasAudio whether audio was recorded since the previous observation
+     * @param rms      RMS amplitude of the recorded audio
+     */
+    private void observe(boolean hasAudio, float rms) {
+        if (!isRunning || currentSessionId <= 0) {
+            Log.w(TAG, "Observation dropped: isRunning=" + isRunning + ", sessionId=" + currentSessionId);
+            return;
+        }
 
-            try {
-                // Sample collected data
-                long timestamp = System.currentTimeMillis();
-                float noise = (float) microphoneRecorder.getCurrentAmplitude();
-                float light = lastLightLevel;
-                boolean faceUp = isFaceUp;
-                boolean motion = motionDetectedInInterval;
-
-                Log.v(TAG, String.format("Sensor data collected - Noise: %.2f, Light: %.2f, FaceUp: %b, Motion: %b",
-                        noise, light, faceUp, motion));
-
-                // Reset interval flags
-                motionDetectedInInterval = false;
-
-                // Log sample to DB
-                SessionSensorLog log = new SessionSensorLog(
-                        currentSessionId,
-                        timestamp,
-                        noise,
-                        light,
-                        motion,
-                        faceUp
-                );
-
-                dbExecutor.execute(() -> {
-                    AppDatabase db = AppDatabase.getInstance(getApplicationContext());
-                    db.sessionSensorLogDao().insert(log);
-                    Log.d(TAG, "Sensor log inserted into DB for session: " + currentSessionId);
-                });
-
-            } catch (Exception e) {
-                Log.e(TAG, "Error in logging loop", e);
-            } finally {
-                // Trigger also next iteration
-                if (isRunning) {
-                    sensorHandler.postDelayed(this, LOG_INTERVAL_MS);
-                }
+        try {
+            long now = System.currentTimeMillis();
+            pipeline.observe(now, hasAudio, rms);
+            logBuffer.tick(now);
+        } catch (Exception e) {
+            Log.e(TAG, "Error recording observation", e);
+        } finally {
+            // the next observation is expected with the next microphone window
+            sensorHandler.removeCallbacks(observationWatchdog);
+            if (isRunning) {
+                sensorHandler.postDelayed(observationWatchdog, WATCHDOG_DELAY_MS);
             }
         }
-    };
+    }
+
+    /**
+     * Records an observation when no microphone window arrived in time (e.g. microphone
+     * permission denied), so that light and motion are still logged.
+     */
+    private final Runnable observationWatchdog = () -> observe(false, 0f);
 
     private void createNotificationChannel() {
         // create channel for notifications
@@ -370,6 +443,21 @@ public class SensorService extends Service {
         return null;
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // the process may be killed soon: do not keep samples in memory only
+        Log.d(TAG, "onTrimMemory(" + level + "): flushing sensor logs");
+        logBuffer.flush();
+    }
+
+    @Override
+    public void onTaskRemoved(Intent rootIntent) {
+        super.onTaskRemoved(rootIntent);
+        Log.d(TAG, "onTaskRemoved: flushing sensor logs");
+        logBuffer.flush();
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
@@ -377,6 +465,9 @@ public class SensorService extends Service {
 
         stopSession(); // Ensure everything is stopped
 
+        // last write of the samples still in memory, retrying a batch that failed before
+        logBuffer.close();
+
         // Ensure WakeLock is released if not already
         if (wakeLock != null && wakeLock.isHeld()) {
             wakeLock.release();
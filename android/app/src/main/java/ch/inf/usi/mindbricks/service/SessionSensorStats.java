@@ -0,0 +1,158 @@
+package ch.inf.usi.mindbricks.service;
+
+import ch.inf.usi.mindbricks.drivers.motion.ActivityType;
+import ch.inf.usi.mindbricks.model.visual.SessionSensorCheckpoint;
+import ch.inf.usi.mindbricks.model.visual.SessionSensorSummary;
+
+/**
+ * Running statistics of the observations of the active session, kept in memory by the sensor
+ * pipeline and persisted once as the {@link SessionSensorSummary} of the session when it ends.
+ * <p>
+ * Means and variances are updated with Welford's algorithm (numerically stable, no need to keep
+ * the samples), and the face down duration is the time between consecutive observations in
+ * which the phone was mostly face down.
+ * <p>
+ * Thread safe: observations are added from the sensor thread, the summary is taken from the
+ * thread stopping the session.
+ *
+ * @author Luca Di Bello
+ */
+public class SessionSensorStats {
+
+    private int count;
+    private double noiseMean;
+    private double noiseM2;
+    private double lightMean;
+    private double lightM2;
+    private float noiseMin;
+    private float noiseMax;
+    private float lightMin;
+    private float lightMax;
+
+    private long previousTimestamp;
+    private long faceDownMs;
+    private final int[] activityCounts = new int[ActivityType.values().length];
+
+    public SessionSensorStats() {
+        reset();
+    }
+
+    /**
+     * Forgets all the observations (at the start of a session).
+     */
+    public synchronized void reset() {
+        count = 0;
+        noiseMean = noiseM2 = 0;
+        lightMean = lightM2 = 0;
+        noiseMin = lightMin = Float.MAX_VALUE;
+        noiseMax = lightMax = -Float.MAX_VALUE;
+        faceDownMs = 0;
+        for (int i = 0; i < activityCounts.length; i++) activityCounts[i] = 0;
+    }
+
+    /**
+     * Adds an observation.
+     *
+     * @param timestamp time of the observation (ms)
+     * @param noise     noise level (RMS amplitude)
+     * @param light     light level (0-100)
+     * @param faceUp    whether the phone was mostly face up since the previous observation
+     */
+    public synchronized void add(long timestamp, float noise, float light, boolean faceUp) {
+        if (count > 0 && !faceUp && timestamp > previousTimestamp) {
+            faceDownMs += timestamp - previousTimestamp;
+        }
+        previousTimestamp = timestamp;
+
+        count++;
+        double noiseDelta = noise - noiseMean;
+        noiseMean += noiseDelta / count;
+        noiseM2 += noiseDelta * (noise - noiseMean);
+        double lightDelta = light - lightMean;
+        lightMean += lightDelta / count;
+        lightM2 += lightDelta * (light - lightMean);
+
+        noiseMin = Math.min(noiseMin, noise);
+        noiseMax = Math.max(noiseMax, noise);
+        lightMin = Math.min(lightMin, light);
+        lightMax = Math.max(lightMax, light);
+    }
+
+    /**
+     * Adds motion events detected during the session.
+     */
+    public synchronized void addActivity(ActivityType type, int events) {
+        activityCounts[type.ordinal()] += events;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public synchronized int getActivityCount(ActivityType type) {
+        return activityCounts[type.ordinal()];
+    }
+
+    public synchronized double getNoiseMean() {
+        return noiseMean;
+    }
+
+    /**
+     * Returns the population variance of the noise level, or 0 if there are no observations.
+     */
+    public synchronized double getNoiseVariance() {
+        return count > 0 ? noiseM2 / count : 0;
+    }
+
+    public synchronized double getLightMean() {
+        return lightMean;
+    }
+
+    /**
+     * Returns the population variance of the light level, or 0 if there are no observations.
+     */
+    public synchronized double getLightVariance() {
+        return count > 0 ? lightM2 / count : 0;
+    }
+
+    public synchronized long getFaceDownMs() {
+        return faceDownMs;
+    }
+
+    /**
+     * Returns the summary row of the session.
+     *
+     * @param sessionId session the observations belong to
+     */
+    public SessionSensorSummary toSummary(long sessionId) {
+        return fill(new SessionSensorSummary(sessionId));
+    }
+
+    /**
+     * Returns the checkpoint of the session, with the same statistics as {@link #toSummary(long)}.
+     *
+     * @param sessionId session the observations belong to
+     */
+    public SessionSensorCheckpoint toCheckpoint(long sessionId) {
+        return fill(new SessionSensorCheckpoint(sessionId));
+    }
+
+    private synchronized <T extends SessionSensorSummary> T fill(T summary) {
+        summary.setSampleCount(count);
+        summary.setNoiseSum(noiseMean * count);
+        summary.setLightSum(lightMean * count);
+        summary.setNoiseVariance(getNoiseVariance());
+        summary.setLightVariance(getLightVariance());
+        summary.setPickupCount(activityCounts[ActivityType.PICKUP.ordinal()]);
+        summary.setDeskBumpCount(activityCounts[ActivityType.DESK_BUMP.ordinal()]);
+        summary.setWalkingCount(activityCounts[ActivityType.WALKING.ordinal()]);
+        summary.setFaceDownMs(faceDownMs);
+        if (count > 0) {
+            summary.setNoiseMin(noiseMin);
+            summary.setNoiseMax(noiseMax);
+            summary.setLightMin(lightMin);
+            summary.setLightMax(lightMax);
+        }
+        return summary;
+    }
+}
@@ -275,8 +275,8 @@ public class AIRecommendationCardView extends View {
             ActivityBlock block = blocks.get(i);
             ActivityLayer layerInfo = activityLayers.get(i);
 
-            float startX = leftMargin + (block.getStartHour() * hourWidth);
-            float endX = leftMargin + (block.getEndHour() * hourWidth);
+            float startX = leftMargin + (block.getStartMinute() / 60f * hourWidth);
+            float endX = leftMargin + (block.getEndMinute() / 60f * hourWidth);
             float blockWidth = endX - startX;
 
             float baseY = topMargin + chartHeight - ((layerInfo.layer + 1) * layerHeight);
@@ -46,9 +46,21 @@ public class SessionHistoryAdapter extends RecyclerView.Adapter<SessionHistoryAd
     }
 
     public void setData(List<StudySessionWithStats> sessions) {
-        this.sessions = sessions != null ? new ArrayList<>(sessions) : new ArrayList<>();
-        // Refresh entire list
-        notifyDataSetChanged();
+        List<StudySessionWithStats> newSessions = sessions != null ? new ArrayList<>(sessions) : new ArrayList<>();
+
+        // A new page of the history only appends items: bind just those
+        int oldSize = this.sessions.size();
+        boolean isAppend = oldSize > 0 && newSessions.size() > oldSize
+                && newSessions.get(0) == this.sessions.get(0)
+                && newSessions.get(oldSize - 1) == this.sessions.get(oldSize - 1);
+
+        this.sessions = newSessions;
+        if (isAppend) {
+            notifyItemRangeInserted(oldSize, newSessions.size() - oldSize);
+        } else {
+            // Refresh entire list
+            notifyDataSetChanged();
+        }
     }
 
     public void addSession(StudySessionWithStats session) {
@@ -41,6 +41,7 @@ import java.util.List;
 import java.util.Locale;
 
 import ch.inf.usi.mindbricks.R;
+import ch.inf.usi.mindbricks.model.recommendation.AIRecommendation;
 import ch.inf.usi.mindbricks.model.visual.DailyRings;
 import ch.inf.usi.mindbricks.model.visual.StudySessionWithStats;
 import ch.inf.usi.mindbricks.model.visual.DateRange;
@@ -54,7 +55,6 @@ import ch.inf.usi.mindbricks.ui.charts.SessionHistoryAdapter;
 import ch.inf.usi.mindbricks.ui.charts.StreakCalendarView;
 import ch.inf.usi.mindbricks.ui.charts.TagUsageChartView;
 import ch.inf.usi.mindbricks.ui.charts.WeeklyFocusChartView;
-import ch.inf.usi.mindbricks.util.database.DataProcessor;
 
 /**
  * Fragment that displays analytics and visualizations of study sessions.
@@ -66,9 +66,17 @@ import ch.inf.usi.mindbricks.util.database.DataProcessor;
 public class AnalyticsFragment extends Fragment {
     private static final String TAG = "AnalyticsFragment";
 
+    /**
+     * Number of sessions left below the visible ones that triggers the load of the next page.
+     */
+    private static final int HISTORY_PREFETCH_DISTANCE = 10;
+
     // ViewModel
     private AnalyticsViewModel viewModel;
-    private List<StudySessionWithStats> calendarSessionsCache = new ArrayList<>();
+
+    // Month shown by the streak calendar
+    private int calendarMonth = -1;
+    private int calendarYear;
 
     // Chart views
     private WeeklyFocusChartView weeklyFocusChart;
@@ -76,6 +84,9 @@ public class AnalyticsFragment extends Fragment {
     private QualityHeatmapChartView qualityHeatmapChart;
     private StreakCalendarView streakCalendarView;
     private AIRecommendationCardView aiRecommendationView;
+    private TabLayout planDayTabLayout;
+    private AIRecommendation todaySchedule;
+    private List<AIRecommendation> weeklyPlan;
     private LinearLayout aiLegendContainer;
     private TagUsageChartView tagUsagePieChart;
     private MaterialButton changePreferencesButton;
@@ -137,6 +148,7 @@ public class AnalyticsFragment extends Fragment {
 
         // Setup tab navigation
         setupTabs();
+        setupPlanDayTabs();
 
         // Setup RecyclerView for session history
         setupRecyclerView();
@@ -248,6 +260,7 @@ public class AnalyticsFragment extends Fragment {
         qualityHeatmapChart = view.findViewById(R.id.qualityHeatmapChart);
         streakCalendarView = view.findViewById(R.id.streakCalendarView);
         aiRecommendationView = view.findViewById(R.id.aiRecommendationView);
+        planDayTabLayout = view.findViewById(R.id.planDayTabLayout);
         aiLegendContainer = view.findViewById(R.id.legendContainer);
         tagUsagePieChart = view.findViewById(R.id.tagUsageChart);
 
@@ -317,6 +330,61 @@ public class AnalyticsFragment extends Fragment {
         switchContent(0);
     }
 
+    /**
+     * Setup the day tabs of the schedule timeline: today, then the days of the weekly plan
+     */
+    private void setupPlanDayTabs() {
+        if (planDayTabLayout == null) return;
+
+        SimpleDateFormat dayFormat = new SimpleDateFormat("EEE d", Locale.getDefault());
+        Calendar cal = Calendar.getInstance();
+        planDayTabLayout.addTab(planDayTabLayout.newTab().setText("Today"));
+        for (int day = 0; day < AnalyticsViewModel.WEEK_PLAN_DAYS; day++) {
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+            planDayTabLayout.addTab(planDayTabLayout.newTab().setText(dayFormat.format(cal.getTime())));
+        }
+
+        planDayTabLayout.addOnTabSelectedListener(new TabLayout.OnTabSelectedListener() {
+            @Override
+            public void onTabSelected(TabLayout.Tab tab) {
+                showPlanDay(tab.getPosition());
+            }
+
+            @Override
+            public void onTabUnselected(TabLayout.Tab tab) {
+                // Nothing so far
+            }
+
+            @Override
+            public void onTabReselected(TabLayout.Tab tab) {
+                // Nothing as well
+            }
+        });
+    }
+
+    /**
+     * Show the schedule of a day in the timeline (0 = today, then the days of the weekly plan)
+     */
+    private void showPlanDay(int position) {
+        AIRecommendation recommendation;
+        if (position <= 0) {
+            recommendation = todaySchedule;
+        } else {
+            recommendation = weeklyPlan != null && position <= weeklyPlan.size()
+                    ? weeklyPlan.get(position - 1) : null;
+        }
+
+        if (recommendation != null && aiRecommendationView != null) {
+            aiRecommendationView.setData(recommendation);
+
+            // Post to ensure view has been laid out
+            aiRecommendationView.post(this::updateAILegend);
+        } else {
+            Log.w(TAG, "Cannot update AI recommendation: recommendation=" +
+                    (recommendation != null) + ", view=" + (aiRecommendationView != null));
+        }
+    }
+
     /**
      * Switch between different tab content
      */
@@ -398,6 +466,17 @@ public class AnalyticsFragment extends Fragment {
                 Log.d(TAG, "Session history scroll state: " +
                         (isScrolling ? "SCROLLING" : "IDLE"));
             }
+
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                // Load the next page when the user gets close to the last loaded session
+                if (dy <= 0) return;
+
+                int lastVisible = layoutManager.findLastVisibleItemPosition();
+                if (lastVisible >= layoutManager.getItemCount() - HISTORY_PREFETCH_DISTANCE) {
+                    viewModel.loadMoreHistory();
+                }
+            }
         });
 
         Log.d(TAG, "RecyclerView setup complete");
@@ -453,18 +532,14 @@ public class AnalyticsFragment extends Fragment {
         // Observe goal rings
         viewModel.getDailyRingsHistory().observe(getViewLifecycleOwner(), this::updateDailyRingsDisplay);
 
-        // Observe AI Recommendations
+        // Observe AI Recommendations (today's schedule and the plan of the following days)
         viewModel.getDailyRecommendation().observe(getViewLifecycleOwner(), recommendation -> {
-
-            if (recommendation != null && aiRecommendationView != null) {
-                aiRecommendationView.setData(recommendation);
-
-                // Post to ensure view has been laid out
-                aiRecommendationView.post(this::updateAILegend);
-            } else {
-                Log.w(TAG, "Cannot update AI recommendation: recommendation=" +
-                        (recommendation != null) + ", view=" + (aiRecommendationView != null));
-            }
+            todaySchedule = recommendation;
+            showPlanDay(planDayTabLayout != null ? planDayTabLayout.getSelectedTabPosition() : 0);
+        });
+        viewModel.getWeeklyPlan().observe(getViewLifecycleOwner(), plan -> {
+            weeklyPlan = plan;
+            showPlanDay(planDayTabLayout != null ? planDayTabLayout.getSelectedTabPosition() : 0);
         });
 
         // Observe tag usage data
@@ -487,11 +562,8 @@ public class AnalyticsFragment extends Fragment {
                     String countText = getString(R.string.analytics_session_count_format,
                             sessions.size(), sessions.size() == 1 ? "" : "s");
 
-                    // Show if data is truncated
-                    DateRange currentRange = viewModel.getCurrentDateRange();
-                    if (currentRange != null &&
-                            currentRange.getRangeType() == DateRange.RangeType.ALL_TIME &&
-                            sessions.size() >= 200) {
+                    // Show if older sessions are still to be loaded
+                    if (viewModel.hasMoreHistory()) {
                         countText += getString(R.string.analytics_session_count_truncated);
                     }
 
@@ -968,61 +1040,23 @@ public class AnalyticsFragment extends Fragment {
     private void loadStreakDataForMonth(int month, int year) {
         Log.d(TAG, "=== LOADING CALENDAR: " + month + "/" + year + " ===");
 
-        // If we have cached calendar data, use it immediately
-        if (!calendarSessionsCache.isEmpty()) {
-            Log.d(TAG, "Using cached calendar data: " + calendarSessionsCache.size() + " sessions");
-            computeAndDisplayCalendar(calendarSessionsCache, month, year);
-            return;
-        }
+        calendarMonth = month;
+        calendarYear = year;
 
-        // Otherwise, load ALL sessions from database
-        Log.d(TAG, "Loading ALL sessions from database for calendar...");
-        viewModel.loadAllSessionsForCalendar(allSessions -> {
-            Log.d(TAG, "Calendar data received: " + allSessions.size() + " total sessions");
+        // Per-day totals of the month are aggregated by the database
+        viewModel.loadStreakCalendar(month, year, monthData -> {
+            // ignore months the user already navigated away from
+            if (month != calendarMonth || year != calendarYear) return;
 
-            // Cache for future month navigation
-            calendarSessionsCache = allSessions;
+            Log.d(TAG, "  Streak days computed: " + monthData.size());
 
-            // Compute and display
-            computeAndDisplayCalendar(allSessions, month, year);
-        });
-    }
-
-    /**
-     * Compute calendar data and update the view
-     */
-    private void computeAndDisplayCalendar(List<StudySessionWithStats> allSessions, int month, int year) {
-        // Count sessions in this specific month (for logging)
-        int sessionsInMonth = 0;
-        Calendar cal = Calendar.getInstance();
-        for (StudySessionWithStats session : allSessions) {
-            cal.setTimeInMillis(session.getTimestamp());
-            if (cal.get(Calendar.MONTH) == month && cal.get(Calendar.YEAR) == year) {
-                sessionsInMonth++;
+            if (streakCalendarView != null) {
+                streakCalendarView.setData(monthData);
+                Log.d(TAG, "Calendar updated successfully");
+            } else {
+                Log.e(TAG, "Calendar view is null!");
             }
-        }
-
-        Log.d(TAG, "Computing calendar:");
-        Log.d(TAG, "  Total sessions: " + allSessions.size());
-        Log.d(TAG, "  Sessions in " + month + "/" + year + ": " + sessionsInMonth);
-
-        // Compute streak data
-        List<StreakDay> monthData = DataProcessor.calculateStreakCalendar(
-                allSessions,
-                60,
-                month,
-                year
-        );
-
-        Log.d(TAG, "  Streak days computed: " + monthData.size());
-
-        // Update calendar view
-        if (streakCalendarView != null) {
-            streakCalendarView.setData(monthData);
-            Log.d(TAG, "Calendar updated successfully");
-        } else {
-            Log.e(TAG, "Calendar view is null!");
-        }
+        });
     }
 
 
@@ -1040,14 +1074,10 @@ public class AnalyticsFragment extends Fragment {
 
         Log.d(TAG, "Fragment resumed");
 
-        // Only reload calendar if it was previously cleared
-        if (calendarSessionsCache.isEmpty() && streakCalendarView != null) {
-            Calendar cal = Calendar.getInstance();
-            int currentMonth = cal.get(Calendar.MONTH);
-            int currentYear = cal.get(Calendar.YEAR);
-
-            Log.d(TAG, "Reloading calendar for current month");
-            loadStreakDataForMonth(currentMonth, currentYear);
+        // Reload the displayed month (cheap: a single aggregated query)
+        if (streakCalendarView != null && calendarMonth >= 0) {
+            Log.d(TAG, "Reloading calendar for displayed month");
+            loadStreakDataForMonth(calendarMonth, calendarYear);
         }
     }
 
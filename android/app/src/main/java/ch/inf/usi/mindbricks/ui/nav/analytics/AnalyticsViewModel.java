@@ -9,13 +9,13 @@ import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
-import androidx.lifecycle.Observer;
 
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Executor;
 
+import ch.inf.usi.mindbricks.database.DataVersionTracker;
 import ch.inf.usi.mindbricks.model.recommendation.AIRecommendation;
 import ch.inf.usi.mindbricks.model.visual.DailyRings;
 import ch.inf.usi.mindbricks.model.visual.DateRange;
@@ -26,12 +26,19 @@ import ch.inf.usi.mindbricks.model.visual.StudySessionWithStats;
 import ch.inf.usi.mindbricks.model.visual.TagUsage;
 import ch.inf.usi.mindbricks.model.visual.TimeSlotStats;
 import ch.inf.usi.mindbricks.model.visual.WeeklyStats;
+import ch.inf.usi.mindbricks.repository.ScheduleRepository;
+import ch.inf.usi.mindbricks.repository.SessionHistoryPagingSource;
 import ch.inf.usi.mindbricks.repository.StudySessionRepository;
 import ch.inf.usi.mindbricks.util.AppExecutor;
+import ch.inf.usi.mindbricks.util.ComputeExecutor;
 import ch.inf.usi.mindbricks.util.PreferencesManager;
+import ch.inf.usi.mindbricks.util.TaskGroup;
+import ch.inf.usi.mindbricks.util.analytics.AnalyticsAccumulator;
+import ch.inf.usi.mindbricks.util.analytics.AnalyticsKernel;
 import ch.inf.usi.mindbricks.util.analytics.ResultCache;
 import ch.inf.usi.mindbricks.util.database.DataProcessor;
-import ch.inf.usi.mindbricks.util.evaluation.RecommendationEngine;
+import ch.inf.usi.mindbricks.util.evaluation.ScheduleInputs;
+import ch.inf.usi.mindbricks.util.evaluation.WeekPlanInputs;
 
 /**
  * ViewModel for Analytics screen.
@@ -42,8 +49,14 @@ import ch.inf.usi.mindbricks.util.evaluation.RecommendationEngine;
 public class AnalyticsViewModel extends AndroidViewModel {
     private static final String TAG = "AnalyticsViewModel";
     private static final boolean VERBOSE_LOGGING = false;
-    private static final int MAX_HISTORY_ITEMS = 200;
     private static final int HISTORY_PAGE_SIZE = 100;
+    private static final int TOTALS_PAGE_SIZE = 500;
+    private static final int STREAK_TARGET_MINUTES = 60;
+
+    /**
+     * Number of days of the weekly plan, starting the day after today.
+     */
+    public static final int WEEK_PLAN_DAYS = 6;
 
     private final StudySessionRepository repository;
     //date ranges
@@ -57,7 +70,6 @@ public class AnalyticsViewModel extends AndroidViewModel {
     private final MutableLiveData<List<StudySessionWithStats>> sessionHistory = new MutableLiveData<>();
     private final MutableLiveData<List<HourlyQuality>> energyCurveData = new MutableLiveData<>();
     private final MutableLiveData<List<HeatmapCell>> heatmapData = new MutableLiveData<>();
-    private final MutableLiveData<List<StreakDay>> streakData = new MutableLiveData<>();
     private final MutableLiveData<List<DailyRings>> dailyRingsHistory = new MutableLiveData<>();
     private final MutableLiveData<Boolean> isRingsExpanded = new MutableLiveData<>(false);
     private final MutableLiveData<List<TagUsage>> tagUsageData = new MutableLiveData<>();
@@ -69,25 +81,79 @@ public class AnalyticsViewModel extends AndroidViewModel {
 
     private boolean isRefreshing = false;
 
-    // Optimized caching system
-    private ResultCache resultCache;
+    // Results of the recently visited ranges, validated against the database version
+    private final ResultCache resultCache = new ResultCache();
+    private final DataVersionTracker dataVersionTracker;
+
+    // Results currently shown
+    private volatile ResultCache.Results postedResults;
+
+    // Running totals of the charts of the current range (database executor only), and the load
+    // they belong to. Every load of a range increments the generation (main thread only): the
+    // results of the older loads are dropped.
+    private final Executor dbExecutor = AppExecutor.getInstance();
+    private AnalyticsAccumulator totals;
+    private int totalsGeneration;
+    private volatile int loadGeneration;
+    private final StudySessionRepository.SessionChangeListener sessionChangeListener =
+            new StudySessionRepository.SessionChangeListener() {
+                @Override
+                public void onSessionChanged(StudySessionWithStats before, StudySessionWithStats after) {
+                    // on the database executor, like the totals
+                    if (totals == null) return;
+                    totals.update(before, after);
+                    publishTotals(totals, totalsGeneration, null);
+                }
+
+                @Override
+                public void onSessionsReset() {
+                    debounceHandler.post(() -> {
+                        if (currentDateRange != null) loadTotals(currentDateRange);
+                    });
+                }
+            };
+
+    // Chart computations of the last published totals (main thread only)
+    private TaskGroup computation;
+
+    // Paged session history of the current range (main thread only)
+    private SessionHistoryPagingSource historySource;
+    private List<StudySessionWithStats> historyItems = new ArrayList<>();
 
     // Debouncing for rapid updates
     private final Handler debounceHandler = new Handler(Looper.getMainLooper());
-    private LiveData<List<StudySessionWithStats>> sessionsSource;
-    private final Observer<List<StudySessionWithStats>> sessionsObserver = this::handleSessionsUpdate;
     private final PreferencesManager preferencesManager;
 
+    /**
+     * Stored schedules, created on first use and reused by the next refreshes (it checks the
+     * inputs of the stored schedule every time, so it never gets stale).
+     */
+    private ScheduleRepository scheduleRepository;
+
     public AnalyticsViewModel(@NonNull Application application) {
         super(application);
         this.repository = new StudySessionRepository(application);
 
         // create preferences manager
         this.preferencesManager = new PreferencesManager(application);
+        this.dataVersionTracker = DataVersionTracker.getInstance(application);
 
         // Initialize with default range: Last 30 days
         this.currentDateRange = DateRange.lastNDays(30);
         this.dateRangeLiveData.setValue(currentDateRange);
+
+        // the totals of the range are kept up to date with the changes of single sessions
+        StudySessionRepository.addSessionChangeListener(sessionChangeListener);
+
+        // Show the last schedule of today right away (usually precomputed overnight); it is
+        // replaced if its inputs changed once the sessions are loaded
+        dbExecutor.execute(() -> {
+            AIRecommendation stored = getScheduleRepository().getStoredSchedule(System.currentTimeMillis());
+            if (stored == null) return;
+            debounceHandler.post(() -> {
+                if (dailyRecommendation.getValue() == null) dailyRecommendation.setValue(stored);
+            });
+        });
     }
 
     public void loadLastNDays(int days) {
@@ -125,258 +191,341 @@ public class AnalyticsViewModel extends AndroidViewModel {
 
         currentDateRange = dateRange;
         dateRangeLiveData.setValue(currentDateRange);
-
-        viewState.setValue(ViewState.LOADING);
-
-        long queryStartTime = calculateQueryStartTime(dateRange);
-        Log.d(TAG, "Database query start time: " + queryStartTime);
-
-        if (sessionsSource != null) {
-            sessionsSource.removeObserver(sessionsObserver);
-            sessionsSource = null;
+        cancelComputation();
+
+        // Show the results of an already visited range right away
+        ResultCache.Results cached = resultCache.get(dateRange, dataVersionTracker.getVersion());
+        if (cached != null) {
+            Log.d(TAG, "Serving cached results for: " + dateRange.getDisplayName());
+            postResults(cached);
+        } else {
+            viewState.setValue(ViewState.LOADING);
         }
 
-        sessionsSource = repository.getSessionsSince(queryStartTime);
-        sessionsSource.observeForever(sessionsObserver);
+        loadTotals(dateRange);
     }
 
     // calculation
 
-    private long calculateQueryStartTime(DateRange range) {
-        // For ALL_TIME, query from epoch
-        if (range.getRangeType() == DateRange.RangeType.ALL_TIME) {
-            return 0L;
-        }
+    /**
+     * Builds the running totals of a range on the database executor, then publishes them. Must be
+     * called on the main thread.
+     */
+    private void loadTotals(DateRange dateRange) {
+        int generation = ++loadGeneration;
+        dbExecutor.execute(() -> buildTotals(dateRange, generation));
+    }
 
-        long bufferMs = 7L * 24 * 60 * 60 * 1000;
-        long queryStart = range.getStartTimestamp() - bufferMs;
+    /**
+     * Reads the sessions of a range one page at a time and adds them to new running totals: only
+     * the current page is kept in memory, not the whole range. Runs on the database executor, so
+     * no change of the sessions made through the repository can be missed or counted twice: the
+     * changes made after the build are applied by {@link #sessionChangeListener}.
+     */
+    private void buildTotals(DateRange dateRange, int generation) {
+        if (generation != loadGeneration) return;
+        if (VERBOSE_LOGGING) Log.d(TAG, "    [DB] Building totals of " + dateRange.getDisplayName());
 
-        Log.d(TAG, "Query start: " + new Date(queryStart) +
-                " (Range start: " + new Date(range.getStartTimestamp()) + ")");
+        try {
+            AnalyticsAccumulator built = new AnalyticsAccumulator(dateRange, System.currentTimeMillis());
+            List<StudySessionWithStats> firstPage = null;
+            long beforeTimestamp = Long.MAX_VALUE;
+            long beforeId = Long.MAX_VALUE;
+            List<StudySessionWithStats> page;
+            do {
+                page = repository.getSessionsPageSync(dateRange.getStartTimestamp(), dateRange.getEndTimestamp(),
+                        beforeTimestamp, beforeId, TOTALS_PAGE_SIZE);
+                for (StudySessionWithStats session : page) built.add(session);
+
+                // the newest sessions are also the first page of the history
+                if (firstPage == null) {
+                    firstPage = new ArrayList<>(page.subList(0, Math.min(HISTORY_PAGE_SIZE, page.size())));
+                }
+                if (!page.isEmpty()) {
+                    StudySessionWithStats last = page.get(page.size() - 1);
+                    beforeTimestamp = last.getTimestamp();
+                    beforeId = last.getId();
+                }
+            } while (page.size() == TOTALS_PAGE_SIZE);
+
+            totals = built;
+            totalsGeneration = generation;
+            publishTotals(built, generation, firstPage);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to load the sessions of " + dateRange.getDisplayName(), e);
+            debounceHandler.post(() -> {
+                if (generation != loadGeneration) return;
+                errorMessage.setValue("Error loading sessions from database");
+                viewState.setValue(ViewState.ERROR);
+            });
+        }
+    }
 
-        return Math.max(0, queryStart);
+    /**
+     * Publishes a snapshot of the running totals: the charts are built from it on the main thread
+     * (see {@link #computeCharts}). Runs on the database executor.
+     *
+     * @param firstPage newest sessions of the range, read again if null
+     */
+    private void publishTotals(AnalyticsAccumulator current, int generation, List<StudySessionWithStats> firstPage) {
+        AnalyticsAccumulator snapshot = current.copy();
+        DateRange dateRange = snapshot.getRange();
+        List<StudySessionWithStats> historyPage = firstPage != null
+                ? firstPage
+                : repository.getSessionsPageSync(dateRange.getStartTimestamp(), dateRange.getEndTimestamp(),
+                Long.MAX_VALUE, Long.MAX_VALUE, HISTORY_PAGE_SIZE);
+
+        debounceHandler.post(() -> {
+            if (generation == loadGeneration) computeCharts(snapshot, historyPage);
+        });
     }
 
-    private void handleSessionsUpdate(List<StudySessionWithStats> sessions) {
-        if (VERBOSE_LOGGING) Log.d(TAG, ">>> handleSessionsUpdate START");
-        if (VERBOSE_LOGGING) Log.d(TAG, "    Sessions count: " + (sessions != null ? sessions.size() : "null"));
-        if (VERBOSE_LOGGING) Log.d(TAG, "    Current range: " + (currentDateRange != null ? currentDateRange.getDisplayName() : "null"));
+    /**
+     * Computes the charts of a snapshot of the running totals. Must be called on the main thread.
+     */
+    private void computeCharts(AnalyticsAccumulator snapshot, List<StudySessionWithStats> historyPage) {
+        if (VERBOSE_LOGGING) Log.d(TAG, ">>> computeCharts: " + snapshot.getSessionsInRange() + " sessions");
 
-        if (sessions == null) {
-            Log.e(TAG, "    Sessions is NULL - setting ERROR state");
-            errorMessage.setValue("Error loading sessions from database");
-            viewState.setValue(ViewState.ERROR);
-            return;
-        }
+        // results of the previous totals are outdated
+        cancelComputation();
 
-        if (sessions.isEmpty()) {
-            Log.w(TAG, "    Sessions is EMPTY - setting EMPTY state");
-            sessionHistory.setValue(sessions);
+        DateRange dateRange = snapshot.getRange();
+        if (snapshot.getSessionsInRange() == 0) {
+            Log.w(TAG, "    No sessions in range - setting EMPTY state");
+            startHistory(dateRange, historyPage);
             viewState.setValue(ViewState.EMPTY);
             return;
         }
 
-        if (VERBOSE_LOGGING) Log.d(TAG, "    Moving to background thread for filtering...");
-
-        // Move ALL processing to background thread
-        AppExecutor.getInstance().execute(() -> {
-            if (VERBOSE_LOGGING) Log.d(TAG, "    [BG] Background thread started");
+        startHistory(dateRange, historyPage);
+        showSuccess();
+
+        // Every chart is computed by its own task on the compute pool and shown as soon as it is
+        // ready. The whole group is cancelled if the range changes or the totals change again.
+        long dataVersion = dataVersionTracker.getVersion();
+        ResultCache.Results results = new ResultCache.Results();
+        results.filteredSessions = historyPage;
+        TaskGroup group = new TaskGroup(
+                ComputeExecutor.getInstance(),
+                () -> {
+                    if (VERBOSE_LOGGING) Log.d(TAG, "    [BG] All charts ready - caching results");
+                    resultCache.put(dateRange, dataVersion, results);
+                    postedResults = results;
+                },
+                e -> {
+                    errorMessage.setValue("Error processing data: " + e.getMessage());
+                    viewState.setValue(ViewState.ERROR);
+                }
+        );
+        computation = group;
+        submitCharts(group, snapshot, results);
 
-            try {
-                // Filter sessions for current range
-                if (VERBOSE_LOGGING) Log.d(TAG, "    [BG] Filtering sessions...");
-                List<StudySessionWithStats> filteredSessions = DataProcessor.filterSessionsInRange(
-                        sessions, currentDateRange
-                );
+        if (VERBOSE_LOGGING) Log.d(TAG, "<<< computeCharts END (background work queued)");
+    }
 
-                if (VERBOSE_LOGGING) Log.d(TAG, "    [BG] Filtered count: " + filteredSessions.size());
+    /**
+     * Loads the streak calendar of a month. The per-day totals are aggregated by the database, so
+     * only the sessions of that month are read.
+     *
+     * @param month    month (0-11)
+     * @param year     year
+     * @param callback called on the main thread with one entry per day of the month
+     */
+    public void loadStreakCalendar(int month, int year, OnStreakCalendarLoadedCallback callback) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month, 1);
+        long monthStart = calendar.getTimeInMillis();
+        calendar.add(Calendar.MONTH, 1);
+        long monthEnd = calendar.getTimeInMillis() - 1;
+
+        repository.getDailyTotals(monthStart, monthEnd, totals -> callback.onLoaded(
+                DataProcessor.buildStreakCalendar(totals, STREAK_TARGET_MINUTES, month, year)));
+    }
 
-                if (filteredSessions.isEmpty()) {
-                    Log.w(TAG, "    [BG] No sessions in range - posting EMPTY state");
-                    sessionHistory.postValue(filteredSessions);
-                    viewState.postValue(ViewState.EMPTY);
-                    return;
-                }
+    /**
+     * Submits the computation of every chart of a snapshot of the running totals as a separate
+     * task of the given group.
+     */
+    private void submitCharts(TaskGroup group, AnalyticsAccumulator snapshot, ResultCache.Results results) {
+        // The adaptive schedule is the slowest part: start it first. Its inputs and the stored
+        // schedule are read on the database executor, only the generation runs on the compute pool.
+        // Like the precomputed schedules, it reads the stored productivity model: the sessions are
+        // only needed for the topic of today
+        long scheduleDate = System.currentTimeMillis();
+        group.submit(dbExecutor, () -> {
+            ScheduleRepository schedules = getScheduleRepository();
+            List<StudySessionWithStats> todaySessions = repository.getSessionsSinceSync(startOfDay(scheduleDate));
+            ScheduleInputs inputs = schedules.loadInputs(todaySessions, scheduleDate);
+            AIRecommendation stored = schedules.getStoredSchedule(inputs);
+            if (stored != null) {
+                results.dailyRecommendation = stored;
+                showChart(group, dailyRecommendation, stored);
+                return;
+            }
 
-                if (VERBOSE_LOGGING) Log.d(TAG, "    [BG] Starting data processing...");
-                processAllDataInBackground(sessions, currentDateRange, filteredSessions);
+            group.submit(() -> {
+                if (VERBOSE_LOGGING) Log.d(TAG, "    [BG] Computing AI recommendation...");
+                AIRecommendation adaptiveSchedule = schedules.generateSchedule(inputs, todaySessions, scheduleDate);
+                results.dailyRecommendation = adaptiveSchedule;
+                showChart(group, dailyRecommendation, adaptiveSchedule);
+                group.submit(dbExecutor, () -> schedules.saveSchedule(inputs, adaptiveSchedule));
+            });
+        });
 
-            } catch (Exception e) {
-                Log.e(TAG, "    [BG] ERROR in handleSessionsUpdate background", e);
-                errorMessage.postValue("Error processing data: " + e.getMessage());
-                viewState.postValue(ViewState.ERROR);
-            }
+        // The plan of the following days is not stored: planning a day takes less than a millisecond
+        group.submit(dbExecutor, () -> {
+            ScheduleRepository schedules = getScheduleRepository();
+            Calendar tomorrow = Calendar.getInstance();
+            tomorrow.setTimeInMillis(scheduleDate);
+            tomorrow.add(Calendar.DAY_OF_MONTH, 1);
+            WeekPlanInputs inputs = schedules.loadWeekInputs(tomorrow.getTimeInMillis(), WEEK_PLAN_DAYS);
+            List<StudySessionWithStats> todaySessions = repository.getSessionsSinceSync(startOfDay(scheduleDate));
+
+            group.submit(() -> {
+                List<AIRecommendation> plan = schedules.generateWeeklyPlan(inputs, todaySessions);
+                results.aiRecommendations = plan;
+                showChart(group, aiRecommendations, plan);
+            });
         });
 
-        if (VERBOSE_LOGGING) Log.d(TAG, "<<< handleSessionsUpdate END (background work queued)");
+        // The charts are built from the totals: only their cells are visited, not the sessions
+        AnalyticsKernel.Params params = new AnalyticsKernel.Params();
+        params.topTags = 20;
+        // FIXME: what happens if we don't have a goal? I think it's not handled properly! @lucadibello
+        params.dailyGoal = preferencesManager::getDailyStudyMinutesGoal;
+        long now = System.currentTimeMillis();
+
+        group.submit(() -> {
+            AnalyticsKernel.Output output = snapshot.toOutput(params, now);
+            results.weeklyStats = output.weeklyStats;
+            results.hourlyStats = output.hourlyStats;
+            results.energyCurve = output.energyCurve;
+            results.tagUsage = output.tagUsage;
+            results.heatmap = output.heatmap;
+            results.dailyRings = output.dailyRings;
+            showChart(group, weeklyStats, output.weeklyStats);
+            showChart(group, hourlyStats, output.hourlyStats);
+            showChart(group, energyCurveData, output.energyCurve);
+            showChart(group, tagUsageData, output.tagUsage);
+            showChart(group, heatmapData, output.heatmap);
+            showChart(group, dailyRingsHistory, output.dailyRings);
+        });
     }
 
-    public void loadAllSessionsForCalendar(OnCalendarDataLoadedCallback callback) {
-        AppExecutor.getInstance().execute(() -> {
-            try {
-                // Get absolutely everything from database
-                List<StudySessionWithStats> allSessionsEver = repository.getRecentSessionsSync(Integer.MAX_VALUE);
-
-                Log.d(TAG, "Calendar data loaded: " + allSessionsEver.size() + " total sessions");
+    private static long startOfDay(long timestamp) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(timestamp);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        return cal.getTimeInMillis();
+    }
 
-                // Callback with complete dataset
-                new android.os.Handler(android.os.Looper.getMainLooper()).post(() -> {
-                    callback.onDataLoaded(allSessionsEver);
-                });
+    /**
+     * Returns the schedule repository, creating it on first use (on the database executor: it
+     * loads the user preferences).
+     */
+    private synchronized ScheduleRepository getScheduleRepository() {
+        if (scheduleRepository == null) {
+            scheduleRepository = new ScheduleRepository(getApplication());
+        }
+        return scheduleRepository;
+    }
 
-            } catch (Exception e) {
-                Log.e(TAG, "Error loading calendar data", e);
-                new android.os.Handler(android.os.Looper.getMainLooper()).post(() -> {
-                    callback.onDataLoaded(new ArrayList<>());
-                });
-            }
+    /**
+     * Shows a chart computed by the given group, switching to the SUCCESS state with the first one.
+     */
+    private <T> void showChart(TaskGroup group, MutableLiveData<T> liveData, T value) {
+        group.runOnMain(() -> {
+            liveData.setValue(value);
+            showSuccess();
         });
     }
 
-    private void processAllDataInBackground(List<StudySessionWithStats> allSessions,
-                                            DateRange dateRange,
-                                            List<StudySessionWithStats> filteredSessions) {
-        if (VERBOSE_LOGGING) Log.d(TAG, "    [BG] >>> processAllDataInBackground START");
-        if (VERBOSE_LOGGING) Log.d(TAG, "    [BG]     All sessions: " + (allSessions != null ? allSessions.size() : "null"));
-        if (VERBOSE_LOGGING) Log.d(TAG, "    [BG]     Filtered: " + filteredSessions.size());
-        if (VERBOSE_LOGGING) Log.d(TAG, "    [BG]     Range: " + dateRange.getDisplayName());
-
-        try {
-            // Check cache first
-            if (resultCache != null && resultCache.isValid(allSessions, dateRange)) {
-                if (VERBOSE_LOGGING) Log.d(TAG, "    [BG] ✅ Using CACHED results");
-
-                weeklyStats.postValue(resultCache.weeklyStats);
-                hourlyStats.postValue(resultCache.hourlyStats);
-                dailyRecommendation.postValue(resultCache.dailyRecommendation);
-                energyCurveData.postValue(resultCache.energyCurve);
-                heatmapData.postValue(resultCache.heatmap);
-                streakData.postValue(resultCache.streak);
-                dailyRingsHistory.postValue(resultCache.dailyRings);
-                aiRecommendations.postValue(resultCache.aiRecommendations);
-                sessionHistory.postValue(resultCache.filteredSessions);
-                tagUsageData.postValue(resultCache.tagUsage);
-
-                viewState.postValue(ViewState.SUCCESS);
-
-                if (VERBOSE_LOGGING) Log.d(TAG, "    [BG] <<< processAllDataInBackground END (cached)");
-                return;
-            }
+    private void showSuccess() {
+        if (viewState.getValue() != ViewState.SUCCESS) {
+            viewState.setValue(ViewState.SUCCESS);
+        }
+    }
 
-            if (VERBOSE_LOGGING) Log.d(TAG, "    [BG] Cache miss - computing new results");
-
-            if (VERBOSE_LOGGING) Log.d(TAG, "    [BG] Computing weekly stats...");
-            WeeklyStats weekly = DataProcessor.calculateWeeklyStats(allSessions, dateRange);
-            weeklyStats.postValue(weekly);
-
-            if (VERBOSE_LOGGING) Log.d(TAG, "    [BG] Computing hourly stats...");
-            List<TimeSlotStats> hourly = DataProcessor.calculateHourlyDistribution(allSessions, dateRange);
-            hourlyStats.postValue(hourly);
-
-            if (VERBOSE_LOGGING) Log.d(TAG, "    [BG] Computing AI recommendation...");
-            RecommendationEngine engine = new RecommendationEngine(getApplication());
-            AIRecommendation adaptiveSchedule = engine.generateAdaptiveSchedule(
-                    allSessions,
-                    System.currentTimeMillis()
-            );
-            dailyRecommendation.postValue(adaptiveSchedule);
-
-            if (VERBOSE_LOGGING) Log.d(TAG, "    [BG] Computing energy curve...");
-            List<HourlyQuality> energyCurve = DataProcessor.calculateEnergyCurve(filteredSessions);
-            energyCurveData.postValue(energyCurve);
-
-            if (VERBOSE_LOGGING) Log.d(TAG, "    [BG] Computing heatmap...");
-            List<HeatmapCell> heatmap = DataProcessor.calculateQualityHeatmap(filteredSessions, dateRange);
-            heatmapData.postValue(heatmap);
-
-            if (VERBOSE_LOGGING) Log.d(TAG, "    [BG] Computing streak calendar...");
-            Calendar cal = Calendar.getInstance();
-            int currentMonth = cal.get(Calendar.MONTH);
-            int currentYear = cal.get(Calendar.YEAR);
-            List<StreakDay> streak = DataProcessor.calculateStreakCalendar(
-                    allSessions,
-                    60,
-                    currentMonth,
-                    currentYear
-            );
-            streakData.postValue(streak);
-
-            // Daily Rings - Cap for ALL_TIME
-            if (VERBOSE_LOGGING) Log.d(TAG, "    [BG] Computing daily rings...");
-            DateRange ringsDateRange = dateRange;
-            if (dateRange.getRangeType() == DateRange.RangeType.ALL_TIME) {
-                ringsDateRange = DateRange.lastNDays(90);
-                if (VERBOSE_LOGGING) Log.d(TAG, "    [BG] ALL_TIME detected, capping rings to last 90 days");
-            }
+    /**
+     * Shows the first page of the session history of a range and prepares the paging of the older
+     * sessions. Must be called on the main thread.
+     *
+     * @param range     range of the history
+     * @param firstPage newest sessions of the range (at most one page)
+     */
+    private void startHistory(DateRange range, List<StudySessionWithStats> firstPage) {
+        if (historySource != null) {
+            historySource.invalidate();
+        }
 
-            // get the daily minutes target
-            // FIXME: what happens if we don't have a goal? I think it's not handled properly! @lucadibello
-            int dailyMinutesTarget = preferencesManager.getDailyStudyMinutesGoal(
-                    System.currentTimeMillis()
-            );
+        historySource = repository.getSessionHistory(
+                range.getStartTimestamp(), range.getEndTimestamp(), HISTORY_PAGE_SIZE);
+        historySource.startAfter(firstPage, firstPage.size() >= HISTORY_PAGE_SIZE);
 
-            if (VERBOSE_LOGGING) Log.d(TAG, "    [BG] Using goals from preferences: " + dailyMinutesTarget + " min");
+        historyItems = new ArrayList<>(firstPage);
+        sessionHistory.setValue(new ArrayList<>(historyItems));
+    }
 
-            // ensure we actually have some data
-            assert allSessions != null;
+    /**
+     * Loads the next page of the session history, if any. Called when the user scrolls close to
+     * the end of the loaded sessions.
+     */
+    public void loadMoreHistory() {
+        SessionHistoryPagingSource source = historySource;
+        if (source == null) return;
 
-            List<DailyRings> history = DataProcessor.calculateDailyRingsHistory(
-                    getApplication(),
-                    allSessions,
-                    ringsDateRange,
-                    1
-            );
-            dailyRingsHistory.postValue(history);
+        source.loadNextPage(page -> {
+            if (source != historySource || page.isEmpty()) return;
+            if (VERBOSE_LOGGING) Log.d(TAG, "History page loaded: " + page.size() + " sessions");
 
-            if (filteredSessions.size() > MAX_HISTORY_ITEMS) {
-                Log.w(TAG, "    [BG] Capping history from " + filteredSessions.size() +
-                        " to " + MAX_HISTORY_ITEMS + " most recent sessions");
+            historyItems.addAll(page);
+            sessionHistory.setValue(new ArrayList<>(historyItems));
+        });
+    }
 
-                List<StudySessionWithStats> sortedSessions = new ArrayList<>(filteredSessions);
-                sortedSessions.sort((a, b) -> Long.compare(b.getTimestamp(), a.getTimestamp()));
-            }
+    /**
+     * Returns whether older sessions of the current range can still be loaded.
+     */
+    public boolean hasMoreHistory() {
+        return historySource != null && historySource.hasMore();
+    }
 
-            // Tag Usage
-            if (VERBOSE_LOGGING)
-                Log.d(TAG, "    [BG] Computing tag usage...");
-            List<TagUsage> tagUsage = DataProcessor.calculateTagUsage(allSessions, dateRange, 20);
-            tagUsageData.postValue(tagUsage);
-
-            // Store complete filtered list for pagination
-            List<StudySessionWithStats> allFilteredSessions = new ArrayList<>(filteredSessions);
-            allFilteredSessions.sort((a, b) -> Long.compare(b.getTimestamp(), a.getTimestamp()));
-
-            int endIndex = Math.min(HISTORY_PAGE_SIZE, allFilteredSessions.size());
-            List<StudySessionWithStats> firstPage = allFilteredSessions.subList(0, endIndex);
-
-            sessionHistory.postValue(firstPage);
-
-            if (VERBOSE_LOGGING) Log.d(TAG, "    [BG] Caching results...");
-            resultCache = new ResultCache(allSessions, dateRange);
-            resultCache.weeklyStats = weekly;
-            resultCache.hourlyStats = hourly;
-            resultCache.dailyRecommendation = adaptiveSchedule;
-            resultCache.energyCurve = energyCurve;
-            resultCache.heatmap = heatmap;
-            resultCache.streak = streak;
-            resultCache.dailyRings = history;
-            resultCache.filteredSessions = filteredSessions;
-            resultCache.tagUsage = tagUsage;
-
-            if (VERBOSE_LOGGING) Log.d(TAG, "    [BG] Posting SUCCESS state");
-            viewState.postValue(ViewState.SUCCESS);
-
-            if (VERBOSE_LOGGING) Log.d(TAG, "    [BG] <<< processAllDataInBackground END (success)");
-
-        } catch (Exception e) {
-            Log.e(TAG, "    [BG] ❌ ERROR in processAllDataInBackground", e);
-            errorMessage.postValue("Error processing data: " + e.getMessage());
-            viewState.postValue(ViewState.ERROR);
+    /**
+     * Cancels the chart computations still running, if any. Must be called on the main thread.
+     */
+    private void cancelComputation() {
+        if (computation != null) {
+            computation.cancel();
+            computation = null;
         }
     }
 
+    /**
+     * Publishes a complete set of results to the UI. Must be called on the main thread.
+     */
+    private void postResults(ResultCache.Results results) {
+        postedResults = results;
+
+        weeklyStats.postValue(results.weeklyStats);
+        hourlyStats.postValue(results.hourlyStats);
+        dailyRecommendation.postValue(results.dailyRecommendation);
+        energyCurveData.postValue(results.energyCurve);
+        heatmapData.postValue(results.heatmap);
+        dailyRingsHistory.postValue(results.dailyRings);
+        aiRecommendations.postValue(results.aiRecommendations);
+        startHistory(currentDateRange, results.filteredSessions);
+        tagUsageData.postValue(results.tagUsage);
+
+        viewState.postValue(ViewState.SUCCESS);
+    }
+
     public void deleteSession(StudySessionWithStats session) {
-        repository.deleteSession(session.session, this::refreshData);
+        // the charts are updated by the session change listener
+        repository.deleteSession(session.session, null);
     }
 
     public void refreshData() {
@@ -388,12 +537,8 @@ public class AnalyticsViewModel extends AndroidViewModel {
         Log.d(TAG, "Refreshing data (cache invalidated)");
         isRefreshing = true;
 
-        resultCache = null;
-
-        if (sessionsSource != null) {
-            sessionsSource.removeObserver(sessionsObserver);
-            sessionsSource = null;
-        }
+        resultCache.clear();
+        postedResults = null;
 
         if (currentDateRange != null) {
             // Force reload by temporarily clearing currentDateRange
@@ -428,6 +573,13 @@ public class AnalyticsViewModel extends AndroidViewModel {
         return dailyRecommendation;
     }
 
+    /**
+     * Returns the plan of the {@value #WEEK_PLAN_DAYS} days after today, one schedule per day.
+     */
+    public LiveData<List<AIRecommendation>> getWeeklyPlan() {
+        return aiRecommendations;
+    }
+
     public LiveData<List<HeatmapCell>> getHeatmapData() {
         return heatmapData;
     }
@@ -462,14 +614,17 @@ public class AnalyticsViewModel extends AndroidViewModel {
 
         Log.d(TAG, "ViewModel cleared");
 
-        if (sessionsSource != null) {
-            sessionsSource.removeObserver(sessionsObserver);
-        }
+        StudySessionRepository.removeSessionChangeListener(sessionChangeListener);
+        loadGeneration++;
 
-        resultCache = null;
+        cancelComputation();
+        if (historySource != null) {
+            historySource.invalidate();
+        }
+        resultCache.clear();
     }
 
-    public interface OnCalendarDataLoadedCallback {
-        void onDataLoaded(List<StudySessionWithStats> allSessions);
+    public interface OnStreakCalendarLoadedCallback {
+        void onLoaded(List<StreakDay> days);
     }
 }
@@ -30,6 +30,7 @@ import java.util.concurrent.TimeUnit;
 
 import ch.inf.usi.mindbricks.R;
 import ch.inf.usi.mindbricks.model.Tag;
+import ch.inf.usi.mindbricks.service.FocusEnvironment;
 import ch.inf.usi.mindbricks.ui.nav.NavigationLocker;
 import ch.inf.usi.mindbricks.ui.nav.home.helper.HomeFragmentHelper;
 import ch.inf.usi.mindbricks.ui.settings.SettingsActivity;
@@ -45,6 +46,7 @@ public class HomeFragment extends HomeFragmentHelper {
 
     private TextView timerTextView;
     private TextView stateLabel;
+    private TextView focusEnvironmentLabel;
     private Spinner tagSpinner;
     private Button startSessionButton;
     private TextView coinBalanceTextView;
@@ -90,6 +92,7 @@ public class HomeFragment extends HomeFragmentHelper {
 
         timerTextView = view.findViewById(R.id.timer_text_view);
         stateLabel = view.findViewById(R.id.state_label);
+        focusEnvironmentLabel = view.findViewById(R.id.focus_environment_label);
         tagSpinner = view.findViewById(R.id.tag_spinner);
         startSessionButton = view.findViewById(R.id.start_stop_button);
         coinBalanceTextView = view.findViewById(R.id.coin_balance_text);
@@ -251,6 +254,40 @@ public class HomeFragment extends HomeFragmentHelper {
                 homeViewModel.showQuestionnaireEvent.setValue(null);
             }
         });
+
+        homeViewModel.focusEnvironment.observe(getViewLifecycleOwner(), this::updateFocusEnvironment);
+    }
+
+    // Shows the live state of the environment while the sensors are running
+    private void updateFocusEnvironment(@Nullable FocusEnvironment environment) {
+        if (environment == null) {
+            focusEnvironmentLabel.setVisibility(View.GONE);
+            return;
+        }
+
+        int text;
+        int color;
+        switch (environment.getCondition()) {
+            case DISTRACTED:
+                text = R.string.focus_environment_distracted;
+                color = R.color.analytics_accent_red;
+                break;
+            case NOISY:
+                text = R.string.focus_environment_noisy;
+                color = R.color.analytics_accent_orange;
+                break;
+            case DARK:
+                text = R.string.focus_environment_dark;
+                color = R.color.analytics_accent_yellow;
+                break;
+            default:
+                text = R.string.focus_environment_good;
+                color = R.color.analytics_accent_green;
+                break;
+        }
+        focusEnvironmentLabel.setText(text);
+        focusEnvironmentLabel.setTextColor(getResources().getColor(color, null));
+        focusEnvironmentLabel.setVisibility(View.VISIBLE);
     }
 
     private void startDefaultSession() {
@@ -12,6 +12,7 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
 import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
 import java.util.concurrent.TimeUnit;
@@ -21,6 +22,9 @@ import ch.inf.usi.mindbricks.database.AppDatabase;
 import ch.inf.usi.mindbricks.model.Tag;
 import ch.inf.usi.mindbricks.model.questionnare.SessionQuestionnaire;
 import ch.inf.usi.mindbricks.model.visual.StudySession;
+import ch.inf.usi.mindbricks.repository.StudySessionRepository;
+import ch.inf.usi.mindbricks.service.FocusEnvironment;
+import ch.inf.usi.mindbricks.service.FocusSignalStream;
 import ch.inf.usi.mindbricks.service.SensorService;
 import ch.inf.usi.mindbricks.util.AppExecutor;
 import ch.inf.usi.mindbricks.util.NotificationHelper;
@@ -70,8 +74,14 @@ public class HomeViewModel extends AndroidViewModel {
      */
     public final MutableLiveData<Long> showQuestionnaireEvent = new MutableLiveData<>();
 
+    /**
+     * Live state of the study environment while the sensors are running (null otherwise)
+     */
+    public final LiveData<FocusEnvironment> focusEnvironment = FocusSignalStream.getInstance().getEnvironment();
+
     private final NotificationHelper notificationHelper;
     private final PreferencesManager preferencesManager;
+    private final StudySessionRepository sessionRepository;
     private CountDownTimer timer;
     private int currentPomodoroStep = 0; // 1-4 for sessions in current cycle
     private long currentSessionId = -1;
@@ -81,6 +91,7 @@ public class HomeViewModel extends AndroidViewModel {
         super(application);
         this.notificationHelper = new NotificationHelper(application);
         this.preferencesManager = new PreferencesManager(application);
+        this.sessionRepository = new StudySessionRepository(application);
     }
 
     /**
@@ -190,12 +201,10 @@ public class HomeViewModel extends AndroidViewModel {
             AppDatabase db = AppDatabase.getInstance(getApplication());
             long id = db.sessionQuestionnaireDao().insert(questionnaire);
             Log.d(TAG, "Questionnaire saved with ID: " + id);
-            // set calculated focus score to the given questionnaire
-            db.studySessionDao().updateFocusScore(
-                    questionnaire.getSessionId(),
-                    focusScore
-            );
-            Log.d(TAG, "Focus score saved for session " + questionnaire.getSessionId());
+            // set calculated focus score to the given questionnaire (and update the productivity
+            // model of the recommendations)
+            sessionRepository.updateFocusScore(questionnaire.getSessionId(), focusScore, () ->
+                    Log.d(TAG, "Focus score saved for session " + questionnaire.getSessionId()));
         });
     }
 
@@ -246,9 +255,8 @@ public class HomeViewModel extends AndroidViewModel {
         boolean hasMicPermission = ContextCompat.checkSelfPermission(getApplication(),
                 Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_GRANTED;
 
-        AppExecutor.getInstance().execute(() -> {
-            currentSessionId = AppDatabase.getInstance(getApplication())
-                    .studySessionDao().insert(session);
+        sessionRepository.insertSession(session, sessionId -> {
+            currentSessionId = sessionId;
             Log.d(TAG, "Study session started with ID: " + currentSessionId);
 
             // Start sensor service if permission granted
@@ -425,29 +433,17 @@ public class HomeViewModel extends AndroidViewModel {
             final long sessionId = currentSessionId;
             final long startTime = currentSessionStartTime;
 
-            AppExecutor.getInstance().execute(() -> {
-                AppDatabase db = AppDatabase.getInstance(getApplication());
-
-                // Calculate actual duration
-                long elapsedMillis = System.currentTimeMillis() - startTime;
-                int durationMinutes = (int) TimeUnit.MILLISECONDS.toMinutes(elapsedMillis);
-
-                // Ensure at least 1 minute if > 30 seconds
-                if (durationMinutes == 0 && elapsedMillis > 30000) {
-                    durationMinutes = 1;
-                }
-
-                // Update session duration
-                db.studySessionDao().updateDuration(sessionId, durationMinutes);
+            // Calculate actual duration
+            long elapsedMillis = System.currentTimeMillis() - startTime;
+            int minutes = (int) TimeUnit.MILLISECONDS.toMinutes(elapsedMillis);
 
-                // Log session statistics
-                float avgNoise = db.sessionSensorLogDao().getAverageNoise(sessionId);
-                float avgLight = db.sessionSensorLogDao().getAverageLight(sessionId);
-                int motionCount = db.sessionSensorLogDao().getMotionCount(sessionId);
+            // Ensure at least 1 minute if > 30 seconds
+            final int durationMinutes = minutes == 0 && elapsedMillis > 30000 ? 1 : minutes;
 
-                Log.d(TAG, String.format("Session %d completed: %dm, Noise=%.1f, Light=%.1f, Motion=%d",
-                        sessionId, durationMinutes, avgNoise, avgLight, motionCount));
-            });
+            // Update session duration (the sensor statistics are written by the sensor
+            // service when it stops)
+            sessionRepository.updateDuration(sessionId, durationMinutes, () ->
+                    Log.d(TAG, String.format("Session %d completed: %dm", sessionId, durationMinutes)));
 
             currentSessionId = -1;
             currentSessionStartTime = 0;
@@ -0,0 +1,72 @@
+package ch.inf.usi.mindbricks.util;
+
+import android.os.Process;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Singleton pool for CPU-bound work (e.g. analytics charts).
+ * <p>
+ * {@link AppExecutor} is a single thread shared by all the database writes of the app, so long
+ * computations must not run on it. This pool is sized to the available cores (keeping one for
+ * the UI thread) and its threads run at background priority. Idle threads are released after a
+ * few seconds.
+ *
+ * @author Luca Di Bello
+ */
+public class ComputeExecutor {
+
+    private static final long KEEP_ALIVE_SECONDS = 10;
+
+    /**
+     * Singleton instance for this class.
+     */
+    private static volatile ComputeExecutor instance;
+
+    /**
+     * Executor for computations.
+     */
+    private final ExecutorService executor;
+
+    private ComputeExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public static ExecutorService getInstance() {
+        if (instance == null) {
+            synchronized (ComputeExecutor.class) {
+                if (instance == null) {
+                    int threads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                            threads, threads,
+                            KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(),
+                            new ComputeThreadFactory()
+                    );
+                    executor.allowCoreThreadTimeOut(true);
+                    instance = new ComputeExecutor(executor);
+                }
+            }
+        }
+        return instance.executor;
+    }
+
+    private static class ComputeThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "compute-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package ch.inf.usi.mindbricks.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Group of related background tasks that are cancelled together.
+ * <p>
+ * Tasks are submitted to the given executor and may submit further tasks to the same group (fan
+ * out). A task can also run on another executor (e.g. database work on the {@link AppExecutor})
+ * while still being part of the group. Results are delivered to the UI through {@link #post(MutableLiveData, Object)}, which sets
+ * the value on the main thread only if the group has not been cancelled in the meantime: once
+ * {@link #cancel()} returns (on the main thread), no value of the group will reach the UI anymore.
+ * <p>
+ * When every task completed, the completion callback runs on the thread of the last task. If a
+ * task fails, the remaining ones are cancelled and the error callback runs on the main thread.
+ *
+ * @author Luca Di Bello
+ */
+public class TaskGroup {
+    private static final String TAG = "TaskGroup";
+
+    private final ExecutorService executor;
+    private final Runnable onComplete;
+    private final Consumer<Exception> onError;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final List<Future<?>> futures = new ArrayList<>();
+    private volatile boolean cancelled = false;
+
+    /**
+     * @param executor   executor running the tasks
+     * @param onComplete called once all tasks completed (may be null)
+     * @param onError    called on the main thread with the first failure (may be null)
+     */
+    public TaskGroup(ExecutorService executor, Runnable onComplete, Consumer<Exception> onError) {
+        this.executor = executor;
+        this.onComplete = onComplete;
+        this.onError = onError;
+    }
+
+    /**
+     * Submits a task to the group. Ignored if the group was cancelled.
+     *
+     * @param task task to run
+     */
+    public void submit(Runnable task) {
+        submit(executor, task);
+    }
+
+    /**
+     * Submits a task to the group, running it on the given executor instead of the one of the
+     * group. Ignored if the group was cancelled.
+     *
+     * @param executor executor running the task
+     * @param task     task to run
+     */
+    public void submit(Executor executor, Runnable task) {
+        if (cancelled) return;
+
+        pending.incrementAndGet();
+        try {
+            FutureTask<Void> future = new FutureTask<>(() -> run(task), null);
+            synchronized (futures) {
+                futures.add(future);
+            }
+            executor.execute(future);
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            fail(e);
+        }
+    }
+
+    private void run(Runnable task) {
+        try {
+            if (!cancelled) task.run();
+        } catch (Exception e) {
+            fail(e);
+        } finally {
+            if (pending.decrementAndGet() == 0 && !cancelled && onComplete != null) {
+                onComplete.run();
+            }
+        }
+    }
+
+    private void fail(Exception e) {
+        if (cancelled) return;
+        Log.e(TAG, "Task failed, cancelling group", e);
+        cancel();
+        if (onError != null) mainHandler.post(() -> onError.accept(e));
+    }
+
+    /**
+     * Sets a value on the main thread, unless the group is cancelled before it gets delivered.
+     *
+     * @param liveData target live data
+     * @param value    value to set
+     */
+    public <T> void post(MutableLiveData<T> liveData, T value) {
+        runOnMain(() -> liveData.setValue(value));
+    }
+
+    /**
+     * Runs an action on the main thread, unless the group is cancelled before it gets executed.
+     *
+     * @param action action to run
+     */
+    public void runOnMain(Runnable action) {
+        if (cancelled) return;
+        mainHandler.post(() -> {
+            if (!cancelled) action.run();
+        });
+    }
+
+    /**
+     * Cancels the group: pending tasks are not started, running ones are left to finish but their
+     * values are not delivered anymore.
+     */
+    public void cancel() {
+        cancelled = true;
+        synchronized (futures) {
+            for (Future<?> future : futures) {
+                future.cancel(false);
+            }
+            futures.clear();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
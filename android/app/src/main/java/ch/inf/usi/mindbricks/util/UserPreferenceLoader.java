@@ -12,9 +12,14 @@ import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import ch.inf.usi.mindbricks.model.preferences.SchedulingPreferences;
+import ch.inf.usi.mindbricks.model.preferences.SchedulingPreferences.TimeWindow;
+
 /**
  * Singleton utility that loads and parses user_preferences.json at runtime.
  * Provides null-safe accessor methods for preference values without requiring
@@ -30,6 +35,10 @@ import java.util.stream.Collectors;
  * - Calendar integration settings
  * - Personal goals
  *
+ * The scheduling preferences are also parsed once into a {@link SchedulingPreferences} when the
+ * preferences are loaded, so the schedule generation never walks the JSON. The file is bundled
+ * with the app and never changes while it runs.
+ *
  * @author Marta Šafářová
  * Refactored by
  * @author Luca Di Bello
@@ -38,11 +47,25 @@ public class UserPreferenceLoader {
     private static final String TAG = "UserPreferenceLoader";
     private static final String PREFS_FILE = "user_preferences.json";
 
+    private static final String[] DAY_NAMES = {
+            "SUNDAY", "MONDAY", "TUESDAY", "WEDNESDAY", "THURSDAY", "FRIDAY", "SATURDAY"
+    };
+
     private static UserPreferenceLoader instance;
     private JsonObject preferences;
 
+    /**
+     * Typed view of {@link #preferences}, parsed when they are set
+     */
+    private SchedulingPreferences schedulingPreferences;
+
     private UserPreferenceLoader(Context context) {
-        loadPreferences(context);
+        JsonObject loaded = loadPreferences(context);
+        setPreferences(loaded != null ? loaded : createDefaultPreferences());
+    }
+
+    private UserPreferenceLoader(JsonObject preferences) {
+        setPreferences(preferences);
     }
 
     /**
@@ -59,28 +82,67 @@ public class UserPreferenceLoader {
     }
 
     /**
-     * Load preferences from assets/user_preferences.json
+     * Creates a loader from the given JSON content instead of the bundled asset.
+     * Falls back to the default preferences if the content cannot be parsed.
+     *
+     * @param json content with the same structure as user_preferences.json
+     * @return a new loader (not the app singleton)
+     */
+    public static UserPreferenceLoader fromJson(String json) {
+        JsonObject parsed = parseJson(json);
+        if (parsed == null) {
+            Log.e(TAG, "Failed to parse user preferences, using defaults");
+            parsed = createDefaultPreferences();
+        }
+        return new UserPreferenceLoader(parsed);
+    }
+
+    /**
+     * Returns the typed scheduling preferences (parsed once, no JSON access).
      */
-    private void loadPreferences(Context context) {
+    public SchedulingPreferences getSchedulingPreferences() {
+        return schedulingPreferences;
+    }
+
+    private void setPreferences(JsonObject json) {
+        preferences = json;
+        schedulingPreferences = parseSchedulingPreferences();
+    }
+
+    private static JsonObject parseJson(String json) {
         try {
-            InputStream is = context.getAssets().open(PREFS_FILE);
+            return new Gson().fromJson(json, JsonObject.class);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to parse user preferences", e);
+            return null;
+        }
+    }
+
+    /**
+     * Load preferences from assets/user_preferences.json
+     *
+     * @return the preferences, or null if the file cannot be read
+     */
+    private static JsonObject loadPreferences(Context context) {
+        try (InputStream is = context.getAssets().open(PREFS_FILE)) {
             String json = new BufferedReader(new InputStreamReader(is))
                     .lines()
                     .collect(Collectors.joining("\n"));
 
-            preferences = new Gson().fromJson(json, JsonObject.class);
+            JsonObject parsed = new Gson().fromJson(json, JsonObject.class);
             Log.d(TAG, "Successfully loaded user preferences from " + PREFS_FILE);
+            return parsed;
 
         } catch (Exception e) {
             Log.e(TAG, "Failed to load user preferences, using defaults", e);
-            preferences = createDefaultPreferences();
+            return null;
         }
     }
 
     /**
      * Create default preferences if JSON loading fails
      */
-    private JsonObject createDefaultPreferences() {
+    private static JsonObject createDefaultPreferences() {
         JsonObject defaults = new JsonObject();
 
         // Sleep schedule defaults (11pm - 6am, 7.5 hours)
@@ -164,6 +226,127 @@ public class UserPreferenceLoader {
         return defaults;
     }
 
+    /**
+     * Returns a hash of the whole preference content, which changes when any preference does
+     * (used to tell whether a stored schedule is still up to date).
+     *
+     * @return hash of the preferences
+     */
+    public long getFingerprint() {
+        return schedulingPreferences.fingerprint();
+    }
+
+    /**
+     * Parses the current preferences into their typed form.
+     */
+    private SchedulingPreferences parseSchedulingPreferences() {
+        JsonObject sleep = getSleepSchedule();
+        TimeWindow sleepWindow = sleep == null ? null
+                : new TimeWindow(getMinuteOfDay(sleep, "bedtime"), getMinuteOfDay(sleep, "wakeupTime"));
+
+        List<TimeWindow> meals = new ArrayList<>();
+        JsonObject mealTimes = getMealTimes();
+        if (mealTimes != null) {
+            for (String mealType : new String[]{"breakfast", "lunch", "dinner"}) {
+                JsonObject meal = mealTimes.getAsJsonObject(mealType);
+                if (meal == null || !getBoolean(meal, "enabled", false)) continue;
+                int hour = getInt(meal, "hour", -1);
+                if (hour < 0 || hour >= 24) continue;
+                int start = hour * 60 + getInt(meal, "minute", 0);
+                meals.add(new TimeWindow(start, start + Math.max(0, getInt(meal, "duration", 60))));
+            }
+        }
+
+        JsonObject work = getWorkSchedule();
+        SchedulingPreferences.Work workSchedule = work == null || !isEnabled(work) ? null
+                : new SchedulingPreferences.Work(
+                        getDayMask(getStringList(work, "workDays")),
+                        new TimeWindow(getMinuteOfDay(work, "startTime"), getMinuteOfDay(work, "endTime")),
+                        getBoolean(work, "allowStudyDuringWork", false));
+
+        List<TimeWindow> exercise = new ArrayList<>();
+        JsonObject exerciseSchedule = getExerciseSchedule();
+        if (exerciseSchedule != null && isEnabled(exerciseSchedule) && exerciseSchedule.has("preferredTimes")) {
+            for (JsonElement element : exerciseSchedule.getAsJsonArray("preferredTimes")) {
+                JsonObject block = element.getAsJsonObject();
+                int hour = getInt(block, "hour", -1);
+                if (hour < 0 || hour >= 24) continue;
+                int start = hour * 60 + getInt(block, "minute", 0);
+                exercise.add(new TimeWindow(start, start + Math.max(0, getInt(block, "duration", 0))));
+            }
+        }
+
+        JsonObject social = getSocialTime();
+        SchedulingPreferences.Social socialTime = null;
+        if (social != null && isEnabled(social) && getBoolean(social, "protectFromStudy", false)) {
+            int hours = 0;
+            for (int hour : getIntList(social, "preferredHours")) {
+                if (hour >= 0 && hour < 24) hours |= 1 << hour;
+            }
+            socialTime = new SchedulingPreferences.Social(getDayMask(getStringList(social, "preferredDays")), hours);
+        }
+
+        JsonObject study = getStudyPreferences();
+        int preferredHours = 0;
+        if (study != null && study.has("preferredStudyTimes")) {
+            JsonObject times = study.getAsJsonObject("preferredStudyTimes");
+            for (String key : times.keySet()) {
+                JsonObject time = times.getAsJsonObject(key);
+                if (!isEnabled(time)) continue;
+                int end = Math.min(24, getInt(time, "endHour", 0));
+                for (int h = Math.max(0, getInt(time, "startHour", 0)); h < end; h++) preferredHours |= 1 << h;
+            }
+        }
+        SchedulingPreferences.Study studyPreferences = new SchedulingPreferences.Study(
+                getInt(study, "preferredSessionLength", 25),
+                getInt(study, "minBreakBetweenSessions", 5),
+                getInt(study, "maxDailyStudyHours", 24) * 60,
+                preferredHours);
+
+        JsonObject calendar = getCalendarIntegration();
+        SchedulingPreferences.CalendarBuffers calendarBuffers = calendar == null || !isEnabled(calendar) ? null
+                : new SchedulingPreferences.CalendarBuffers(
+                        getInt(calendar, "bufferBeforeEvent", 0),
+                        getInt(calendar, "bufferAfterEvent", 0));
+
+        JsonObject personalGoals = getPersonalGoals();
+        SchedulingPreferences.EnergyThresholds energy = new SchedulingPreferences.EnergyThresholds(
+                getInt(personalGoals, "lowThreshold", 15),
+                getInt(personalGoals, "highThreshold", 35));
+
+        return new SchedulingPreferences(
+                sleepWindow,
+                Collections.unmodifiableList(meals),
+                workSchedule,
+                Collections.unmodifiableList(exercise),
+                socialTime,
+                studyPreferences,
+                calendarBuffers,
+                energy,
+                preferences == null ? 0 : preferences.toString().hashCode());
+    }
+
+    private int getMinuteOfDay(JsonObject object, String key) {
+        return getHour(object, key) * 60 + getMinute(object, key);
+    }
+
+    /**
+     * Returns the day mask (see {@link SchedulingPreferences#dayBit}) of a list of day names.
+     */
+    private static int getDayMask(List<String> dayNames) {
+        int mask = 0;
+        for (String name : dayNames) {
+            int index = Arrays.asList(DAY_NAMES).indexOf(name.toUpperCase());
+            if (index < 0) {
+                Log.w(TAG, "Unknown day of the week: " + name);
+                continue;
+            }
+            // Calendar.SUNDAY is 1
+            mask |= SchedulingPreferences.dayBit(index + 1);
+        }
+        return mask;
+    }
+
     // ===== Top-level Accessor Methods =====
 
     /**
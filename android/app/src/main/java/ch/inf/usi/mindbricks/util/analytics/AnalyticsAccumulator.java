@@ -0,0 +1,321 @@
+package ch.inf.usi.mindbricks.util.analytics;
+
+import static ch.inf.usi.mindbricks.util.analytics.SessionColumns.DAY_MS;
+import static ch.inf.usi.mindbricks.util.analytics.SessionColumns.HOUR_MS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import ch.inf.usi.mindbricks.model.visual.DateRange;
+import ch.inf.usi.mindbricks.model.visual.StudySessionWithStats;
+
+/**
+ * Running totals of the charts of the analytics screen for one range.
+ * <p>
+ * Every chart of the {@link AnalyticsKernel} is built from per-cell sums (weekday, hour, tag,
+ * heatmap hour, ring day) over the sessions of its window, so a session can be added or removed
+ * in O(1) by adding or subtracting its contribution to its cells. The totals are filled once
+ * (e.g. page by page, without keeping the sessions) and then kept up to date with the changes of
+ * single sessions; building the charts only visits the cells.
+ * <p>
+ * The charts are the same as the ones of the kernel, except for ties of the topic of today: the
+ * tag seen first wins instead of the first one to reach the count.
+ * <p>
+ * Not thread safe: the accumulator must be confined to a single thread (see {@link #copy()}).
+ *
+ * @author Luca Di Bello
+ */
+public final class AnalyticsAccumulator {
+
+    private final DateRange range;
+    private final TimeZone timeZone;
+    private final long today;
+
+    // sessions of the range
+    private int sessionsInRange;
+    private final int[] weekdayCount;
+    private final int[] weekdayMinutes;
+    private final double[] weekdayFocus;
+    private final int[] hourCount;
+    private final int[] hourMinutes;
+    private final double[] hourFocus;
+    private final double[] hourNoise;
+    private final double[] hourLight;
+
+    // tags, by title (as in SessionColumns)
+    private final Map<String, Integer> tagIndex;
+    private final List<String> tagTitles;
+    private int[] tagColors;
+    private int[] tagCount;
+    private int[] tagMinutes;
+    private int[] todayTagCount;
+
+    // dense window of local hours of the heatmap
+    private final long heatmapStart;
+    private final long heatmapEnd;
+    private final long heatmapFirstHour;
+    private final int[] cellCount;
+    private final int[] cellMinutes;
+    private final double[] cellFocus;
+    private final long[] cellStart;
+
+    // dense window of local days of the daily rings
+    private final long ringsStart;
+    private final long ringsEnd;
+    private final long ringsFirstDay;
+    private final int[] ringCount;
+    private final int[] ringMinutes;
+    private final double[] ringFocus;
+    private final long[] ringFirstTimestamp;
+
+    /**
+     * Creates empty totals for a range, using the default time zone.
+     *
+     * @param range selected range
+     * @param now   current time (defines today)
+     */
+    public AnalyticsAccumulator(DateRange range, long now) {
+        this(range, now, TimeZone.getDefault());
+    }
+
+    /**
+     * Creates empty totals for a range.
+     *
+     * @param range    selected range
+     * @param now      current time (defines today)
+     * @param timeZone time zone used to compute the local calendar fields
+     */
+    public AnalyticsAccumulator(DateRange range, long now, TimeZone timeZone) {
+        this.range = range;
+        this.timeZone = timeZone;
+        this.today = localEpochDay(now);
+
+        weekdayCount = new int[7];
+        weekdayMinutes = new int[7];
+        weekdayFocus = new double[7];
+        hourCount = new int[24];
+        hourMinutes = new int[24];
+        hourFocus = new double[24];
+        hourNoise = new double[24];
+        hourLight = new double[24];
+
+        tagIndex = new HashMap<>();
+        tagTitles = new ArrayList<>();
+        tagColors = new int[8];
+        tagCount = new int[8];
+        tagMinutes = new int[8];
+        todayTagCount = new int[8];
+
+        long[] heatmapWindow = AnalyticsKernel.heatmapWindow(range);
+        heatmapStart = heatmapWindow[0];
+        heatmapEnd = heatmapWindow[1];
+        heatmapFirstHour = Math.floorDiv(heatmapStart + timeZone.getOffset(heatmapStart), HOUR_MS);
+        int heatmapHours = (int) (Math.floorDiv(heatmapEnd + timeZone.getOffset(heatmapEnd), HOUR_MS)
+                - heatmapFirstHour + 1);
+        cellCount = new int[heatmapHours];
+        cellMinutes = new int[heatmapHours];
+        cellFocus = new double[heatmapHours];
+        cellStart = new long[heatmapHours];
+
+        long[] ringsWindow = AnalyticsKernel.ringsWindow(range);
+        ringsStart = ringsWindow[0];
+        ringsEnd = ringsWindow[1];
+        ringsFirstDay = localEpochDay(ringsStart);
+        int ringsDays = (int) (localEpochDay(ringsEnd) - ringsFirstDay + 1);
+        ringCount = new int[ringsDays];
+        ringMinutes = new int[ringsDays];
+        ringFocus = new double[ringsDays];
+        ringFirstTimestamp = new long[ringsDays];
+    }
+
+    private AnalyticsAccumulator(AnalyticsAccumulator other) {
+        range = other.range;
+        timeZone = other.timeZone;
+        today = other.today;
+
+        sessionsInRange = other.sessionsInRange;
+        weekdayCount = other.weekdayCount.clone();
+        weekdayMinutes = other.weekdayMinutes.clone();
+        weekdayFocus = other.weekdayFocus.clone();
+        hourCount = other.hourCount.clone();
+        hourMinutes = other.hourMinutes.clone();
+        hourFocus = other.hourFocus.clone();
+        hourNoise = other.hourNoise.clone();
+        hourLight = other.hourLight.clone();
+
+        tagIndex = new HashMap<>(other.tagIndex);
+        tagTitles = new ArrayList<>(other.tagTitles);
+        tagColors = other.tagColors.clone();
+        tagCount = other.tagCount.clone();
+        tagMinutes = other.tagMinutes.clone();
+        todayTagCount = other.todayTagCount.clone();
+
+        heatmapStart = other.heatmapStart;
+        heatmapEnd = other.heatmapEnd;
+        heatmapFirstHour = other.heatmapFirstHour;
+        cellCount = other.cellCount.clone();
+        cellMinutes = other.cellMinutes.clone();
+        cellFocus = other.cellFocus.clone();
+        cellStart = other.cellStart.clone();
+
+        ringsStart = other.ringsStart;
+        ringsEnd = other.ringsEnd;
+        ringsFirstDay = other.ringsFirstDay;
+        ringCount = other.ringCount.clone();
+        ringMinutes = other.ringMinutes.clone();
+        ringFocus = other.ringFocus.clone();
+        ringFirstTimestamp = other.ringFirstTimestamp.clone();
+    }
+
+    /**
+     * Returns a copy of the totals, e.g. to build the charts on another thread while this one
+     * keeps receiving changes.
+     */
+    public AnalyticsAccumulator copy() {
+        return new AnalyticsAccumulator(this);
+    }
+
+    /**
+     * Returns the range of the totals.
+     */
+    public DateRange getRange() {
+        return range;
+    }
+
+    /**
+     * Returns the number of sessions of the range.
+     */
+    public int getSessionsInRange() {
+        return sessionsInRange;
+    }
+
+    /**
+     * Adds the contribution of a session.
+     */
+    public void add(StudySessionWithStats session) {
+        apply(session, 1);
+    }
+
+    /**
+     * Removes the contribution of a session previously added (with the same values).
+     */
+    public void remove(StudySessionWithStats session) {
+        apply(session, -1);
+    }
+
+    /**
+     * Replaces the contribution of a session by the one of its new values. Either side may be
+     * {@code null} (inserted or deleted session).
+     *
+     * @param before values of the session before the change
+     * @param after  values of the session after the change
+     */
+    public void update(StudySessionWithStats before, StudySessionWithStats after) {
+        if (before != null) remove(before);
+        if (after != null) add(after);
+    }
+
+    private void apply(StudySessionWithStats session, int sign) {
+        final long ts = session.getTimestamp();
+        final int minutes = sign * session.getDurationMinutes();
+        final double focus = sign * session.getFocusScore();
+
+        long localTime = ts + timeZone.getOffset(ts);
+        long day = Math.floorDiv(localTime, DAY_MS);
+        int hour = (int) (Math.floorMod(localTime, DAY_MS) / HOUR_MS);
+        int tag = tagIndex(session);
+
+        if (range.contains(ts)) {
+            sessionsInRange += sign;
+
+            // 1970-01-01 was a Thursday
+            int weekday = (int) Math.floorMod(day + 3, 7L);
+            weekdayCount[weekday] += sign;
+            weekdayMinutes[weekday] += minutes;
+            weekdayFocus[weekday] += focus;
+
+            hourCount[hour] += sign;
+            hourMinutes[hour] += minutes;
+            hourFocus[hour] += focus;
+            hourNoise[hour] += sign * session.getAvgNoiseLevel();
+            hourLight[hour] += sign * session.getAvgLightLevel();
+
+            tagCount[tag] += sign;
+            tagMinutes[tag] += minutes;
+
+            int cell = (int) (day * 24 + hour - heatmapFirstHour);
+            if (ts >= heatmapStart && ts <= heatmapEnd && cell >= 0 && cell < cellCount.length) {
+                if (cellCount[cell] == 0) cellStart[cell] = ts - Math.floorMod(localTime, HOUR_MS);
+                cellCount[cell] += sign;
+                cellMinutes[cell] += minutes;
+                cellFocus[cell] += focus;
+            }
+        }
+
+        int ring = (int) (day - ringsFirstDay);
+        if (ts >= ringsStart && ts <= ringsEnd && ring >= 0 && ring < ringCount.length) {
+            // any session of the day gives the same daily goal
+            if (ringCount[ring] == 0) ringFirstTimestamp[ring] = ts;
+            ringCount[ring] += sign;
+            ringMinutes[ring] += minutes;
+            ringFocus[ring] += focus;
+            if (day == today) todayTagCount[tag] += sign;
+        }
+    }
+
+    private int tagIndex(StudySessionWithStats session) {
+        String title = session.getTagTitle();
+        if (title == null || title.isEmpty()) title = SessionColumns.NO_TAG;
+        Integer index = tagIndex.get(title);
+        if (index != null) return index;
+
+        index = tagTitles.size();
+        if (index == tagCount.length) {
+            int capacity = 2 * index;
+            tagColors = Arrays.copyOf(tagColors, capacity);
+            tagCount = Arrays.copyOf(tagCount, capacity);
+            tagMinutes = Arrays.copyOf(tagMinutes, capacity);
+            todayTagCount = Arrays.copyOf(todayTagCount, capacity);
+        }
+        tagIndex.put(title, index);
+        tagTitles.add(title);
+        tagColors[index] = session.getTagColor();
+        return index;
+    }
+
+    /**
+     * Builds every chart from the current totals. Only the cells are visited, not the sessions.
+     *
+     * @param params range-independent chart parameters
+     * @param now    current time
+     * @return the computed charts
+     */
+    public AnalyticsKernel.Output toOutput(AnalyticsKernel.Params params, long now) {
+        AnalyticsKernel.Output output = new AnalyticsKernel.Output();
+        output.sessionsInRange = sessionsInRange;
+        output.weeklyStats = AnalyticsKernel.weeklyStats(weekdayCount, weekdayMinutes, weekdayFocus);
+        AnalyticsKernel.hourlyStats(hourCount, hourMinutes, hourFocus, hourNoise, hourLight, output);
+        output.tagUsage = AnalyticsKernel.tagUsage(tagTitles, tagColors, params.topTags, sessionsInRange,
+                tagCount, tagMinutes);
+        output.heatmap = AnalyticsKernel.heatmap(timeZone, cellCount, cellMinutes, cellFocus, cellStart);
+
+        int todayTopic = -1;
+        for (int tag = 0; tag < tagTitles.size(); tag++) {
+            if (SessionColumns.NO_TAG.equals(tagTitles.get(tag))) continue;
+            if (todayTagCount[tag] > 0 && (todayTopic < 0 || todayTagCount[tag] > todayTagCount[todayTopic])) {
+                todayTopic = tag;
+            }
+        }
+        output.dailyRings = AnalyticsKernel.rings(params, now, today, ringsFirstDay, ringCount, ringMinutes,
+                ringFocus, ringFirstTimestamp, todayTopic >= 0 ? tagTitles.get(todayTopic) : null);
+        return output;
+    }
+
+    private long localEpochDay(long timestamp) {
+        return Math.floorDiv(timestamp + timeZone.getOffset(timestamp), DAY_MS);
+    }
+}
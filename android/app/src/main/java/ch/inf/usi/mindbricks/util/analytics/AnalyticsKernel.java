@@ -0,0 +1,411 @@
+package ch.inf.usi.mindbricks.util.analytics;
+
+import static ch.inf.usi.mindbricks.util.analytics.SessionColumns.DAY_MS;
+import static ch.inf.usi.mindbricks.util.analytics.SessionColumns.HOUR_MS;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.function.LongToIntFunction;
+
+import ch.inf.usi.mindbricks.model.visual.DailyRings;
+import ch.inf.usi.mindbricks.model.visual.DateRange;
+import ch.inf.usi.mindbricks.model.visual.HeatmapCell;
+import ch.inf.usi.mindbricks.model.visual.HourlyQuality;
+import ch.inf.usi.mindbricks.model.visual.TagUsage;
+import ch.inf.usi.mindbricks.model.visual.TimeSlotStats;
+import ch.inf.usi.mindbricks.model.visual.WeeklyStats;
+import ch.inf.usi.mindbricks.util.database.DataProcessor;
+
+/**
+ * Analytics kernel: computes the charts of the analytics screen from a {@link SessionColumns}
+ * snapshot.
+ * <p>
+ * {@link DataProcessor} filters the session list again for every chart and goes through a
+ * {@link Calendar} for every session. Here the range checks are plain comparisons and all
+ * aggregates live in primitive arrays: the heatmap and the daily rings use dense arrays over their
+ * (capped) windows, so no map or boxed value is allocated per session. Each chart only visits the
+ * sessions of its own window (found by binary search when the snapshot is sorted by time), so the
+ * charts are independent and can be computed concurrently.
+ * <p>
+ * The streak calendar is not computed here: it only needs per-day totals, which the database
+ * aggregates (see {@link DataProcessor#buildStreakCalendar}).
+ * The produced models are the same as the ones returned by {@link DataProcessor}.
+ *
+ * @author Luca Di Bello
+ */
+public final class AnalyticsKernel {
+
+    private static final int HEATMAP_MAX_DAYS = 365;
+    private static final int RINGS_MAX_DAYS = 365;
+    private static final int RINGS_ALL_TIME_DAYS = 90;
+
+    /**
+     * Parameters of the charts that do not depend on the selected range.
+     */
+    public static final class Params {
+        /**
+         * Number of tags shown before grouping the others in "Other"
+         */
+        public int topTags = 20;
+        /**
+         * Daily study goal (minutes) of the day containing the given timestamp
+         */
+        public LongToIntFunction dailyGoal = timestamp -> 60;
+    }
+
+    /**
+     * Charts computed by the kernel.
+     */
+    public static final class Output {
+        public int sessionsInRange;
+        public WeeklyStats weeklyStats;
+        public List<TimeSlotStats> hourlyStats;
+        public List<HourlyQuality> energyCurve;
+        public List<HeatmapCell> heatmap;
+        public List<DailyRings> dailyRings;
+        public List<TagUsage> tagUsage;
+    }
+
+    private AnalyticsKernel() {
+    }
+
+    /**
+     * Computes all charts for the given range.
+     *
+     * @param columns columnar snapshot of the sessions
+     * @param range   selected range
+     * @param params  range-independent chart parameters
+     * @return the computed charts
+     */
+    public static Output compute(SessionColumns columns, DateRange range, Params params) {
+        long now = System.currentTimeMillis();
+        Output output = new Output();
+        computeRangeStats(columns, range, params, output);
+        output.heatmap = computeHeatmap(columns, range);
+        output.dailyRings = computeDailyRings(columns, range, params, now);
+        return output;
+    }
+
+    /**
+     * Computes the charts built from the sessions of the selected range: weekly stats, hourly
+     * distribution, energy curve and tag usage (plus {@link Output#sessionsInRange}).
+     *
+     * @param columns columnar snapshot of the sessions
+     * @param range   selected range
+     * @param params  range-independent chart parameters
+     * @param output  where the charts are stored
+     */
+    public static void computeRangeStats(SessionColumns columns, DateRange range, Params params, Output output) {
+        final long rangeStart = range.getStartTimestamp();
+        final long rangeEnd = range.getEndTimestamp();
+
+        int[] weekdayCount = new int[7];
+        int[] weekdayMinutes = new int[7];
+        double[] weekdayFocus = new double[7];
+        int[] hourCount = new int[24];
+        int[] hourMinutes = new int[24];
+        double[] hourFocus = new double[24];
+        double[] hourNoise = new double[24];
+        double[] hourLight = new double[24];
+
+        int tagsSize = columns.tagTitles.size();
+        int[] tagCount = new int[tagsSize];
+        int[] tagMinutes = new int[tagsSize];
+
+        int inRange = 0;
+        int[] window = columns.indexRange(rangeStart, rangeEnd);
+        for (int i = window[0]; i < window[1]; i++) {
+            final long ts = columns.timestamp[i];
+            if (ts < rangeStart || ts > rangeEnd) continue;
+            inRange++;
+
+            final int minutes = columns.durationMinutes[i];
+            final float focus = columns.focusScore[i];
+
+            int weekday = columns.weekday[i];
+            weekdayCount[weekday]++;
+            weekdayMinutes[weekday] += minutes;
+            weekdayFocus[weekday] += focus;
+
+            int hour = columns.hour[i];
+            hourCount[hour]++;
+            hourMinutes[hour] += minutes;
+            hourFocus[hour] += focus;
+            hourNoise[hour] += columns.noiseLevel[i];
+            hourLight[hour] += columns.lightLevel[i];
+
+            int tag = columns.tag[i];
+            tagCount[tag]++;
+            tagMinutes[tag] += minutes;
+        }
+
+        output.sessionsInRange = inRange;
+        output.weeklyStats = weeklyStats(weekdayCount, weekdayMinutes, weekdayFocus);
+        hourlyStats(hourCount, hourMinutes, hourFocus, hourNoise, hourLight, output);
+        output.tagUsage = tagUsage(columns.tagTitles, columns.tagColors, params.topTags, inRange, tagCount, tagMinutes);
+    }
+
+    /**
+     * Computes the quality heatmap of the selected range (capped to the last
+     * {@value #HEATMAP_MAX_DAYS} days, as {@link DataProcessor#calculateQualityHeatmap}).
+     *
+     * @param columns columnar snapshot of the sessions
+     * @param range   selected range
+     * @return the heatmap cells, in chronological order
+     */
+    public static List<HeatmapCell> computeHeatmap(SessionColumns columns, DateRange range) {
+        final long rangeStart = range.getStartTimestamp();
+        final long rangeEnd = range.getEndTimestamp();
+
+        long[] heatmapWindow = heatmapWindow(range);
+        long heatmapStart = heatmapWindow[0];
+        long heatmapEnd = heatmapWindow[1];
+
+        // dense window of local hours
+        long heatmapFirstHour = columns.localEpochHour(heatmapStart);
+        int heatmapHours = (int) (columns.localEpochHour(heatmapEnd) - heatmapFirstHour + 1);
+        int[] cellCount = new int[heatmapHours];
+        int[] cellMinutes = new int[heatmapHours];
+        double[] cellFocus = new double[heatmapHours];
+        long[] cellStart = new long[heatmapHours];
+
+        int[] window = columns.indexRange(Math.max(rangeStart, heatmapStart), Math.min(rangeEnd, heatmapEnd));
+        for (int i = window[0]; i < window[1]; i++) {
+            final long ts = columns.timestamp[i];
+            if (ts < rangeStart || ts > rangeEnd || ts < heatmapStart || ts > heatmapEnd) continue;
+
+            int cell = (int) ((long) columns.epochDay[i] * 24 + columns.hour[i] - heatmapFirstHour);
+            if (cell < 0 || cell >= heatmapHours) continue;
+
+            if (cellCount[cell]++ == 0) {
+                long localTime = ts + columns.timeZone.getOffset(ts);
+                cellStart[cell] = ts - Math.floorMod(localTime, HOUR_MS);
+            }
+            cellMinutes[cell] += columns.durationMinutes[i];
+            cellFocus[cell] += columns.focusScore[i];
+        }
+
+        return heatmap(columns.timeZone, cellCount, cellMinutes, cellFocus, cellStart);
+    }
+
+    /**
+     * Computes the daily rings of the selected range (last {@value #RINGS_ALL_TIME_DAYS} days for
+     * all time, at most {@value #RINGS_MAX_DAYS} days), newest first. Today is always included.
+     *
+     * @param columns columnar snapshot of the sessions
+     * @param range   selected range
+     * @param params  range-independent chart parameters
+     * @param now     current time
+     * @return the rings of every day with sessions
+     */
+    public static List<DailyRings> computeDailyRings(SessionColumns columns, DateRange range, Params params, long now) {
+        long[] ringsWindow = ringsWindow(range);
+        long ringsStart = ringsWindow[0];
+        long ringsEnd = ringsWindow[1];
+
+        // dense window of local days
+        long ringsFirstDay = columns.localEpochDay(ringsStart);
+        int ringsDays = (int) (columns.localEpochDay(ringsEnd) - ringsFirstDay + 1);
+        int[] ringCount = new int[ringsDays];
+        int[] ringMinutes = new int[ringsDays];
+        double[] ringFocus = new double[ringsDays];
+        long[] ringFirstTimestamp = new long[ringsDays];
+
+        // primary topic of today (first tag to reach the highest count, as in DataProcessor)
+        long today = columns.localEpochDay(now);
+        int[] todayTagCount = new int[columns.tagTitles.size()];
+        int todayTopic = -1;
+        int todayTopicCount = 0;
+
+        int[] window = columns.indexRange(ringsStart, ringsEnd);
+        for (int i = window[0]; i < window[1]; i++) {
+            final long ts = columns.timestamp[i];
+            final int day = columns.epochDay[i];
+            int ringIndex = (int) (day - ringsFirstDay);
+            if (ts < ringsStart || ts > ringsEnd || ringIndex < 0 || ringIndex >= ringsDays) continue;
+
+            if (ringCount[ringIndex]++ == 0) ringFirstTimestamp[ringIndex] = ts;
+            ringMinutes[ringIndex] += columns.durationMinutes[i];
+            ringFocus[ringIndex] += columns.focusScore[i];
+
+            int tag = columns.tag[i];
+            if (day == today && !SessionColumns.NO_TAG.equals(columns.tagTitles.get(tag))) {
+                int count = ++todayTagCount[tag];
+                if (count > todayTopicCount) {
+                    todayTopicCount = count;
+                    todayTopic = tag;
+                }
+            }
+        }
+
+        return rings(params, now, today, ringsFirstDay, ringCount, ringMinutes, ringFocus,
+                ringFirstTimestamp, todayTopic >= 0 ? columns.tagTitles.get(todayTopic) : null);
+    }
+
+    /**
+     * Returns the window {@code [start, end]} of the heatmap of a range: the range itself, capped
+     * to its last {@value #HEATMAP_MAX_DAYS} days (the last {@value #HEATMAP_MAX_DAYS} days for all
+     * time).
+     */
+    static long[] heatmapWindow(DateRange range) {
+        DateRange heatmapRange = range;
+        if (range.getRangeType() == DateRange.RangeType.ALL_TIME) {
+            heatmapRange = DateRange.lastNDays(HEATMAP_MAX_DAYS);
+        } else if (range.getDurationInDays() > HEATMAP_MAX_DAYS) {
+            heatmapRange = DateRange.custom(range.getEndTimestamp() - HEATMAP_MAX_DAYS * DAY_MS, range.getEndTimestamp());
+        }
+        return new long[]{heatmapRange.getStartTimestamp(), heatmapRange.getEndTimestamp()};
+    }
+
+    /**
+     * Returns the window {@code [start, end]} of the daily rings of a range: the range itself (the
+     * last {@value #RINGS_ALL_TIME_DAYS} days for all time), capped to {@value #RINGS_MAX_DAYS} days.
+     */
+    static long[] ringsWindow(DateRange range) {
+        DateRange ringsRange = range.getRangeType() == DateRange.RangeType.ALL_TIME
+                ? DateRange.lastNDays(RINGS_ALL_TIME_DAYS)
+                : range;
+        long ringsStart = ringsRange.getStartTimestamp();
+        long ringsEnd = ringsRange.getEndTimestamp();
+        if (ringsEnd - ringsStart > RINGS_MAX_DAYS * DAY_MS) {
+            ringsStart = ringsEnd - RINGS_MAX_DAYS * DAY_MS;
+        }
+        return new long[]{ringsStart, ringsEnd};
+    }
+
+    static WeeklyStats weeklyStats(int[] count, int[] minutes, double[] focus) {
+        WeeklyStats stats = new WeeklyStats();
+
+        int totalMinutes = 0;
+        float totalFocusScore = 0;
+        int totalSessions = 0;
+        int daysWithSessions = 0;
+
+        for (int i = 0; i < 7; i++) {
+            stats.setDayMinutes(i, 0);
+            stats.setDaySessionCount(i, count[i]);
+
+            if (count[i] > 0) {
+                float avgFocusScore = (float) (focus[i] / count[i]);
+                stats.setDayMinutes(i, minutes[i] / count[i]);
+                stats.setDayFocusScore(i, avgFocusScore);
+
+                totalMinutes += minutes[i];
+                totalFocusScore += avgFocusScore;
+                totalSessions += count[i];
+                daysWithSessions++;
+            } else {
+                stats.setDayFocusScore(i, 0);
+            }
+        }
+
+        stats.setTotalMinutes(totalMinutes);
+        stats.setTotalSessions(totalSessions);
+        if (daysWithSessions > 0) {
+            stats.setAverageFocusScore(totalFocusScore / daysWithSessions);
+        }
+        return stats;
+    }
+
+    static void hourlyStats(int[] count, int[] minutes, double[] focus, double[] noise, double[] light,
+                            Output output) {
+        output.hourlyStats = new ArrayList<>(24);
+        output.energyCurve = new ArrayList<>(24);
+        for (int hour = 0; hour < 24; hour++) {
+            int hourCount = count[hour];
+            float avgFocus = hourCount > 0 ? (float) (focus[hour] / hourCount) : 0;
+            output.energyCurve.add(new HourlyQuality(hour, avgFocus, hourCount));
+            output.hourlyStats.add(hourCount == 0
+                    ? new TimeSlotStats(hour)
+                    : new TimeSlotStats(hour, minutes[hour], hourCount, avgFocus,
+                    (float) (noise[hour] / hourCount), (float) (light[hour] / hourCount)));
+        }
+    }
+
+    static List<HeatmapCell> heatmap(TimeZone timeZone, int[] count, int[] minutes,
+                                     double[] focus, long[] start) {
+        List<HeatmapCell> result = new ArrayList<>();
+        Calendar calendar = Calendar.getInstance(timeZone);
+
+        // cells are visited in chronological order
+        for (int i = 0; i < count.length; i++) {
+            if (count[i] == 0) continue;
+
+            calendar.setTimeInMillis(start[i]);
+            HeatmapCell cell = new HeatmapCell();
+            cell.setYear(calendar.get(Calendar.YEAR));
+            cell.setMonth(calendar.get(Calendar.MONTH));
+            cell.setDayOfMonth(calendar.get(Calendar.DAY_OF_MONTH));
+            cell.setDayOfWeek(calendar.get(Calendar.DAY_OF_WEEK));
+            cell.setHourOfDay(calendar.get(Calendar.HOUR_OF_DAY));
+            cell.setTimestamp(start[i]);
+            cell.setSessionCount(count[i]);
+            cell.setAvgQuality((float) (focus[i] / count[i]));
+            cell.setTotalMinutes(minutes[i]);
+            result.add(cell);
+        }
+        return result;
+    }
+
+    static List<DailyRings> rings(Params params, long now, long today, long firstDay,
+                                  int[] count, int[] minutes, double[] focus, long[] firstTimestamp,
+                                  String todayTopic) {
+        List<DailyRings> result = new ArrayList<>();
+        boolean todayIncluded = false;
+
+        // newest first
+        for (int i = count.length - 1; i >= 0; i--) {
+            long day = firstDay + i;
+            boolean isToday = day == today;
+            if (count[i] == 0 && !isToday) continue;
+
+            long goalTimestamp = count[i] > 0 ? firstTimestamp[i] : now;
+            int goal = DataProcessor.getDailyGoal(params.dailyGoal, goalTimestamp);
+            float avgFocus = count[i] > 0 ? (float) (focus[i] / count[i]) : 0;
+            result.add(new DailyRings(LocalDate.ofEpochDay(day), DataProcessor.buildGoalRings(
+                    isToday ? todayTopic : null, minutes[i], avgFocus, count[i], goal)));
+            todayIncluded |= isToday;
+        }
+
+        if (!todayIncluded) {
+            // today is outside of the window (e.g. a past month is selected)
+            int goal = DataProcessor.getDailyGoal(params.dailyGoal, now);
+            result.add(new DailyRings(LocalDate.ofEpochDay(today), DataProcessor.buildGoalRings(null, 0, 0, 0, goal)));
+            result.sort((a, b) -> Long.compare(b.getDate().toEpochDay(), a.getDate().toEpochDay()));
+        }
+        return result;
+    }
+
+    static List<TagUsage> tagUsage(List<String> tagTitles, int[] tagColors, int topN, int total,
+                                   int[] count, int[] minutes) {
+        List<TagUsage> usageList = new ArrayList<>();
+        if (total == 0) return usageList;
+
+        for (int tag = 0; tag < tagTitles.size(); tag++) {
+            if (count[tag] == 0) continue;
+            float percentage = (float) count[tag] / total * 100f;
+            usageList.add(new TagUsage(tagTitles.get(tag), tagColors[tag],
+                    count[tag], minutes[tag], percentage));
+        }
+        Collections.sort(usageList);
+
+        if (usageList.size() <= topN) return usageList;
+
+        // Keep top N, group rest as "Other"
+        List<TagUsage> topTags = new ArrayList<>(usageList.subList(0, topN));
+        int otherCount = 0;
+        int otherMinutes = 0;
+        for (int i = topN; i < usageList.size(); i++) {
+            otherCount += usageList.get(i).getSessionCount();
+            otherMinutes += usageList.get(i).getTotalMinutes();
+        }
+
+        float otherPercentage = (float) otherCount / total * 100f;
+        topTags.add(new TagUsage("Other", 0xFF808080, otherCount, otherMinutes, otherPercentage));
+        return topTags;
+    }
+}
@@ -1,13 +1,15 @@
 package ch.inf.usi.mindbricks.util.analytics;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import ch.inf.usi.mindbricks.model.recommendation.AIRecommendation;
 import ch.inf.usi.mindbricks.model.visual.DailyRings;
 import ch.inf.usi.mindbricks.model.visual.DateRange;
 import ch.inf.usi.mindbricks.model.visual.HeatmapCell;
 import ch.inf.usi.mindbricks.model.visual.HourlyQuality;
-import ch.inf.usi.mindbricks.model.visual.StreakDay;
 import ch.inf.usi.mindbricks.model.visual.StudySessionWithStats;
 import ch.inf.usi.mindbricks.model.visual.TagUsage;
 import ch.inf.usi.mindbricks.model.visual.TimeSlotStats;
@@ -15,36 +17,165 @@ import ch.inf.usi.mindbricks.model.visual.WeeklyStats;
 
 /**
  * Analytics result cache to avoid recomputing the same data multiple times.
+ * <p>
+ * Results of several date ranges are kept at the same time in least-recently-used order, so
+ * switching back to an already visited range does not require any computation. Each entry is
+ * stamped with the data version it was computed from (see
+ * {@link ch.inf.usi.mindbricks.database.DataVersionTracker}): validating an entry is a simple
+ * comparison, and entries computed from older data are never returned.
+ * <p>
+ * The cache is bounded both in number of entries and in total number of cached chart items.
  *
  * @author Marta Šafářová
  * @author Luca Di Bello
  */
 public class ResultCache {
-    final int sessionsHash;
-    final DateRange dateRange;
-    final long timestamp;
-
-    // Cached results
-    public WeeklyStats weeklyStats;
-    public List<TimeSlotStats> hourlyStats;
-    public AIRecommendation dailyRecommendation;
-    public List<HourlyQuality> energyCurve;
-    public List<HeatmapCell> heatmap;
-    public List<StreakDay> streak;
-    public List<DailyRings> dailyRings;
-    public List<AIRecommendation> aiRecommendations;
-    public List<StudySessionWithStats> filteredSessions;
-    public List<TagUsage> tagUsage;
-
-    public ResultCache(List<StudySessionWithStats> sessions, DateRange range) {
-        this.sessionsHash = sessions.hashCode();
-        this.dateRange = range;
-        this.timestamp = System.currentTimeMillis();
-    }
-
-    public boolean isValid(List<StudySessionWithStats> sessions, DateRange range) {
-        return sessions.hashCode() == this.sessionsHash
-                && this.dateRange.equals(range)
-                && (System.currentTimeMillis() - timestamp) < 300000; // 5 min validity
+
+    /**
+     * Default maximum number of ranges kept in the cache.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 6;
+
+    /**
+     * Default maximum number of chart items (cells, days, sessions, ...) kept in the cache.
+     */
+    public static final int DEFAULT_MAX_WEIGHT = 30_000;
+
+    /**
+     * Maximum age of an entry. Some results depend on the current time (e.g. today's ring).
+     */
+    private static final long MAX_AGE_MS = 5 * 60 * 1000;
+
+    /**
+     * Results of a single date range.
+     */
+    public static class Results {
+        public WeeklyStats weeklyStats;
+        public List<TimeSlotStats> hourlyStats;
+        public AIRecommendation dailyRecommendation;
+        public List<HourlyQuality> energyCurve;
+        public List<HeatmapCell> heatmap;
+        public List<DailyRings> dailyRings;
+        public List<AIRecommendation> aiRecommendations;
+        public List<StudySessionWithStats> filteredSessions;
+        public List<TagUsage> tagUsage;
+
+        /**
+         * Approximate size of the results, in number of chart items.
+         */
+        int weight() {
+            return 1 + size(hourlyStats) + size(energyCurve) + size(heatmap) + size(dailyRings)
+                    + size(aiRecommendations) + size(filteredSessions) + size(tagUsage);
+        }
+
+        private static int size(List<?> list) {
+            return list != null ? list.size() : 0;
+        }
+    }
+
+    private static class Entry {
+        final long dataVersion;
+        final long timestamp;
+        final int weight;
+        final Results results;
+
+        Entry(long dataVersion, Results results) {
+            this.dataVersion = dataVersion;
+            this.timestamp = System.currentTimeMillis();
+            this.weight = results.weight();
+            this.results = results;
+        }
+    }
+
+    private final int maxEntries;
+    private final int maxWeight;
+    private int totalWeight = 0;
+
+    // access-ordered: iteration starts from the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    public ResultCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_WEIGHT);
+    }
+
+    public ResultCache(int maxEntries, int maxWeight) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the results of the given range if they were computed from the given data version.
+     *
+     * @param range       date range
+     * @param dataVersion current data version
+     * @return cached results or null
+     */
+    public synchronized Results get(DateRange range, long dataVersion) {
+        String key = keyOf(range);
+        Entry entry = entries.get(key);
+        if (entry == null) return null;
+
+        if (entry.dataVersion != dataVersion
+                || (System.currentTimeMillis() - entry.timestamp) >= MAX_AGE_MS) {
+            remove(key);
+            return null;
+        }
+        return entry.results;
+    }
+
+    /**
+     * Stores the results of a range, evicting least recently used entries if needed.
+     *
+     * @param range       date range
+     * @param dataVersion data version the results were computed from
+     * @param results     results to store
+     */
+    public synchronized void put(DateRange range, long dataVersion, Results results) {
+        String key = keyOf(range);
+        remove(key);
+
+        Entry entry = new Entry(dataVersion, results);
+        entries.put(key, entry);
+        totalWeight += entry.weight;
+
+        // evict the least recently used entries, but always keep the newest one
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || totalWeight > maxWeight) && entries.size() > 1) {
+            Entry eldest = iterator.next().getValue();
+            totalWeight -= eldest.weight;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Drops all cached results.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        totalWeight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) totalWeight -= removed.weight;
+    }
+
+    /**
+     * Returns the cache key of a range. Relative ranges ("last N days") are created with the current
+     * time as end, so they are identified by their length and first day instead of their exact bounds.
+     */
+    static String keyOf(DateRange range) {
+        switch (range.getRangeType()) {
+            case LAST_N_DAYS:
+                return "last:" + range.getDaysCount() + ":" + range.getStartTimestamp();
+            case ALL_TIME:
+                return "all";
+            default:
+                return range.getRangeType() + ":" + range.getStartTimestamp() + ":" + range.getEndTimestamp();
+        }
     }
 }
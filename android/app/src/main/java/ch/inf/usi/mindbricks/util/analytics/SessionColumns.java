@@ -0,0 +1,195 @@
+package ch.inf.usi.mindbricks.util.analytics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import ch.inf.usi.mindbricks.model.visual.StudySessionWithStats;
+
+/**
+ * Columnar snapshot of a list of study sessions.
+ * <p>
+ * Every field used by the analytics charts is stored in its own primitive array, and the calendar
+ * fields (local day, hour, weekday) are computed once per session with plain arithmetic on the
+ * time zone offset instead of going through a {@link java.util.Calendar}. Tags are replaced by an
+ * index into a small dictionary, so that per-tag aggregates can be kept in arrays as well.
+ *
+ * @author Luca Di Bello
+ */
+public final class SessionColumns {
+
+    static final long HOUR_MS = 60L * 60 * 1000;
+    static final long DAY_MS = 24 * HOUR_MS;
+
+    /**
+     * Title used for sessions without a tag (same as {@link ch.inf.usi.mindbricks.util.database.DataProcessor}).
+     */
+    public static final String NO_TAG = "No tag";
+
+    public final int size;
+    public final TimeZone timeZone;
+
+    public final long[] timestamp;
+    public final int[] durationMinutes;
+    public final float[] focusScore;
+    public final float[] noiseLevel;
+    public final float[] lightLevel;
+
+    /**
+     * Local calendar fields: days since 1970-01-01, hour of day (0-23), weekday (0 = Monday)
+     */
+    public final int[] epochDay;
+    public final byte[] hour;
+    public final byte[] weekday;
+
+    /**
+     * Index of the session tag in {@link #tagTitles} / {@link #tagColors}
+     */
+    public final int[] tag;
+    public final List<String> tagTitles;
+    public final int[] tagColors;
+
+    /**
+     * Whether the sessions are sorted by timestamp, newest first (as delivered by the DAO queries)
+     */
+    public final boolean sortedDescending;
+
+    private SessionColumns(int size, TimeZone timeZone, boolean sortedDescending,
+                           List<String> tagTitles, int[] tagColors,
+                           long[] timestamp, int[] durationMinutes, float[] focusScore,
+                           float[] noiseLevel, float[] lightLevel, int[] epochDay,
+                           byte[] hour, byte[] weekday, int[] tag) {
+        this.size = size;
+        this.timeZone = timeZone;
+        this.sortedDescending = sortedDescending;
+        this.tagTitles = tagTitles;
+        this.tagColors = tagColors;
+        this.timestamp = timestamp;
+        this.durationMinutes = durationMinutes;
+        this.focusScore = focusScore;
+        this.noiseLevel = noiseLevel;
+        this.lightLevel = lightLevel;
+        this.epochDay = epochDay;
+        this.hour = hour;
+        this.weekday = weekday;
+        this.tag = tag;
+    }
+
+    /**
+     * Converts a session list using the default time zone.
+     */
+    public static SessionColumns from(List<StudySessionWithStats> sessions) {
+        return from(sessions, TimeZone.getDefault());
+    }
+
+    /**
+     * Converts a session list into columns.
+     *
+     * @param sessions sessions to convert
+     * @param timeZone time zone used to compute the local calendar fields
+     * @return the columnar snapshot
+     */
+    public static SessionColumns from(List<StudySessionWithStats> sessions, TimeZone timeZone) {
+        int size = sessions.size();
+        long[] timestamp = new long[size];
+        int[] durationMinutes = new int[size];
+        float[] focusScore = new float[size];
+        float[] noiseLevel = new float[size];
+        float[] lightLevel = new float[size];
+        int[] epochDay = new int[size];
+        byte[] hour = new byte[size];
+        byte[] weekday = new byte[size];
+        int[] tag = new int[size];
+
+        Map<String, Integer> tagIndex = new HashMap<>();
+        List<String> tagTitles = new ArrayList<>();
+        List<Integer> tagColors = new ArrayList<>();
+        boolean sortedDescending = true;
+
+        for (int i = 0; i < size; i++) {
+            StudySessionWithStats session = sessions.get(i);
+            long ts = session.getTimestamp();
+
+            timestamp[i] = ts;
+            if (i > 0 && ts > timestamp[i - 1]) sortedDescending = false;
+            durationMinutes[i] = session.getDurationMinutes();
+            focusScore[i] = session.getFocusScore();
+            noiseLevel[i] = session.getAvgNoiseLevel();
+            lightLevel[i] = session.getAvgLightLevel();
+
+            long localTime = ts + timeZone.getOffset(ts);
+            long day = Math.floorDiv(localTime, DAY_MS);
+            epochDay[i] = (int) day;
+            hour[i] = (byte) (Math.floorMod(localTime, DAY_MS) / HOUR_MS);
+            // 1970-01-01 was a Thursday
+            weekday[i] = (byte) Math.floorMod(day + 3, 7L);
+
+            String title = session.getTagTitle();
+            if (title == null || title.isEmpty()) title = NO_TAG;
+            Integer index = tagIndex.get(title);
+            if (index == null) {
+                index = tagTitles.size();
+                tagIndex.put(title, index);
+                tagTitles.add(title);
+                tagColors.add(session.getTagColor());
+            }
+            tag[i] = index;
+        }
+
+        int[] colors = new int[tagColors.size()];
+        for (int i = 0; i < colors.length; i++) colors[i] = tagColors.get(i);
+
+        return new SessionColumns(size, timeZone, sortedDescending, tagTitles, colors, timestamp, durationMinutes,
+                focusScore, noiseLevel, lightLevel, epochDay, hour, weekday, tag);
+    }
+
+    /**
+     * Returns the indices {@code [from, to)} of the sessions that may have a timestamp between
+     * {@code start} and {@code end} (inclusive). If the snapshot is sorted the bounds are exact and
+     * found by binary search; otherwise every index is returned and the caller has to check the
+     * timestamps.
+     *
+     * @param start first timestamp of the window
+     * @param end   last timestamp of the window
+     * @return array with the first index and the index after the last one
+     */
+    public int[] indexRange(long start, long end) {
+        if (!sortedDescending) return new int[]{0, size};
+        if (start > end) return new int[]{0, 0};
+        // newest first: [from, to) holds the timestamps <= end and >= start
+        return new int[]{firstIndexAtOrBefore(end), firstIndexAtOrBefore(start - 1)};
+    }
+
+    /**
+     * Returns the first index whose timestamp is {@code <= value} (or {@link #size}).
+     */
+    private int firstIndexAtOrBefore(long value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamp[mid] > value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the local epoch day of a timestamp in the time zone of this snapshot.
+     */
+    public long localEpochDay(long timestamp) {
+        return Math.floorDiv(timestamp + timeZone.getOffset(timestamp), DAY_MS);
+    }
+
+    /**
+     * Returns the local epoch hour of a timestamp in the time zone of this snapshot.
+     */
+    public long localEpochHour(long timestamp) {
+        return Math.floorDiv(timestamp + timeZone.getOffset(timestamp), HOUR_MS);
+    }
+}
@@ -4,6 +4,8 @@ import android.content.Context;
 import android.util.Log;
 
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
@@ -12,7 +14,9 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.LongToIntFunction;
 
+import ch.inf.usi.mindbricks.database.StudySessionDao;
 import ch.inf.usi.mindbricks.model.visual.DailyRings;
 import ch.inf.usi.mindbricks.model.visual.DateRange;
 import ch.inf.usi.mindbricks.model.recommendation.DailyRecommendation;
@@ -375,15 +379,7 @@ public class DataProcessor {
                 day.setAvgQuality(day.getAvgQuality() / day.getSessionCount());
             }
 
-            if (day.getTotalMinutes() == 0) {
-                day.setStatus(StreakDay.StreakStatus.NONE);
-            } else if (day.getTotalMinutes() < targetMinutes * 0.5) {
-                day.setStatus(StreakDay.StreakStatus.PARTIAL);
-            } else if (day.getTotalMinutes() >= targetMinutes * 1.5) {
-                day.setStatus(StreakDay.StreakStatus.EXCEPTIONAL);
-            } else {
-                day.setStatus(StreakDay.StreakStatus.HIT_TARGET);
-            }
+            day.setStatus(getStreakStatus(day.getTotalMinutes(), targetMinutes));
 
             result.add(day);
         }
@@ -397,18 +393,89 @@ public class DataProcessor {
         return result;
     }
 
+    /**
+     * Builds the streak calendar of a month from per-day totals computed by the database (see
+     * {@link StudySessionDao#getDailyTotals}). Days without totals are returned empty.
+     *
+     * @param dailyTotals   per-day totals of the month
+     * @param targetMinutes daily target (minutes)
+     * @param month         month (0-11)
+     * @param year          year
+     * @return one entry per day of the month
+     */
+    public static List<StreakDay> buildStreakCalendar(List<StudySessionDao.DailyTotals> dailyTotals,
+                                                      int targetMinutes,
+                                                      int month,
+                                                      int year) {
+        int daysInMonth = YearMonth.of(year, month + 1).lengthOfMonth();
+
+        List<StreakDay> result = new ArrayList<>(daysInMonth);
+        for (int day = 1; day <= daysInMonth; day++) {
+            StreakDay streakDay = new StreakDay(day, month, year);
+            streakDay.setStatus(StreakDay.StreakStatus.NONE);
+            result.add(streakDay);
+        }
+
+        for (StudySessionDao.DailyTotals totals : dailyTotals) {
+            LocalDate date;
+            try {
+                date = LocalDate.parse(totals.day);
+            } catch (DateTimeParseException | NullPointerException e) {
+                Log.w("DataProcessor", "Invalid day in daily totals: " + totals.day);
+                continue;
+            }
+            if (date.getYear() != year || date.getMonthValue() != month + 1) continue;
+
+            StreakDay streakDay = result.get(date.getDayOfMonth() - 1);
+            streakDay.setTotalMinutes(totals.totalMinutes);
+            streakDay.setSessionCount(totals.sessionCount);
+            streakDay.setAvgQuality(totals.avgFocusScore);
+            streakDay.setStatus(getStreakStatus(totals.totalMinutes, targetMinutes));
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the streak status of a day given the minutes studied and the daily target.
+     */
+    public static StreakDay.StreakStatus getStreakStatus(int totalMinutes, int targetMinutes) {
+        if (totalMinutes == 0) {
+            return StreakDay.StreakStatus.NONE;
+        } else if (totalMinutes < targetMinutes * 0.5) {
+            return StreakDay.StreakStatus.PARTIAL;
+        } else if (totalMinutes >= targetMinutes * 1.5) {
+            return StreakDay.StreakStatus.EXCEPTIONAL;
+        } else {
+            return StreakDay.StreakStatus.HIT_TARGET;
+        }
+    }
+
     public static List<DailyRings> calculateDailyRingsHistory(
             Context context,
             List<StudySessionWithStats> allSessions,
             DateRange dateRange,
             int minSessionsForRing
+    ) {
+        PreferencesManager manager = new PreferencesManager(context);
+        return calculateDailyRingsHistory(allSessions, dateRange, minSessionsForRing,
+                manager::getDailyStudyMinutesGoal);
+    }
+
+    /**
+     * Same as {@link #calculateDailyRingsHistory(Context, List, DateRange, int)}, with the daily goal
+     * of each day (minutes, given a timestamp of that day) provided by the caller.
+     */
+    public static List<DailyRings> calculateDailyRingsHistory(
+            List<StudySessionWithStats> allSessions,
+            DateRange dateRange,
+            int minSessionsForRing,
+            LongToIntFunction dailyGoal
     ) {
         Log.d("DataProcessor", "calculateDailyRingsHistory START");
         Log.d("DataProcessor", "  Range: " + dateRange.getDisplayName());
         Log.d("DataProcessor", "  Total sessions: " + allSessions.size());
 
-        PreferencesManager manager = new PreferencesManager(context);
-
         long rangeMs = dateRange.getEndTimestamp() - dateRange.getStartTimestamp();
         long maxMs = 365L * 24 * 60 * 60 * 1000;
 
@@ -428,8 +495,8 @@ public class DataProcessor {
         if (sessions.isEmpty()) {
             Log.d("DataProcessor", "  No sessions, creating empty ring for today");
             // Create an empty ring for today to show current goal status
-            int todayGoal = manager.getDailyStudyMinutesGoal(System.currentTimeMillis());
-            List<GoalRing> emptyRings = calculateGoalRings(context, new ArrayList<>(), todayGoal);
+            int todayGoal = getDailyGoal(dailyGoal, System.currentTimeMillis());
+            List<GoalRing> emptyRings = buildGoalRings(null, 0, 0, 0, todayGoal);
             DailyRings todayRings = new DailyRings(LocalDate.now(), emptyRings);
             result.add(todayRings);
             return result;
@@ -477,9 +544,9 @@ public class DataProcessor {
             long dayTimestamp = daySessions.get(0).getTimestamp();
 
             // Get the correct daily goal for this specific day from the study plan
-            int daySpecificGoal = manager.getDailyStudyMinutesGoal(dayTimestamp);
+            int daySpecificGoal = getDailyGoal(dailyGoal, dayTimestamp);
 
-            List<GoalRing> rings = calculateGoalRings(context, daySessions, daySpecificGoal);
+            List<GoalRing> rings = calculateGoalRings(daySessions, daySpecificGoal);
 
             DailyRings dailyRings = new DailyRings(LocalDate.ofEpochDay(dayTimestamp / 86400000), rings);
             result.add(dailyRings);
@@ -490,8 +557,8 @@ public class DataProcessor {
                 .anyMatch(dr -> dr.getDate().equals(LocalDate.now()));
 
         if (!todayIncluded) {
-            int todayGoal = manager.getDailyStudyMinutesGoal(System.currentTimeMillis());
-            List<GoalRing> emptyRings = calculateGoalRings(context, new ArrayList<>(), todayGoal);
+            int todayGoal = getDailyGoal(dailyGoal, System.currentTimeMillis());
+            List<GoalRing> emptyRings = buildGoalRings(null, 0, 0, 0, todayGoal);
             DailyRings todayRings = new DailyRings(LocalDate.now(), emptyRings);
             result.add(todayRings);
             Log.d("DataProcessor", "  Added empty ring for today (no sessions yet)");
@@ -504,6 +571,15 @@ public class DataProcessor {
     }
 
 
+    /**
+     * Returns the daily goal of the day containing the given timestamp, falling back to today's
+     * goal when no study time is planned for that day.
+     */
+    public static int getDailyGoal(LongToIntFunction dailyGoal, long timestamp) {
+        int goal = dailyGoal.applyAsInt(timestamp);
+        return goal > 0 ? goal : dailyGoal.applyAsInt(System.currentTimeMillis());
+    }
+
     public static List<GoalRing> calculateGoalRings(Context context,
                                                     List<StudySessionWithStats> sessions,
                                                     int dailyMinutesTarget) {
@@ -514,8 +590,11 @@ public class DataProcessor {
             dailyMinutesTarget = manager.getDailyStudyMinutesGoal(System.currentTimeMillis());
         }
 
-        List<GoalRing> rings = new ArrayList<>();
+        return calculateGoalRings(sessions, dailyMinutesTarget);
+    }
 
+    private static List<GoalRing> calculateGoalRings(List<StudySessionWithStats> sessions,
+                                                     int dailyMinutesTarget) {
         // Calculate totals from the passed sessions (already filtered by caller)
         int totalMinutes = 0;
         float totalFocus = 0;
@@ -531,10 +610,27 @@ public class DataProcessor {
         // Get today's primary study topic
         String todayTopic = getTodayPrimaryStudyTopic(sessions);
 
+        return buildGoalRings(todayTopic, totalMinutes, avgFocus, sessionCount, dailyMinutesTarget);
+    }
+
+    /**
+     * Builds the goal rings of a day from its aggregated values.
+     *
+     * @param topic              primary study topic of the day (nullable)
+     * @param totalMinutes       minutes studied during the day
+     * @param avgFocus           average focus score of the day's sessions
+     * @param sessionCount       number of sessions of the day
+     * @param dailyMinutesTarget daily study goal in minutes
+     * @return time, focus and session rings
+     */
+    public static List<GoalRing> buildGoalRings(String topic, int totalMinutes, float avgFocus,
+                                                int sessionCount, int dailyMinutesTarget) {
+        List<GoalRing> rings = new ArrayList<>();
+
         // Create rings with study topic if available
         String timeRingTitle = "Study Time";
-        if (todayTopic != null && !todayTopic.isEmpty()) {
-            timeRingTitle = todayTopic + " Time";
+        if (topic != null && !topic.isEmpty()) {
+            timeRingTitle = topic + " Time";
         }
 
         rings.add(new GoalRing(
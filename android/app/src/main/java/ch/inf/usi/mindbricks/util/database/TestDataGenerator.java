@@ -14,6 +14,7 @@ import ch.inf.usi.mindbricks.model.questionnare.SessionQuestionnaire;
 import ch.inf.usi.mindbricks.model.Tag;
 import ch.inf.usi.mindbricks.model.visual.SessionSensorLog;
 import ch.inf.usi.mindbricks.model.visual.StudySession;
+import ch.inf.usi.mindbricks.repository.StudySessionRepository;
 import ch.inf.usi.mindbricks.util.questionnaire.ProductivityQuestionnaireResult;
 
 /**
@@ -64,6 +65,7 @@ public class TestDataGenerator {
                 for (int i = 0; i < numberOfSessions; i++) {
                     StudySession session = generateSession(random, tagIds);
                     long sessionId = db.studySessionDao().insert(session);
+                    db.productivityModelDao().recordSession(session.getTimestamp(), session.getFocusScore());
 
                     // Add sensor logs
                     insertSensorLogs(db, sessionId, session, random);
@@ -75,6 +77,7 @@ public class TestDataGenerator {
                 }
 
                 Log.d(TAG, "Successfully inserted " + numberOfSessions + " test sessions");
+                StudySessionRepository.notifySessionsReset();
 
             } catch (Exception e) {
                 Log.e(TAG, "Error adding test sessions", e);
@@ -93,7 +96,9 @@ public class TestDataGenerator {
         new Thread(() -> {
             try {
                 db.studySessionDao().deleteAll();
+                db.productivityModelDao().clear();
                 Log.d(TAG, "All sessions cleared");
+                StudySessionRepository.notifySessionsReset();
             } catch (Exception e) {
                 Log.e(TAG, "Error clearing sessions", e);
             }
@@ -205,7 +210,7 @@ public class TestDataGenerator {
             ));
         }
 
-        db.sessionSensorLogDao().insertAll(logs);
+        db.sessionSensorLogDao().insertWithSummary(logs);
     }
 
     /**
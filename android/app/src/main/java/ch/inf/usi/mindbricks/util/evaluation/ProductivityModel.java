@@ -0,0 +1,188 @@
+package ch.inf.usi.mindbricks.util.evaluation;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import ch.inf.usi.mindbricks.model.recommendation.ProductivityCell;
+import ch.inf.usi.mindbricks.model.visual.StudySessionWithStats;
+
+/**
+ * Productivity of the user for every hour of the week (7 x 24 {@link ProductivityCell}s), used by
+ * the {@link RecommendationEngine} to place the study hours.
+ * <p>
+ * The model is stored in the database and updated as sessions and focus scores are written
+ * (see {@link ch.inf.usi.mindbricks.database.ProductivityModelDao}), so reading it does not
+ * depend on the length of the history. Hours without data of their own day fall back to the
+ * same hour over the whole week.
+ *
+ * @author Luca Di Bello
+ */
+public class ProductivityModel {
+
+    public static final int DAYS = 7;
+    public static final int HOURS = 24;
+    public static final int CELLS = DAYS * HOURS;
+
+    /**
+     * Time after which a focus score weighs half as much.
+     */
+    public static final long HALF_LIFE_MS = TimeUnit.DAYS.toMillis(28);
+
+    private final ProductivityCell[] cells = new ProductivityCell[CELLS];
+
+    // the same hour over all the days of the week
+    private final int[] hourSessionCounts = new int[HOURS];
+    private final double[] hourWeights = new double[HOURS];
+    private final double[] hourMeans = new double[HOURS];
+
+    private ProductivityModel(List<ProductivityCell> stored) {
+        for (int i = 0; i < CELLS; i++) cells[i] = new ProductivityCell(i);
+        for (ProductivityCell cell : stored) {
+            if (cell.getCell() >= 0 && cell.getCell() < CELLS) cells[cell.getCell()] = cell;
+        }
+        aggregateHours();
+    }
+
+    /**
+     * Creates the model from its stored cells (missing cells are empty).
+     */
+    public static ProductivityModel of(List<ProductivityCell> cells) {
+        return new ProductivityModel(cells);
+    }
+
+    /**
+     * Builds the model from a list of sessions (when no stored model is available).
+     *
+     * @param sessions sessions of the history, in any order
+     */
+    public static ProductivityModel fromSessions(List<StudySessionWithStats> sessions) {
+        ProductivityCell[] built = new ProductivityCell[CELLS];
+        Calendar calendar = Calendar.getInstance();
+        for (StudySessionWithStats session : sessions) {
+            int index = cellOf(calendar, session.getTimestamp());
+            if (built[index] == null) built[index] = new ProductivityCell(index);
+            add(built[index], session.getTimestamp(), session.getFocusScore());
+        }
+
+        List<ProductivityCell> cells = new ArrayList<>();
+        for (ProductivityCell cell : built) {
+            if (cell != null) cells.add(cell);
+        }
+        return new ProductivityModel(cells);
+    }
+
+    /**
+     * Adds a session to a cell: it is always counted, and its focus score is added once rated
+     * (sessions without a questionnaire have a score of 0).
+     */
+    public static void add(ProductivityCell cell, long timestamp, float focusScore) {
+        cell.addSession();
+        if (focusScore > 0) cell.addScore(focusScore, timestamp, HALF_LIFE_MS);
+    }
+
+    /**
+     * Returns the index of the cell containing a timestamp (local time).
+     */
+    public static int cellOf(long timestamp) {
+        return cellOf(Calendar.getInstance(), timestamp);
+    }
+
+    /**
+     * Same as {@link #cellOf(long)}, reusing a calendar.
+     */
+    public static int cellOf(Calendar calendar, long timestamp) {
+        calendar.setTimeInMillis(timestamp);
+        return dayOf(calendar) * HOURS + calendar.get(Calendar.HOUR_OF_DAY);
+    }
+
+    /**
+     * Returns the day of the week of a calendar as used by the model (0 = Sunday).
+     */
+    public static int dayOf(Calendar calendar) {
+        return calendar.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY;
+    }
+
+    /**
+     * Returns the cell of a day of the week (0 = Sunday) and hour.
+     */
+    public ProductivityCell getCell(int day, int hour) {
+        return cells[day * HOURS + hour];
+    }
+
+    /**
+     * Returns the number of sessions started in an hour, on any day of the week.
+     */
+    public int getSessionCount(int hour) {
+        return hourSessionCounts[hour];
+    }
+
+    /**
+     * Returns the number of sessions in the model.
+     */
+    public int getTotalSessionCount() {
+        int total = 0;
+        for (int count : hourSessionCounts) total += count;
+        return total;
+    }
+
+    /**
+     * Returns true if focus scores were recorded in an hour, on any day of the week.
+     */
+    public boolean hasScores(int hour) {
+        return hourWeights[hour] > 0;
+    }
+
+    /**
+     * Returns the decayed mean focus score of an hour over all days of the week.
+     */
+    public double getMean(int hour) {
+        return hourMeans[hour];
+    }
+
+    /**
+     * Returns the expected focus score of an hour on a given day of the week: the mean of the
+     * cell, or of the hour over the whole week if the cell has no scores, or the given default.
+     */
+    public double getProductivity(int day, int hour, double defaultValue) {
+        ProductivityCell cell = getCell(day, hour);
+        if (cell.hasScores()) return cell.getMean();
+        if (hasScores(hour)) return hourMeans[hour];
+        return defaultValue;
+    }
+
+    /**
+     * Returns the cells containing data.
+     */
+    public List<ProductivityCell> getCells() {
+        List<ProductivityCell> result = new ArrayList<>();
+        for (ProductivityCell cell : cells) {
+            if (cell.getSessionCount() > 0 || cell.hasScores()) result.add(cell);
+        }
+        return result;
+    }
+
+    private void aggregateHours() {
+        // the weights of the cells are decayed to different times: bring them to the latest one
+        long latest = 0;
+        for (ProductivityCell cell : cells) latest = Math.max(latest, cell.getUpdatedAt());
+
+        for (int hour = 0; hour < HOURS; hour++) {
+            int sessions = 0;
+            double weight = 0;
+            double weightedSum = 0;
+            for (int day = 0; day < DAYS; day++) {
+                ProductivityCell cell = getCell(day, hour);
+                sessions += cell.getSessionCount();
+                if (!cell.hasScores()) continue;
+                double w = cell.getWeight() * Math.pow(0.5, (double) (latest - cell.getUpdatedAt()) / HALF_LIFE_MS);
+                weight += w;
+                weightedSum += w * cell.getMean();
+            }
+            hourSessionCounts[hour] = sessions;
+            hourWeights[hour] = weight;
+            hourMeans[hour] = weight > 0 ? weightedSum / weight : 0;
+        }
+    }
+}
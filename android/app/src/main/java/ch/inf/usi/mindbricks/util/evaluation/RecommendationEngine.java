@@ -9,18 +9,13 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
 
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-
-import ch.inf.usi.mindbricks.database.AppDatabase;
 import ch.inf.usi.mindbricks.model.evaluation.PAMScore;
+import ch.inf.usi.mindbricks.model.preferences.SchedulingPreferences;
 import ch.inf.usi.mindbricks.model.recommendation.AIRecommendation;
 import ch.inf.usi.mindbricks.model.recommendation.ActivityBlock;
 import ch.inf.usi.mindbricks.model.recommendation.ActivityType;
 import ch.inf.usi.mindbricks.model.visual.StudySessionWithStats;
 import ch.inf.usi.mindbricks.model.visual.calendar.CalendarEvent;
-import ch.inf.usi.mindbricks.repository.CalendarRepository;
-import ch.inf.usi.mindbricks.util.PreferencesManager;
 import ch.inf.usi.mindbricks.util.UserPreferenceLoader;
 import ch.inf.usi.mindbricks.util.database.DataProcessor;
 
@@ -36,16 +31,21 @@ import ch.inf.usi.mindbricks.util.database.DataProcessor;
 public class RecommendationEngine {
 
     private static final String TAG = "RecommendationEngine";
-    private final AppDatabase database;
-    private final CalendarRepository calendarRepository;
-    private final PreferencesManager preferencesManager;
+    private final ScheduleDataSource dataSource;
     private final UserPreferenceLoader preferenceLoader;
 
     public RecommendationEngine(Context context) {
-        this.preferencesManager = new PreferencesManager(context);
-        this.preferenceLoader = UserPreferenceLoader.getInstance(context);
-        this.database = AppDatabase.getInstance(context);
-        this.calendarRepository = new CalendarRepository(context);
+        this(ScheduleDataSource.fromContext(context));
+    }
+
+    /**
+     * Creates an engine reading preferences, calendar events and PAM scores from the given source.
+     *
+     * @param dataSource source of the non-session data
+     */
+    public RecommendationEngine(ScheduleDataSource dataSource) {
+        this.dataSource = dataSource;
+        this.preferenceLoader = dataSource.getPreferences();
     }
 
     public AIRecommendation generateAdaptiveSchedule(List<StudySessionWithStats> allSessions,
@@ -54,34 +54,41 @@ public class RecommendationEngine {
         Log.i(TAG, "Generating adaptive schedule for date: " + targetDate);
 
         AIRecommendation schedule = new AIRecommendation();
-        String studyObjective = preferencesManager.getStudyObjective();
+        String studyObjective = dataSource.getStudyObjective();
 
         // Get target study hours for this specific date
-        int dailyGoalMinutes = preferencesManager.getDailyStudyMinutesGoal(targetDate);
+        int dailyGoalMinutes = dataSource.getDailyStudyMinutesGoal(targetDate);
         float targetStudyHours = dailyGoalMinutes / 60.0f;
 
         // Get today's actual study topic from sessions
         String todayStudyTopic = DataProcessor.getTodayPrimaryStudyTopic(allSessions);
 
-        List<CalendarEvent> calendarEvents = calendarRepository.getEventsInRangeSync(getStartOfDay(targetDate), getEndOfDay(targetDate));
+        List<CalendarEvent> calendarEvents = dataSource.getCalendarEvents(getStartOfDay(targetDate), getEndOfDay(targetDate));
 
-        schedule.setTotalSessions(allSessions.size());
+        // Preferences are read once, already parsed
+        SchedulingPreferences prefs = preferenceLoader.getSchedulingPreferences();
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(targetDate);
+        int dayOfWeek = cal.get(Calendar.DAY_OF_WEEK);
 
         // Initialize 24-hour activity array
         ActivityType[] hourlyActivities = new ActivityType[24];
 
         // Step 1: Apply fixed constraints (calendar, sleep)
-        applyCalendarConstraints(hourlyActivities, calendarEvents);
-        applySleepSchedule(hourlyActivities);
+        applyCalendarConstraints(hourlyActivities, calendarEvents, prefs);
+        applySleepSchedule(hourlyActivities, prefs);
 
         // Step 2: Apply scheduled activities (meals, work, exercise, social)
-        applyMealTimes(hourlyActivities);
-        applyWorkSchedule(hourlyActivities, targetDate);
-        applyExerciseSchedule(hourlyActivities);
-        applySocialTime(hourlyActivities, targetDate);
+        applyMealTimes(hourlyActivities, prefs);
+        applyWorkSchedule(hourlyActivities, dayOfWeek, prefs);
+        applyExerciseSchedule(hourlyActivities, prefs);
+        applySocialTime(hourlyActivities, dayOfWeek, prefs);
 
         // Step 3: Allocate EXACTLY the specified study hours
-        allocateExactStudyHours(hourlyActivities, allSessions, targetStudyHours);
+        ProductivityModel productivityModel = dataSource.getProductivityModel();
+        if (productivityModel == null) productivityModel = ProductivityModel.fromSessions(allSessions);
+        schedule.setTotalSessions(productivityModel.getTotalSessionCount());
+        allocateExactStudyHours(hourlyActivities, productivityModel, targetDate, targetStudyHours);
 
         // Step 4: Fill any remaining gaps with breaks
         fillRemainingSlots(hourlyActivities);
@@ -94,7 +101,8 @@ public class RecommendationEngine {
                 schedule,
                 studyObjective,
                 todayStudyTopic,
-                dailyGoalMinutes
+                dailyGoalMinutes,
+                prefs.energy()
         ));
 
         Log.i(TAG, "Schedule generated: " + schedule.getActivityBlocks().size() + " blocks, " +
@@ -102,35 +110,63 @@ public class RecommendationEngine {
         return schedule;
     }
 
+    /**
+     * Plans the study sessions of the next days at minute granularity (see {@link WeeklyPlanner}).
+     *
+     * @param allSessions sessions of the history (used if no stored productivity model exists)
+     * @param startDate   any time of the first day to plan
+     * @param days        number of days to plan
+     * @return the schedule of each day, in order
+     */
+    public List<AIRecommendation> generateWeeklyPlan(List<StudySessionWithStats> allSessions,
+                                                     long startDate,
+                                                     int days) {
+        ProductivityModel productivityModel = dataSource.getProductivityModel();
+        if (productivityModel == null) productivityModel = ProductivityModel.fromSessions(allSessions);
+
+        List<AIRecommendation> plan = new WeeklyPlanner(dataSource).plan(productivityModel, startDate, days);
+
+        String studyObjective = dataSource.getStudyObjective();
+        SchedulingPreferences.EnergyThresholds energy = preferenceLoader.getSchedulingPreferences().energy();
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(startDate);
+        for (AIRecommendation schedule : plan) {
+            schedule.setTotalSessions(productivityModel.getTotalSessionCount());
+            schedule.setSummaryMessage(generateSummaryMessage(
+                    schedule,
+                    studyObjective,
+                    null,
+                    dataSource.getDailyStudyMinutesGoal(cal.getTimeInMillis()),
+                    energy
+            ));
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+        }
+
+        Log.i(TAG, "Weekly plan generated for " + days + " days");
+        return plan;
+    }
+
     /**
      * Allocate EXACTLY the specified number of study hours
      * Uses historical productivity data to place study blocks in optimal times
      */
     private void allocateExactStudyHours(ActivityType[] hourlyActivities,
-                                         List<StudySessionWithStats> allSessions,
+                                         ProductivityModel productivityModel,
+                                         long targetDate,
                                          float targetStudyHours) {
 
-        // Calculate productivity scores for each hour
+        // Productivity of each hour on the day of the week of the target date (constant time,
+        // whatever the length of the history)
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(targetDate);
+        int day = ProductivityModel.dayOf(cal);
+
         float[] hourlyProductivity = new float[24];
         int[] hourlySessionCount = new int[24];
-
-        for (StudySessionWithStats session : allSessions) {
-            Calendar cal = Calendar.getInstance();
-            cal.setTimeInMillis(session.getTimestamp());
-            int hour = cal.get(Calendar.HOUR_OF_DAY);
-            // NOTE: hour is for sure in range [0, 23]
-            hourlyProductivity[hour] += session.getFocusScore();
-            hourlySessionCount[hour]++;
-        }
-
-        // Calculate average productivity per hour
         for (int h = 0; h < 24; h++) {
-            if (hourlySessionCount[h] > 0) {
-                hourlyProductivity[h] /= hourlySessionCount[h];
-            } else {
-                // Default productivity based on time of day
-                hourlyProductivity[h] = getDefaultProductivity(h);
-            }
+            // Default productivity based on time of day for hours without history
+            hourlyProductivity[h] = (float) productivityModel.getProductivity(day, h, getDefaultProductivity(h));
+            hourlySessionCount[h] = productivityModel.getSessionCount(h);
         }
 
         // Find available hours and sort by productivity
@@ -173,7 +209,7 @@ public class RecommendationEngine {
     /**
      * Get default productivity for an hour with no historical data
      */
-    private float getDefaultProductivity(int hour) {
+    static float getDefaultProductivity(int hour) {
         if (hour >= 9 && hour <= 11) {
             return 85f; // Morning peak
         } else if (hour >= 14 && hour <= 16) {
@@ -198,31 +234,28 @@ public class RecommendationEngine {
     }
 
     private void applyCalendarConstraints(ActivityType[] hourlyActivities,
-                                          @NonNull List<CalendarEvent> events) {
-        JsonObject calConfig = preferenceLoader.getCalendarIntegration();
-        if (calConfig == null || !preferenceLoader.isEnabled(calConfig)) {
+                                          @NonNull List<CalendarEvent> events,
+                                          SchedulingPreferences prefs) {
+        SchedulingPreferences.CalendarBuffers buffers = prefs.calendar();
+        if (buffers == null) {
             return;
         }
 
-        int bufferBefore = preferenceLoader.getInt(calConfig, "bufferBeforeEvent", 0);
-        int bufferAfter = preferenceLoader.getInt(calConfig, "bufferAfterEvent", 0);
-
+        Calendar cal = Calendar.getInstance();
         for (CalendarEvent event : events) {
-            Calendar cal = Calendar.getInstance();
             cal.setTimeInMillis(event.getStartTime());
-            int startHour = cal.get(Calendar.HOUR_OF_DAY);
+            int startMinute = cal.get(Calendar.HOUR_OF_DAY) * 60 + cal.get(Calendar.MINUTE);
 
             cal.setTimeInMillis(event.getEndTime());
-            int endHour = cal.get(Calendar.HOUR_OF_DAY);
-            if (endHour == 0) endHour = 24;
+            int endMinute = cal.get(Calendar.HOUR_OF_DAY) * 60 + cal.get(Calendar.MINUTE);
+            if (endMinute == 0) endMinute = 24 * 60;
 
-            // Add buffer time
-            if (bufferBefore > 0) {
-                startHour = Math.max(0, startHour - (bufferBefore / 60));
-            }
-            if (bufferAfter > 0) {
-                endHour = Math.min(24, endHour + (bufferAfter / 60));
-            }
+            // Add the buffers in minutes, then block every hour they touch (a 15 minute buffer
+            // before a 9:00 event blocks 8:00)
+            startMinute -= buffers.beforeMinutes();
+            endMinute += buffers.afterMinutes();
+            int startHour = Math.max(0, Math.floorDiv(startMinute, 60));
+            int endHour = Math.min(24, (endMinute + 59) / 60);
 
             for (int h = startHour; h < endHour; h++) {
                 hourlyActivities[h] = ActivityType.CALENDAR_EVENT;
@@ -230,12 +263,12 @@ public class RecommendationEngine {
         }
     }
 
-    private void applySleepSchedule(ActivityType[] hourlyActivities) {
-        JsonObject sleep = preferenceLoader.getSleepSchedule();
+    private void applySleepSchedule(ActivityType[] hourlyActivities, SchedulingPreferences prefs) {
+        SchedulingPreferences.TimeWindow sleep = prefs.sleep();
         if (sleep == null) return;
 
-        int bedtimeHour = preferenceLoader.getHour(sleep, "bedtime");
-        int wakeupHour = preferenceLoader.getHour(sleep, "wakeupTime");
+        int bedtimeHour = sleep.startHour();
+        int wakeupHour = sleep.endHour();
 
         for (int h = 0; h < 24; h++) {
             if (hourlyActivities[h] == null && isSleepHour(h, bedtimeHour, wakeupHour)) {
@@ -258,84 +291,50 @@ public class RecommendationEngine {
         }
     }
 
-    private void applyMealTimes(ActivityType[] hourlyActivities) {
-        JsonObject meals = preferenceLoader.getMealTimes();
-        if (meals == null) return;
-
-        // Process breakfast, lunch, dinner
-        for (String mealType : new String[]{"breakfast", "lunch", "dinner"}) {
-            JsonObject meal = meals.getAsJsonObject(mealType);
-            if (meal != null && preferenceLoader.getBoolean(meal, "enabled", false)) {
-                int hour = preferenceLoader.getInt(meal, "hour", -1);
-                if (hour >= 0 && hour < 24 && hourlyActivities[hour] == null) {
-                    hourlyActivities[hour] = ActivityType.MEALS;
-                }
+    private void applyMealTimes(ActivityType[] hourlyActivities, SchedulingPreferences prefs) {
+        for (SchedulingPreferences.TimeWindow meal : prefs.meals()) {
+            int hour = meal.startHour();
+            if (hourlyActivities[hour] == null) {
+                hourlyActivities[hour] = ActivityType.MEALS;
             }
         }
     }
 
     private void applyWorkSchedule(ActivityType[] hourlyActivities,
-                                   long targetDate) {
-        JsonObject work = preferenceLoader.getWorkSchedule();
-        if (work == null || !preferenceLoader.isEnabled(work)) return;
-
-        Calendar cal = Calendar.getInstance();
-        cal.setTimeInMillis(targetDate);
-        String dayOfWeek = getDayOfWeekString(cal);
-
-        List<String> workDays = preferenceLoader.getStringList(work, "workDays");
-        if (!workDays.contains(dayOfWeek.toUpperCase())) return;
+                                   int dayOfWeek,
+                                   SchedulingPreferences prefs) {
+        SchedulingPreferences.Work work = prefs.work();
+        if (work == null || work.allowStudyDuringWork() || !work.isWorkDay(dayOfWeek)) return;
 
-        int startHour = preferenceLoader.getHour(work, "startTime");
-        int endHour = preferenceLoader.getHour(work, "endTime");
-        boolean allowStudy = preferenceLoader.getBoolean(work, "allowStudyDuringWork", false);
+        int startHour = work.hours().startHour();
+        int endHour = work.hours().endHour();
 
         for (int h = startHour; h < endHour && h < 24; h++) {
-            if (hourlyActivities[h] == null && !allowStudy) {
+            if (hourlyActivities[h] == null) {
                 hourlyActivities[h] = ActivityType.WORK;
             }
         }
     }
 
-    private void applyExerciseSchedule(ActivityType[] hourlyActivities) {
-        JsonObject exercise = preferenceLoader.getExerciseSchedule();
-        if (exercise == null || !preferenceLoader.isEnabled(exercise)) return;
-
-        if (!exercise.has("preferredTimes")) return;
-
-        for (JsonElement element : exercise.getAsJsonArray("preferredTimes")) {
-            JsonObject block = element.getAsJsonObject();
-            int hour = preferenceLoader.getInt(block, "hour", -1);
-            int duration = preferenceLoader.getInt(block, "duration", 0);
-
-            if (hour >= 0 && hour < 24) {
-                for (int h = hour; h < hour + (duration / 60) && h < 24; h++) {
-                    if (hourlyActivities[h] == null) {
-                        hourlyActivities[h] = ActivityType.EXERCISE;
-                    }
+    private void applyExerciseSchedule(ActivityType[] hourlyActivities, SchedulingPreferences prefs) {
+        for (SchedulingPreferences.TimeWindow block : prefs.exercise()) {
+            int hour = block.startHour();
+            for (int h = hour; h < hour + (block.durationMinutes() / 60) && h < 24; h++) {
+                if (hourlyActivities[h] == null) {
+                    hourlyActivities[h] = ActivityType.EXERCISE;
                 }
             }
         }
     }
 
     private void applySocialTime(ActivityType[] hourlyActivities,
-                                 long targetDate) {
-        JsonObject social = preferenceLoader.getSocialTime();
-        if (social == null || !preferenceLoader.isEnabled(social)) return;
+                                 int dayOfWeek,
+                                 SchedulingPreferences prefs) {
+        SchedulingPreferences.Social social = prefs.social();
+        if (social == null || !social.isSocialDay(dayOfWeek)) return;
 
-        boolean protectFromStudy = preferenceLoader.getBoolean(social, "protectFromStudy", false);
-        if (!protectFromStudy) return;
-
-        Calendar cal = Calendar.getInstance();
-        cal.setTimeInMillis(targetDate);
-        String dayOfWeek = getDayOfWeekString(cal);
-
-        List<String> preferredDays = preferenceLoader.getStringList(social, "preferredDays");
-        if (!preferredDays.contains(dayOfWeek.toUpperCase())) return;
-
-        List<Integer> socialHours = preferenceLoader.getIntList(social, "preferredHours");
-        for (int hour : socialHours) {
-            if (hour >= 0 && hour < 24 && hourlyActivities[hour] == null) {
+        for (int hour = 0; hour < 24; hour++) {
+            if (social.isSocialHour(hour) && hourlyActivities[hour] == null) {
                 hourlyActivities[hour] = ActivityType.SOCIAL;
             }
         }
@@ -382,7 +381,8 @@ public class RecommendationEngine {
     private String generateSummaryMessage(AIRecommendation schedule,
                                           String studyObjective,
                                           String todayStudyTopic,
-                                          int dailyGoalMinutes) {
+                                          int dailyGoalMinutes,
+                                          SchedulingPreferences.EnergyThresholds energy) {
         int totalSessions = schedule.getTotalSessions();
         int availableHours = schedule.getAvailableHours();
         int calendarBlocked = schedule.getCalendarBlockedHours();
@@ -428,7 +428,7 @@ public class RecommendationEngine {
         }
 
         // Recent energy levels
-        List<PAMScore> recentScores = database.pamScoreDao().getLastNScores(3);
+        List<PAMScore> recentScores = dataSource.getLastPamScores(3);
         if (recentScores != null && !recentScores.isEmpty()) {
             float avgRecent = 0;
             for (PAMScore score : recentScores) {
@@ -436,19 +436,9 @@ public class RecommendationEngine {
             }
             avgRecent /= recentScores.size();
 
-            // Use PAM thresholds from JSON or defaults
-            JsonObject personalGoals = preferenceLoader.getPersonalGoals();
-            int lowThreshold = 15;
-            int highThreshold = 35;
-
-            if (personalGoals != null) {
-                lowThreshold = preferenceLoader.getInt(personalGoals, "lowThreshold", 15);
-                highThreshold = preferenceLoader.getInt(personalGoals, "highThreshold", 35);
-            }
-
-            if (avgRecent < lowThreshold) {
+            if (avgRecent < energy.low()) {
                 summary.append("Low energy—schedule breaks.");
-            } else if (avgRecent > highThreshold) {
+            } else if (avgRecent > energy.high()) {
                 summary.append("High energy—maximize focus.");
             }
         }
@@ -456,7 +446,7 @@ public class RecommendationEngine {
         return summary.toString();
     }
 
-    private int calculateConfidence(ActivityType type) {
+    static int calculateConfidence(ActivityType type) {
         return switch (type) {
             case SLEEP, CALENDAR_EVENT -> 100;
             case MEALS, EXERCISE -> 95;
@@ -466,7 +456,7 @@ public class RecommendationEngine {
         };
     }
 
-    private String getActivityReason(ActivityType type) {
+    static String getActivityReason(ActivityType type) {
         return switch (type) {
             case DEEP_STUDY -> "Optimal time for intensive focus work";
             case LIGHT_STUDY -> "Good for review, reading, practice";
@@ -480,13 +470,13 @@ public class RecommendationEngine {
         };
     }
 
-    private String getDayOfWeekString(Calendar cal) {
+    static String getDayOfWeekString(Calendar cal) {
         int dayOfWeek = cal.get(Calendar.DAY_OF_WEEK);
         String[] days = {"SUNDAY", "MONDAY", "TUESDAY", "WEDNESDAY", "THURSDAY", "FRIDAY", "SATURDAY"};
         return days[dayOfWeek - 1];
     }
 
-    private long getStartOfDay(long timestamp) {
+    static long getStartOfDay(long timestamp) {
         Calendar cal = Calendar.getInstance();
         cal.setTimeInMillis(timestamp);
         cal.set(Calendar.HOUR_OF_DAY, 0);
@@ -496,7 +486,7 @@ public class RecommendationEngine {
         return cal.getTimeInMillis();
     }
 
-    private long getEndOfDay(long timestamp) {
+    static long getEndOfDay(long timestamp) {
         Calendar cal = Calendar.getInstance();
         cal.setTimeInMillis(timestamp);
         cal.set(Calendar.HOUR_OF_DAY, 23);
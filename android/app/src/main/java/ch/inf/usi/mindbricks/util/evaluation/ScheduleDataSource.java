@@ -0,0 +1,102 @@
+package ch.inf.usi.mindbricks.util.evaluation;
+
+import android.content.Context;
+
+import java.util.List;
+
+import ch.inf.usi.mindbricks.database.AppDatabase;
+import ch.inf.usi.mindbricks.model.evaluation.PAMScore;
+import ch.inf.usi.mindbricks.model.visual.calendar.CalendarEvent;
+import ch.inf.usi.mindbricks.repository.CalendarRepository;
+import ch.inf.usi.mindbricks.util.PreferencesManager;
+import ch.inf.usi.mindbricks.util.UserPreferenceLoader;
+
+/**
+ * Data needed by the {@link RecommendationEngine} to build a schedule, besides the study sessions.
+ * <p>
+ * The app uses {@link #fromContext(Context)}, which reads from the shared preferences, the bundled
+ * user preferences and the database. Other implementations (e.g. in-memory ones) allow the engine
+ * to run outside of an Android device, for example in benchmarks.
+ *
+ * @author Luca Di Bello
+ */
+public interface ScheduleDataSource {
+
+    /**
+     * Returns the study objective set by the user (may be empty).
+     */
+    String getStudyObjective();
+
+    /**
+     * Returns the daily study goal (minutes) of the day containing the given timestamp.
+     */
+    int getDailyStudyMinutesGoal(long timestamp);
+
+    /**
+     * Returns the calendar events overlapping the given time range.
+     */
+    List<CalendarEvent> getCalendarEvents(long startTime, long endTime);
+
+    /**
+     * Returns the most recent PAM scores, newest first.
+     */
+    List<PAMScore> getLastPamScores(int count);
+
+    /**
+     * Returns the scheduling preferences of the user (sleep, meals, work, ...).
+     */
+    UserPreferenceLoader getPreferences();
+
+    /**
+     * Returns the productivity model of the user, or null if the engine has to build it from the
+     * sessions it is given.
+     */
+    default ProductivityModel getProductivityModel() {
+        return null;
+    }
+
+    /**
+     * Creates the data source backed by the app storage.
+     *
+     * @param context any context
+     * @return the data source
+     */
+    static ScheduleDataSource fromContext(Context context) {
+        PreferencesManager preferencesManager = new PreferencesManager(context);
+        UserPreferenceLoader preferenceLoader = UserPreferenceLoader.getInstance(context);
+        AppDatabase database = AppDatabase.getInstance(context);
+        CalendarRepository calendarRepository = new CalendarRepository(context);
+
+        return new ScheduleDataSource() {
+            @Override
+            public String getStudyObjective() {
+                return preferencesManager.getStudyObjective();
+            }
+
+            @Override
+            public int getDailyStudyMinutesGoal(long timestamp) {
+                return preferencesManager.getDailyStudyMinutesGoal(timestamp);
+            }
+
+            @Override
+            public List<CalendarEvent> getCalendarEvents(long startTime, long endTime) {
+                return calendarRepository.getEventsInRangeSync(startTime, endTime);
+            }
+
+            @Override
+            public List<PAMScore> getLastPamScores(int count) {
+                return database.pamScoreDao().getLastNScores(count);
+            }
+
+            @Override
+            public UserPreferenceLoader getPreferences() {
+                return preferenceLoader;
+            }
+
+            @Override
+            public ProductivityModel getProductivityModel() {
+                return database.productivityModelDao().getModel();
+            }
+        };
+    }
+}
@@ -0,0 +1,168 @@
+package ch.inf.usi.mindbricks.util.evaluation;
+
+import java.util.List;
+
+import ch.inf.usi.mindbricks.model.evaluation.PAMScore;
+import ch.inf.usi.mindbricks.model.recommendation.ProductivityCell;
+import ch.inf.usi.mindbricks.model.visual.StudySessionWithStats;
+import ch.inf.usi.mindbricks.model.visual.calendar.CalendarEvent;
+import ch.inf.usi.mindbricks.util.UserPreferenceLoader;
+import ch.inf.usi.mindbricks.util.database.DataProcessor;
+
+/**
+ * Everything the {@link RecommendationEngine} reads to build the schedule of a day, loaded once
+ * from a {@link ScheduleDataSource}, with a fingerprint of its content.
+ * <p>
+ * Two schedules generated from inputs with the same fingerprint are the same, so a stored
+ * schedule can be reused as long as the fingerprint of the current inputs matches. The snapshot
+ * is itself a data source: the engine can run on it without reading the storage again.
+ *
+ * @author Luca Di Bello
+ */
+public final class ScheduleInputs implements ScheduleDataSource {
+
+    /**
+     * Version of the schedule generation, part of the fingerprint: must be increased when the
+     * engine changes the schedules it produces from the same inputs.
+     */
+    static final int SCHEDULE_VERSION = 1;
+
+    /**
+     * Number of PAM scores read by the engine (for the summary message)
+     */
+    private static final int PAM_SCORE_COUNT = 3;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final ScheduleDataSource source;
+    private final long dayStart;
+    private final long dayEnd;
+    private final String studyObjective;
+    private final int dailyGoalMinutes;
+    private final List<CalendarEvent> calendarEvents;
+    private final List<PAMScore> pamScores;
+    private final ProductivityModel productivityModel;
+    private final long fingerprint;
+
+    private ScheduleInputs(ScheduleDataSource source,
+                           List<StudySessionWithStats> sessions,
+                           long targetDate) {
+        this.source = source;
+        this.dayStart = RecommendationEngine.getStartOfDay(targetDate);
+        this.dayEnd = RecommendationEngine.getEndOfDay(targetDate);
+        this.studyObjective = source.getStudyObjective();
+        this.dailyGoalMinutes = source.getDailyStudyMinutesGoal(targetDate);
+        this.calendarEvents = source.getCalendarEvents(dayStart, dayEnd);
+        this.pamScores = source.getLastPamScores(PAM_SCORE_COUNT);
+        this.productivityModel = source.getProductivityModel();
+
+        long hash = mix(FNV_OFFSET, SCHEDULE_VERSION);
+        hash = mix(hash, dayStart);
+        hash = mix(hash, dailyGoalMinutes);
+        hash = mix(hash, hash(studyObjective));
+        hash = mix(hash, source.getPreferences().getFingerprint());
+
+        for (CalendarEvent event : calendarEvents) {
+            hash = mix(hash, event.getId());
+            hash = mix(hash, event.getStartTime());
+            hash = mix(hash, event.getEndTime());
+            hash = mix(hash, event.isAllDay() ? 1 : 0);
+        }
+
+        if (pamScores != null) {
+            for (PAMScore score : pamScores) {
+                hash = mix(hash, score.getTotalScore());
+            }
+        }
+
+        // The sessions only appear in the summary (topic of today), unless there is no stored
+        // model and the engine builds it from them
+        hash = mix(hash, hash(DataProcessor.getTodayPrimaryStudyTopic(sessions)));
+        if (productivityModel != null) {
+            for (ProductivityCell cell : productivityModel.getCells()) {
+                hash = mix(hash, cell.getCell());
+                hash = mix(hash, cell.getSessionCount());
+                hash = mix(hash, cell.getScoreCount());
+                hash = mix(hash, Double.doubleToLongBits(cell.getMean()));
+                hash = mix(hash, cell.getUpdatedAt());
+            }
+        } else {
+            for (StudySessionWithStats session : sessions) {
+                hash = mix(hash, session.getTimestamp());
+                hash = mix(hash, Float.floatToIntBits(session.getFocusScore()));
+            }
+        }
+        this.fingerprint = hash;
+    }
+
+    /**
+     * Loads the inputs of the schedule of a day.
+     *
+     * @param source     source of the preferences, calendar events, PAM scores and model
+     * @param sessions   sessions of the history
+     * @param targetDate any time of the day
+     */
+    public static ScheduleInputs load(ScheduleDataSource source,
+                                      List<StudySessionWithStats> sessions,
+                                      long targetDate) {
+        return new ScheduleInputs(source, sessions, targetDate);
+    }
+
+    /**
+     * Returns the fingerprint of the inputs.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Returns the start of the day the inputs belong to (local midnight).
+     */
+    public long getDayStart() {
+        return dayStart;
+    }
+
+    @Override
+    public String getStudyObjective() {
+        return studyObjective;
+    }
+
+    @Override
+    public int getDailyStudyMinutesGoal(long timestamp) {
+        if (timestamp >= dayStart && timestamp <= dayEnd) return dailyGoalMinutes;
+        return source.getDailyStudyMinutesGoal(timestamp);
+    }
+
+    @Override
+    public List<CalendarEvent> getCalendarEvents(long startTime, long endTime) {
+        if (startTime == dayStart && endTime == dayEnd) return calendarEvents;
+        return source.getCalendarEvents(startTime, endTime);
+    }
+
+    @Override
+    public List<PAMScore> getLastPamScores(int count) {
+        if (count <= PAM_SCORE_COUNT && pamScores != null) {
+            return pamScores.subList(0, Math.min(count, pamScores.size()));
+        }
+        return source.getLastPamScores(count);
+    }
+
+    @Override
+    public UserPreferenceLoader getPreferences() {
+        return source.getPreferences();
+    }
+
+    @Override
+    public ProductivityModel getProductivityModel() {
+        return productivityModel;
+    }
+
+    private static long hash(String value) {
+        return value == null ? 0 : value.hashCode();
+    }
+
+    private static long mix(long hash, long value) {
+        return (hash ^ value) * FNV_PRIME;
+    }
+}
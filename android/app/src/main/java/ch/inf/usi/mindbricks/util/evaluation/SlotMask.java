@@ -0,0 +1,144 @@
+package ch.inf.usi.mindbricks.util.evaluation;
+
+/**
+ * Fixed-size set of time slots (e.g. the 5-minute slots of a week), stored as a bitset.
+ * <p>
+ * Ranges are half-open ({@code [from, to)}) and processed a 64-bit word at a time, so checking
+ * whether a study block fits or blocking an event costs a few word operations instead of one
+ * operation per slot.
+ *
+ * @author Luca Di Bello
+ */
+public final class SlotMask {
+
+    private final long[] words;
+    private final int size;
+
+    public SlotMask(int size) {
+        if (size < 0) throw new IllegalArgumentException("size must not be negative");
+        this.size = size;
+        this.words = new long[(size + 63) >>> 6];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean get(int slot) {
+        return (words[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * Sets the slots in {@code [from, to)}, clamped to the mask.
+     */
+    public void set(int from, int to) {
+        from = Math.max(0, from);
+        to = Math.min(size, to);
+        if (from >= to) return;
+
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (first == last) {
+            words[first] |= firstMask & lastMask;
+            return;
+        }
+        words[first] |= firstMask;
+        for (int i = first + 1; i < last; i++) words[i] = -1L;
+        words[last] |= lastMask;
+    }
+
+    /**
+     * Clears the slots in {@code [from, to)}, clamped to the mask.
+     */
+    public void clear(int from, int to) {
+        from = Math.max(0, from);
+        to = Math.min(size, to);
+        if (from >= to) return;
+
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (first == last) {
+            words[first] &= ~(firstMask & lastMask);
+            return;
+        }
+        words[first] &= ~firstMask;
+        for (int i = first + 1; i < last; i++) words[i] = 0;
+        words[last] &= ~lastMask;
+    }
+
+    /**
+     * Returns true if any slot in {@code [from, to)} is set (slots outside the mask count as set).
+     */
+    public boolean anySet(int from, int to) {
+        if (from < 0 || to > size) return true;
+        if (from >= to) return false;
+
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (first == last) return (words[first] & firstMask & lastMask) != 0;
+        if ((words[first] & firstMask) != 0) return true;
+        for (int i = first + 1; i < last; i++) {
+            if (words[i] != 0) return true;
+        }
+        return (words[last] & lastMask) != 0;
+    }
+
+    /**
+     * Returns the number of set slots in {@code [from, to)}.
+     */
+    public int count(int from, int to) {
+        from = Math.max(0, from);
+        to = Math.min(size, to);
+        if (from >= to) return 0;
+
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (first == last) return Long.bitCount(words[first] & firstMask & lastMask);
+        int count = Long.bitCount(words[first] & firstMask);
+        for (int i = first + 1; i < last; i++) count += Long.bitCount(words[i]);
+        return count + Long.bitCount(words[last] & lastMask);
+    }
+
+    /**
+     * Returns the first set slot at or after {@code from}, or {@link #size()} if there is none.
+     */
+    public int nextSet(int from) {
+        if (from >= size) return size;
+        int i = from >>> 6;
+        long word = words[i] & (-1L << from);
+        while (true) {
+            if (word != 0) return Math.min(size, (i << 6) + Long.numberOfTrailingZeros(word));
+            if (++i == words.length) return size;
+            word = words[i];
+        }
+    }
+
+    /**
+     * Returns the first clear slot at or after {@code from}, or {@link #size()} if there is none.
+     */
+    public int nextClear(int from) {
+        if (from >= size) return size;
+        int i = from >>> 6;
+        long word = ~words[i] & (-1L << from);
+        while (true) {
+            if (word != 0) return Math.min(size, (i << 6) + Long.numberOfTrailingZeros(word));
+            if (++i == words.length) return size;
+            word = ~words[i];
+        }
+    }
+
+    /**
+     * Sets every slot set in {@code other} (of the same size).
+     */
+    public void or(SlotMask other) {
+        for (int i = 0; i < words.length; i++) words[i] |= other.words[i];
+    }
+}
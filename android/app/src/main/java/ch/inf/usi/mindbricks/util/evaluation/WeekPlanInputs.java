@@ -0,0 +1,131 @@
+package ch.inf.usi.mindbricks.util.evaluation;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import ch.inf.usi.mindbricks.model.evaluation.PAMScore;
+import ch.inf.usi.mindbricks.model.visual.calendar.CalendarEvent;
+import ch.inf.usi.mindbricks.util.UserPreferenceLoader;
+
+/**
+ * Everything the {@link WeeklyPlanner} reads to plan consecutive days, loaded once from a
+ * {@link ScheduleDataSource}.
+ * <p>
+ * Like {@link ScheduleInputs} for a single day, the snapshot is itself a data source: the plan
+ * can be generated from it (e.g. on the compute pool) without reading the storage again.
+ *
+ * @author Luca Di Bello
+ */
+public final class WeekPlanInputs implements ScheduleDataSource {
+
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+
+    private final ScheduleDataSource source;
+    private final long startDate;
+    private final int days;
+    private final long[] dayStarts;
+    private final String studyObjective;
+    private final int[] dailyGoalMinutes;
+    private final long eventsFrom;
+    private final long eventsTo;
+    private final List<CalendarEvent> calendarEvents;
+    private final ProductivityModel productivityModel;
+
+    private WeekPlanInputs(ScheduleDataSource source, long startDate, int days) {
+        this.source = source;
+        this.startDate = startDate;
+        this.days = days;
+
+        // same day boundaries as the planner
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(startDate);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        this.dayStarts = new long[days + 1];
+        for (int d = 0; d <= days; d++) {
+            dayStarts[d] = cal.getTimeInMillis();
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+        }
+
+        this.studyObjective = source.getStudyObjective();
+        this.dailyGoalMinutes = new int[days];
+        for (int d = 0; d < days; d++) {
+            dailyGoalMinutes[d] = source.getDailyStudyMinutesGoal(dayStarts[d]);
+        }
+        // one more day on each side: the planner also reads the events whose buffers reach into
+        // the planned days
+        this.eventsFrom = dayStarts[0] - DAY_MS;
+        this.eventsTo = dayStarts[days] + DAY_MS;
+        this.calendarEvents = source.getCalendarEvents(eventsFrom, eventsTo);
+        this.productivityModel = source.getProductivityModel();
+    }
+
+    /**
+     * Loads the inputs of the plan of consecutive days.
+     *
+     * @param source    source of the preferences, goals, calendar events and model
+     * @param startDate any time of the first day
+     * @param days      number of days to plan
+     */
+    public static WeekPlanInputs load(ScheduleDataSource source, long startDate, int days) {
+        return new WeekPlanInputs(source, startDate, days);
+    }
+
+    /**
+     * Returns the time the plan starts from (any time of its first day).
+     */
+    public long getStartDate() {
+        return startDate;
+    }
+
+    /**
+     * Returns the number of planned days.
+     */
+    public int getDays() {
+        return days;
+    }
+
+    @Override
+    public String getStudyObjective() {
+        return studyObjective;
+    }
+
+    @Override
+    public int getDailyStudyMinutesGoal(long timestamp) {
+        for (int d = 0; d < days; d++) {
+            if (timestamp >= dayStarts[d] && timestamp < dayStarts[d + 1]) return dailyGoalMinutes[d];
+        }
+        return source.getDailyStudyMinutesGoal(timestamp);
+    }
+
+    @Override
+    public List<CalendarEvent> getCalendarEvents(long startTime, long endTime) {
+        if (startTime < eventsFrom || endTime > eventsTo) return source.getCalendarEvents(startTime, endTime);
+
+        // same overlap as the calendar query
+        List<CalendarEvent> overlapping = new ArrayList<>();
+        for (CalendarEvent event : calendarEvents) {
+            if (event.getStartTime() < endTime && event.getEndTime() > startTime) overlapping.add(event);
+        }
+        return overlapping;
+    }
+
+    @Override
+    public List<PAMScore> getLastPamScores(int count) {
+        return source.getLastPamScores(count);
+    }
+
+    @Override
+    public UserPreferenceLoader getPreferences() {
+        return source.getPreferences();
+    }
+
+    @Override
+    public ProductivityModel getProductivityModel() {
+        return productivityModel;
+    }
+}
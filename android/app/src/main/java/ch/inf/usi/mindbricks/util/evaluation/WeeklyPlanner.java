@@ -0,0 +1,405 @@
+package ch.inf.usi.mindbricks.util.evaluation;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+
+import ch.inf.usi.mindbricks.model.preferences.SchedulingPreferences;
+import ch.inf.usi.mindbricks.model.recommendation.AIRecommendation;
+import ch.inf.usi.mindbricks.model.recommendation.ActivityBlock;
+import ch.inf.usi.mindbricks.model.recommendation.ActivityType;
+import ch.inf.usi.mindbricks.model.visual.calendar.CalendarEvent;
+import ch.inf.usi.mindbricks.util.UserPreferenceLoader;
+
+/**
+ * Plans the study sessions of several days (usually a week) at minute granularity.
+ * <p>
+ * Every day is split into slots of a few minutes. The hard constraints (calendar events with
+ * their buffers, sleep, meals, work, exercise and protected social time) are marked in a
+ * {@link SlotMask}, and the study goal of the day is then split into sessions of the preferred
+ * length, separated by the preferred break:
+ * <ol>
+ *     <li>greedy: each session is placed in the free window with the highest expected
+ *     productivity (from the {@link ProductivityModel}, plus a bonus for the preferred study
+ *     times); sessions that no longer fit are shortened to the longest free window;</li>
+ *     <li>local search: each session is moved to the best window left free by the others,
+ *     until no move improves the plan.</li>
+ * </ol>
+ * Window scores come from prefix sums over the slots and free windows are found a 64-bit word
+ * at a time, so planning a day takes well under a millisecond.
+ *
+ * @author Luca Di Bello
+ */
+public class WeeklyPlanner {
+
+    private static final String TAG = "WeeklyPlanner";
+
+    public static final int DEFAULT_SLOT_MINUTES = 5;
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final long MINUTE_MS = 60_000L;
+    private static final int MIN_SESSION_MINUTES = 15;
+    private static final int MAX_SEARCH_PASSES = 4;
+
+    /**
+     * Productivity added to the slots of the preferred study times
+     */
+    private static final double PREFERRED_TIME_BONUS = 5;
+
+    private final ScheduleDataSource dataSource;
+    private final UserPreferenceLoader preferenceLoader;
+    private final int slotMinutes;
+    private final int slotsPerDay;
+    private final int searchPasses;
+
+    public WeeklyPlanner(ScheduleDataSource dataSource) {
+        this(dataSource, DEFAULT_SLOT_MINUTES);
+    }
+
+    /**
+     * @param dataSource  source of the preferences, goals and calendar events
+     * @param slotMinutes length of a slot, must divide an hour (e.g. 5, 10, 15)
+     */
+    public WeeklyPlanner(ScheduleDataSource dataSource, int slotMinutes) {
+        this(dataSource, slotMinutes, MAX_SEARCH_PASSES);
+    }
+
+    /**
+     * @param searchPasses maximum number of local search passes (0 keeps the greedy placement)
+     */
+    WeeklyPlanner(ScheduleDataSource dataSource, int slotMinutes, int searchPasses) {
+        if (slotMinutes <= 0 || 60 % slotMinutes != 0) {
+            throw new IllegalArgumentException("slotMinutes must divide 60: " + slotMinutes);
+        }
+        this.dataSource = dataSource;
+        this.preferenceLoader = dataSource.getPreferences();
+        this.slotMinutes = slotMinutes;
+        this.slotsPerDay = MINUTES_PER_DAY / slotMinutes;
+        this.searchPasses = searchPasses;
+    }
+
+    /**
+     * Plans consecutive days.
+     *
+     * @param productivityModel productivity of the user
+     * @param startDate         any time of the first day
+     * @param days              number of days to plan
+     * @return the schedule of each day, in order (blocks with minute precision)
+     */
+    public List<AIRecommendation> plan(ProductivityModel productivityModel, long startDate, int days) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(startDate);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+
+        long[] dayStarts = new long[days + 1];
+        for (int d = 0; d <= days; d++) {
+            dayStarts[d] = cal.getTimeInMillis();
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+        }
+
+        // Preferences are read once, already parsed
+        SchedulingPreferences prefs = preferenceLoader.getSchedulingPreferences();
+
+        // Calendar events of the whole range are read once, with the ones whose buffers reach
+        // into it from the day before or after
+        SchedulingPreferences.CalendarBuffers buffers = prefs.calendar();
+        int bufferBefore = buffers != null ? buffers.beforeMinutes() : 0;
+        int bufferAfter = buffers != null ? buffers.afterMinutes() : 0;
+        List<CalendarEvent> events = buffers != null
+                ? dataSource.getCalendarEvents(dayStarts[0] - bufferAfter * MINUTE_MS,
+                        dayStarts[days] - 1 + bufferBefore * MINUTE_MS)
+                : Collections.emptyList();
+
+        SchedulingPreferences.Study study = prefs.study();
+        double[] hourBonus = preferredTimeBonus(study);
+
+        List<AIRecommendation> plans = new ArrayList<>(days);
+        for (int d = 0; d < days; d++) {
+            cal.setTimeInMillis(dayStarts[d]);
+            DayPlan day = new DayPlan(cal);
+
+            for (CalendarEvent event : events) {
+                if (event.isAllDay()) continue;
+                // The buffers may cross midnight: events of the days before and after count too
+                if (event.getEndTime() + bufferAfter * MINUTE_MS <= dayStarts[d]
+                        || event.getStartTime() - bufferBefore * MINUTE_MS >= dayStarts[d + 1]) continue;
+                int from = minuteOfDay(cal, event.getStartTime(), dayStarts[d], dayStarts[d + 1]) - bufferBefore;
+                int to = minuteOfDay(cal, event.getEndTime(), dayStarts[d], dayStarts[d + 1]) + bufferAfter;
+                day.block(ActivityType.CALENDAR_EVENT, from, to);
+            }
+            applySleepSchedule(day, prefs);
+            applyMealTimes(day, prefs);
+            applyWorkSchedule(day, prefs);
+            applyExerciseSchedule(day, prefs);
+            applySocialTime(day, prefs);
+
+            int goalMinutes = Math.min(dataSource.getDailyStudyMinutesGoal(dayStarts[d]), study.maxDailyMinutes());
+            day.scoreSlots(productivityModel, hourBonus);
+            day.schedule(toSlots(goalMinutes), toSlots(study.sessionMinutes()), toSlots(study.breakMinutes()));
+            plans.add(day.toRecommendation(productivityModel));
+        }
+        return plans;
+    }
+
+    private int toSlots(int minutes) {
+        return Math.max(0, (minutes + slotMinutes - 1) / slotMinutes);
+    }
+
+    /**
+     * Returns the minute of a time in the day [dayStart, dayEnd): negative before the day, past
+     * {@value #MINUTES_PER_DAY} after it.
+     */
+    private static int minuteOfDay(Calendar cal, long timestamp, long dayStart, long dayEnd) {
+        if (timestamp < dayStart) return (int) -((dayStart - timestamp + MINUTE_MS - 1) / MINUTE_MS);
+        if (timestamp >= dayEnd) return MINUTES_PER_DAY + (int) ((timestamp - dayEnd) / MINUTE_MS);
+        cal.setTimeInMillis(timestamp);
+        return cal.get(Calendar.HOUR_OF_DAY) * 60 + cal.get(Calendar.MINUTE);
+    }
+
+    private void applySleepSchedule(DayPlan day, SchedulingPreferences prefs) {
+        SchedulingPreferences.TimeWindow sleep = prefs.sleep();
+        if (sleep == null) return;
+
+        if (!sleep.wrapsMidnight()) {
+            day.block(ActivityType.SLEEP, sleep.startMinute(), sleep.endMinute());
+        } else {
+            // Sleep wraps midnight: the end of last night and the start of tonight
+            day.block(ActivityType.SLEEP, 0, sleep.endMinute());
+            day.block(ActivityType.SLEEP, sleep.startMinute(), MINUTES_PER_DAY);
+        }
+    }
+
+    private void applyMealTimes(DayPlan day, SchedulingPreferences prefs) {
+        for (SchedulingPreferences.TimeWindow meal : prefs.meals()) {
+            day.block(ActivityType.MEALS, meal.startMinute(), meal.endMinute());
+        }
+    }
+
+    private void applyWorkSchedule(DayPlan day, SchedulingPreferences prefs) {
+        SchedulingPreferences.Work work = prefs.work();
+        if (work == null || work.allowStudyDuringWork() || !work.isWorkDay(day.calendarDay)) return;
+
+        day.block(ActivityType.WORK, work.hours().startMinute(), work.hours().endMinute());
+    }
+
+    private void applyExerciseSchedule(DayPlan day, SchedulingPreferences prefs) {
+        for (SchedulingPreferences.TimeWindow block : prefs.exercise()) {
+            day.block(ActivityType.EXERCISE, block.startMinute(), block.endMinute());
+        }
+    }
+
+    private void applySocialTime(DayPlan day, SchedulingPreferences prefs) {
+        SchedulingPreferences.Social social = prefs.social();
+        if (social == null || !social.isSocialDay(day.calendarDay)) return;
+
+        for (int hour = 0; hour < 24; hour++) {
+            if (social.isSocialHour(hour)) day.block(ActivityType.SOCIAL, hour * 60, hour * 60 + 60);
+        }
+    }
+
+    /**
+     * Returns the bonus of each hour of the day that falls in an enabled preferred study time.
+     */
+    private static double[] preferredTimeBonus(SchedulingPreferences.Study study) {
+        double[] bonus = new double[24];
+        for (int h = 0; h < 24; h++) {
+            if (study.isPreferredHour(h)) bonus[h] = PREFERRED_TIME_BONUS;
+        }
+        return bonus;
+    }
+
+    /**
+     * Slots of one day being planned.
+     */
+    private final class DayPlan {
+
+        private static final byte FREE = -1;
+
+        final String dayName;
+        final int dayOfWeek;
+        final int calendarDay;
+
+        /**
+         * Activity (ordinal) of each slot blocked by a constraint, the first one marked wins
+         */
+        final byte[] labels = new byte[slotsPerDay];
+        final SlotMask blocked = new SlotMask(slotsPerDay);
+
+        /**
+         * Prefix sums of the slot scores (productivity and preferred time bonus): the score of
+         * [a, b) is prefix[b] - prefix[a]
+         */
+        final double[] prefix = new double[slotsPerDay + 1];
+
+        /**
+         * Expected productivity of each hour, without the bonus
+         */
+        final double[] productivity = new double[24];
+
+        /**
+         * Planned sessions as {start slot, length}
+         */
+        final List<int[]> sessions = new ArrayList<>();
+
+        DayPlan(Calendar cal) {
+            this.dayName = RecommendationEngine.getDayOfWeekString(cal);
+            this.dayOfWeek = ProductivityModel.dayOf(cal);
+            this.calendarDay = cal.get(Calendar.DAY_OF_WEEK);
+            Arrays.fill(labels, FREE);
+        }
+
+        void block(ActivityType type, int fromMinute, int toMinute) {
+            int from = Math.max(0, Math.floorDiv(fromMinute, slotMinutes));
+            int to = Math.min(slotsPerDay, (Math.min(toMinute, MINUTES_PER_DAY) + slotMinutes - 1) / slotMinutes);
+            if (from >= to) return;
+            for (int s = from; s < to; s++) {
+                if (labels[s] == FREE) labels[s] = (byte) type.ordinal();
+            }
+            blocked.set(from, to);
+        }
+
+        void scoreSlots(ProductivityModel model, double[] hourBonus) {
+            int slotsPerHour = 60 / slotMinutes;
+            for (int hour = 0; hour < 24; hour++) {
+                productivity[hour] = model.getProductivity(dayOfWeek, hour, RecommendationEngine.getDefaultProductivity(hour));
+                double score = productivity[hour] + hourBonus[hour];
+                for (int i = 0; i < slotsPerHour; i++) {
+                    int s = hour * slotsPerHour + i;
+                    prefix[s + 1] = prefix[s] + score;
+                }
+            }
+        }
+
+        void schedule(int goalSlots, int sessionSlots, int breakSlots) {
+            int minSlots = Math.max(1, Math.min(sessionSlots, toSlots(MIN_SESSION_MINUTES)));
+            sessionSlots = Math.max(minSlots, sessionSlots);
+
+            // The goal is split into sessions as close as possible to the preferred length
+            int count = goalSlots <= 0 ? 0 : Math.max(1, Math.round((float) goalSlots / sessionSlots));
+
+            // Greedy: best window for each session, longest first
+            SlotMask busy = new SlotMask(slotsPerDay);
+            busy.or(blocked);
+            int missing = 0;
+            for (int i = 0; i < count; i++) {
+                int length = goalSlots / count + (i < goalSlots % count ? 1 : 0);
+                int start = bestStart(busy, length);
+                if (start < 0) {
+                    int shortened = Math.min(length, longestFreeRun(busy));
+                    if (shortened < minSlots) {
+                        missing += length;
+                        continue;
+                    }
+                    missing += length - shortened;
+                    length = shortened;
+                    start = bestStart(busy, length);
+                }
+                sessions.add(new int[]{start, length});
+                busy.set(start - breakSlots, start + length + breakSlots);
+            }
+            if (missing > 0) {
+                Log.d(TAG, dayName + ": " + missing * slotMinutes + " study minutes do not fit");
+            }
+
+            // Local search: move each session to the best window left by the others
+            for (int pass = 0; pass < searchPasses; pass++) {
+                boolean improved = false;
+                for (int i = 0; i < sessions.size(); i++) {
+                    int[] session = sessions.get(i);
+                    busy = new SlotMask(slotsPerDay);
+                    busy.or(blocked);
+                    for (int j = 0; j < sessions.size(); j++) {
+                        if (j == i) continue;
+                        int[] other = sessions.get(j);
+                        busy.set(other[0] - breakSlots, other[0] + other[1] + breakSlots);
+                    }
+                    int start = bestStart(busy, session[1]);
+                    if (start >= 0 && score(start, session[1]) > score(session[0], session[1]) + 1e-9) {
+                        session[0] = start;
+                        improved = true;
+                    }
+                }
+                if (!improved) break;
+            }
+        }
+
+        double score(int start, int length) {
+            return prefix[start + length] - prefix[start];
+        }
+
+        /**
+         * Returns the start of the free window of the given length with the highest score (the
+         * earliest on ties), or -1 if none is free.
+         */
+        int bestStart(SlotMask busy, int length) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int from = busy.nextClear(0); from < slotsPerDay; ) {
+                int to = busy.nextSet(from);
+                for (int s = from; s + length <= to; s++) {
+                    double score = score(s, length);
+                    if (score > bestScore + 1e-9) {
+                        best = s;
+                        bestScore = score;
+                    }
+                }
+                from = busy.nextClear(to);
+            }
+            return best;
+        }
+
+        int longestFreeRun(SlotMask busy) {
+            int longest = 0;
+            for (int from = busy.nextClear(0); from < slotsPerDay; ) {
+                int to = busy.nextSet(from);
+                longest = Math.max(longest, to - from);
+                from = busy.nextClear(to);
+            }
+            return longest;
+        }
+
+        AIRecommendation toRecommendation(ProductivityModel model) {
+            byte[] slots = labels.clone();
+            double productivitySum = 0;
+            int studySlots = 0;
+            for (int[] session : sessions) {
+                int start = session[0];
+                int length = session[1];
+                double sum = 0;
+                for (int s = start; s < start + length; s++) sum += productivity[s * slotMinutes / 60];
+                int hour = start * slotMinutes / 60;
+                ActivityType type = sum / length >= 75 || model.getSessionCount(hour) >= 3
+                        ? ActivityType.DEEP_STUDY
+                        : ActivityType.LIGHT_STUDY;
+                Arrays.fill(slots, start, start + length, (byte) type.ordinal());
+                productivitySum += sum;
+                studySlots += length;
+            }
+
+            AIRecommendation schedule = new AIRecommendation();
+            ActivityType[] types = ActivityType.values();
+            int blockStart = 0;
+            for (int s = 1; s <= slotsPerDay; s++) {
+                if (s < slotsPerDay && slots[s] == slots[blockStart]) continue;
+                ActivityType type = slots[blockStart] == FREE ? ActivityType.BREAKS : types[slots[blockStart]];
+                schedule.addActivityBlock(ActivityBlock.ofMinutes(
+                        type,
+                        blockStart * slotMinutes,
+                        s * slotMinutes,
+                        RecommendationEngine.calculateConfidence(type),
+                        RecommendationEngine.getActivityReason(type)
+                ));
+                blockStart = s;
+            }
+            if (studySlots > 0) schedule.setAverageProductivity((float) (productivitySum / studySlots));
+            return schedule;
+        }
+    }
+}
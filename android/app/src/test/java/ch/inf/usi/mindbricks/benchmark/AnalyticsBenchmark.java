@@ -0,0 +1,121 @@
+package ch.inf.usi.mindbricks.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongToIntFunction;
+
+import ch.inf.usi.mindbricks.model.visual.DailyRings;
+import ch.inf.usi.mindbricks.model.visual.DateRange;
+import ch.inf.usi.mindbricks.model.visual.HeatmapCell;
+import ch.inf.usi.mindbricks.model.visual.StreakDay;
+import ch.inf.usi.mindbricks.model.visual.StudySessionWithStats;
+import ch.inf.usi.mindbricks.util.analytics.AnalyticsAccumulator;
+import ch.inf.usi.mindbricks.util.analytics.AnalyticsKernel;
+import ch.inf.usi.mindbricks.util.analytics.SessionColumns;
+import ch.inf.usi.mindbricks.util.database.DataProcessor;
+
+/**
+ * Throughput benchmarks of the analytics charts.
+ * <p>
+ * Compares the per-chart {@link DataProcessor} functions with the {@link AnalyticsKernel}, on
+ * synthetic histories of increasing size. Run with {@code ./gradlew :app:jmh}; the allocation
+ * rate of each benchmark is reported by the GC profiler ({@code gc.alloc.rate.norm}).
+ *
+ * @author Luca Di Bello
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnalyticsBenchmark {
+
+    /**
+     * Number of sessions in the history
+     */
+    @Param({"100", "1000", "10000", "100000"})
+    public int sessionCount;
+
+    /**
+     * Selected range: "30" for the last 30 days, "ALL" for all time
+     */
+    @Param({"30", "ALL"})
+    public String range;
+
+    private static final int HISTORY_DAYS = 2 * 365;
+    private static final LongToIntFunction DAILY_GOAL = timestamp -> 120;
+
+    private List<StudySessionWithStats> sessions;
+    private DateRange dateRange;
+    private AnalyticsKernel.Params params;
+    private AnalyticsAccumulator totals;
+    private long now;
+    private int streakMonth;
+    private int streakYear;
+
+    @Setup
+    public void setup() {
+        sessions = SyntheticSessions.generate(sessionCount, HISTORY_DAYS, 42);
+        dateRange = "ALL".equals(range) ? DateRange.allTime() : DateRange.lastNDays(Integer.parseInt(range));
+
+        params = new AnalyticsKernel.Params();
+        params.dailyGoal = DAILY_GOAL;
+
+        now = System.currentTimeMillis();
+        totals = new AnalyticsAccumulator(dateRange, now);
+        for (StudySessionWithStats session : sessions) totals.add(session);
+
+        Calendar calendar = Calendar.getInstance();
+        streakMonth = calendar.get(Calendar.MONTH);
+        streakYear = calendar.get(Calendar.YEAR);
+    }
+
+    @Benchmark
+    public List<HeatmapCell> qualityHeatmap() {
+        return DataProcessor.calculateQualityHeatmap(DataProcessor.filterSessionsInRange(sessions, dateRange), dateRange);
+    }
+
+    @Benchmark
+    public List<DailyRings> dailyRings() {
+        return DataProcessor.calculateDailyRingsHistory(sessions, dateRange, 1, DAILY_GOAL);
+    }
+
+    @Benchmark
+    public List<StreakDay> streakCalendar() {
+        return DataProcessor.calculateStreakCalendar(sessions, 60, streakMonth, streakYear);
+    }
+
+    /**
+     * All the charts of the analytics screen (including the columnar conversion).
+     */
+    @Benchmark
+    public AnalyticsKernel.Output kernel() {
+        return AnalyticsKernel.compute(SessionColumns.from(sessions), dateRange, params);
+    }
+
+    /**
+     * A change of a single session applied to the running totals of the range, then all the
+     * charts built from the totals (what the analytics screen does after a change, instead of
+     * {@link #kernel()}).
+     */
+    @Benchmark
+    public AnalyticsKernel.Output accumulatorChange() {
+        StudySessionWithStats session = sessions.get(0);
+        totals.update(session, session);
+        return totals.toOutput(params, now);
+    }
+}
@@ -0,0 +1,127 @@
+package ch.inf.usi.mindbricks.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import ch.inf.usi.mindbricks.model.evaluation.PAMScore;
+import ch.inf.usi.mindbricks.model.recommendation.AIRecommendation;
+import ch.inf.usi.mindbricks.model.visual.StudySessionWithStats;
+import ch.inf.usi.mindbricks.model.visual.calendar.CalendarEvent;
+import ch.inf.usi.mindbricks.util.UserPreferenceLoader;
+import ch.inf.usi.mindbricks.util.evaluation.ProductivityModel;
+import ch.inf.usi.mindbricks.util.evaluation.RecommendationEngine;
+import ch.inf.usi.mindbricks.util.evaluation.ScheduleDataSource;
+
+/**
+ * Throughput benchmark of the adaptive schedule generation (one day, hourly) and of the weekly
+ * plan (seven days, 5-minute slots).
+ * <p>
+ * The engine runs on an in-memory {@link ScheduleDataSource}: the bundled user preferences (read
+ * from the assets folder when available), two calendar events on the target day, a few PAM scores
+ * and the productivity model of the sessions (built once, as the app keeps it in the database).
+ *
+ * @author Luca Di Bello
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecommendationEngineBenchmark {
+
+    /**
+     * Number of sessions in the history
+     */
+    @Param({"100", "1000", "10000", "100000"})
+    public int sessionCount;
+
+    private static final Path PREFERENCES_ASSET = Paths.get("src", "main", "assets", "user_preferences.json");
+
+    private List<StudySessionWithStats> sessions;
+    private RecommendationEngine engine;
+    private long targetDate;
+
+    @Setup
+    public void setup() throws IOException {
+        sessions = SyntheticSessions.generate(sessionCount, 2 * 365, 42);
+        targetDate = System.currentTimeMillis();
+
+        String json = Files.exists(PREFERENCES_ASSET)
+                ? new String(Files.readAllBytes(PREFERENCES_ASSET), StandardCharsets.UTF_8)
+                : "";
+        UserPreferenceLoader preferences = UserPreferenceLoader.fromJson(json);
+        ProductivityModel productivityModel = ProductivityModel.fromSessions(sessions);
+
+        List<CalendarEvent> events = new ArrayList<>();
+        long hour = 60L * 60 * 1000;
+        long dayStart = targetDate - Math.floorMod(targetDate, 24 * hour);
+        events.add(new CalendarEvent("bench-1", "benchmark", "Lecture", dayStart + 9 * hour, dayStart + 11 * hour, false));
+        events.add(new CalendarEvent("bench-2", "benchmark", "Gym", dayStart + 18 * hour, dayStart + 19 * hour, false));
+
+        List<PAMScore> scores = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            scores.add(new PAMScore(i, i, targetDate - i * 24 * hour, 8 + i, 7, 9 - i));
+        }
+
+        engine = new RecommendationEngine(new ScheduleDataSource() {
+            @Override
+            public String getStudyObjective() {
+                return "Exam preparation";
+            }
+
+            @Override
+            public int getDailyStudyMinutesGoal(long timestamp) {
+                return 180;
+            }
+
+            @Override
+            public List<CalendarEvent> getCalendarEvents(long startTime, long endTime) {
+                return events;
+            }
+
+            @Override
+            public List<PAMScore> getLastPamScores(int count) {
+                return scores.subList(0, Math.min(count, scores.size()));
+            }
+
+            @Override
+            public UserPreferenceLoader getPreferences() {
+                return preferences;
+            }
+
+            @Override
+            public ProductivityModel getProductivityModel() {
+                return productivityModel;
+            }
+        });
+    }
+
+    @Benchmark
+    public AIRecommendation adaptiveSchedule() {
+        return engine.generateAdaptiveSchedule(sessions, targetDate);
+    }
+
+    @Benchmark
+    public List<AIRecommendation> weeklyPlan() {
+        return engine.generateWeeklyPlan(sessions, targetDate, 7);
+    }
+}
@@ -0,0 +1,80 @@
+package ch.inf.usi.mindbricks.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import ch.inf.usi.mindbricks.model.visual.StudySession;
+import ch.inf.usi.mindbricks.model.visual.StudySessionWithStats;
+
+/**
+ * Generator of synthetic study sessions for the benchmarks.
+ * <p>
+ * Sessions are spread over the last {@code days} days, mostly during the day, with a handful of
+ * tags and random focus / sensor values. The generator is seeded, so every run of a benchmark
+ * works on exactly the same data.
+ *
+ * @author Luca Di Bello
+ */
+final class SyntheticSessions {
+
+    private static final long HOUR_MS = 60L * 60 * 1000;
+    private static final long DAY_MS = 24 * HOUR_MS;
+
+    private static final String[] TAG_TITLES = {"Math", "Physics", "History", "Programming", "Reading", "Languages"};
+    private static final int[] TAG_COLORS = {0xFFE57373, 0xFF64B5F6, 0xFF81C784, 0xFFFFB74D, 0xFFBA68C8, 0xFF4DB6AC};
+
+    private SyntheticSessions() {
+    }
+
+    /**
+     * Generates sessions ordered by timestamp, newest first (same order as the DAO queries).
+     *
+     * @param count number of sessions
+     * @param days  number of days (ending now) the sessions are spread over
+     * @param seed  random seed
+     * @return the generated sessions
+     */
+    static List<StudySessionWithStats> generate(int count, int days, long seed) {
+        Random random = new Random(seed);
+        long now = System.currentTimeMillis();
+        long start = now - days * DAY_MS;
+
+        long[] timestamps = new long[count];
+        for (int i = 0; i < count; i++) {
+            long day = start + (long) random.nextInt(days) * DAY_MS;
+            // most sessions between 7:00 and 23:00, some at night
+            int hour = random.nextInt(10) == 0 ? random.nextInt(24) : 7 + random.nextInt(16);
+            timestamps[i] = Math.min(now - 1, day + hour * HOUR_MS + random.nextInt(60) * 60_000L);
+        }
+        Arrays.sort(timestamps);
+
+        List<StudySessionWithStats> sessions = new ArrayList<>(count);
+        for (int i = count - 1; i >= 0; i--) {
+            sessions.add(create(count - i, timestamps[i], random));
+        }
+        return sessions;
+    }
+
+    /**
+     * Creates a single random session with the given id and timestamp.
+     */
+    static StudySessionWithStats create(long id, long timestamp, Random random) {
+        int tag = random.nextInt(TAG_TITLES.length + 1);
+        boolean hasTag = tag < TAG_TITLES.length;
+
+        StudySession session = new StudySession(timestamp, 15 + random.nextInt(106), hasTag ? (long) tag + 1 : null);
+        session.setId(id);
+        session.setFocusScore(20 + random.nextFloat() * 80);
+
+        return new StudySessionWithStats(
+                session,
+                30 + random.nextFloat() * 50,
+                50 + random.nextFloat() * 500,
+                random.nextInt(10),
+                hasTag ? TAG_TITLES[tag] : null,
+                hasTag ? TAG_COLORS[tag] : 0
+        );
+    }
+}
@@ -0,0 +1,225 @@
+package ch.inf.usi.mindbricks.database;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Regression test for the query plans of the DAO queries.
+ * <p>
+ * The test creates the schema exported by Room for the current database version in an
+ * in-memory SQLite database, extracts the SQL of every {@code @Query} of the checked DAOs
+ * directly from their sources and fails if SQLite plans a full table scan for any of them
+ * (i.e. a {@code SCAN} step that does not go through an index).
+ *
+ * @author Luca Di Bello
+ */
+public class QueryPlanTest {
+
+    private static final String SOURCE_DIR = "src/main/java/ch/inf/usi/mindbricks/database/";
+    private static final String SCHEMA_DIR = "schemas/ch.inf.usi.mindbricks.database.AppDatabase/";
+
+    /**
+     * DAOs whose queries are checked.
+     */
+    private static final String[] CHECKED_DAOS = {"StudySessionDao", "TagDao", "PAMScoreDao"};
+
+    /**
+     * Queries that read a whole table by design. Every entry must explain why.
+     */
+    private static final Set<String> ALLOWED_FULL_SCANS = Set.of(
+            // one row per tag: every tag is visited once, sessions are reached through the tagId index
+            "TagDao.getTagsWithTotalTime",
+            "TagDao.observeTagsWithTotalTime",
+            "TagDao.getTagsWithSessionCount",
+            "TagDao.getTagsWithAvgFocusScore",
+            // statistics over the whole PAM history (median / per-state aggregates)
+            "PAMScoreDao.getBaselineScore",
+            "PAMScoreDao.getStateStatistics"
+    );
+
+    /**
+     * Matches a full scan step in both the old ("SCAN TABLE x") and the new ("SCAN x") format.
+     */
+    private static final Pattern FULL_SCAN = Pattern.compile("^SCAN (TABLE )?\\w+");
+    private static final Pattern QUERY_PARAM = Pattern.compile(":\\w+");
+    private static final Pattern STRING_CONSTANT =
+            Pattern.compile("String\\s+(\\w+)\\s*=\\s*((?:\\s*\"(?:[^\"\\\\]|\\\\.)*\"\\s*\\+?)+);");
+    private static final Pattern STRING_LITERAL = Pattern.compile("\"((?:[^\"\\\\]|\\\\.)*)\"");
+    private static final Pattern METHOD_NAME = Pattern.compile("(\\w+)\\s*\\(");
+
+    private static Connection connection;
+
+    @BeforeClass
+    public static void createSchema() throws Exception {
+        JsonObject database = loadSchema().getAsJsonObject("database");
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+
+        try (Statement statement = connection.createStatement()) {
+            for (JsonElement element : database.getAsJsonArray("entities")) {
+                JsonObject entity = element.getAsJsonObject();
+                String table = entity.get("tableName").getAsString();
+                statement.execute(entity.get("createSql").getAsString().replace("${TABLE_NAME}", table));
+
+                if (entity.has("indices")) {
+                    for (JsonElement index : entity.getAsJsonArray("indices")) {
+                        String sql = index.getAsJsonObject().get("createSql").getAsString();
+                        statement.execute(sql.replace("${TABLE_NAME}", table));
+                    }
+                }
+            }
+        }
+    }
+
+    @AfterClass
+    public static void closeDatabase() throws SQLException {
+        if (connection != null) connection.close();
+    }
+
+    @Test
+    public void daoQueriesDoNotScanWholeTables() throws Exception {
+        List<String> failures = new ArrayList<>();
+        int checked = 0;
+
+        for (String dao : CHECKED_DAOS) {
+            for (Map.Entry<String, String> query : extractQueries(dao).entrySet()) {
+                String name = dao + "." + query.getKey();
+                List<String> plan = explain(query.getValue());
+                checked++;
+
+                for (String step : plan) {
+                    boolean fullScan = FULL_SCAN.matcher(step).find() && !step.contains("INDEX");
+                    if (fullScan && !ALLOWED_FULL_SCANS.contains(name)) {
+                        failures.add(name + " -> " + plan);
+                        break;
+                    }
+                }
+            }
+        }
+
+        assertTrue("No @Query found in the checked DAOs", checked > 0);
+        if (!failures.isEmpty()) {
+            fail("Queries falling back to a full table scan:\n" + String.join("\n", failures));
+        }
+    }
+
+    @Test
+    public void allowListOnlyContainsExistingQueries() throws Exception {
+        for (String allowed : ALLOWED_FULL_SCANS) {
+            String[] parts = allowed.split("\\.");
+            assertFalse("Stale allow-list entry: " + allowed,
+                    extractQueries(parts[0]).get(parts[1]) == null);
+        }
+    }
+
+    /**
+     * Runs EXPLAIN QUERY PLAN on the given query (Room parameters are left unbound).
+     */
+    private static List<String> explain(String sql) throws SQLException {
+        String jdbcSql = QUERY_PARAM.matcher(sql).replaceAll("?");
+        List<String> steps = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN QUERY PLAN " + jdbcSql);
+             ResultSet result = statement.executeQuery()) {
+            while (result.next()) {
+                steps.add(result.getString("detail"));
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * Extracts the SQL of every {@code @Query} annotation of a DAO source, keyed by method name.
+     * String constants declared in the DAO and referenced by the annotation are inlined.
+     */
+    private static Map<String, String> extractQueries(String dao) throws IOException {
+        String source = Files.readString(new File(SOURCE_DIR + dao + ".java").toPath(), StandardCharsets.UTF_8);
+
+        Map<String, String> constants = new HashMap<>();
+        Matcher constant = STRING_CONSTANT.matcher(source);
+        while (constant.find()) {
+            constants.put(constant.group(1), joinLiterals(constant.group(2)));
+        }
+
+        Map<String, String> queries = new HashMap<>();
+        int from = 0;
+        while ((from = source.indexOf("@Query(", from)) >= 0) {
+            StringBuilder sql = new StringBuilder();
+            StringBuilder token = new StringBuilder();
+            int depth = 1;
+            int i = from + "@Query(".length();
+
+            while (depth > 0) {
+                char c = source.charAt(i);
+                if (c == '"') {
+                    int end = i + 1;
+                    while (source.charAt(end) != '"') end += source.charAt(end) == '\\' ? 2 : 1;
+                    sql.append(source, i + 1, end);
+                    i = end + 1;
+                    continue;
+                }
+                if (Character.isJavaIdentifierPart(c)) {
+                    token.append(c);
+                } else {
+                    if (constants.containsKey(token.toString())) sql.append(constants.get(token.toString()));
+                    token.setLength(0);
+                    if (c == '(') depth++;
+                    else if (c == ')') depth--;
+                }
+                i++;
+            }
+
+            Matcher method = METHOD_NAME.matcher(source);
+            if (method.find(i)) {
+                queries.put(method.group(1), sql.toString());
+            }
+            from = i;
+        }
+        return queries;
+    }
+
+    private static String joinLiterals(String expression) {
+        StringBuilder joined = new StringBuilder();
+        Matcher literal = STRING_LITERAL.matcher(expression);
+        while (literal.find()) joined.append(literal.group(1));
+        return joined.toString();
+    }
+
+    /**
+     * Loads the schema exported by Room for the version currently declared in {@link AppDatabase}.
+     */
+    private static JsonObject loadSchema() throws IOException {
+        String source = Files.readString(new File(SOURCE_DIR + "AppDatabase.java").toPath(), StandardCharsets.UTF_8);
+        Matcher version = Pattern.compile("version\\s*=\\s*(\\d+)").matcher(source);
+        assertTrue("Database version not found", version.find());
+
+        File schema = new File(SCHEMA_DIR + version.group(1) + ".json");
+        assertTrue("Missing exported schema " + schema + ", build the app to generate it", schema.exists());
+        return JsonParser.parseString(Files.readString(schema.toPath(), StandardCharsets.UTF_8)).getAsJsonObject();
+    }
+}
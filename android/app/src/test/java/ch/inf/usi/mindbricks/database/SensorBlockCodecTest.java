@@ -0,0 +1,190 @@
+package ch.inf.usi.mindbricks.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import ch.inf.usi.mindbricks.model.visual.SessionSensorBlock;
+import ch.inf.usi.mindbricks.model.visual.SessionSensorLog;
+
+/**
+ * Round trips samples through {@link SensorBlockCodec}: quantization of the noise and light
+ * levels, negative deltas, flags, empty and malformed blocks, and the size of the encoded samples.
+ *
+ * @author Luca Di Bello
+ */
+public class SensorBlockCodecTest {
+
+    private static final long SESSION_ID = 7;
+    private static final long START = 1_700_000_000_000L;
+
+    private static SessionSensorLog log(long timestamp, float noise, float light, boolean motion, boolean faceUp) {
+        return new SessionSensorLog(SESSION_ID, timestamp, noise, light, motion, faceUp);
+    }
+
+    private static List<SessionSensorLog> roundTrip(List<SessionSensorLog> logs) {
+        List<SessionSensorLog> decoded = new ArrayList<>();
+        SensorBlockCodec.decode(SESSION_ID, SensorBlockCodec.encode(logs), decoded);
+        assertEquals(logs.size(), decoded.size());
+        return decoded;
+    }
+
+    @Test
+    public void noiseIsQuantizedToHalfSteps() {
+        float[] noise = {0f, 0.24f, 0.26f, 10.74f, 10.76f, 3000.1f};
+        float[] expected = {0f, 0f, 0.5f, 10.5f, 11f, 3000f};
+        List<SessionSensorLog> logs = new ArrayList<>();
+        for (int i = 0; i < noise.length; i++) logs.add(log(START + i * 5000L, noise[i], 50f, false, true));
+
+        List<SessionSensorLog> decoded = roundTrip(logs);
+        for (int i = 0; i < noise.length; i++) {
+            assertEquals(expected[i], decoded.get(i).getNoiseLevel(), 0f);
+        }
+
+        // random levels are within half a step
+        Random random = new Random(1);
+        logs.clear();
+        for (int i = 0; i < 1000; i++) logs.add(log(START + i * 5000L, random.nextFloat() * 200, 50f, false, true));
+        decoded = roundTrip(logs);
+        for (int i = 0; i < logs.size(); i++) {
+            assertEquals(logs.get(i).getNoiseLevel(), decoded.get(i).getNoiseLevel(),
+                    SensorBlockCodec.NOISE_STEP / 2 + 1e-4f);
+        }
+    }
+
+    @Test
+    public void invalidNoiseIsStoredAsZero() {
+        List<SessionSensorLog> decoded = roundTrip(Arrays.asList(
+                log(START, -4f, 50f, false, true),
+                log(START + 5000, Float.NaN, 50f, false, true)));
+        assertEquals(0f, decoded.get(0).getNoiseLevel(), 0f);
+        assertEquals(0f, decoded.get(1).getNoiseLevel(), 0f);
+    }
+
+    @Test
+    public void lightIsScaledAndClamped() {
+        float[] light = {0f, 0.2f, 40f, 99.7f, 100f, 100.3f, 250f, -1f, Float.NaN};
+        float[] expected = {0f, 0.4f, 40f, 99.6f, 100f, 100f, 100f, 0f, 0f};
+        List<SessionSensorLog> logs = new ArrayList<>();
+        for (int i = 0; i < light.length; i++) logs.add(log(START + i * 5000L, 1f, light[i], false, true));
+
+        List<SessionSensorLog> decoded = roundTrip(logs);
+        for (int i = 0; i < light.length; i++) {
+            assertEquals("light " + light[i], expected[i], decoded.get(i).getLightLevel(), 1e-4f);
+        }
+
+        // levels in range are within half a step (0.2)
+        Random random = new Random(2);
+        logs.clear();
+        for (int i = 0; i < 1000; i++) logs.add(log(START + i * 5000L, 1f, random.nextFloat() * 100, false, true));
+        decoded = roundTrip(logs);
+        for (int i = 0; i < logs.size(); i++) {
+            assertEquals(logs.get(i).getLightLevel(), decoded.get(i).getLightLevel(),
+                    0.5f / SensorBlockCodec.LIGHT_SCALE + 1e-4f);
+        }
+    }
+
+    @Test
+    public void negativeDeltasRoundTrip() {
+        // timestamps out of order and falling noise levels
+        long[] timestamps = {START, START - 1, START + 5000, START - 3_600_000L, 0, Long.MAX_VALUE / 2};
+        float[] noise = {100f, 20f, 0f, 55.5f, 0.5f, 1000f};
+        List<SessionSensorLog> logs = new ArrayList<>();
+        for (int i = 0; i < timestamps.length; i++) logs.add(log(timestamps[i], noise[i], 10f, false, false));
+
+        List<SessionSensorLog> decoded = roundTrip(logs);
+        for (int i = 0; i < timestamps.length; i++) {
+            assertEquals(SESSION_ID, decoded.get(i).getSessionId());
+            assertEquals(timestamps[i], decoded.get(i).getTimestamp());
+            assertEquals(noise[i], decoded.get(i).getNoiseLevel(), 0f);
+        }
+    }
+
+    @Test
+    public void flagsRoundTrip() {
+        // not a multiple of the 4 samples of a flag byte
+        List<SessionSensorLog> logs = new ArrayList<>();
+        for (int i = 0; i < 7; i++) logs.add(log(START + i, 1f, 1f, i % 2 == 0, i % 3 == 0));
+
+        List<SessionSensorLog> decoded = roundTrip(logs);
+        for (int i = 0; i < logs.size(); i++) {
+            assertEquals(logs.get(i).isMotionDetected(), decoded.get(i).isMotionDetected());
+            assertEquals(logs.get(i).isFaceUp(), decoded.get(i).isFaceUp());
+        }
+    }
+
+    @Test
+    public void emptyBlocksDecodeToNothing() {
+        byte[] empty = SensorBlockCodec.encode(new ArrayList<>());
+        assertEquals(2, empty.length);
+
+        List<SessionSensorLog> decoded = new ArrayList<>();
+        SensorBlockCodec.decode(SESSION_ID, empty, decoded);
+        assertTrue(decoded.isEmpty());
+        assertTrue(SensorBlockCodec.decodeAll(new ArrayList<>()).isEmpty());
+    }
+
+    @Test
+    public void blocksAreDecodedInOrder() {
+        List<SessionSensorLog> first = List.of(log(START, 1f, 1f, false, true), log(START + 5000, 2f, 2f, true, true));
+        List<SessionSensorLog> second = List.of(log(START + 10_000, 3f, 3f, false, false));
+        List<SessionSensorBlock> blocks = List.of(
+                new SessionSensorBlock(SESSION_ID, START, START + 5000, 2, SensorBlockCodec.encode(first)),
+                new SessionSensorBlock(SESSION_ID, START + 10_000, START + 10_000, 1, SensorBlockCodec.encode(second)));
+
+        List<SessionSensorLog> decoded = SensorBlockCodec.decodeAll(blocks);
+        assertEquals(3, decoded.size());
+        for (int i = 0; i < decoded.size(); i++) {
+            assertEquals(START + i * 5000L, decoded.get(i).getTimestamp());
+            assertEquals(i + 1f, decoded.get(i).getNoiseLevel(), 0f);
+        }
+    }
+
+    @Test
+    public void malformedBlocksAreRejected() {
+        byte[] data = SensorBlockCodec.encode(List.of(log(START, 1f, 1f, false, true)));
+        List<SessionSensorLog> out = new ArrayList<>();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> SensorBlockCodec.decode(SESSION_ID, Arrays.copyOf(data, data.length - 1), out));
+
+        byte[] unknownVersion = data.clone();
+        unknownVersion[0] = 99;
+        assertThrows(IllegalArgumentException.class, () -> SensorBlockCodec.decode(SESSION_ID, unknownVersion, out));
+    }
+
+    @Test
+    public void regularSamplesTakeThreeBytesAndAQuarter() {
+        // steady levels at a fixed interval: one byte per timestamp (no change of the interval),
+        // noise delta and light level, a quarter of a byte of flags
+        List<SessionSensorLog> logs = new ArrayList<>();
+        for (int i = 0; i < 720; i++) logs.add(log(START + i * 5000L, 40f, 50f, false, true));
+
+        int size = SensorBlockCodec.encode(logs).length;
+        assertTrue("encoded size " + size, size <= 3.25 * logs.size() + 16);
+    }
+
+    @Test
+    public void changingSamplesTakeLessThanFourBytes() {
+        // one hour at 5 s, slowly changing noise and light
+        Random random = new Random(3);
+        List<SessionSensorLog> logs = new ArrayList<>();
+        float noise = 40f;
+        float light = 50f;
+        for (int i = 0; i < 720; i++) {
+            noise = Math.max(0, noise + (float) random.nextGaussian() * 2);
+            light = Math.min(100, Math.max(0, light + (float) random.nextGaussian()));
+            logs.add(log(START + i * 5000L, noise, light, random.nextInt(20) == 0, true));
+        }
+
+        int size = SensorBlockCodec.encode(logs).length;
+        assertTrue("encoded size " + size, size <= 3.5 * logs.size());
+    }
+}
@@ -0,0 +1,205 @@
+package ch.inf.usi.mindbricks.service;
+
+import androidx.lifecycle.LiveData;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ch.inf.usi.mindbricks.database.SessionSensorLogDao;
+import ch.inf.usi.mindbricks.model.visual.SessionSensorBlock;
+import ch.inf.usi.mindbricks.model.visual.SessionSensorCheckpoint;
+import ch.inf.usi.mindbricks.model.visual.SessionSensorSummary;
+
+/**
+ * In-memory implementation of the queries of {@link SessionSensorLogDao}, so that its default
+ * methods (block encoding, summary folding, compaction) run unchanged on the JVM.
+ * <p>
+ * Counts what would be written to the database, to measure the write amplification of the
+ * sensor pipeline. Row sizes are estimates of the SQLite records (column values plus header).
+ *
+ * @author Luca Di Bello
+ */
+final class InMemorySensorLogDao implements SessionSensorLogDao {
+
+    /**
+     * Estimated size of a block row without its data: 5 integers plus the record header.
+     */
+    static final int BLOCK_ROW_OVERHEAD_BYTES = 48;
+
+    /**
+     * Estimated size of a summary row: 3 integers, 2 doubles, 4 floats plus the record header.
+     */
+    static final int SUMMARY_ROW_BYTES = 72;
+
+    private final List<SessionSensorBlock> blocks = new ArrayList<>();
+    private final Map<Long, SessionSensorSummary> summaries = new HashMap<>();
+    private final Map<Long, SessionSensorCheckpoint> checkpoints = new HashMap<>();
+    private long nextId = 1;
+
+    long writtenBytes = 0;
+    int insertedBlocks = 0;
+    int summaryUpdates = 0;
+    int checkpointUpdates = 0;
+
+    @Override
+    public void insertBlock(SessionSensorBlock block) {
+        block.setId(nextId++);
+        blocks.add(block);
+        insertedBlocks++;
+        writtenBytes += BLOCK_ROW_OVERHEAD_BYTES + block.getData().length;
+    }
+
+    @Override
+    public void ensureSummary(long sessionId) {
+        summaries.computeIfAbsent(sessionId, SessionSensorSummary::new);
+    }
+
+    @Override
+    public void addToSummary(long sessionId, int sampleCount, double noiseSum, double lightSum, int pickupCount,
+                             float noiseMin, float noiseMax, float lightMin, float lightMax) {
+        SessionSensorSummary summary = summaries.get(sessionId);
+        if (summary == null) return;
+        summary.setSampleCount(summary.getSampleCount() + sampleCount);
+        summary.setNoiseSum(summary.getNoiseSum() + noiseSum);
+        summary.setLightSum(summary.getLightSum() + lightSum);
+        summary.setPickupCount(summary.getPickupCount() + pickupCount);
+        summary.setNoiseMin(summary.getNoiseMin() == null ? noiseMin : Math.min(summary.getNoiseMin(), noiseMin));
+        summary.setNoiseMax(summary.getNoiseMax() == null ? noiseMax : Math.max(summary.getNoiseMax(), noiseMax));
+        summary.setLightMin(summary.getLightMin() == null ? lightMin : Math.min(summary.getLightMin(), lightMin));
+        summary.setLightMax(summary.getLightMax() == null ? lightMax : Math.max(summary.getLightMax(), lightMax));
+        summaryUpdates++;
+        writtenBytes += SUMMARY_ROW_BYTES;
+    }
+
+    @Override
+    public void saveSummary(SessionSensorSummary summary) {
+        summaries.put(summary.getSessionId(), summary);
+        summaryUpdates++;
+        writtenBytes += SUMMARY_ROW_BYTES;
+    }
+
+    @Override
+    public SessionSensorSummary getSummary(long sessionId) {
+        return summaries.get(sessionId);
+    }
+
+    @Override
+    public void saveCheckpoint(SessionSensorCheckpoint checkpoint) {
+        checkpoints.put(checkpoint.getSessionId(), checkpoint);
+        checkpointUpdates++;
+        writtenBytes += SUMMARY_ROW_BYTES;
+    }
+
+    @Override
+    public SessionSensorCheckpoint getCheckpoint(long sessionId) {
+        return checkpoints.get(sessionId);
+    }
+
+    @Override
+    public void deleteCheckpoint(long sessionId) {
+        checkpoints.remove(sessionId);
+    }
+
+    @Override
+    public void copyCheckpointsToSummaries(long runningSessionId) {
+        for (SessionSensorCheckpoint checkpoint : checkpoints.values()) {
+            if (checkpoint.getSessionId() == runningSessionId) continue;
+            summaries.put(checkpoint.getSessionId(), checkpoint);
+            summaryUpdates++;
+            writtenBytes += SUMMARY_ROW_BYTES;
+        }
+    }
+
+    @Override
+    public int deleteCheckpointsExcept(long runningSessionId) {
+        int before = checkpoints.size();
+        checkpoints.keySet().removeIf(sessionId -> sessionId != runningSessionId);
+        return before - checkpoints.size();
+    }
+
+    @Override
+    public LiveData<List<SessionSensorBlock>> observeBlocksForSession(long sessionId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<SessionSensorBlock> getBlocksForSession(long sessionId) {
+        List<SessionSensorBlock> result = new ArrayList<>();
+        for (SessionSensorBlock block : blocks) {
+            if (block.getSessionId() == sessionId) result.add(block);
+        }
+        result.sort((a, b) -> Long.compare(a.getFirstTimestamp(), b.getFirstTimestamp()));
+        return result;
+    }
+
+    @Override
+    public void deleteBlocksForSession(long sessionId) {
+        blocks.removeIf(block -> block.getSessionId() == sessionId);
+    }
+
+    @Override
+    public List<Long> getSessionsToDownsample(long cutoffTime, long resolutionMs, int limit) {
+        List<Long> result = new ArrayList<>();
+        for (SessionSensorBlock block : blocks) {
+            if (block.getLastTimestamp() < cutoffTime && block.getResolutionMs() < resolutionMs
+                    && !result.contains(block.getSessionId()) && result.size() < limit) {
+                result.add(block.getSessionId());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Long> getSessionsToCompact(long cutoffTime, int limit) {
+        Map<Long, Integer> counts = new HashMap<>();
+        Map<Long, Long> lastTimestamps = new HashMap<>();
+        for (SessionSensorBlock block : blocks) {
+            if (block.getResolutionMs() != 0) continue;
+            counts.merge(block.getSessionId(), 1, Integer::sum);
+            lastTimestamps.merge(block.getSessionId(), block.getLastTimestamp(), Math::max);
+        }
+
+        List<Long> result = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() > 1 && lastTimestamps.get(entry.getKey()) < cutoffTime) {
+                result.add(entry.getKey());
+            }
+        }
+        result.sort(Long::compare);
+        return result.subList(0, Math.min(limit, result.size()));
+    }
+
+    @Override
+    public int deleteLogsOlderThan(long cutoffTime) {
+        int before = blocks.size();
+        blocks.removeIf(block -> block.getLastTimestamp() < cutoffTime);
+        return before - blocks.size();
+    }
+
+    @Override
+    public int getTotalLogCount() {
+        int count = 0;
+        for (SessionSensorBlock block : blocks) count += block.getSampleCount();
+        return count;
+    }
+
+    @Override
+    public Long getOldestLogTimestamp() {
+        Long oldest = null;
+        for (SessionSensorBlock block : blocks) {
+            if (oldest == null || block.getFirstTimestamp() < oldest) oldest = block.getFirstTimestamp();
+        }
+        return oldest;
+    }
+
+    /**
+     * Returns the number of stored bytes (current state, after compaction and deletions).
+     */
+    long storedBytes() {
+        long bytes = (long) (summaries.size() + checkpoints.size()) * SUMMARY_ROW_BYTES;
+        for (SessionSensorBlock block : blocks) bytes += BLOCK_ROW_OVERHEAD_BYTES + block.getData().length;
+        return bytes;
+    }
+}
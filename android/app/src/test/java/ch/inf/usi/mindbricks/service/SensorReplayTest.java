@@ -0,0 +1,271 @@
+package ch.inf.usi.mindbricks.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import ch.inf.usi.mindbricks.database.SensorBlockCodec;
+import ch.inf.usi.mindbricks.drivers.replay.SensorTrace;
+import ch.inf.usi.mindbricks.drivers.replay.TraceReplaySource;
+import ch.inf.usi.mindbricks.model.visual.SessionSensorBlock;
+import ch.inf.usi.mindbricks.model.visual.SessionSensorLog;
+import ch.inf.usi.mindbricks.model.visual.SessionSensorSummary;
+
+/**
+ * Replays synthetic sensor traces through the sensor pipeline of {@link SensorService}
+ * ({@link SensorPipeline} -> {@link SensorChangeFilter} -> {@link SensorLogBuffer} ->
+ * {@code SessionSensorLogDao.insertRowsWithCheckpoint} -> final summary and compaction), without
+ * a device.
+ * <p>
+ * Besides checking that the persisted data matches the trace, the test reports the throughput
+ * of the pipeline and its write amplification (bytes written to the database per byte of
+ * observed data, including the summary checkpoints and the compaction of the session).
+ *
+ * @author Luca Di Bello
+ */
+public class SensorReplayTest {
+
+    private static final long INTERVAL_MS = 5000;
+    private static final long START = 1_700_000_000_000L;
+
+    /**
+     * Size of an observation in memory: timestamp, noise, light and two flags.
+     */
+    private static final int OBSERVATION_BYTES = 8 + 4 + 4 + 1 + 1;
+
+    /**
+     * Result of the replay of one session.
+     */
+    private static class Run {
+        final InMemorySensorLogDao dao = new InMemorySensorLogDao();
+        SensorChangeFilter filter;
+        SensorLogBuffer buffer;
+        SessionSensorStats stats;
+        int observations = 0;
+    }
+
+    private static Run replay(SensorTrace trace, long sessionId, double speed) throws InterruptedException {
+        return replay(trace, sessionId, speed, true);
+    }
+
+    /**
+     * @param stop false to end the replay as if the process died: no flush, no final summary
+     */
+    private static Run replay(SensorTrace trace, long sessionId, double speed, boolean stop) throws InterruptedException {
+        Run run = new Run();
+        // every batch is written with a checkpoint of the summary, as in SensorService
+        run.buffer = new SensorLogBuffer(Runnable::run, rows ->
+                run.dao.insertRowsWithCheckpoint(rows, run.stats.toCheckpoint(sessionId)));
+        run.filter = new SensorChangeFilter((sample, store) -> {
+            if (store) run.buffer.add(sample);
+        });
+
+        TraceReplaySource source = new TraceReplaySource(trace, speed);
+        SensorPipeline pipeline = new SensorPipeline(source, source, source, run.filter);
+        run.stats = pipeline.getSessionStats();
+        pipeline.start(sessionId, 0, features -> {
+            pipeline.observe(source.currentTimeMillis(), !features.isEmpty(), (float) features.rms);
+            run.buffer.tick(source.currentTimeMillis());
+            run.observations++;
+        });
+        source.replay();
+        pipeline.stop();
+        if (!stop) return run;
+
+        // end of the session, as in SensorService.stopSession
+        run.buffer.flush();
+        run.dao.finishSession(run.stats.toSummary(sessionId));
+        // blocks merged later, as in SensorRetentionWorker
+        run.dao.compactSession(sessionId);
+        return run;
+    }
+
+    @Test
+    public void replayedSessionsArePersistedConsistently() throws Exception {
+        int sessions = 8;
+        long sessionLengthMs = TimeUnit.HOURS.toMillis(2);
+        long observations = 0;
+        long writtenBytes = 0;
+        long storedBytes = 0;
+
+        for (int s = 0; s < sessions; s++) {
+            long sessionId = s + 1;
+            SensorTrace trace = SyntheticTraces.session(START + s * TimeUnit.DAYS.toMillis(1),
+                    sessionLengthMs, INTERVAL_MS, sessionId);
+
+            Run run = replay(trace, sessionId, TraceReplaySource.UNPACED);
+
+            // every microphone window is one observation, counted in the summary
+            int windows = trace.count(SensorTrace.Type.NOISE);
+            assertEquals(windows, run.observations);
+            assertEquals(windows, run.filter.getObservedCount());
+
+            SessionSensorSummary summary = run.dao.getSummary(sessionId);
+            assertEquals(windows, summary.getSampleCount());
+            // at most one pickup per interval in the synthetic traces
+            assertEquals(trace.count(SensorTrace.Type.MOTION), summary.getPickupCount());
+            assertEquals(meanNoise(trace), summary.getAverageNoise(), 1e-3 * meanNoise(trace));
+            assertEquals(noiseVariance(trace), summary.getNoiseVariance(), 1e-6 * noiseVariance(trace));
+            assertTrue(summary.getFaceDownMs() >= 0 && summary.getFaceDownMs() <= sessionLengthMs);
+            // one checkpoint per batch, a single summary write (the final one)
+            assertEquals(run.buffer.getWrittenBatches(), run.dao.checkpointUpdates);
+            assertEquals(1, run.dao.summaryUpdates);
+            assertNull(run.dao.getCheckpoint(sessionId));
+
+            // the stored rows are the ones kept by the change filter, merged into one block
+            List<SessionSensorBlock> blocks = run.dao.getBlocksForSession(sessionId);
+            assertEquals(1, blocks.size());
+            List<SessionSensorLog> rows = SensorBlockCodec.decodeAll(blocks);
+            assertEquals(run.filter.getStoredCount(), rows.size());
+            for (int i = 1; i < rows.size(); i++) {
+                assertTrue(rows.get(i).getTimestamp() > rows.get(i - 1).getTimestamp());
+                assertTrue(rows.get(i).getTimestamp() - rows.get(i - 1).getTimestamp()
+                        <= SensorChangeFilter.DEFAULT_MAX_SILENCE_MS);
+            }
+            assertEquals(0, run.buffer.getDroppedSamples());
+
+            observations += run.observations;
+            writtenBytes += run.dao.writtenBytes;
+            storedBytes += run.dao.storedBytes();
+        }
+
+        double amplification = (double) writtenBytes / (observations * OBSERVATION_BYTES);
+
+        // the change filter and the block encoding must write less than the raw observations, and
+        // merging the blocks leaves less than what was written
+        assertTrue("write amplification " + amplification, amplification < 1);
+        assertTrue(storedBytes + " bytes stored of " + writtenBytes, storedBytes < writtenBytes);
+    }
+
+    @Test
+    public void interruptedSessionKeepsItsSummary() throws Exception {
+        SensorTrace trace = SyntheticTraces.session(START, TimeUnit.HOURS.toMillis(1), INTERVAL_MS, 5);
+        Run run = replay(trace, 1, TraceReplaySource.UNPACED, false);
+
+        // only the checkpoint was written, the summary is restored when the next session starts
+        assertNull(run.dao.getSummary(1));
+        assertNotNull(run.dao.getCheckpoint(1));
+        assertEquals(1, run.dao.promoteCheckpoints(2));
+        assertNull(run.dao.getCheckpoint(1));
+
+        // the last checkpoint covers every observation until the last write: rows are written
+        // at most DEFAULT_MAX_AGE_MS after they are observed, and one is stored at least every
+        // DEFAULT_MAX_SILENCE_MS
+        SessionSensorSummary summary = run.dao.getSummary(1);
+        assertNotNull(summary);
+        int windows = trace.count(SensorTrace.Type.NOISE);
+        int uncovered = windows - summary.getSampleCount();
+        assertTrue("observations after the last checkpoint: " + uncovered, uncovered >= 0
+                && uncovered <= (SensorChangeFilter.DEFAULT_MAX_SILENCE_MS + SensorLogBuffer.DEFAULT_MAX_AGE_MS) / INTERVAL_MS);
+        assertTrue(run.buffer.getPendingCount() < SensorLogBuffer.DEFAULT_MAX_SAMPLES);
+
+        // the blocks of the session are merged once it is over
+        List<SessionSensorBlock> blocks = run.dao.getBlocksForSession(1);
+        assertTrue(blocks.size() > 1);
+        long over = blocks.get(blocks.size() - 1).getLastTimestamp() + 1;
+        assertEquals(List.of(1L), run.dao.getSessionsToCompact(over, 10));
+        run.dao.compactSession(1);
+        assertEquals(1, run.dao.getBlocksForSession(1).size());
+        assertTrue(run.dao.getSessionsToCompact(over, 10).isEmpty());
+    }
+
+    @Test
+    public void pacedReplayFollowsTheTraceClock() throws Exception {
+        // one minute of trace at 600x: ~100 ms
+        SensorTrace trace = SyntheticTraces.session(START, TimeUnit.MINUTES.toMillis(1), INTERVAL_MS, 42);
+        long begin = System.nanoTime();
+        Run run = replay(trace, 1, 600);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+
+        assertEquals(trace.count(SensorTrace.Type.NOISE), run.observations);
+        assertTrue("replay took " + elapsedMs + " ms", elapsedMs >= 90);
+    }
+
+    @Test
+    public void tracesRoundTripThroughCsvAndBinary() throws IOException {
+        SensorTrace trace = SyntheticTraces.session(START, TimeUnit.MINUTES.toMillis(30), INTERVAL_MS, 7);
+
+        StringWriter csv = new StringWriter();
+        trace.writeCsv(csv);
+        assertSameEvents(trace, SensorTrace.readCsv(new StringReader("# recorded trace\n" + csv)));
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        trace.writeBinary(binary);
+        assertSameEvents(trace, SensorTrace.readBinary(new ByteArrayInputStream(binary.toByteArray())));
+    }
+
+    @Test
+    public void storedLogsReplayToTheSameRows() throws Exception {
+        SensorTrace trace = SyntheticTraces.session(START, TimeUnit.HOURS.toMillis(1), INTERVAL_MS, 3);
+        Run first = replay(trace, 1, TraceReplaySource.UNPACED);
+        List<SessionSensorLog> rows = first.dao.getLogsForSession(1);
+
+        // a trace rebuilt from the stored rows gives one observation per row...
+        Run second = replay(SensorTrace.fromLogs(rows), 1, TraceReplaySource.UNPACED);
+        assertEquals(rows.size(), second.observations);
+        assertEquals(rows.size(), second.dao.getSummary(1).getSampleCount());
+
+        // ...with the same values (up to the quantization of the blocks) and every pickup
+        Map<Long, SessionSensorLog> byTimestamp = new HashMap<>();
+        for (SessionSensorLog row : rows) byTimestamp.put(row.getTimestamp(), row);
+        int pickups = 0;
+        for (SessionSensorLog row : second.dao.getLogsForSession(1)) {
+            SessionSensorLog original = byTimestamp.get(row.getTimestamp());
+            assertNotNull(original);
+            assertEquals(original.getNoiseLevel(), row.getNoiseLevel(), SensorBlockCodec.NOISE_STEP);
+            assertEquals(original.getLightLevel(), row.getLightLevel(), 1f);
+            assertEquals(original.isFaceUp(), row.isFaceUp());
+            assertEquals(original.isMotionDetected(), row.isMotionDetected());
+            if (row.isMotionDetected()) pickups++;
+        }
+        assertEquals(first.dao.getSummary(1).getPickupCount(), pickups);
+    }
+
+    private static double meanNoise(SensorTrace trace) {
+        double sum = 0;
+        int count = 0;
+        for (int i = 0; i < trace.size(); i++) {
+            if (trace.getType(i) == SensorTrace.Type.NOISE) {
+                sum += trace.getValue(i);
+                count++;
+            }
+        }
+        return sum / count;
+    }
+
+    private static double noiseVariance(SensorTrace trace) {
+        double mean = meanNoise(trace);
+        double sum = 0;
+        int count = 0;
+        for (int i = 0; i < trace.size(); i++) {
+            if (trace.getType(i) == SensorTrace.Type.NOISE) {
+                double delta = trace.getValue(i) - mean;
+                sum += delta * delta;
+                count++;
+            }
+        }
+        return sum / count;
+    }
+
+    private static void assertSameEvents(SensorTrace expected, SensorTrace actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getTimestamp(i), actual.getTimestamp(i));
+            assertEquals(expected.getType(i), actual.getType(i));
+            assertEquals(expected.getValue(i), actual.getValue(i), 0f);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package ch.inf.usi.mindbricks.service;
+
+import java.util.Random;
+
+import ch.inf.usi.mindbricks.drivers.replay.SensorTrace;
+
+/**
+ * Generator of synthetic sensor traces for the replay tests.
+ * <p>
+ * A trace simulates a study session observed every {@code intervalMs}: the noise follows a
+ * random walk (in dB) with occasional loud events, the light level changes every few minutes,
+ * the phone is turned over and picked up from time to time (at most one pickup per interval).
+ * The generator is seeded, so every run works on exactly the same data.
+ *
+ * @author Luca Di Bello
+ */
+final class SyntheticTraces {
+
+    private SyntheticTraces() {
+    }
+
+    /**
+     * @param start      timestamp of the first observation
+     * @param durationMs length of the session
+     * @param intervalMs time between two microphone windows
+     * @param seed       random seed
+     */
+    static SensorTrace session(long start, long durationMs, long intervalMs, long seed) {
+        Random random = new Random(seed);
+        SensorTrace.Builder builder = new SensorTrace.Builder((int) (durationMs / intervalMs) * 2);
+
+        double noiseDb = -55;
+        float light = 40 + random.nextInt(40);
+        boolean faceUp = true;
+        builder.add(start, SensorTrace.Type.ORIENTATION, 1f);
+        builder.add(start, SensorTrace.Type.LIGHT, light);
+
+        for (long t = start + intervalMs; t <= start + durationMs; t += intervalMs) {
+            // events happen during the interval, the noise window closes it
+            if (random.nextInt(24) == 0) {
+                light = Math.max(0, Math.min(100, light + (float) random.nextGaussian() * 15));
+                builder.add(t - 1 - random.nextInt((int) intervalMs - 1), SensorTrace.Type.LIGHT, light);
+            }
+            if (random.nextInt(500) == 0) {
+                faceUp = !faceUp;
+                builder.add(t - 1 - random.nextInt((int) intervalMs - 1), SensorTrace.Type.ORIENTATION, faceUp ? 1f : 0f);
+            }
+            if (random.nextInt(100) == 0) {
+                builder.add(t - 1 - random.nextInt((int) intervalMs - 1), SensorTrace.Type.MOTION, 1f);
+            }
+
+            noiseDb = Math.max(-80, Math.min(-20, noiseDb + random.nextGaussian() * 0.7));
+            double windowDb = random.nextInt(50) == 0 ? noiseDb + 20 : noiseDb;
+            builder.add(t, SensorTrace.Type.NOISE, (float) (32768 * Math.pow(10, windowDb / 20)));
+        }
+        return builder.build();
+    }
+}
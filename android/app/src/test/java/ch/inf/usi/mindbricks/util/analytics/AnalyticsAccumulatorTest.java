@@ -0,0 +1,145 @@
+package ch.inf.usi.mindbricks.util.analytics;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import ch.inf.usi.mindbricks.model.visual.DateRange;
+import ch.inf.usi.mindbricks.model.visual.StudySession;
+import ch.inf.usi.mindbricks.model.visual.StudySessionWithStats;
+
+/**
+ * Checks that the charts built from the running totals of an {@link AnalyticsAccumulator} are
+ * the ones the {@link AnalyticsKernel} computes from the sessions, after the sessions are added
+ * and after single sessions are updated and removed.
+ * <p>
+ * Scores and levels are whole numbers, so the sums do not depend on the order of the changes.
+ *
+ * @author Luca Di Bello
+ */
+public class AnalyticsAccumulatorTest {
+
+    private static final long HOUR_MS = 60L * 60 * 1000;
+    private static final long DAY_MS = 24 * HOUR_MS;
+    private static final String[] TAG_TITLES = {"Math", "Physics", "History", "Reading"};
+
+    private static final int TODAY_TOPIC_SESSIONS = 10;
+
+    // the charts have no equals(): they are compared through their JSON form
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(LocalDate.class, (JsonSerializer<LocalDate>) (date, type, context) ->
+                    new JsonPrimitive(date.toString()))
+            .create();
+
+    private final long now = System.currentTimeMillis();
+    private final AnalyticsKernel.Params params = new AnalyticsKernel.Params();
+
+    public AnalyticsAccumulatorTest() {
+        params.dailyGoal = timestamp -> 120;
+    }
+
+    private static StudySessionWithStats session(long id, long timestamp, int minutes, int focus, int tag) {
+        StudySession session = new StudySession(timestamp, minutes, tag >= 0 ? (long) tag + 1 : null);
+        session.setId(id);
+        session.setFocusScore(focus);
+        return new StudySessionWithStats(session, 30 + focus % 40, 100 + minutes, 0,
+                tag >= 0 ? TAG_TITLES[tag] : null, tag >= 0 ? 0xFF000000 | tag : 0);
+    }
+
+    /**
+     * Sessions of the last 400 days, starting with the ones giving a clear topic of today (ties are
+     * broken differently).
+     */
+    private List<StudySessionWithStats> history(long seed) {
+        Random random = new Random(seed);
+        List<StudySessionWithStats> sessions = new ArrayList<>();
+        for (int i = 0; i < TODAY_TOPIC_SESSIONS; i++) {
+            sessions.add(session(10_000 + i, now - 1 - i * 60_000L, 25, 60, 0));
+        }
+        for (int i = 0; i < 3000; i++) {
+            long timestamp = now - 1 - (long) (random.nextDouble() * 400 * DAY_MS);
+            sessions.add(session(i + 1, timestamp, 15 + random.nextInt(100), 20 + random.nextInt(80),
+                    random.nextInt(TAG_TITLES.length + 1) - 1));
+        }
+        return sessions;
+    }
+
+    private String kernel(List<StudySessionWithStats> sessions, DateRange range) {
+        List<StudySessionWithStats> sorted = new ArrayList<>(sessions);
+        sorted.sort(Comparator.comparingLong(StudySessionWithStats::getTimestamp).reversed());
+        SessionColumns columns = SessionColumns.from(sorted);
+
+        AnalyticsKernel.Output output = new AnalyticsKernel.Output();
+        AnalyticsKernel.computeRangeStats(columns, range, params, output);
+        output.heatmap = AnalyticsKernel.computeHeatmap(columns, range);
+        output.dailyRings = AnalyticsKernel.computeDailyRings(columns, range, params, now);
+        return GSON.toJson(output);
+    }
+
+    private void assertSameCharts(List<StudySessionWithStats> sessions, DateRange range) {
+        AnalyticsAccumulator totals = new AnalyticsAccumulator(range, now);
+        for (StudySessionWithStats session : sessions) totals.add(session);
+        assertEquals(range.getDisplayName(), kernel(sessions, range), GSON.toJson(totals.toOutput(params, now)));
+    }
+
+    @Test
+    public void addedSessionsGiveTheChartsOfTheKernel() {
+        List<StudySessionWithStats> sessions = history(1);
+        assertSameCharts(sessions, DateRange.lastNDays(7));
+        assertSameCharts(sessions, DateRange.lastNDays(30));
+        assertSameCharts(sessions, DateRange.allTime());
+    }
+
+    @Test
+    public void changesOfSingleSessionsKeepTheChartsOfTheKernel() {
+        DateRange range = DateRange.lastNDays(90);
+        List<StudySessionWithStats> sessions = history(2);
+        AnalyticsAccumulator totals = new AnalyticsAccumulator(range, now);
+        for (StudySessionWithStats session : sessions) totals.add(session);
+
+        Random random = new Random(3);
+        for (int change = 0; change < 500; change++) {
+            // the sessions of the topic of today are left alone
+            int index = TODAY_TOPIC_SESSIONS + random.nextInt(sessions.size() - TODAY_TOPIC_SESSIONS);
+            StudySessionWithStats before = sessions.get(index);
+            switch (random.nextInt(3)) {
+                case 0: {
+                    // deleted
+                    sessions.remove(index);
+                    totals.update(before, null);
+                    break;
+                }
+                case 1: {
+                    // rated or completed
+                    StudySessionWithStats after = session(before.getId(), before.getTimestamp(),
+                            random.nextInt(120), random.nextInt(100), random.nextInt(TAG_TITLES.length));
+                    sessions.set(index, after);
+                    totals.update(before, after);
+                    break;
+                }
+                default: {
+                    // inserted
+                    StudySessionWithStats after = session(20_000 + change, now - 1 - random.nextInt(60) * DAY_MS,
+                            30, 50, random.nextInt(TAG_TITLES.length + 1) - 1);
+                    sessions.add(after);
+                    totals.update(null, after);
+                    break;
+                }
+            }
+        }
+
+        assertEquals(kernel(sessions, range), GSON.toJson(totals.toOutput(params, now)));
+        assertEquals(kernel(sessions, range), GSON.toJson(totals.copy().toOutput(params, now)));
+    }
+}
@@ -0,0 +1,308 @@
+package ch.inf.usi.mindbricks.util.evaluation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import ch.inf.usi.mindbricks.model.evaluation.PAMScore;
+import ch.inf.usi.mindbricks.model.recommendation.AIRecommendation;
+import ch.inf.usi.mindbricks.model.recommendation.ActivityBlock;
+import ch.inf.usi.mindbricks.model.recommendation.ActivityType;
+import ch.inf.usi.mindbricks.model.recommendation.ProductivityCell;
+import ch.inf.usi.mindbricks.model.visual.StudySessionWithStats;
+import ch.inf.usi.mindbricks.model.visual.calendar.CalendarEvent;
+import ch.inf.usi.mindbricks.util.UserPreferenceLoader;
+
+/**
+ * Offline evaluation of the schedule generation: replays a session history day by day and
+ * compares the study hours recommended for each day with the sessions the user actually did.
+ * <p>
+ * The schedule of a day is generated from the sessions before that day only: the productivity
+ * model is updated with the sessions of a day once the day is over, as the app does when it
+ * stores them. A schedule is scored on the studied minutes it covers and on the focus of the
+ * sessions in its study blocks against the focus of the sessions outside of them. Every call of
+ * the scheduler is timed, so the report also gives the latency percentiles.
+ * <p>
+ * The replay has no Android dependency: it runs in the host unit tests, on recorded or synthetic
+ * histories.
+ *
+ * @author Luca Di Bello
+ */
+public final class ScheduleReplay {
+
+    /**
+     * Generates the schedule of a day (the code under evaluation).
+     */
+    public interface Scheduler {
+        /**
+         * @param source  preferences, goal and productivity model known before the day
+         * @param history sessions before the day, newest first
+         * @param day     start of the day
+         * @return the schedule of the day
+         */
+        AIRecommendation schedule(ScheduleDataSource source, List<StudySessionWithStats> history, long day);
+    }
+
+    /**
+     * Hourly schedule of {@link RecommendationEngine#generateAdaptiveSchedule}
+     */
+    public static final Scheduler ADAPTIVE = (source, history, day) ->
+            new RecommendationEngine(source).generateAdaptiveSchedule(history, day);
+
+    /**
+     * Minute schedule of the {@link WeeklyPlanner}, one day at a time
+     */
+    public static final Scheduler WEEKLY_PLANNER = (source, history, day) ->
+            new RecommendationEngine(source).generateWeeklyPlan(history, day, 1).get(0);
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final UserPreferenceLoader preferences;
+    private final int dailyGoalMinutes;
+    private final int warmupDays;
+
+    /**
+     * @param preferences      preferences used for every day
+     * @param dailyGoalMinutes study goal of every day
+     * @param warmupDays       number of days at the start of the history that are only learnt from
+     */
+    public ScheduleReplay(UserPreferenceLoader preferences, int dailyGoalMinutes, int warmupDays) {
+        this.preferences = preferences;
+        this.dailyGoalMinutes = dailyGoalMinutes;
+        this.warmupDays = warmupDays;
+    }
+
+    /**
+     * Replays a history.
+     *
+     * @param sessions    sessions of the history, in any order
+     * @param scheduler   schedule generation to evaluate
+     * @param storedModel whether the scheduler gets the productivity model as the app stores it
+     *                    (updated after every day) or has to build it from the history
+     * @return the scores and latencies of the replay
+     */
+    public Report replay(List<StudySessionWithStats> sessions, Scheduler scheduler, boolean storedModel) {
+        Report report = new Report();
+        if (sessions.isEmpty()) return report;
+
+        // Newest first, as the DAO returns them: the history of a day is a suffix of the list
+        List<StudySessionWithStats> ordered = new ArrayList<>(sessions);
+        ordered.sort((a, b) -> Long.compare(b.getTimestamp(), a.getTimestamp()));
+        int prior = ordered.size();
+
+        ReplaySource source = new ReplaySource();
+        ProductivityCell[] cells = new ProductivityCell[ProductivityModel.CELLS];
+        for (int i = 0; i < cells.length; i++) cells[i] = new ProductivityCell(i);
+        List<ProductivityCell> cellList = Arrays.asList(cells);
+        Calendar cellCalendar = Calendar.getInstance();
+
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(RecommendationEngine.getStartOfDay(ordered.get(ordered.size() - 1).getTimestamp()));
+        cal.add(Calendar.DAY_OF_MONTH, warmupDays);
+        long last = ordered.get(0).getTimestamp();
+
+        boolean[] recommended = new boolean[MINUTES_PER_DAY];
+        while (cal.getTimeInMillis() <= last) {
+            long dayStart = cal.getTimeInMillis();
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+            long nextDayStart = cal.getTimeInMillis();
+
+            // Learn from every session before the day
+            while (prior > 0 && ordered.get(prior - 1).getTimestamp() < dayStart) {
+                StudySessionWithStats session = ordered.get(--prior);
+                int cell = ProductivityModel.cellOf(cellCalendar, session.getTimestamp());
+                ProductivityModel.add(cells[cell], session.getTimestamp(), session.getFocusScore());
+            }
+            source.productivityModel = storedModel ? ProductivityModel.of(cellList) : null;
+            List<StudySessionWithStats> history = ordered.subList(prior, ordered.size());
+
+            long begin = System.nanoTime();
+            AIRecommendation schedule = scheduler.schedule(source, history, dayStart);
+            report.addLatency(System.nanoTime() - begin);
+
+            Arrays.fill(recommended, false);
+            int recommendedMinutes = 0;
+            for (ActivityBlock block : schedule.getActivityBlocks()) {
+                if (!isStudy(block.getActivityType())) continue;
+                int end = Math.min(MINUTES_PER_DAY, block.getEndMinute());
+                for (int m = Math.max(0, block.getStartMinute()); m < end; m++) {
+                    if (!recommended[m]) recommendedMinutes++;
+                    recommended[m] = true;
+                }
+            }
+            report.recommendedMinutes += recommendedMinutes;
+
+            // Score the sessions of the day (the ones learnt from at the next iteration)
+            for (int i = prior - 1; i >= 0 && ordered.get(i).getTimestamp() < nextDayStart; i--) {
+                report.score(ordered.get(i), dayStart, recommended);
+            }
+        }
+        return report;
+    }
+
+    private static boolean isStudy(ActivityType type) {
+        return type == ActivityType.DEEP_STUDY || type == ActivityType.LIGHT_STUDY;
+    }
+
+    /**
+     * Data source of a replayed day: fixed preferences and goal, no calendar events nor PAM
+     * scores, and the productivity model of the previous days.
+     */
+    private final class ReplaySource implements ScheduleDataSource {
+
+        ProductivityModel productivityModel;
+
+        @Override
+        public String getStudyObjective() {
+            return null;
+        }
+
+        @Override
+        public int getDailyStudyMinutesGoal(long timestamp) {
+            return dailyGoalMinutes;
+        }
+
+        @Override
+        public List<CalendarEvent> getCalendarEvents(long startTime, long endTime) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<PAMScore> getLastPamScores(int count) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public UserPreferenceLoader getPreferences() {
+            return preferences;
+        }
+
+        @Override
+        public ProductivityModel getProductivityModel() {
+            return productivityModel;
+        }
+    }
+
+    /**
+     * Result of a replay.
+     */
+    public static final class Report {
+
+        private long[] latencies = new long[64];
+        private int days;
+        private int sessions;
+        private long recommendedMinutes;
+        private long studiedMinutes;
+        private long studiedRecommendedMinutes;
+
+        // focus of the rated sessions, weighted by minutes
+        private double focusInside;
+        private long ratedInside;
+        private double focusOutside;
+        private long ratedOutside;
+
+        private void addLatency(long nanos) {
+            if (days == latencies.length) latencies = Arrays.copyOf(latencies, days * 2);
+            latencies[days++] = nanos;
+        }
+
+        private void score(StudySessionWithStats session, long dayStart, boolean[] recommended) {
+            sessions++;
+            int start = (int) ((session.getTimestamp() - dayStart) / 60_000);
+            int end = Math.min(MINUTES_PER_DAY, start + session.getDurationMinutes());
+            int inside = 0;
+            for (int m = start; m < end; m++) {
+                if (recommended[m]) inside++;
+            }
+            int outside = Math.max(0, end - start) - inside;
+
+            studiedMinutes += inside + outside;
+            studiedRecommendedMinutes += inside;
+            float focus = session.getFocusScore();
+            if (focus > 0) {
+                focusInside += (double) focus * inside;
+                ratedInside += inside;
+                focusOutside += (double) focus * outside;
+                ratedOutside += outside;
+            }
+        }
+
+        /**
+         * Returns the number of scheduled days.
+         */
+        public int getDays() {
+            return days;
+        }
+
+        /**
+         * Returns the number of sessions of the scheduled days.
+         */
+        public int getSessions() {
+            return sessions;
+        }
+
+        /**
+         * Returns the share of the studied minutes that were recommended (0-1).
+         */
+        public double getCoverage() {
+            return studiedMinutes == 0 ? 0 : (double) studiedRecommendedMinutes / studiedMinutes;
+        }
+
+        /**
+         * Returns the share of the recommended minutes that were studied (0-1).
+         */
+        public double getPrecision() {
+            return recommendedMinutes == 0 ? 0 : (double) studiedRecommendedMinutes / recommendedMinutes;
+        }
+
+        /**
+         * Returns the mean focus score of the minutes studied in recommended hours, NaN if none.
+         */
+        public double getFocusInRecommended() {
+            return ratedInside == 0 ? Double.NaN : focusInside / ratedInside;
+        }
+
+        /**
+         * Returns the mean focus score of the minutes studied outside of the recommended hours,
+         * NaN if none.
+         */
+        public double getFocusOutsideRecommended() {
+            return ratedOutside == 0 ? Double.NaN : focusOutside / ratedOutside;
+        }
+
+        /**
+         * Returns the focus gained by studying in the recommended hours rather than outside.
+         */
+        public double getFocusLift() {
+            return getFocusInRecommended() - getFocusOutsideRecommended();
+        }
+
+        /**
+         * Returns a latency percentile of the scheduler calls, in nanoseconds (nearest rank).
+         *
+         * @param percentile 0-100
+         */
+        public long getLatencyPercentile(double percentile) {
+            if (days == 0) return 0;
+            long[] sorted = Arrays.copyOf(latencies, days);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile / 100 * days);
+            return sorted[Math.min(days - 1, Math.max(0, rank - 1))];
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%d days, %d sessions: coverage %.1f%%, precision %.1f%%, "
+                            + "focus %.1f in recommended hours vs %.1f outside (lift %+.1f), "
+                            + "latency p50 %.1f us, p90 %.1f us, p99 %.1f us, max %.1f us",
+                    days, sessions, getCoverage() * 100, getPrecision() * 100,
+                    getFocusInRecommended(), getFocusOutsideRecommended(), getFocusLift(),
+                    getLatencyPercentile(50) / 1e3, getLatencyPercentile(90) / 1e3,
+                    getLatencyPercentile(99) / 1e3, getLatencyPercentile(100) / 1e3);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package ch.inf.usi.mindbricks.util.evaluation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+
+import ch.inf.usi.mindbricks.model.visual.StudySession;
+import ch.inf.usi.mindbricks.model.visual.StudySessionWithStats;
+import ch.inf.usi.mindbricks.util.UserPreferenceLoader;
+
+/**
+ * Replays a synthetic history through the schedule generation with {@link ScheduleReplay}.
+ * <p>
+ * The user of the history studies a few times a day at random hours, and is much more focused in
+ * the evening (20:00 - 23:00): once the engine has learnt it, the recommended hours must be the
+ * ones with the best focus. The test also reports the scores and the latency percentiles of the
+ * hourly schedule and of the weekly planner, with and without a stored productivity model.
+ *
+ * @author Luca Di Bello
+ */
+public class ScheduleReplayTest {
+
+    private static final int DAYS = 120;
+    private static final int WARMUP_DAYS = 14;
+    private static final int SESSIONS_PER_DAY = 3;
+    private static final int DAILY_GOAL_MINUTES = 180;
+
+    private static final int FOCUSED_FROM_HOUR = 20;
+    private static final int FOCUSED_TO_HOUR = 23;
+
+    private static List<StudySessionWithStats> history() {
+        Random random = new Random(42);
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(2026, Calendar.JANUARY, 5);
+
+        List<StudySessionWithStats> sessions = new ArrayList<>();
+        for (int d = 0; d < DAYS; d++) {
+            for (int s = 0; s < SESSIONS_PER_DAY; s++) {
+                int hour = 6 + random.nextInt(FOCUSED_TO_HOUR - 6);
+                Calendar start = (Calendar) cal.clone();
+                start.set(Calendar.HOUR_OF_DAY, hour);
+                start.set(Calendar.MINUTE, random.nextInt(30));
+
+                boolean focused = hour >= FOCUSED_FROM_HOUR && hour < FOCUSED_TO_HOUR;
+                StudySession session = new StudySession(start.getTimeInMillis(), 25 + random.nextInt(30), null);
+                session.setId(sessions.size() + 1);
+                session.setFocusScore(focused ? 80 + random.nextFloat() * 15 : 30 + random.nextFloat() * 20);
+                sessions.add(new StudySessionWithStats(session, 40, 300, 0, null, 0));
+            }
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return sessions;
+    }
+
+    private static ScheduleReplay replay() {
+        return new ScheduleReplay(UserPreferenceLoader.fromJson("{}"), DAILY_GOAL_MINUTES, WARMUP_DAYS);
+    }
+
+    @Test
+    public void scheduleOnlySeesThePreviousDays() {
+        List<StudySessionWithStats> sessions = history();
+        long[] lastDay = {Long.MIN_VALUE};
+        int[] lastHistorySize = {-1};
+
+        ScheduleReplay.Report report = replay().replay(sessions, (source, history, day) -> {
+            assertTrue(day > lastDay[0]);
+            for (StudySessionWithStats session : history) {
+                assertTrue(session.getTimestamp() < day);
+            }
+            // every session of the previous days, one day more at a time
+            assertEquals(lastHistorySize[0] < 0 ? WARMUP_DAYS * SESSIONS_PER_DAY : lastHistorySize[0] + SESSIONS_PER_DAY,
+                    history.size());
+            assertEquals(history.size(), source.getProductivityModel().getTotalSessionCount());
+
+            lastDay[0] = day;
+            lastHistorySize[0] = history.size();
+            return ScheduleReplay.ADAPTIVE.schedule(source, history, day);
+        }, true);
+
+        assertEquals(DAYS - WARMUP_DAYS, report.getDays());
+        assertEquals((DAYS - WARMUP_DAYS) * SESSIONS_PER_DAY, report.getSessions());
+    }
+
+    @Test
+    public void recommendedHoursHaveTheBestFocus() {
+        List<StudySessionWithStats> sessions = history();
+        ScheduleReplay replay = replay();
+
+        ScheduleReplay.Report adaptive = replay.replay(sessions, ScheduleReplay.ADAPTIVE, true);
+        ScheduleReplay.Report rebuilt = replay.replay(sessions, ScheduleReplay.ADAPTIVE, false);
+        ScheduleReplay.Report planner = replay.replay(sessions, ScheduleReplay.WEEKLY_PLANNER, true);
+
+        // the stored model holds the same statistics as the one built from the history
+        assertEquals(adaptive.getCoverage(), rebuilt.getCoverage(), 1e-9);
+        assertEquals(adaptive.getPrecision(), rebuilt.getPrecision(), 1e-9);
+
+        for (ScheduleReplay.Report report : new ScheduleReplay.Report[]{adaptive, rebuilt, planner}) {
+            assertEquals(DAYS - WARMUP_DAYS, report.getDays());
+            assertTrue(report.toString(), report.getFocusLift() > 20);
+            assertTrue(report.toString(), report.getCoverage() > 0 && report.getCoverage() < 1);
+
+            assertTrue(report.getLatencyPercentile(50) > 0);
+            assertTrue(report.getLatencyPercentile(50) <= report.getLatencyPercentile(90));
+            assertTrue(report.getLatencyPercentile(90) <= report.getLatencyPercentile(99));
+            assertTrue(report.getLatencyPercentile(99) <= report.getLatencyPercentile(100));
+        }
+    }
+
+    @Test
+    public void emptyHistoryGivesAnEmptyReport() {
+        ScheduleReplay.Report report = replay().replay(new ArrayList<>(), ScheduleReplay.ADAPTIVE, true);
+        assertEquals(0, report.getDays());
+        assertEquals(0, report.getLatencyPercentile(50));
+        assertTrue(Double.isNaN(report.getFocusLift()));
+    }
+}